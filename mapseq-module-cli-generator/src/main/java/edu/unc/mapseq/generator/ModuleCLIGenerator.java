@@ -42,7 +42,6 @@ import com.sun.codemodel.JTryBlock;
 import com.sun.codemodel.JVar;
 
 import edu.unc.mapseq.dao.MaPSeqDAOBeanService;
-import edu.unc.mapseq.dao.soap.SOAPDAOManager;
 import edu.unc.mapseq.module.DryRunJobObserver;
 import edu.unc.mapseq.module.ModuleExecutor;
 import edu.unc.mapseq.module.ModuleOutput;
@@ -59,6 +58,17 @@ import edu.unc.mapseq.module.annotations.OutputArgument;
  */
 public class ModuleCLIGenerator extends AbstractGenerator {
 
+    /*
+     * lives in mapseq-module-core, which depends on this generator at build time...referenced by name
+     */
+    private static final String MODULE_SERVER_CLASS = "edu.unc.mapseq.module.core.runner.ModuleServer";
+
+    private static final String DAO_BEAN_SERVICE_FACTORY_CLASS = "edu.unc.mapseq.module.core.dao.DAOBeanServiceFactory";
+
+    private static final String MODULE_RESULT_CACHE_CLASS = "edu.unc.mapseq.module.core.cache.ModuleResultCache";
+
+    private static final String MODULE_METRICS_CLASS = "edu.unc.mapseq.module.core.metrics.ModuleMetrics";
+
     protected List<Class<?>> classList;
 
     protected String pkg, srcDir;
@@ -100,6 +110,9 @@ public class ModuleCLIGenerator extends AbstractGenerator {
                 fieldFieldVar = cliClass.field(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, stringJClass, "VALIDATE");
                 fieldFieldVar.init(JExpr.lit("--validate"));
 
+                fieldFieldVar = cliClass.field(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, stringJClass, "SERVE");
+                fieldFieldVar.init(JExpr.lit("--serve"));
+
                 Field[] fieldArray = clazz.getDeclaredFields();
                 for (Field field : fieldArray) {
                     if (field.isAnnotationPresent(InputArgument.class) || field.isAnnotationPresent(OutputArgument.class)) {
@@ -120,8 +133,11 @@ public class ModuleCLIGenerator extends AbstractGenerator {
                 constructorMethodBlock.directStatement("super();");
                 constructorMethodBlock.assign(JExpr._this().ref(appFieldVar), appVar);
 
+                JDefinedClass cachedClass = buildCached(clazz, codeModel, cliClass);
                 buildRun(clazz, codeModel, cliClass, appFieldVar);
-                buildMain(clazz, codeModel, cliClass);
+                JMethod createOptionsMethod = buildCreateOptions(clazz, codeModel, cliClass);
+                JMethod parseMethod = buildParse(clazz, codeModel, cliClass, cachedClass);
+                buildMain(clazz, codeModel, cliClass, createOptionsMethod, parseMethod);
                 File srcOutputDir = new File(this.srcDir);
                 srcOutputDir.mkdirs();
                 writeJavaFile(srcOutputDir, codeModel);
@@ -134,10 +150,36 @@ public class ModuleCLIGenerator extends AbstractGenerator {
 
     }
 
+    /**
+     * The module as parse() creates it: its call() is answered from the ModuleResultCache when it can be, so a hit
+     * still goes through the ModuleExecutor (job, observers, FileData) and only the work itself is skipped.
+     */
+    private JDefinedClass buildCached(Class<?> clazz, JCodeModel codeModel, JDefinedClass cliClass)
+            throws JClassAlreadyExistsException {
+        JClass moduleResultCacheJClass = codeModel.ref(MODULE_RESULT_CACHE_CLASS);
+        JClass moduleOutputJClass = codeModel.ref(ModuleOutput.class);
+
+        JDefinedClass cachedClass = cliClass._class(JMod.PUBLIC | JMod.STATIC, "Cached");
+        cachedClass._extends(codeModel.ref(clazz));
+
+        JMethod callMethod = cachedClass.method(JMod.PUBLIC, moduleOutputJClass, "call");
+        callMethod.annotate(Override.class);
+        callMethod._throws(codeModel.ref(Exception.class));
+        JBlock callMethodBlock = callMethod.body();
+        JVar outputVar = callMethodBlock.decl(moduleOutputJClass, "output",
+                moduleResultCacheJClass.staticInvoke("lookup").arg(JExpr._this()));
+        JBlock missBlock = callMethodBlock._if(outputVar.eq(JExpr._null()))._then();
+        missBlock.assign(outputVar, JExpr._super().invoke("call"));
+        missBlock.add(moduleResultCacheJClass.staticInvoke("store").arg(JExpr._this()).arg(outputVar));
+        callMethodBlock._return(outputVar);
+        return cachedClass;
+    }
+
     private void buildRun(Class<?> clazz, JCodeModel codeModel, JDefinedClass cliClass, JFieldVar appFieldVar) {
 
         JClass mapseqDAOBeanServiceJClass = codeModel.ref(MaPSeqDAOBeanService.class);
-        JClass soapDAOManagerJClass = codeModel.ref(SOAPDAOManager.class);
+        JClass daoBeanServiceFactoryJClass = codeModel.ref(DAO_BEAN_SERVICE_FACTORY_CLASS);
+        JClass moduleMetricsJClass = codeModel.ref(MODULE_METRICS_CLASS);
         JClass moduleExecutorJClass = codeModel.ref(ModuleExecutor.class);
         JClass moduleOutputJClass = codeModel.ref(ModuleOutput.class);
         JClass executorsJClass = codeModel.ref(Executors.class);
@@ -154,6 +196,9 @@ public class ModuleCLIGenerator extends AbstractGenerator {
 
         JBlock mainMethodBlock = mainMethod.body();
 
+        JVar moduleMetricsVar = mainMethodBlock.decl(moduleMetricsJClass, "metrics",
+                moduleMetricsJClass.staticInvoke("start").arg(appFieldVar));
+
         JVar moduleExecutorVar = mainMethodBlock.decl(moduleExecutorJClass, "moduleExecutor");
         moduleExecutorVar.init(JExpr._new(moduleExecutorJClass));
 
@@ -163,11 +208,8 @@ public class ModuleCLIGenerator extends AbstractGenerator {
         JBlock dryRunConditionalBlock = dryRunConditional._then();
         dryRunConditionalBlock.add(moduleExecutorVar.invoke("addObserver").arg(JExpr._new(dryRunObserverJClass)));
         JBlock dryRunConditionalElseBlock = dryRunConditional._else();
-        JVar wsDAOManagerVar = dryRunConditionalElseBlock.decl(soapDAOManagerJClass, "daoMgr");
-        wsDAOManagerVar.init(soapDAOManagerJClass.staticInvoke("getInstance"));
-
         JVar mapseqDAOBeanVar = dryRunConditionalElseBlock.decl(mapseqDAOBeanServiceJClass, "daoBean",
-                wsDAOManagerVar.invoke("getMaPSeqDAOBeanService"));
+                daoBeanServiceFactoryJClass.staticInvoke("getMaPSeqDAOBeanService"));
         dryRunConditionalElseBlock.add(moduleExecutorVar.invoke("setDaoBean").arg(mapseqDAOBeanVar));
         dryRunConditionalElseBlock
                 .add(moduleExecutorVar.invoke("addObserver").arg(JExpr._new(updateJobObserverJClass).arg(mapseqDAOBeanVar)));
@@ -183,44 +225,25 @@ public class ModuleCLIGenerator extends AbstractGenerator {
                 .arg(timeUnitJClass.staticRef("DAYS")));
 
         JVar moduleOutputVar = mainMethodBlock.decl(moduleOutputJClass, "output");
-        moduleOutputVar.init(futureVar.invoke("get"));
+        moduleOutputVar.init(JExpr._null());
+        JTryBlock tryBlock = mainMethodBlock._try();
+        tryBlock.body().assign(moduleOutputVar, futureVar.invoke("get"));
+        tryBlock._finally().add(moduleMetricsVar.invoke("finish").arg(moduleOutputVar));
 
         mainMethodBlock._return(moduleOutputVar);
     }
 
-    private void buildMain(Class<?> clazz, JCodeModel codeModel, JDefinedClass cliClass) {
-        JClass helpFormatterJClass = codeModel.ref(HelpFormatter.class);
+    private JMethod buildCreateOptions(Class<?> clazz, JCodeModel codeModel, JDefinedClass cliClass) {
         JClass optionsJClass = codeModel.ref(Options.class);
-
         JClass optionBuilderJClass = codeModel.ref(OptionBuilder.class);
-        JClass parseExceptionJClass = codeModel.ref(ParseException.class);
-        JClass exceptionJClass = codeModel.ref(Exception.class);
-        JClass commandLineParserJClass = codeModel.ref(CommandLineParser.class);
-        JClass commandLineJClass = codeModel.ref(CommandLine.class);
-        JClass gnuParserJClass = codeModel.ref(GnuParser.class);
-        JClass moduleOutputJClass = codeModel.ref(ModuleOutput.class);
-        JClass stringJClass = codeModel.ref(String.class);
-        JClass longJClass = codeModel.ref(Long.class);
-        JClass fileJClass = codeModel.ref(File.class);
-        JClass dateJClass = codeModel.ref(Date.class);
-        JClass booleanJClass = codeModel.ref(Boolean.class);
-        JClass listJClass = codeModel.ref(List.class);
-        JClass linkedListJClass = codeModel.ref(LinkedList.class);
-        JClass systemJClass = codeModel.ref(System.class);
-        JClass applicationJClass = codeModel.ref(clazz);
         JClass suppressWarningsJClass = codeModel.ref(SuppressWarnings.class);
-        JClass stringUtilsJClass = codeModel.ref(StringUtils.class);
 
-        JMethod mainMethod = cliClass.method(JMod.PUBLIC | JMod.STATIC, void.class, "main");
-        JVar paramElement = mainMethod.param(stringJClass.array(), "args");
+        JMethod createOptionsMethod = cliClass.method(JMod.PUBLIC | JMod.STATIC, optionsJClass, "createOptions");
 
-        JAnnotationUse suppressWarningsAnnotationUse = mainMethod.annotate(suppressWarningsJClass);
+        JAnnotationUse suppressWarningsAnnotationUse = createOptionsMethod.annotate(suppressWarningsJClass);
         suppressWarningsAnnotationUse.param("value", "static-access");
 
-        JBlock mainMethodBlock = mainMethod.body();
-
-        JVar helpFormatterVar = mainMethodBlock.decl(helpFormatterJClass, "helpFormatter");
-        helpFormatterVar.init(JExpr._new(helpFormatterJClass));
+        JBlock mainMethodBlock = createOptionsMethod.body();
 
         JVar cliOptionsFieldVar = mainMethodBlock.decl(optionsJClass, "cliOptions");
         cliOptionsFieldVar.init(JExpr._new(optionsJClass));
@@ -255,6 +278,11 @@ public class ModuleCLIGenerator extends AbstractGenerator {
                 .arg(optionBuilderJClass.staticInvoke("withArgName").arg(JExpr.lit("serialize")).invoke("hasArg").invoke("withDescription")
                         .arg(JExpr.lit("Serialize File")).invoke("withLongOpt").arg(JExpr.lit("serialize")).invoke("create")));
 
+        mainMethodBlock.add(cliOptionsFieldVar.invoke("addOption")
+                .arg(optionBuilderJClass.staticInvoke("withArgName").arg(JExpr.lit("port")).invoke("hasArg").invoke("withDescription")
+                        .arg(JExpr.lit("keep a warm JVM running module invocations sent to this loopback port")).invoke("withLongOpt")
+                        .arg(JExpr.lit("serve")).invoke("create")));
+
         for (Field field : fieldArray) {
             if (field.isAnnotationPresent(InputArgument.class)) {
                 InputArgument input = field.getAnnotation(InputArgument.class);
@@ -348,46 +376,59 @@ public class ModuleCLIGenerator extends AbstractGenerator {
                 .arg(optionBuilderJClass.staticInvoke("withArgName").arg(JExpr.lit("help")).invoke("withDescription")
                         .arg(JExpr.lit("print this help message")).invoke("withLongOpt").arg("help").invoke("create").arg(JExpr.lit("?"))));
 
-        JVar applicationVar = mainMethodBlock.decl(applicationJClass, "app");
-        applicationVar.init(JExpr._new(applicationJClass));
+        mainMethodBlock._return(cliOptionsFieldVar);
+        return createOptionsMethod;
+    }
 
-        JTryBlock tryBlock = mainMethodBlock._try();
-        JBlock tryBlockBody = tryBlock.body();
+    private JMethod buildParse(Class<?> clazz, JCodeModel codeModel, JDefinedClass cliClass, JDefinedClass cachedClass) {
+        JClass parseExceptionJClass = codeModel.ref(ParseException.class);
+        JClass exceptionJClass = codeModel.ref(Exception.class);
+        JClass commandLineJClass = codeModel.ref(CommandLine.class);
+        JClass stringJClass = codeModel.ref(String.class);
+        JClass longJClass = codeModel.ref(Long.class);
+        JClass fileJClass = codeModel.ref(File.class);
+        JClass dateJClass = codeModel.ref(Date.class);
+        JClass booleanJClass = codeModel.ref(Boolean.class);
+        JClass listJClass = codeModel.ref(List.class);
+        JClass linkedListJClass = codeModel.ref(LinkedList.class);
+        JClass systemJClass = codeModel.ref(System.class);
+        JClass applicationJClass = codeModel.ref(clazz);
+        JClass stringUtilsJClass = codeModel.ref(StringUtils.class);
 
-        JVar clpVar = tryBlockBody.decl(commandLineParserJClass, "commandLineParser");
-        clpVar.init(JExpr._new(gnuParserJClass));
+        JMethod parseMethod = cliClass.method(JMod.PUBLIC | JMod.STATIC, applicationJClass, "parse");
+        parseMethod._throws(parseExceptionJClass);
+        JVar commandLineVar = parseMethod.param(commandLineJClass, "commandLine");
 
-        JVar commandLineVar = tryBlockBody.decl(commandLineJClass, "commandLine");
-        commandLineVar.init(clpVar.invoke("parse").arg(cliOptionsFieldVar).arg(paramElement));
+        JBlock parseMethodBlock = parseMethod.body();
 
-        JConditional conditional = tryBlockBody._if(commandLineVar.invoke("hasOption").arg("?"));
-        JBlock conditionalThenBlock = conditional._then();
-        conditionalThenBlock.add(helpFormatterVar.invoke("printHelp").arg(clazz.getSimpleName() + "CLI").arg(cliOptionsFieldVar));
-        conditionalThenBlock._return();
+        JVar applicationVar = parseMethodBlock.decl(applicationJClass, "app");
+        applicationVar.init(JExpr._new(cachedClass));
+
+        Field[] fieldArray = clazz.getDeclaredFields();
 
         String paramName = "workflowRunAttemptId";
-        JConditional hasOptionConditional = tryBlockBody._if(commandLineVar.invoke("hasOption").arg(paramName));
+        JConditional hasOptionConditional = parseMethodBlock._if(commandLineVar.invoke("hasOption").arg(paramName));
         JBlock hasOptionConditionalThenBlock = hasOptionConditional._then();
         JVar paramVar = hasOptionConditionalThenBlock.decl(longJClass, paramName);
         paramVar.init(longJClass.staticInvoke("valueOf").arg(commandLineVar.invoke("getOptionValue").arg(paramName)));
         hasOptionConditionalThenBlock.add(applicationVar.invoke(String.format("set%s", StringUtils.capitalize(paramName))).arg(paramVar));
 
         paramName = "sampleId";
-        hasOptionConditional = tryBlockBody._if(commandLineVar.invoke("hasOption").arg(paramName));
+        hasOptionConditional = parseMethodBlock._if(commandLineVar.invoke("hasOption").arg(paramName));
         hasOptionConditionalThenBlock = hasOptionConditional._then();
         paramVar = hasOptionConditionalThenBlock.decl(longJClass, paramName);
         paramVar.init(longJClass.staticInvoke("valueOf").arg(commandLineVar.invoke("getOptionValue").arg(paramName)));
         hasOptionConditionalThenBlock.add(applicationVar.invoke(String.format("set%s", StringUtils.capitalize(paramName))).arg(paramVar));
 
         paramName = "serialize";
-        hasOptionConditional = tryBlockBody._if(commandLineVar.invoke("hasOption").arg(paramName));
+        hasOptionConditional = parseMethodBlock._if(commandLineVar.invoke("hasOption").arg(paramName));
         hasOptionConditionalThenBlock = hasOptionConditional._then();
         paramVar = hasOptionConditionalThenBlock.decl(fileJClass, paramName);
         paramVar.init(JExpr._new(fileJClass).arg(commandLineVar.invoke("getOptionValue").arg(paramName)));
         hasOptionConditionalThenBlock.add(applicationVar.invoke(String.format("set%s", StringUtils.capitalize(paramName))).arg(paramVar));
 
         paramName = "validate";
-        hasOptionConditional = tryBlockBody._if(commandLineVar.invoke("hasOption").arg(paramName));
+        hasOptionConditional = parseMethodBlock._if(commandLineVar.invoke("hasOption").arg(paramName));
         hasOptionConditionalThenBlock = hasOptionConditional._then();
         paramVar = hasOptionConditionalThenBlock.decl(stringJClass, paramName);
         paramVar.init(commandLineVar.invoke("getOptionValue").arg(paramName));
@@ -398,12 +439,12 @@ public class ModuleCLIGenerator extends AbstractGenerator {
         validateConditionalThenBlock
                 .add(applicationVar.invoke("set" + StringUtils.capitalize(paramName)).arg(booleanJClass.staticRef("FALSE")));
 
-        hasOptionConditional = tryBlockBody._if(commandLineVar.invoke("hasOption").arg("dryRun"));
+        hasOptionConditional = parseMethodBlock._if(commandLineVar.invoke("hasOption").arg("dryRun"));
         hasOptionConditionalThenBlock = hasOptionConditional._then();
         hasOptionConditionalThenBlock
                 .add(applicationVar.invoke("set" + StringUtils.capitalize("dryRun")).arg(booleanJClass.staticRef("TRUE")));
 
-        hasOptionConditional = tryBlockBody._if(commandLineVar.invoke("hasOption").arg("persistFileData"));
+        hasOptionConditional = parseMethodBlock._if(commandLineVar.invoke("hasOption").arg("persistFileData"));
         hasOptionConditionalThenBlock = hasOptionConditional._then();
         hasOptionConditionalThenBlock
                 .add(applicationVar.invoke("set" + StringUtils.capitalize("persistFileData")).arg(booleanJClass.staticRef("TRUE")));
@@ -413,7 +454,7 @@ public class ModuleCLIGenerator extends AbstractGenerator {
                 // Input input = field.getAnnotation(Input.class);
 
                 String capitalizedFieldName = StringUtils.capitalize(field.getName());
-                hasOptionConditional = tryBlockBody._if(commandLineVar.invoke("hasOption").arg(field.getName()));
+                hasOptionConditional = parseMethodBlock._if(commandLineVar.invoke("hasOption").arg(field.getName()));
                 hasOptionConditionalThenBlock = hasOptionConditional._then();
 
                 JClass typeClass = codeModel.ref(field.getType());
@@ -450,10 +491,7 @@ public class ModuleCLIGenerator extends AbstractGenerator {
                             .arg(JExpr.lit("Enum name:  %s%nEnum constants:  %s%n")).arg(typeJClass.staticRef("class").invoke("getName"))
                             .arg(arraysJClass.staticInvoke("asList").arg(typeJClass.staticRef("class").invoke("getEnumConstants"))));
 
-                    catchBlockBody.add(systemJClass.staticRef("err").invoke("println")
-                            .arg(JExpr.lit("Parsing Failed: ").plus(exceptionVar.invoke("getMessage"))));
-                    catchBlockBody.add(helpFormatterVar.invoke("printHelp").arg(clazz.getSimpleName() + "CLI").arg(cliOptionsFieldVar));
-                    catchBlockBody._return();
+                    catchBlockBody._throw(JExpr._new(parseExceptionJClass).arg(exceptionVar.invoke("getMessage")));
 
                 } else if (field.getType() == List.class) {
                     ParameterizedType listType = (ParameterizedType) field.getGenericType();
@@ -483,6 +521,62 @@ public class ModuleCLIGenerator extends AbstractGenerator {
             }
         }
 
+        parseMethodBlock._return(applicationVar);
+        return parseMethod;
+    }
+
+    private void buildMain(Class<?> clazz, JCodeModel codeModel, JDefinedClass cliClass, JMethod createOptionsMethod,
+            JMethod parseMethod) {
+        JClass helpFormatterJClass = codeModel.ref(HelpFormatter.class);
+        JClass optionsJClass = codeModel.ref(Options.class);
+        JClass parseExceptionJClass = codeModel.ref(ParseException.class);
+        JClass exceptionJClass = codeModel.ref(Exception.class);
+        JClass commandLineParserJClass = codeModel.ref(CommandLineParser.class);
+        JClass commandLineJClass = codeModel.ref(CommandLine.class);
+        JClass gnuParserJClass = codeModel.ref(GnuParser.class);
+        JClass moduleOutputJClass = codeModel.ref(ModuleOutput.class);
+        JClass stringJClass = codeModel.ref(String.class);
+        JClass systemJClass = codeModel.ref(System.class);
+        JClass applicationJClass = codeModel.ref(clazz);
+        JClass integerJClass = codeModel.ref(Integer.class);
+        JClass moduleServerJClass = codeModel.ref(MODULE_SERVER_CLASS);
+
+        JMethod mainMethod = cliClass.method(JMod.PUBLIC | JMod.STATIC, void.class, "main");
+        JVar paramElement = mainMethod.param(stringJClass.array(), "args");
+
+        JBlock mainMethodBlock = mainMethod.body();
+
+        JVar helpFormatterVar = mainMethodBlock.decl(helpFormatterJClass, "helpFormatter");
+        helpFormatterVar.init(JExpr._new(helpFormatterJClass));
+
+        JVar cliOptionsFieldVar = mainMethodBlock.decl(optionsJClass, "cliOptions");
+        cliOptionsFieldVar.init(JExpr.invoke(createOptionsMethod));
+
+        JVar applicationVar = mainMethodBlock.decl(applicationJClass, "app");
+        applicationVar.init(JExpr._null());
+
+        JTryBlock tryBlock = mainMethodBlock._try();
+        JBlock tryBlockBody = tryBlock.body();
+
+        JVar clpVar = tryBlockBody.decl(commandLineParserJClass, "commandLineParser");
+        clpVar.init(JExpr._new(gnuParserJClass));
+
+        JVar commandLineVar = tryBlockBody.decl(commandLineJClass, "commandLine");
+        commandLineVar.init(clpVar.invoke("parse").arg(cliOptionsFieldVar).arg(paramElement));
+
+        JConditional conditional = tryBlockBody._if(commandLineVar.invoke("hasOption").arg("?"));
+        JBlock conditionalThenBlock = conditional._then();
+        conditionalThenBlock.add(helpFormatterVar.invoke("printHelp").arg(clazz.getSimpleName() + "CLI").arg(cliOptionsFieldVar));
+        conditionalThenBlock._return();
+
+        JConditional serveConditional = tryBlockBody._if(commandLineVar.invoke("hasOption").arg("serve"));
+        JBlock serveConditionalThenBlock = serveConditional._then();
+        serveConditionalThenBlock.add(JExpr._new(moduleServerJClass)
+                .arg(integerJClass.staticInvoke("valueOf").arg(commandLineVar.invoke("getOptionValue").arg("serve"))).invoke("run"));
+        serveConditionalThenBlock._return();
+
+        tryBlockBody.assign(applicationVar, JExpr.invoke(parseMethod).arg(commandLineVar));
+
         JCatchBlock catchBlock = tryBlock._catch(parseExceptionJClass);
         JVar exceptionVar = catchBlock.param("e");
         JBlock catchBlockBody = catchBlock.body();
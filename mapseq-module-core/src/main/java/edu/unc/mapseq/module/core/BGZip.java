@@ -0,0 +1,177 @@
+package edu.unc.mapseq.module.core;
+
+import java.io.File;
+
+import javax.validation.constraints.NotNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.dao.model.FileData;
+import edu.unc.mapseq.dao.model.MimeType;
+import edu.unc.mapseq.module.DefaultModuleOutput;
+import edu.unc.mapseq.module.Module;
+import edu.unc.mapseq.module.ModuleException;
+import edu.unc.mapseq.module.ModuleOutput;
+import edu.unc.mapseq.module.annotations.Application;
+import edu.unc.mapseq.module.annotations.InputArgument;
+import edu.unc.mapseq.module.annotations.InputValidations;
+import edu.unc.mapseq.module.annotations.OutputArgument;
+import edu.unc.mapseq.module.annotations.OutputValidations;
+import edu.unc.mapseq.module.constraints.FileIsNotEmpty;
+import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.core.io.GzipFormat;
+import edu.unc.mapseq.module.core.io.ParallelDeflater;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
+
+/**
+ * Compresses a file on several deflate threads, as BGZF (bgzip, what samtools and tabix read) or as plain gzip.
+ * 
+ * @author jdr0887
+ */
+@Application(name = "BGZip", isWorkflowRunIdOptional = true)
+public class BGZip extends Module {
+
+    private static final Logger logger = LoggerFactory.getLogger(BGZip.class);
+
+    @NotNull(message = "input is required", groups = InputValidations.class)
+    @FileIsReadable(message = "input does not exist or is not readable", groups = InputValidations.class)
+    @InputArgument
+    private File input;
+
+    @NotNull(message = "output is required", groups = InputValidations.class)
+    @FileIsNotEmpty(message = "invalid output file", groups = OutputValidations.class)
+    @OutputArgument(persistFileData = true)
+    private File output;
+
+    @InputArgument(description = "BGZF or GZIP")
+    private GzipFormat format = GzipFormat.BGZF;
+
+    @InputArgument(description = "deflate level, 1 (fastest) to 9 (smallest)")
+    private Integer level = 6;
+
+    @InputArgument(description = "deflate threads, all cores when not set")
+    private Integer threads;
+
+    @InputArgument(description = "mime type of the output, from the input's extension when not set")
+    private MimeType mimeType;
+
+    public BGZip() {
+        super();
+    }
+
+    @Override
+    public Class<?> getModuleClass() {
+        return BGZip.class;
+    }
+
+    @Override
+    public ModuleOutput call() throws ModuleException {
+        DefaultModuleOutput moduleOutput = new DefaultModuleOutput();
+        try {
+            ParallelDeflater deflater = new ParallelDeflater(level != null ? level : 6,
+                    threads != null ? threads : Runtime.getRuntime().availableProcessors());
+            long written = deflater.compress(input, output, format != null ? format : GzipFormat.BGZF);
+            logger.info("{}: {} -> {} bytes", output.getAbsolutePath(), input.length(), written);
+            ModuleMetrics metrics = ModuleMetrics.get(this);
+            metrics.counter(ModuleMetrics.BYTES_READ).addAndGet(input.length());
+            metrics.counter(ModuleMetrics.BYTES_WRITTEN).addAndGet(written);
+
+            FileData fileData = new FileData();
+            fileData.setName(output.getName());
+            fileData.setMimeType(mimeType != null ? mimeType : getMimeType(input.getName()));
+            getFileDatas().add(fileData);
+        } catch (Exception e) {
+            throw new ModuleException(e);
+        }
+        moduleOutput.setExitCode(0);
+        return moduleOutput;
+    }
+
+    /**
+     * @return the mime type of what is compressed, the .gz name says it is compressed
+     */
+    static MimeType getMimeType(String name) {
+        if (name.endsWith(".vcf")) {
+            return MimeType.TEXT_VCF;
+        }
+        if (name.endsWith(".bed")) {
+            return MimeType.TEXT_BED;
+        }
+        if (name.endsWith(".sam")) {
+            return MimeType.TEXT_SAM;
+        }
+        if (name.endsWith(".pileup")) {
+            return MimeType.TEXT_PILEUP;
+        }
+        return MimeType.TEXT_PLAIN;
+    }
+
+    public File getInput() {
+        return input;
+    }
+
+    public void setInput(File input) {
+        this.input = input;
+    }
+
+    public File getOutput() {
+        return output;
+    }
+
+    public void setOutput(File output) {
+        this.output = output;
+    }
+
+    public GzipFormat getFormat() {
+        return format;
+    }
+
+    public void setFormat(GzipFormat format) {
+        this.format = format;
+    }
+
+    public Integer getLevel() {
+        return level;
+    }
+
+    public void setLevel(Integer level) {
+        this.level = level;
+    }
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
+    public MimeType getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(MimeType mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "BGZip [input=%s, output=%s, format=%s, level=%s, threads=%s, mimeType=%s, toString()=%s]", input,
+                output, format, level, threads, mimeType, super.toString());
+    }
+
+    public static void main(String[] args) {
+        BGZip module = new BGZip();
+        module.setWorkflowName("TEST");
+        module.setInput(new File("/tmp", "asdf.vcf"));
+        module.setOutput(new File("/tmp", "asdf.vcf.gz"));
+        try {
+            module.call();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -1,12 +1,15 @@
 package edu.unc.mapseq.module.core;
 
 import java.io.File;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.validation.constraints.NotNull;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.Module;
 import edu.unc.mapseq.module.ModuleException;
@@ -14,6 +17,8 @@ import edu.unc.mapseq.module.ModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
+import edu.unc.mapseq.module.core.io.BulkFileOperations;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
 
 /**
  * 
@@ -22,10 +27,15 @@ import edu.unc.mapseq.module.annotations.InputValidations;
 @Application(name = "Symlink")
 public class BatchSymlink extends Module {
 
+    private static final Logger logger = LoggerFactory.getLogger(BatchSymlink.class);
+
     @NotNull(message = "link is required", groups = InputValidations.class)
     @InputArgument(description = "comma delimited pair (ie, --targetLinkPair=link1,target1 --targetLinkPair=link2,target2)")
     private List<String> targetLinkPair;
 
+    @InputArgument(description = "operations run at once, sized for the filesystem when not set")
+    private Integer threads;
+
     public BatchSymlink() {
         super();
     }
@@ -41,31 +51,24 @@ public class BatchSymlink extends Module {
         int exitCode = 0;
         try {
 
-            if (targetLinkPair != null) {
+            if (targetLinkPair != null && !targetLinkPair.isEmpty()) {
+                List<Path[]> links = new ArrayList<Path[]>(targetLinkPair.size());
                 for (String targetLink : targetLinkPair) {
-
                     String[] split = targetLink.split(",");
-
-                    File targetFile = new File(split[0]);
-
-                    if (!targetFile.exists()) {
-                        throw new ModuleException("target file does not exit: " + targetFile.getAbsolutePath());
-                    }
-
-                    File linkFile = new File(split[1]);
-
-                    if (!linkFile.exists()) {
-                        Files.createSymbolicLink(linkFile.toPath(), targetFile.toPath());
-                    }
-
+                    links.add(new Path[] { new File(split[1]).toPath(), new File(split[0]).toPath() });
                 }
+                BulkFileOperations operations = new BulkFileOperations(
+                        threads != null ? threads : BulkFileOperations.getDefaultThreads(links.get(0)[0].toFile()));
+                operations.symlink(links);
+                logger.info(operations.toString());
+                operations.addCounters(ModuleMetrics.get(this));
             }
+            moduleOutput.setExitCode(exitCode);
 
         } catch (Exception e) {
             moduleOutput.setError(new StringBuilder(e.getMessage()));
             moduleOutput.setExitCode(-1);
         }
-        moduleOutput.setExitCode(exitCode);
         return moduleOutput;
     }
 
@@ -77,9 +80,18 @@ public class BatchSymlink extends Module {
         this.targetLinkPair = targetLinkPair;
     }
 
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
     @Override
     public String toString() {
-        return String.format("BatchSymlink [targetLinkPair=%s, toString()=%s]", targetLinkPair, super.toString());
+        return String.format("BatchSymlink [targetLinkPair=%s, threads=%s, toString()=%s]", targetLinkPair, threads,
+                super.toString());
     }
 
     public static void main(String[] args) {
@@ -1,17 +1,11 @@
 package edu.unc.mapseq.module.core;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.validation.constraints.NotNull;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
-
 import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.Module;
 import edu.unc.mapseq.module.ModuleOutput;
@@ -21,6 +15,7 @@ import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputArgument;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.core.io.FileConcatenator;
 
 /**
  * 
@@ -38,6 +33,9 @@ public class Cat extends Module {
     @OutputArgument(redirect = true)
     private File output;
 
+    @InputArgument(description = "read the next file ahead while copying the current one")
+    private Boolean prefetch = Boolean.FALSE;
+
     public Cat() {
         super();
     }
@@ -52,12 +50,9 @@ public class Cat extends Module {
         DefaultModuleOutput moduleOutput = new DefaultModuleOutput();
         int exitCode = 0;
         try {
-            FileUtils.touch(output);
-            BufferedWriter bw = new BufferedWriter(new FileWriter(output));
-            for (File f : files) {
-                IOUtils.copyLarge(new FileReader(f), bw);
-            }
-            bw.close();
+            FileConcatenator concatenator = new FileConcatenator();
+            concatenator.setPrefetch(prefetch != null && prefetch);
+            concatenator.concatenate(files, output);
         } catch (Exception e) {
             e.printStackTrace();
             moduleOutput.setError(new StringBuilder(e.getMessage()));
@@ -83,9 +78,18 @@ public class Cat extends Module {
         this.output = output;
     }
 
+    public Boolean getPrefetch() {
+        return prefetch;
+    }
+
+    public void setPrefetch(Boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
     @Override
     public String toString() {
-        return String.format("Cat [files=%s, output=%s, toString()=%s]", files, output, super.toString());
+        return String.format("Cat [files=%s, output=%s, prefetch=%s, toString()=%s]", files, output, prefetch,
+                super.toString());
     }
 
     public static void main(String[] args) {
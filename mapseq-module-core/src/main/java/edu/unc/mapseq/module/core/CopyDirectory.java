@@ -4,7 +4,8 @@ import java.io.File;
 
 import javax.validation.constraints.NotNull;
 
-import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.Module;
@@ -16,6 +17,9 @@ import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsNotEmpty;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.core.io.FileCopier;
+import edu.unc.mapseq.module.core.io.LinkMode;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
 
 /**
  * 
@@ -24,6 +28,8 @@ import edu.unc.mapseq.module.constraints.FileIsReadable;
 @Application(name = "CopyDirectory")
 public class CopyDirectory extends Module {
 
+    private static final Logger logger = LoggerFactory.getLogger(CopyDirectory.class);
+
     @NotNull(message = "source is required", groups = InputValidations.class)
     @FileIsReadable(message = "source does not exist", groups = InputValidations.class)
     @InputArgument
@@ -34,6 +40,21 @@ public class CopyDirectory extends Module {
     @InputArgument
     private File destination;
 
+    @InputArgument(description = "leave destination files of the same size and modification time alone")
+    private Boolean incremental = Boolean.FALSE;
+
+    @InputArgument(description = "with incremental, also compare digests to find unchanged files")
+    private Boolean checksum = Boolean.FALSE;
+
+    @InputArgument(description = "compare the digest of every copy to its source")
+    private Boolean verify = Boolean.FALSE;
+
+    @InputArgument(description = "NONE, HARDLINK or REFLINK when source and destination are on the same filesystem")
+    private LinkMode linkMode = LinkMode.NONE;
+
+    @InputArgument(description = "files copied at once")
+    private Integer threads = 4;
+
     public CopyDirectory() {
         super();
     }
@@ -48,15 +69,10 @@ public class CopyDirectory extends Module {
         DefaultModuleOutput moduleOutput = new DefaultModuleOutput();
         try {
 
-            if (destination.exists()) {
-                FileUtils.forceDelete(destination);
-            }
-
-            if (!destination.getParentFile().exists()) {
-                destination.getParentFile().mkdirs();
-            }
-
-            FileUtils.copyDirectory(source, destination);
+            FileCopier copier = FileCopier.create(incremental, checksum, verify, linkMode, threads);
+            copier.copyDirectory(source, destination);
+            logger.info(copier.toString());
+            copier.addCounters(ModuleMetrics.get(this));
             moduleOutput.setExitCode(0);
 
         } catch (Exception e) {
@@ -83,10 +99,51 @@ public class CopyDirectory extends Module {
         this.destination = destination;
     }
 
+    public Boolean getIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(Boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public Boolean getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(Boolean checksum) {
+        this.checksum = checksum;
+    }
+
+    public Boolean getVerify() {
+        return verify;
+    }
+
+    public void setVerify(Boolean verify) {
+        this.verify = verify;
+    }
+
+    public LinkMode getLinkMode() {
+        return linkMode;
+    }
+
+    public void setLinkMode(LinkMode linkMode) {
+        this.linkMode = linkMode;
+    }
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
     @Override
     public String toString() {
-        return String.format("CopyDirectory [source=%s, destination=%s, toString()=%s]", source, destination,
-                super.toString());
+        return String.format(
+                "CopyDirectory [source=%s, destination=%s, incremental=%s, checksum=%s, verify=%s, linkMode=%s, threads=%s, toString()=%s]",
+                source, destination, incremental, checksum, verify, linkMode, threads, super.toString());
     }
 
     public static void main(String[] args) {
@@ -5,7 +5,8 @@ import java.util.Arrays;
 
 import javax.validation.constraints.NotNull;
 
-import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import edu.unc.mapseq.dao.model.FileData;
 import edu.unc.mapseq.dao.model.MimeType;
@@ -18,6 +19,9 @@ import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsNotEmpty;
+import edu.unc.mapseq.module.core.io.FileCopier;
+import edu.unc.mapseq.module.core.io.LinkMode;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
 
 /**
  * 
@@ -26,6 +30,8 @@ import edu.unc.mapseq.module.constraints.FileIsNotEmpty;
 @Application(name = "CopyFile2")
 public class CopyFile2 extends Module {
 
+    private static final Logger logger = LoggerFactory.getLogger(CopyFile2.class);
+
     @NotNull(message = "sourcePrefix is required", groups = InputValidations.class)
     @InputArgument
     private String sourcePrefix;
@@ -46,6 +52,18 @@ public class CopyFile2 extends Module {
     @InputArgument
     private MimeType mimeType;
 
+    @InputArgument(description = "leave destination files of the same size and modification time alone")
+    private Boolean incremental = Boolean.FALSE;
+
+    @InputArgument(description = "with incremental, also compare digests to find unchanged files")
+    private Boolean checksum = Boolean.FALSE;
+
+    @InputArgument(description = "compare the digest of every copy to its source")
+    private Boolean verify = Boolean.FALSE;
+
+    @InputArgument(description = "NONE, HARDLINK or REFLINK when source and destination are on the same filesystem")
+    private LinkMode linkMode = LinkMode.NONE;
+
     public CopyFile2() {
         super();
     }
@@ -60,14 +78,6 @@ public class CopyFile2 extends Module {
         DefaultModuleOutput moduleOutput = new DefaultModuleOutput();
         try {
 
-            if (destination.exists()) {
-                FileUtils.forceDelete(destination);
-            }
-
-            if (!destination.getParentFile().exists()) {
-                destination.getParentFile().mkdirs();
-            }
-
             File source = Arrays.asList(sourceParentDir.listFiles()).stream()
                     .filter(a -> a.getName().startsWith(sourcePrefix) && a.getName().endsWith(sourceSuffix)).findAny()
                     .orElse(null);
@@ -76,7 +86,10 @@ public class CopyFile2 extends Module {
                 throw new ModuleException("source not found");
             }
 
-            FileUtils.copyFile(source, destination);
+            FileCopier copier = FileCopier.create(incremental, checksum, verify, linkMode, null);
+            copier.copyFile(source, destination);
+            logger.info(copier.toString());
+            copier.addCounters(ModuleMetrics.get(this));
 
             if (mimeType != null) {
                 FileData fileData = new FileData();
@@ -84,13 +97,13 @@ public class CopyFile2 extends Module {
                 fileData.setMimeType(mimeType);
                 getFileDatas().add(fileData);
             }
+            moduleOutput.setExitCode(0);
 
         } catch (Exception e) {
             e.printStackTrace();
             moduleOutput.setError(new StringBuilder(e.getMessage()));
             moduleOutput.setExitCode(-1);
         }
-        moduleOutput.setExitCode(0);
         return moduleOutput;
     }
 
@@ -134,6 +147,46 @@ public class CopyFile2 extends Module {
         this.mimeType = mimeType;
     }
 
+    public Boolean getIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(Boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public Boolean getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(Boolean checksum) {
+        this.checksum = checksum;
+    }
+
+    public Boolean getVerify() {
+        return verify;
+    }
+
+    public void setVerify(Boolean verify) {
+        this.verify = verify;
+    }
+
+    public LinkMode getLinkMode() {
+        return linkMode;
+    }
+
+    public void setLinkMode(LinkMode linkMode) {
+        this.linkMode = linkMode;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "CopyFile2 [sourcePrefix=%s, sourceSuffix=%s, sourceParentDir=%s, destination=%s, mimeType=%s, incremental=%s, checksum=%s, verify=%s, linkMode=%s, toString()=%s]",
+                sourcePrefix, sourceSuffix, sourceParentDir, destination, mimeType, incremental, checksum, verify,
+                linkMode, super.toString());
+    }
+
     public static void main(String[] args) {
         CopyFile2 module = new CopyFile2();
         module.setWorkflowName("TEST");
@@ -1,22 +1,30 @@
 package edu.unc.mapseq.module.core;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
 
 import javax.validation.constraints.NotNull;
 
+import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.Module;
+import edu.unc.mapseq.module.ModuleException;
+import edu.unc.mapseq.module.ModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputArgument;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.core.io.GzipDecompressor;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
 
 /**
+ * Decompresses gzFile into extractFile in process with a GzipDecompressor, BGZF blocks on all cores.
  * 
  * @author jdr0887
  * 
  */
-@Application(name = "GUnZip", executable = "/bin/gunzip", isWorkflowRunIdOptional = true)
+@Application(name = "GUnZip", isWorkflowRunIdOptional = true)
 public class GUnZip extends Module {
 
     @NotNull(message = "gzFile is required", groups = InputValidations.class)
@@ -28,6 +36,9 @@ public class GUnZip extends Module {
     @OutputArgument(redirect = true)
     private File extractFile;
 
+    @InputArgument(description = "threads inflating BGZF blocks, all cores when not set")
+    private Integer threads;
+
     public GUnZip() {
         super();
     }
@@ -37,6 +48,25 @@ public class GUnZip extends Module {
         return GUnZip.class;
     }
 
+    @Override
+    public ModuleOutput call() throws ModuleException {
+        DefaultModuleOutput moduleOutput = new DefaultModuleOutput();
+        GzipDecompressor decompressor = new GzipDecompressor();
+        if (threads != null) {
+            decompressor.setThreads(threads);
+        }
+        try {
+            decompressor.decompress(Collections.singletonList(gzFile), extractFile);
+        } catch (IOException e) {
+            throw new ModuleException(e);
+        }
+        ModuleMetrics metrics = ModuleMetrics.get(this);
+        metrics.counter(ModuleMetrics.BYTES_READ).addAndGet(decompressor.getBytesRead());
+        metrics.counter(ModuleMetrics.BYTES_WRITTEN).addAndGet(decompressor.getBytesWritten());
+        moduleOutput.setExitCode(0);
+        return moduleOutput;
+    }
+
     public File getGzFile() {
         return gzFile;
     }
@@ -53,16 +83,24 @@ public class GUnZip extends Module {
         this.extractFile = extractFile;
     }
 
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
     @Override
     public String toString() {
-        return String.format("GUnZip [gzFile=%s, extractFile=%s, toString()=%s]", gzFile, extractFile,
-                super.toString());
+        return String.format("GUnZip [gzFile=%s, extractFile=%s, threads=%s, toString()=%s]", gzFile, extractFile,
+                threads, super.toString());
     }
 
     public static void main(String[] args) {
         GUnZip module = new GUnZip();
         module.setGzFile(new File("/tmp", "gzipFile.gz"));
-        module.setExtractFile(new File("/tmp"));
+        module.setExtractFile(new File("/tmp", "gzipFile"));
         try {
             module.call();
         } catch (Exception e) {
@@ -7,6 +7,8 @@ import java.util.List;
 import javax.validation.constraints.NotNull;
 
 import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import edu.unc.mapseq.dao.model.FileData;
 import edu.unc.mapseq.dao.model.MimeType;
@@ -18,6 +20,8 @@ import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.constraints.FileListIsReadable;
+import edu.unc.mapseq.module.core.io.BulkFileOperations;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
 
 /**
  * 
@@ -26,6 +30,8 @@ import edu.unc.mapseq.module.constraints.FileListIsReadable;
 @Application(name = "Move", isWorkflowRunIdOptional = true)
 public class Move extends Module {
 
+    private static final Logger logger = LoggerFactory.getLogger(Move.class);
+
     @NotNull(message = "source is required", groups = InputValidations.class)
     @FileListIsReadable(message = "source does not exist", groups = InputValidations.class)
     @InputArgument
@@ -38,6 +44,9 @@ public class Move extends Module {
     @InputArgument
     private MimeType mimeType;
 
+    @InputArgument(description = "operations run at once, sized for the filesystem when not set")
+    private Integer threads;
+
     public Move() {
         super();
     }
@@ -57,19 +66,15 @@ public class Move extends Module {
                 FileUtils.forceDelete(destination);
             }
 
+            BulkFileOperations operations = new BulkFileOperations(
+                    threads != null ? threads : BulkFileOperations.getDefaultThreads(destination));
             if (source.size() > 1) {
-
-                if (!destination.exists()) {
-                    FileUtils.forceMkdir(destination);
-                }
-
-                for (File srcFile : source) {
-                    FileUtils.moveFileToDirectory(srcFile, destination, true);
-                }
-
+                operations.moveToDirectory(source, destination);
             } else {
-                FileUtils.moveFile(source.get(0), destination);
+                operations.move(source.get(0), destination);
             }
+            logger.info(operations.toString());
+            operations.addCounters(ModuleMetrics.get(this));
 
             if (mimeType != null) {
                 FileData fileData = new FileData();
@@ -81,7 +86,8 @@ public class Move extends Module {
         } catch (Exception e) {
             e.printStackTrace();
             moduleOutput.setError(new StringBuilder(e.getMessage()));
-            moduleOutput.setExitCode(exitCode);
+            moduleOutput.setExitCode(-1);
+            return moduleOutput;
         }
         moduleOutput.setExitCode(exitCode);
         return moduleOutput;
@@ -111,10 +117,18 @@ public class Move extends Module {
         this.mimeType = mimeType;
     }
 
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
     @Override
     public String toString() {
-        return String.format("Move [source=%s, destination=%s, mimeType=%s, toString()=%s]", source, destination,
-                mimeType, super.toString());
+        return String.format("Move [source=%s, destination=%s, mimeType=%s, threads=%s, toString()=%s]", source,
+                destination, mimeType, threads, super.toString());
     }
 
     public static void main(String[] args) {
@@ -1,15 +1,11 @@
 package edu.unc.mapseq.module.core;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.util.Collections;
 import java.util.List;
 
 import javax.validation.constraints.NotNull;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.RegexFileFilter;
 import org.slf4j.Logger;
@@ -24,6 +20,9 @@ import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputArgument;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.core.io.FileConcatenator;
+import edu.unc.mapseq.module.core.io.KWayMerger;
+import edu.unc.mapseq.module.core.io.LineComparator;
 
 /**
  * 
@@ -47,6 +46,18 @@ public class RegexCat extends Module {
     @OutputArgument(redirect = true)
     private File output;
 
+    @InputArgument(description = "read the next file ahead while copying the current one")
+    private Boolean prefetch = Boolean.FALSE;
+
+    @InputArgument(description = "merge the (already sorted) files on this sort key, ie \"1,1 2,2n\", instead of appending them")
+    private String mergeKey;
+
+    @InputArgument(description = "field separator of the merge key, blanks when not set")
+    private String fieldSeparator;
+
+    @InputArgument(description = "prefix of header lines (@ for SAM, # for VCF) to write only once when merging")
+    private String headerPrefix;
+
     public RegexCat() {
         super();
     }
@@ -63,12 +74,18 @@ public class RegexCat extends Module {
         try {
             List<File> foundFiles = FileFilterUtils.filterList(new RegexFileFilter(regex), directory.listFiles());
             Collections.sort(foundFiles);
-            BufferedWriter bw = new BufferedWriter(new FileWriter(output));
             for (File foundFile : foundFiles) {
                 logger.info("foundFile: {}", foundFile.getAbsolutePath());
-                IOUtils.copyLarge(new FileReader(foundFile), bw);
             }
-            bw.close();
+            if (mergeKey != null) {
+                KWayMerger merger = new KWayMerger(new LineComparator(mergeKey, fieldSeparator));
+                merger.setHeaderPrefix(headerPrefix);
+                merger.merge(foundFiles, output);
+            } else {
+                FileConcatenator concatenator = new FileConcatenator();
+                concatenator.setPrefetch(prefetch != null && prefetch);
+                concatenator.concatenate(foundFiles, output);
+            }
         } catch (Exception e) {
             e.printStackTrace();
             moduleOutput.setError(new StringBuilder(e.getMessage()));
@@ -101,10 +118,43 @@ public class RegexCat extends Module {
         this.output = output;
     }
 
+    public Boolean getPrefetch() {
+        return prefetch;
+    }
+
+    public void setPrefetch(Boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public String getMergeKey() {
+        return mergeKey;
+    }
+
+    public void setMergeKey(String mergeKey) {
+        this.mergeKey = mergeKey;
+    }
+
+    public String getFieldSeparator() {
+        return fieldSeparator;
+    }
+
+    public void setFieldSeparator(String fieldSeparator) {
+        this.fieldSeparator = fieldSeparator;
+    }
+
+    public String getHeaderPrefix() {
+        return headerPrefix;
+    }
+
+    public void setHeaderPrefix(String headerPrefix) {
+        this.headerPrefix = headerPrefix;
+    }
+
     @Override
     public String toString() {
-        return String.format("RegexCat [directory=%s, regex=%s, output=%s, toString()=%s]", directory, regex, output,
-                super.toString());
+        return String.format(
+                "RegexCat [directory=%s, regex=%s, output=%s, prefetch=%s, mergeKey=%s, fieldSeparator=%s, headerPrefix=%s, toString()=%s]",
+                directory, regex, output, prefetch, mergeKey, fieldSeparator, headerPrefix, super.toString());
     }
 
     public static void main(String[] args) {
@@ -5,7 +5,6 @@ import java.util.List;
 
 import javax.validation.constraints.NotNull;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.RegexFileFilter;
 import org.slf4j.Logger;
@@ -18,6 +17,8 @@ import edu.unc.mapseq.module.ModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
+import edu.unc.mapseq.module.core.io.BulkFileOperations;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
 
 /**
  * 
@@ -26,7 +27,7 @@ import edu.unc.mapseq.module.annotations.InputValidations;
 @Application(name = "RegexRemove", isWorkflowRunIdOptional = true)
 public class RegexRemove extends Module {
 
-    private static final Logger logger = LoggerFactory.getLogger(RegexCat.class);
+    private static final Logger logger = LoggerFactory.getLogger(RegexRemove.class);
 
     @NotNull(message = "directory is required", groups = InputValidations.class)
     @InputArgument
@@ -36,6 +37,9 @@ public class RegexRemove extends Module {
     @InputArgument
     private String regex;
 
+    @InputArgument(description = "operations run at once, sized for the filesystem when not set")
+    private Integer threads;
+
     public RegexRemove() {
         super();
     }
@@ -51,10 +55,12 @@ public class RegexRemove extends Module {
         moduleOutput.setExitCode(0);
         try {
             List<File> foundFiles = FileFilterUtils.filterList(new RegexFileFilter(regex), directory.listFiles());
-            for (File f : foundFiles) {
-                logger.info("removing file: {}", f.getAbsolutePath());
-                FileUtils.forceDelete(f);
-            }
+            logger.info("removing {} files from {}", foundFiles.size(), directory.getAbsolutePath());
+            BulkFileOperations operations = new BulkFileOperations(
+                    threads != null ? threads : BulkFileOperations.getDefaultThreads(directory));
+            operations.remove(foundFiles);
+            logger.info(operations.toString());
+            operations.addCounters(ModuleMetrics.get(this));
         } catch (Exception e) {
             e.printStackTrace();
             moduleOutput.setError(new StringBuilder(e.getMessage()));
@@ -79,9 +85,18 @@ public class RegexRemove extends Module {
         this.regex = regex;
     }
 
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
     @Override
     public String toString() {
-        return String.format("RegexRemove [directory=%s, regex=%s, toString()=%s]", directory, regex, super.toString());
+        return String.format("RegexRemove [directory=%s, regex=%s, threads=%s, toString()=%s]", directory, regex, threads,
+                super.toString());
     }
 
     public static void main(String[] args) {
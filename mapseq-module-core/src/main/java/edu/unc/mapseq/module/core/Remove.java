@@ -6,7 +6,8 @@ import java.util.List;
 
 import javax.validation.constraints.NotNull;
 
-import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.Module;
@@ -15,6 +16,8 @@ import edu.unc.mapseq.module.ModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
+import edu.unc.mapseq.module.core.io.BulkFileOperations;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
 
 /**
  * 
@@ -23,10 +26,15 @@ import edu.unc.mapseq.module.annotations.InputValidations;
 @Application(name = "Remove", isWorkflowRunIdOptional = true)
 public class Remove extends Module {
 
+    private static final Logger logger = LoggerFactory.getLogger(Remove.class);
+
     @NotNull(message = "file is required", groups = InputValidations.class)
     @InputArgument
     private List<File> file;
 
+    @InputArgument(description = "operations run at once, sized for the filesystem when not set")
+    private Integer threads;
+
     public Remove() {
         super();
     }
@@ -40,17 +48,19 @@ public class Remove extends Module {
     public ModuleOutput call() throws ModuleException {
         DefaultModuleOutput moduleOutput = new DefaultModuleOutput();
         try {
-            for (File f : file) {
-                if (f.exists()) {
-                    FileUtils.forceDelete(f);
-                }
+            if (!file.isEmpty()) {
+                BulkFileOperations operations = new BulkFileOperations(
+                        threads != null ? threads : BulkFileOperations.getDefaultThreads(file.get(0)));
+                operations.remove(file);
+                logger.info(operations.toString());
+                operations.addCounters(ModuleMetrics.get(this));
             }
+            moduleOutput.setExitCode(0);
         } catch (Exception e) {
             e.printStackTrace();
             moduleOutput.setError(new StringBuilder(e.getMessage()));
             moduleOutput.setExitCode(-1);
         }
-        moduleOutput.setExitCode(0);
         return moduleOutput;
     }
 
@@ -62,9 +72,17 @@ public class Remove extends Module {
         this.file = file;
     }
 
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
     @Override
     public String toString() {
-        return String.format("Remove [file=%s, toString()=%s]", file, super.toString());
+        return String.format("Remove [file=%s, threads=%s, toString()=%s]", file, threads, super.toString());
     }
 
     public static void main(String[] args) {
@@ -1,22 +1,30 @@
 package edu.unc.mapseq.module.core;
 
 import java.io.File;
+import java.io.IOException;
 
 import javax.validation.constraints.NotNull;
 
+import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.Module;
+import edu.unc.mapseq.module.ModuleException;
+import edu.unc.mapseq.module.ModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputArgument;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.core.io.LineTransformer;
+import edu.unc.mapseq.module.core.io.SedScript;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
 
 /**
+ * Runs a sed script (s and /regex/d commands, see SedScript) over source in process, blocks of lines on all cores.
  * 
  * @author jdr0887
  */
-@Application(name = "Sed", executable = "/bin/sed", isWorkflowRunIdOptional = true)
+@Application(name = "Sed", isWorkflowRunIdOptional = true)
 public class Sed extends Module {
 
     @NotNull(message = "regularExpression is required", groups = InputValidations.class)
@@ -33,6 +41,12 @@ public class Sed extends Module {
     @OutputArgument(redirect = true, persistFileData = true)
     private File output;
 
+    @InputArgument(description = "regularExpression is an extended regular expression, as with sed -E")
+    private Boolean extended = Boolean.FALSE;
+
+    @InputArgument(description = "threads transforming blocks of lines, all cores when not set")
+    private Integer threads;
+
     public Sed() {
         super();
     }
@@ -42,12 +56,38 @@ public class Sed extends Module {
         return Sed.class;
     }
 
+    @Override
+    public ModuleOutput call() throws ModuleException {
+        DefaultModuleOutput moduleOutput = new DefaultModuleOutput();
+        LineTransformer transformer;
+        try {
+            transformer = SedScript.compile(regularExpression, extended != null && extended);
+        } catch (IllegalArgumentException e) {
+            throw new ModuleException(e.getMessage());
+        }
+        if (threads != null) {
+            transformer.setThreads(threads);
+        }
+        try {
+            transformer.transform(source, output);
+        } catch (IOException e) {
+            throw new ModuleException(e);
+        }
+        ModuleMetrics metrics = ModuleMetrics.get(this);
+        metrics.counter(ModuleMetrics.RECORDS_IN).addAndGet(transformer.getLinesIn());
+        metrics.counter(ModuleMetrics.RECORDS_OUT).addAndGet(transformer.getLinesOut());
+        metrics.counter(ModuleMetrics.BYTES_READ).addAndGet(source.length());
+        metrics.counter(ModuleMetrics.BYTES_WRITTEN).addAndGet(output.length());
+        moduleOutput.setExitCode(0);
+        return moduleOutput;
+    }
+
     public String getRegularExpression() {
         return regularExpression;
     }
 
     public void setRegularExpression(String regularExpression) {
-        this.regularExpression = "'" + regularExpression + "'";
+        this.regularExpression = regularExpression;
     }
 
     public File getSource() {
@@ -66,10 +106,26 @@ public class Sed extends Module {
         this.output = output;
     }
 
+    public Boolean getExtended() {
+        return extended;
+    }
+
+    public void setExtended(Boolean extended) {
+        this.extended = extended;
+    }
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
     @Override
     public String toString() {
-        return String.format("Sed [regularExpression=%s, source=%s, output=%s, toString()=%s]", regularExpression,
-                source, output, super.toString());
+        return String.format("Sed [regularExpression=%s, source=%s, output=%s, extended=%s, threads=%s, toString()=%s]",
+                regularExpression, source, output, extended, threads, super.toString());
     }
 
     public static void main(String[] args) {
@@ -1,37 +1,37 @@
 package edu.unc.mapseq.module.core;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.validation.constraints.NotNull;
 
-import org.apache.commons.lang3.StringUtils;
-import org.renci.common.exec.BashExecutor;
-import org.renci.common.exec.CommandInput;
-import org.renci.common.exec.CommandOutput;
-import org.renci.common.exec.Executor;
-import org.renci.common.exec.ExecutorException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.Module;
 import edu.unc.mapseq.module.ModuleException;
 import edu.unc.mapseq.module.ModuleOutput;
-import edu.unc.mapseq.module.ShellModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
 import edu.unc.mapseq.module.constraints.FileListIsReadable;
+import edu.unc.mapseq.module.core.io.ExternalSorter;
+import edu.unc.mapseq.module.core.io.LineComparator;
 
 /**
+ * Sorts in the JVM with an ExternalSorter, taking the arguments /bin/sort used to: bufferSize is in KiB as with -S and
+ * key is a -k key (several may be given, separated by blanks), with V for chr:pos style keys. Lines compare as bytes,
+ * as with LC_ALL=C; without a fieldSeparator a field starts with the blanks before it, which only a key with b skips
+ * (as -k2b,2). Lines are written back byte for byte, \r\n endings included.
  * 
  * @author jdr0887
  */
-@Application(name = "Sort", executable = "/bin/sort")
-// @Application(name = "Sort", executable = "/usr/bin/sort")
+@Application(name = "Sort")
 public class Sort extends Module {
 
     private final Logger logger = LoggerFactory.getLogger(Sort.class);
@@ -55,6 +55,15 @@ public class Sort extends Module {
     @InputArgument
     private String key;
 
+    @InputArgument(description = "field separator, blanks when not set")
+    private String fieldSeparator;
+
+    @InputArgument(description = "threads sorting runs, all cores when not set")
+    private Integer threads;
+
+    @InputArgument(description = "gzip the runs spilled to tmpDirectory")
+    private Boolean compress = Boolean.TRUE;
+
     public Sort() {
         super();
     }
@@ -68,36 +77,27 @@ public class Sort extends Module {
     public ModuleOutput call() throws Exception {
         logger.debug("ENTERING call()");
 
-        StringBuilder command = new StringBuilder(getExecutable());
+        ExternalSorter sorter = new ExternalSorter(new LineComparator(this.key, this.fieldSeparator));
         if (this.bufferSize != null) {
-            command.append(" -S ").append(this.bufferSize.toString());
+            sorter.setBufferSize(this.bufferSize * 1024L);
         }
-
-        if (StringUtils.isNotEmpty(this.key)) {
-            command.append(" -k ").append(this.key);
+        if (this.threads != null) {
+            sorter.setThreads(this.threads);
         }
-
         if (this.tmpDirectory != null && this.tmpDirectory.exists()) {
-            command.append(" -T ").append(this.tmpDirectory.getAbsolutePath());
+            sorter.setTmpDirectory(this.tmpDirectory);
         }
+        sorter.setCompress(this.compress == null || this.compress);
 
-        command.append(" -o ").append(this.output.getAbsolutePath());
-
-        for (File f : input) {
-            command.append(" ").append(f.getAbsolutePath());
-        }
-
-        CommandInput commandInput = new CommandInput();
-        logger.info("command.toString(): {}", command.toString());
-        commandInput.setCommand(command.toString());
-        CommandOutput commandOutput;
+        DefaultModuleOutput moduleOutput = new DefaultModuleOutput();
         try {
-            Executor executor = BashExecutor.getInstance();
-            commandOutput = executor.execute(commandInput);
-        } catch (ExecutorException e) {
+            long lines = sorter.sort(this.input, this.output);
+            logger.info("sorted {} lines into {}", lines, this.output.getAbsolutePath());
+        } catch (IOException | IllegalArgumentException e) {
             throw new ModuleException(e);
         }
-        return new ShellModuleOutput(commandOutput);
+        moduleOutput.setExitCode(0);
+        return moduleOutput;
     }
 
     public List<File> getInput() {
@@ -140,11 +140,36 @@ public class Sort extends Module {
         this.key = key;
     }
 
+    public String getFieldSeparator() {
+        return fieldSeparator;
+    }
+
+    public void setFieldSeparator(String fieldSeparator) {
+        this.fieldSeparator = fieldSeparator;
+    }
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
+    public Boolean getCompress() {
+        return compress;
+    }
+
+    public void setCompress(Boolean compress) {
+        this.compress = compress;
+    }
+
     @Override
     public String toString() {
         return String.format(
-                "Sort [logger=%s, input=%s, output=%s, tmpDirectory=%s, bufferSize=%s, key=%s, toString()=%s]", logger,
-                input, output, tmpDirectory, bufferSize, key, super.toString());
+                "Sort [logger=%s, input=%s, output=%s, tmpDirectory=%s, bufferSize=%s, key=%s, fieldSeparator=%s, threads=%s, compress=%s, toString()=%s]",
+                logger, input, output, tmpDirectory, bufferSize, key, fieldSeparator, threads, compress,
+                super.toString());
     }
 
     public static void main(String[] args) {
@@ -1,36 +1,42 @@
 package edu.unc.mapseq.module.core;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import javax.validation.constraints.NotNull;
 
-import org.renci.common.exec.BashExecutor;
-import org.renci.common.exec.CommandInput;
-import org.renci.common.exec.CommandOutput;
-import org.renci.common.exec.Executor;
-import org.renci.common.exec.ExecutorException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.unc.mapseq.dao.model.FileData;
 import edu.unc.mapseq.dao.model.MimeType;
+import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.Module;
 import edu.unc.mapseq.module.ModuleException;
 import edu.unc.mapseq.module.ModuleOutput;
-import edu.unc.mapseq.module.ShellModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputArgument;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsNotEmpty;
+import edu.unc.mapseq.module.core.io.GzipDecompressor;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
 
 /**
+ * Decompresses the files in directory matching regularExpression (a glob, or several separated by blanks, as the shell
+ * expanded it for zcat; globs may have directories in them) into outputFile, in process with a GzipDecompressor.
  * 
  * @author jdr0887
  * 
  */
-@Application(name = "ZCat", executable = "/bin/zcat", isWorkflowRunIdOptional = true)
+@Application(name = "ZCat", isWorkflowRunIdOptional = true)
 public class ZCat extends Module {
 
     private final Logger logger = LoggerFactory.getLogger(ZCat.class);
@@ -51,6 +57,9 @@ public class ZCat extends Module {
     @InputArgument
     private MimeType mimeType;
 
+    @InputArgument(description = "threads inflating BGZF blocks, all cores when not set")
+    private Integer threads;
+
     public ZCat() {
         super();
     }
@@ -63,19 +72,27 @@ public class ZCat extends Module {
     @Override
     public ModuleOutput call() throws ModuleException {
         logger.debug("ENTERING call()");
-        CommandOutput commandOutput;
+        DefaultModuleOutput moduleOutput = new DefaultModuleOutput();
         try {
-            StringBuilder command = new StringBuilder();
-            command.append(getModuleClass().getAnnotation(Application.class).executable());
-            command.append(" ").append(regularExpression);
-            command.append(" > ").append(outputFile.getAbsolutePath());
-
-            CommandInput commandInput = new CommandInput();
-            commandInput.setWorkDir(directory);
-            commandInput.setCommand(command.toString());
+            List<File> inputs = new ArrayList<File>();
+            for (String glob : regularExpression.trim().split("\\s+")) {
+                List<Path> matches = expand(directory.toPath(), glob);
+                if (matches.isEmpty()) {
+                    throw new ModuleException(String.format("%s: no such file in %s", glob, directory));
+                }
+                for (Path path : matches) {
+                    inputs.add(path.toFile());
+                }
+            }
 
-            Executor executor = BashExecutor.getInstance();
-            commandOutput = executor.execute(commandInput);
+            GzipDecompressor decompressor = new GzipDecompressor();
+            if (threads != null) {
+                decompressor.setThreads(threads);
+            }
+            decompressor.decompress(inputs, outputFile);
+            ModuleMetrics metrics = ModuleMetrics.get(this);
+            metrics.counter(ModuleMetrics.BYTES_READ).addAndGet(decompressor.getBytesRead());
+            metrics.counter(ModuleMetrics.BYTES_WRITTEN).addAndGet(decompressor.getBytesWritten());
 
             if (mimeType != null) {
                 FileData fileData = new FileData();
@@ -84,10 +101,44 @@ public class ZCat extends Module {
                 getFileDatas().add(fileData);
             }
 
-        } catch (ExecutorException e) {
+        } catch (IOException e) {
             throw new ModuleException(e);
         }
-        return new ShellModuleOutput(commandOutput);
+        moduleOutput.setExitCode(0);
+        return moduleOutput;
+    }
+
+    /**
+     * @return the paths glob expands to from directory, the way the shell expands it: one segment of the path at a time,
+     *         so that globs with directories in them (wildcards included) and absolute globs work too
+     */
+    static List<Path> expand(Path directory, String glob) throws IOException {
+        List<Path> paths = new ArrayList<Path>();
+        paths.add(glob.startsWith("/") ? directory.toAbsolutePath().getRoot() : directory);
+        for (String segment : glob.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            boolean wildcard = segment.matches(".*[*?\\[{].*");
+            List<Path> next = new ArrayList<Path>();
+            for (Path path : paths) {
+                if (!wildcard) {
+                    Path child = path.resolve(segment);
+                    if (Files.exists(child)) {
+                        next.add(child);
+                    }
+                } else if (Files.isDirectory(path)) {
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, segment)) {
+                        for (Path child : stream) {
+                            next.add(child);
+                        }
+                    }
+                }
+            }
+            Collections.sort(next);
+            paths = next;
+        }
+        return paths;
     }
 
     public File getOutputFile() {
@@ -122,11 +173,19 @@ public class ZCat extends Module {
         this.mimeType = mimeType;
     }
 
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
     @Override
     public String toString() {
         return String.format(
-                "ZCat [logger=%s, outputFile=%s, directory=%s, regularExpression=%s, mimeType=%s, toString()=%s]",
-                logger, outputFile, directory, regularExpression, mimeType, super.toString());
+                "ZCat [logger=%s, outputFile=%s, directory=%s, regularExpression=%s, mimeType=%s, threads=%s, toString()=%s]",
+                logger, outputFile, directory, regularExpression, mimeType, threads, super.toString());
     }
 
 }
@@ -1,24 +1,21 @@
 package edu.unc.mapseq.module.core;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import javax.validation.constraints.NotNull;
 
-import org.renci.common.exec.BashExecutor;
-import org.renci.common.exec.CommandInput;
-import org.renci.common.exec.CommandOutput;
-import org.renci.common.exec.Executor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.unc.mapseq.dao.model.FileData;
 import edu.unc.mapseq.dao.model.MimeType;
+import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.Module;
 import edu.unc.mapseq.module.ModuleException;
 import edu.unc.mapseq.module.ModuleOutput;
-import edu.unc.mapseq.module.ShellModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
@@ -26,13 +23,19 @@ import edu.unc.mapseq.module.annotations.OutputArgument;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
 import edu.unc.mapseq.module.constraints.FileListIsReadable;
+import edu.unc.mapseq.module.core.io.ParallelDeflater;
+import edu.unc.mapseq.module.core.io.ParallelZipWriter;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
 
 /**
+ * Zips the entries (by name, from workDir) with a ParallelZipWriter, deflating on several threads. As with
+ * /usr/bin/zip, an existing output is added to (entries of the same name are replaced, the others kept) and a
+ * directory among the entries becomes a directory entry without its contents (zip without -r).
  * 
  * @author jdr0887
  * 
  */
-@Application(name = "Zip", isWorkflowRunIdOptional = true, executable = "/usr/bin/zip")
+@Application(name = "Zip", isWorkflowRunIdOptional = true)
 public class Zip extends Module {
 
     private static final Logger logger = LoggerFactory.getLogger(Zip.class);
@@ -51,15 +54,16 @@ public class Zip extends Module {
     @InputArgument(description = "Files to zip")
     private List<File> entry;
 
+    @InputArgument(description = "deflate level, 1 (fastest) to 9 (smallest)")
+    private Integer level = 6;
+
+    @InputArgument(description = "deflate threads, all cores when not set")
+    private Integer threads;
+
     public Zip() {
         super();
     }
 
-    @Override
-    public String getExecutable() {
-        return getModuleClass().getAnnotation(Application.class).executable();
-    }
-
     @Override
     public Class<?> getModuleClass() {
         return Zip.class;
@@ -68,23 +72,17 @@ public class Zip extends Module {
     @Override
     public ModuleOutput call() throws Exception {
         logger.debug("ENTERING call()");
-        ShellModuleOutput ret = null;
+        DefaultModuleOutput moduleOutput = new DefaultModuleOutput();
         try {
 
-            StringBuilder command = new StringBuilder(getModuleClass().getAnnotation(Application.class).executable());
-            command.append(" ").append(output.getAbsolutePath());
+            List<File> files = new ArrayList<File>(entry.size());
             for (File f : entry) {
-                command.append(" ").append(f.getName());
+                files.add(new File(workDir, f.getName()));
             }
-
-            CommandInput commandInput = new CommandInput();
-            commandInput.setWorkDir(workDir);
-            commandInput.setCommand(command.toString());
-
-            Executor executor = BashExecutor.getInstance();
-            CommandOutput commandOutput = executor.execute(commandInput);
-
-            ret = new ShellModuleOutput(commandOutput);
+            ParallelDeflater deflater = new ParallelDeflater(level != null ? level : 6,
+                    threads != null ? threads : Runtime.getRuntime().availableProcessors());
+            long written = new ParallelZipWriter(deflater).update(files, output);
+            ModuleMetrics.get(this).counter(ModuleMetrics.BYTES_WRITTEN).addAndGet(written);
 
             FileData fileData = new FileData(output.getName(), output.getParentFile().getAbsolutePath(),
                     MimeType.APPLICATION_ZIP);
@@ -93,7 +91,8 @@ public class Zip extends Module {
         } catch (Exception e) {
             throw new ModuleException(e);
         }
-        return ret;
+        moduleOutput.setExitCode(0);
+        return moduleOutput;
     }
 
     public File getOutput() {
@@ -120,9 +119,26 @@ public class Zip extends Module {
         this.workDir = workDir;
     }
 
+    public Integer getLevel() {
+        return level;
+    }
+
+    public void setLevel(Integer level) {
+        this.level = level;
+    }
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
     @Override
     public String toString() {
-        return String.format("Zip [output=%s, entry=%s, toString()=%s]", output, entry, super.toString());
+        return String.format("Zip [output=%s, entry=%s, level=%s, threads=%s, toString()=%s]", output, entry, level,
+                threads, super.toString());
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,503 @@
+package edu.unc.mapseq.module.core.cache;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.dao.model.FileData;
+import edu.unc.mapseq.dao.model.MimeType;
+import edu.unc.mapseq.module.DefaultModuleOutput;
+import edu.unc.mapseq.module.Module;
+import edu.unc.mapseq.module.ModuleOutput;
+import edu.unc.mapseq.module.annotations.InputArgument;
+import edu.unc.mapseq.module.annotations.OutputArgument;
+
+/**
+ * Opt-in cache of successful module runs, enabled by pointing the mapseq.module.cache system property at a directory.
+ * The key is a SHA-256 over the module class, the resolved executable, every @InputArgument and @OutputArgument value
+ * and, for input files, a fingerprint made of path, size, mtime and a hash of up to three sampled 64k blocks. On a hit
+ * the recorded output files are hard linked (or copied) back to their paths and the FileData list is restored, so the
+ * module is never called. Modules with no output files, or with outputs that are not files (a prefix, a directory), are
+ * never cached.
+ *
+ * Every lookup is appended to cache.log in the cache directory; run main with --report for hit/miss counts per module.
+ *
+ * @author jdr0887
+ */
+public class ModuleResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModuleResultCache.class);
+
+    public static final String CACHE_PROPERTY = "mapseq.module.cache";
+
+    private static final int SAMPLE_SIZE = 64 * 1024;
+
+    private static final Pattern ENV_PATTERN = Pattern.compile("\\$\\{?([A-Za-z_][A-Za-z0-9_]*)\\}?");
+
+    private static final Map<String, AtomicLong[]> statistics = new ConcurrentHashMap<String, AtomicLong[]>();
+
+    private static ModuleResultCache instance;
+
+    private final File directory;
+
+    public ModuleResultCache(File directory) {
+        super();
+        this.directory = directory;
+        this.directory.mkdirs();
+    }
+
+    /**
+     * @return the configured cache or null when caching is off
+     */
+    public static synchronized ModuleResultCache getInstance() {
+        if (instance == null && System.getProperty(CACHE_PROPERTY) != null) {
+            instance = new ModuleResultCache(new File(System.getProperty(CACHE_PROPERTY)));
+        }
+        return instance;
+    }
+
+    /**
+     * Called from the call() of the module a generated CLI parses (its Cached subclass), inside the ModuleExecutor,
+     * so a hit is persisted as a job like any run.
+     *
+     * @return the recorded output when the module can be skipped, otherwise null
+     */
+    public static ModuleOutput lookup(Module module) {
+        ModuleResultCache cache = getInstance();
+        if (cache == null || Boolean.TRUE.equals(module.getDryRun())) {
+            return null;
+        }
+        try {
+            return cache.restore(module, cache.createKey(module));
+        } catch (Exception e) {
+            logger.warn(String.format("cache lookup failed for %s", module.getModuleClass().getSimpleName()), e);
+            return null;
+        }
+    }
+
+    /**
+     * Called from the call() of the module a generated CLI parses once the module has run; only successful runs are
+     * recorded.
+     */
+    public static void store(Module module, ModuleOutput output) {
+        ModuleResultCache cache = getInstance();
+        if (cache == null || Boolean.TRUE.equals(module.getDryRun()) || output == null || output.getExitCode() == null
+                || output.getExitCode() != 0) {
+            return;
+        }
+        try {
+            cache.record(module, cache.createKey(module), output);
+        } catch (Exception e) {
+            logger.warn(String.format("could not cache result of %s", module.getModuleClass().getSimpleName()), e);
+        }
+    }
+
+    public String createKey(Module module) throws IOException, IllegalAccessException {
+        MessageDigest digest = newDigest();
+        update(digest, module.getModuleClass().getName());
+        update(digest, resolve(module.getExecutable()));
+        for (Field field : getArgumentFields(module.getClass())) {
+            field.setAccessible(true);
+            Object value = field.get(module);
+            update(digest, field.getName());
+            if (field.isAnnotationPresent(InputArgument.class)) {
+                fingerprint(digest, value);
+            } else {
+                update(digest, String.valueOf(value));
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private ModuleOutput restore(Module module, String key) throws Exception {
+        File entryDirectory = getEntryDirectory(key);
+        File manifestFile = new File(entryDirectory, "manifest.properties");
+        if (!manifestFile.exists()) {
+            log(module, key, false);
+            return null;
+        }
+
+        Properties manifest = new Properties();
+        try (InputStream is = new FileInputStream(manifestFile)) {
+            manifest.load(is);
+        }
+
+        // make sure every recorded output is still intact before touching anything
+        int outputCount = Integer.valueOf(manifest.getProperty("output.count", "0"));
+        if (outputCount == 0) {
+            // nothing to restore, so a hit could not bring back what the module made
+            logger.warn("cache entry {} has no outputs, discarding it", key);
+            FileUtils.deleteQuietly(entryDirectory);
+            log(module, key, false);
+            return null;
+        }
+        for (int i = 0; i < outputCount; i++) {
+            File cached = new File(entryDirectory, String.valueOf(i));
+            // outputs are hard linked, so a later in-place rewrite of the output shows up here as a new mtime
+            if (!cached.exists() || cached.length() != Long.valueOf(manifest.getProperty(String.format("output.%d.size", i)))
+                    || cached.lastModified() != Long.valueOf(manifest.getProperty(String.format("output.%d.mtime", i)))) {
+                logger.warn("cache entry {} is damaged, discarding it", key);
+                FileUtils.deleteQuietly(entryDirectory);
+                log(module, key, false);
+                return null;
+            }
+        }
+
+        for (int i = 0; i < outputCount; i++) {
+            File cached = new File(entryDirectory, String.valueOf(i));
+            File target = new File(manifest.getProperty(String.format("output.%d.path", i)));
+            if (target.exists() && target.length() == cached.length() && target.lastModified() == cached.lastModified()) {
+                continue;
+            }
+            link(cached, target);
+        }
+
+        int fileDataCount = Integer.valueOf(manifest.getProperty("fileData.count", "0"));
+        for (int i = 0; i < fileDataCount; i++) {
+            FileData fileData = new FileData();
+            fileData.setName(manifest.getProperty(String.format("fileData.%d.name", i)));
+            fileData.setPath(manifest.getProperty(String.format("fileData.%d.path", i)));
+            String mimeType = manifest.getProperty(String.format("fileData.%d.mimeType", i));
+            if (mimeType != null) {
+                fileData.setMimeType(MimeType.valueOf(mimeType));
+            }
+            module.getFileDatas().add(fileData);
+        }
+
+        log(module, key, true);
+        DefaultModuleOutput output = new DefaultModuleOutput();
+        output.setExitCode(0);
+        output.setOutput(new StringBuilder(manifest.getProperty("output", "")));
+        output.setError(new StringBuilder(manifest.getProperty("error", "")));
+        return output;
+    }
+
+    private void record(Module module, String key, ModuleOutput output) throws Exception {
+        File entryDirectory = getEntryDirectory(key);
+        File tmpDirectory = new File(entryDirectory.getParentFile(), String.format(".%s.%d", key, System.nanoTime()));
+        tmpDirectory.mkdirs();
+        try {
+            Properties manifest = new Properties();
+            manifest.setProperty("module", module.getModuleClass().getName());
+            manifest.setProperty("created", String.valueOf(System.currentTimeMillis()));
+            if (output.getOutput() != null) {
+                manifest.setProperty("output", output.getOutput().toString());
+            }
+            if (output.getError() != null) {
+                manifest.setProperty("error", output.getError().toString());
+            }
+
+            List<File> outputFiles = getOutputFiles(module);
+            if (outputFiles == null || outputFiles.isEmpty()) {
+                logger.info("{} has no output files that can be restored, not caching",
+                        module.getModuleClass().getSimpleName());
+                return;
+            }
+            int i = 0;
+            for (File outputFile : outputFiles) {
+                if (!outputFile.isFile()) {
+                    logger.info("{} did not produce {}, not caching", module.getModuleClass().getSimpleName(),
+                            outputFile.getAbsolutePath());
+                    return;
+                }
+                link(outputFile, new File(tmpDirectory, String.valueOf(i)));
+                manifest.setProperty(String.format("output.%d.path", i), outputFile.getAbsolutePath());
+                manifest.setProperty(String.format("output.%d.size", i), String.valueOf(outputFile.length()));
+                manifest.setProperty(String.format("output.%d.mtime", i), String.valueOf(outputFile.lastModified()));
+                i++;
+            }
+            manifest.setProperty("output.count", String.valueOf(i));
+
+            i = 0;
+            if (module.getFileDatas() != null) {
+                for (FileData fileData : module.getFileDatas()) {
+                    if (fileData.getName() != null) {
+                        manifest.setProperty(String.format("fileData.%d.name", i), fileData.getName());
+                    }
+                    if (fileData.getPath() != null) {
+                        manifest.setProperty(String.format("fileData.%d.path", i), fileData.getPath());
+                    }
+                    if (fileData.getMimeType() != null) {
+                        manifest.setProperty(String.format("fileData.%d.mimeType", i), fileData.getMimeType().name());
+                    }
+                    i++;
+                }
+            }
+            manifest.setProperty("fileData.count", String.valueOf(i));
+
+            try (OutputStream os = new FileOutputStream(new File(tmpDirectory, "manifest.properties"))) {
+                manifest.store(os, module.getModuleClass().getName());
+            }
+
+            if (entryDirectory.exists()) {
+                FileUtils.deleteDirectory(entryDirectory);
+            }
+            Files.move(tmpDirectory.toPath(), entryDirectory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            FileUtils.deleteQuietly(tmpDirectory);
+        }
+    }
+
+    private File getEntryDirectory(String key) {
+        return new File(new File(directory, key.substring(0, 2)), key);
+    }
+
+    /**
+     * Hard links source to target when both are on the same file system, copies otherwise.
+     */
+    private static void link(File source, File target) throws IOException {
+        if (target.getParentFile() != null) {
+            target.getParentFile().mkdirs();
+        }
+        Files.deleteIfExists(target.toPath());
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source.toPath(), target.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    private static List<Field> getArgumentFields(Class<?> clazz) {
+        List<Field> fields = new ArrayList<Field>();
+        for (Class<?> c = clazz; c != null && c != Module.class && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (field.isAnnotationPresent(InputArgument.class) || field.isAnnotationPresent(OutputArgument.class)) {
+                    fields.add(field);
+                }
+            }
+        }
+        fields.sort(new Comparator<Field>() {
+            @Override
+            public int compare(Field f1, Field f2) {
+                return f1.getName().compareTo(f2.getName());
+            }
+        });
+        return fields;
+    }
+
+    /**
+     * @return the output files, or null when an output is something else (a prefix, a name) that cannot be restored
+     */
+    private static List<File> getOutputFiles(Module module) throws IllegalAccessException {
+        List<File> files = new ArrayList<File>();
+        for (Field field : getArgumentFields(module.getClass())) {
+            if (!field.isAnnotationPresent(OutputArgument.class)) {
+                continue;
+            }
+            field.setAccessible(true);
+            Object value = field.get(module);
+            if (value == null) {
+                // an optional output that was not asked for
+                continue;
+            }
+            if (value instanceof File) {
+                files.add((File) value);
+            } else if (value instanceof Collection) {
+                for (Object o : (Collection<?>) value) {
+                    if (!(o instanceof File)) {
+                        return null;
+                    }
+                    files.add((File) o);
+                }
+            } else {
+                return null;
+            }
+        }
+        return files;
+    }
+
+    private static void fingerprint(MessageDigest digest, Object value) throws IOException {
+        if (value instanceof Collection) {
+            for (Object o : (Collection<?>) value) {
+                fingerprint(digest, o);
+            }
+            return;
+        }
+        if (!(value instanceof File)) {
+            update(digest, String.valueOf(value));
+            return;
+        }
+        File file = (File) value;
+        update(digest, file.getAbsolutePath());
+        if (!file.exists()) {
+            return;
+        }
+        update(digest, String.format("%d:%d", file.length(), file.lastModified()));
+        if (file.isDirectory()) {
+            String[] names = file.list();
+            if (names != null) {
+                Arrays.sort(names);
+                for (String name : names) {
+                    File child = new File(file, name);
+                    update(digest, String.format("%s:%d:%d", name, child.length(), child.lastModified()));
+                }
+            }
+            return;
+        }
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            long size = channel.size();
+            long[] offsets = size <= 3L * SAMPLE_SIZE ? new long[] { 0L }
+                    : new long[] { 0L, size / 2 - SAMPLE_SIZE / 2, size - SAMPLE_SIZE };
+            ByteBuffer buffer = ByteBuffer.allocate(size <= 3L * SAMPLE_SIZE ? (int) size : SAMPLE_SIZE);
+            for (long offset : offsets) {
+                buffer.clear();
+                while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0) {
+                    // keep reading
+                }
+                buffer.flip();
+                digest.update(buffer);
+            }
+        }
+    }
+
+    private static String resolve(String executable) {
+        if (executable == null) {
+            return "";
+        }
+        Matcher matcher = ENV_PATTERN.matcher(executable);
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            String value = System.getenv(matcher.group(1));
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(value != null ? value : matcher.group()));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private void log(Module module, String key, boolean hit) {
+        String moduleName = module.getModuleClass().getSimpleName();
+        AtomicLong[] counts = statistics.get(moduleName);
+        if (counts == null) {
+            statistics.putIfAbsent(moduleName, new AtomicLong[] { new AtomicLong(), new AtomicLong() });
+            counts = statistics.get(moduleName);
+        }
+        counts[hit ? 0 : 1].incrementAndGet();
+        logger.info("cache {} for {} (hits={}, misses={})", hit ? "hit" : "miss", moduleName, counts[0].get(),
+                counts[1].get());
+
+        File logFile = new File(directory, "cache.log");
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw"); FileLock lock = raf.getChannel().lock()) {
+            raf.seek(raf.length());
+            raf.write(String.format("%d\t%s\t%s\t%s%n", System.currentTimeMillis(), moduleName, hit ? "HIT" : "MISS", key)
+                    .getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.warn("could not append to {}", logFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * @return hits and misses per module seen by this JVM
+     */
+    public static Map<String, long[]> getStatistics() {
+        Map<String, long[]> ret = new TreeMap<String, long[]>();
+        for (Map.Entry<String, AtomicLong[]> entry : statistics.entrySet()) {
+            ret.put(entry.getKey(), new long[] { entry.getValue()[0].get(), entry.getValue()[1].get() });
+        }
+        return ret;
+    }
+
+    /**
+     * Summarizes cache.log per module.
+     */
+    public void report(PrintWriter pw) throws IOException {
+        Map<String, long[]> counts = new TreeMap<String, long[]>();
+        File logFile = new File(directory, "cache.log");
+        if (logFile.exists()) {
+            try (BufferedReader br = new BufferedReader(new FileReader(logFile))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] columns = line.split("\t");
+                    if (columns.length < 3) {
+                        continue;
+                    }
+                    long[] c = counts.get(columns[1]);
+                    if (c == null) {
+                        c = new long[2];
+                        counts.put(columns[1], c);
+                    }
+                    c["HIT".equals(columns[2]) ? 0 : 1]++;
+                }
+            }
+        }
+        pw.println(String.format("%-40s %10s %10s %8s", "module", "hits", "misses", "hit%"));
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+            long hits = entry.getValue()[0];
+            long total = hits + entry.getValue()[1];
+            pw.println(String.format("%-40s %10d %10d %7.1f%%", entry.getKey(), hits, entry.getValue()[1],
+                    total > 0 ? 100D * hits / total : 0D));
+        }
+        pw.flush();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1 || !"--report".equals(args[0])) {
+            System.err.println("usage: ModuleResultCache --report [cache directory]");
+            System.exit(-1);
+        }
+        String dir = args.length > 1 ? args[1] : System.getProperty(CACHE_PROPERTY);
+        if (dir == null) {
+            System.err.println(String.format("no cache directory given and %s is not set", CACHE_PROPERTY));
+            System.exit(-1);
+        }
+        try {
+            new ModuleResultCache(new File(dir)).report(new PrintWriter(System.out));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package edu.unc.mapseq.module.core.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.dao.MaPSeqDAOBeanService;
+import edu.unc.mapseq.dao.soap.SOAPDAOManager;
+
+/**
+ * Hands the generated CLI classes their MaPSeqDAOBeanService. Without any configuration this is the SOAP service, as
+ * before. The following system properties change that:
+ *
+ * <ul>
+ * <li>mapseq.dao=stub uses the in-memory {@link StubDAOBeanService} instead of SOAP</li>
+ * <li>mapseq.dao.journal=&lt;dir&gt; puts a {@link WriteBehindDAOBeanService} journaling to dir in front of the
+ * service</li>
+ * <li>mapseq.dao.journal.batchSize (default 100), mapseq.dao.journal.flushInterval (ms, default 2000) and
+ * mapseq.dao.journal.shutdownTimeout (ms, default 60000) tune the write-behind flusher</li>
+ * </ul>
+ *
+ * @author jdr0887
+ */
+public class DAOBeanServiceFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(DAOBeanServiceFactory.class);
+
+    public static final String DAO_PROPERTY = "mapseq.dao";
+
+    public static final String JOURNAL_PROPERTY = "mapseq.dao.journal";
+
+    private static MaPSeqDAOBeanService instance;
+
+    private DAOBeanServiceFactory() {
+        super();
+    }
+
+    public static synchronized MaPSeqDAOBeanService getMaPSeqDAOBeanService() {
+        if (instance == null) {
+            instance = create();
+        }
+        return instance;
+    }
+
+    private static MaPSeqDAOBeanService create() {
+        final boolean stub = "stub".equals(System.getProperty(DAO_PROPERTY));
+        String journalDirectory = System.getProperty(JOURNAL_PROPERTY);
+
+        if (journalDirectory == null) {
+            return stub ? StubDAOBeanService.newInstance() : SOAPDAOManager.getInstance().getMaPSeqDAOBeanService();
+        }
+
+        Callable<MaPSeqDAOBeanService> delegateFactory = new Callable<MaPSeqDAOBeanService>() {
+            @Override
+            public MaPSeqDAOBeanService call() throws Exception {
+                return stub ? StubDAOBeanService.newInstance() : SOAPDAOManager.getInstance().getMaPSeqDAOBeanService();
+            }
+        };
+        try {
+            return WriteBehindDAOBeanService.newInstance(delegateFactory, new File(journalDirectory),
+                    Integer.getInteger(JOURNAL_PROPERTY + ".batchSize", 100),
+                    Long.getLong(JOURNAL_PROPERTY + ".flushInterval", 2000L),
+                    Long.getLong(JOURNAL_PROPERTY + ".shutdownTimeout", 60000L));
+        } catch (IOException e) {
+            logger.warn(String.format("could not open journal in %s, persisting synchronously", journalDirectory), e);
+            return stub ? StubDAOBeanService.newInstance() : SOAPDAOManager.getInstance().getMaPSeqDAOBeanService();
+        }
+    }
+
+}
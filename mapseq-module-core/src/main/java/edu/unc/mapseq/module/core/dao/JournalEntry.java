@@ -0,0 +1,109 @@
+package edu.unc.mapseq.module.core.dao;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * One deferred DAO call: which DAO getter on MaPSeqDAOBeanService, which method on that DAO and the serialized
+ * arguments (serialized at call time so later changes to the caller's objects do not leak into the journal).
+ *
+ * @author jdr0887
+ */
+public class JournalEntry implements Serializable {
+
+    private static final long serialVersionUID = -4205337937463318153L;
+
+    private Long sequence;
+
+    private Long created;
+
+    private String daoName;
+
+    private String methodName;
+
+    private String[] parameterTypes;
+
+    private byte[] arguments;
+
+    private Long entityKey;
+
+    public JournalEntry() {
+        super();
+    }
+
+    public JournalEntry(String daoName, String methodName, String[] parameterTypes, byte[] arguments, Long entityKey) {
+        super();
+        this.created = System.currentTimeMillis();
+        this.daoName = daoName;
+        this.methodName = methodName;
+        this.parameterTypes = parameterTypes;
+        this.arguments = arguments;
+        this.entityKey = entityKey;
+    }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+
+    public Long getCreated() {
+        return created;
+    }
+
+    public void setCreated(Long created) {
+        this.created = created;
+    }
+
+    public String getDaoName() {
+        return daoName;
+    }
+
+    public void setDaoName(String daoName) {
+        this.daoName = daoName;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public void setMethodName(String methodName) {
+        this.methodName = methodName;
+    }
+
+    public String[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    public void setParameterTypes(String[] parameterTypes) {
+        this.parameterTypes = parameterTypes;
+    }
+
+    public byte[] getArguments() {
+        return arguments;
+    }
+
+    public void setArguments(byte[] arguments) {
+        this.arguments = arguments;
+    }
+
+    /**
+     * @return the id (real or provisional) of the entity being saved, null when this is not a save
+     */
+    public Long getEntityKey() {
+        return entityKey;
+    }
+
+    public void setEntityKey(Long entityKey) {
+        this.entityKey = entityKey;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("JournalEntry [sequence=%s, created=%s, daoName=%s, methodName=%s, parameterTypes=%s, entityKey=%s]",
+                sequence, created, daoName, methodName, Arrays.toString(parameterTypes), entityKey);
+    }
+
+}
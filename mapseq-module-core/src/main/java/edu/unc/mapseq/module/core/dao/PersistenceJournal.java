@@ -0,0 +1,306 @@
+package edu.unc.mapseq.module.core.dao;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only, process-private write-ahead journal of {@link JournalEntry}s. Each record is written as length, CRC32
+ * and the serialized entry, so a torn record at the end (process killed mid write) is detected and ignored. Progress
+ * is kept in a checkpoint file next to the journal: the last applied sequence and the provisional to real id
+ * assignments made so far.
+ *
+ * The journal file is locked while its owner is alive; an unlocked journal left in the directory belongs to a dead
+ * process and can be replayed with {@link #recover(File)}.
+ *
+ * @author jdr0887
+ */
+public class PersistenceJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistenceJournal.class);
+
+    public static final String JOURNAL_SUFFIX = ".journal";
+
+    public static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    private final File file;
+
+    private final File checkpointFile;
+
+    private final RandomAccessFile randomAccessFile;
+
+    private final FileChannel channel;
+
+    private final FileLock lock;
+
+    private final boolean sync;
+
+    private long sequence = 0L;
+
+    private long checkpointSequence = 0L;
+
+    public PersistenceJournal(File directory, boolean sync) throws IOException {
+        super();
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        String name = String.format("%s-%d", ManagementFactory.getRuntimeMXBean().getName().replaceAll("[^A-Za-z0-9.-]", "_"),
+                System.nanoTime());
+        this.file = new File(directory, name + JOURNAL_SUFFIX);
+        this.checkpointFile = new File(directory, name + CHECKPOINT_SUFFIX);
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+        this.lock = channel.lock();
+        this.sync = sync;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    public synchronized long getCheckpointSequence() {
+        return checkpointSequence;
+    }
+
+    public synchronized JournalEntry append(JournalEntry entry) throws IOException {
+        entry.setSequence(++sequence);
+        byte[] bytes = serialize(entry);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        ByteBuffer buffer = ByteBuffer.allocate(12 + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.putLong(crc.getValue());
+        buffer.put(bytes);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (sync) {
+            channel.force(false);
+        }
+        return entry;
+    }
+
+    /**
+     * Records that everything up to and including sequence has been applied.
+     */
+    public synchronized void checkpoint(long sequence, Map<Long, Long> idMap) throws IOException {
+        writeCheckpoint(checkpointFile, sequence, idMap);
+        this.checkpointSequence = sequence;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        boolean complete = checkpointSequence >= sequence;
+        lock.release();
+        channel.close();
+        randomAccessFile.close();
+        if (complete) {
+            file.delete();
+            checkpointFile.delete();
+        } else {
+            logger.warn("{} has {} unapplied entries, they will be replayed by the next process", file.getAbsolutePath(),
+                    sequence - checkpointSequence);
+        }
+    }
+
+    /**
+     * @return journals in directory other than this one, some of which may still be owned by a live process
+     */
+    public List<File> findOthers() {
+        List<File> ret = new ArrayList<File>();
+        File[] files = file.getParentFile().listFiles();
+        if (files == null) {
+            return ret;
+        }
+        for (File f : files) {
+            if (f.getName().endsWith(JOURNAL_SUFFIX) && !f.equals(file)) {
+                ret.add(f);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Locks an orphaned journal and reads the entries that were never applied, along with the ids assigned before the
+     * owner died.
+     *
+     * @return null when the journal is still owned by a live process
+     */
+    public static Recovery recover(File journalFile) throws IOException {
+        String name = journalFile.getName().substring(0, journalFile.getName().length() - JOURNAL_SUFFIX.length());
+        File checkpoint = new File(journalFile.getParentFile(), name + CHECKPOINT_SUFFIX);
+
+        RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+        FileLock fileLock = null;
+        try {
+            fileLock = raf.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by this JVM
+        }
+        if (fileLock == null) {
+            raf.close();
+            return null;
+        }
+
+        Recovery recovery = new Recovery(journalFile, checkpoint, raf);
+        long appliedSequence = 0L;
+        if (checkpoint.exists()) {
+            Properties properties = new Properties();
+            try (InputStream is = new FileInputStream(checkpoint)) {
+                properties.load(is);
+            }
+            appliedSequence = Long.valueOf(properties.getProperty("sequence", "0"));
+            for (String key : properties.stringPropertyNames()) {
+                if (key.startsWith("id.")) {
+                    recovery.getIdMap().put(Long.valueOf(key.substring(3)), Long.valueOf(properties.getProperty(key)));
+                }
+            }
+        }
+
+        // read through a separate stream, the locked channel stays untouched
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            while (true) {
+                byte[] bytes;
+                long expectedCRC;
+                try {
+                    bytes = new byte[dis.readInt()];
+                    expectedCRC = dis.readLong();
+                    dis.readFully(bytes);
+                } catch (EOFException | NegativeArraySizeException | OutOfMemoryError e) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                if (crc.getValue() != expectedCRC) {
+                    logger.warn("torn record at the end of {}", journalFile.getAbsolutePath());
+                    break;
+                }
+                JournalEntry entry = (JournalEntry) deserialize(bytes);
+                if (entry.getSequence() > appliedSequence) {
+                    recovery.getEntries().add(entry);
+                }
+            }
+        }
+        return recovery;
+    }
+
+    static void writeCheckpoint(File checkpointFile, long sequence, Map<Long, Long> idMap) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("sequence", String.valueOf(sequence));
+        for (Map.Entry<Long, Long> entry : idMap.entrySet()) {
+            properties.setProperty(String.format("id.%d", entry.getKey()), String.valueOf(entry.getValue()));
+        }
+        File tmpFile = new File(checkpointFile.getParentFile(), checkpointFile.getName() + ".tmp");
+        try (OutputStream os = new FileOutputStream(tmpFile)) {
+            properties.store(os, null);
+        }
+        Files.move(tmpFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(object);
+        }
+        return baos.toByteArray();
+    }
+
+    public static Object deserialize(byte[] bytes) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * The unapplied part of an orphaned journal. The journal stays locked until the recovery is closed.
+     */
+    public static class Recovery implements Closeable {
+
+        private final File journalFile;
+
+        private final File checkpointFile;
+
+        private final RandomAccessFile randomAccessFile;
+
+        private final List<JournalEntry> entries = new ArrayList<JournalEntry>();
+
+        private final Map<Long, Long> idMap = new HashMap<Long, Long>();
+
+        public Recovery(File journalFile, File checkpointFile, RandomAccessFile randomAccessFile) {
+            super();
+            this.journalFile = journalFile;
+            this.checkpointFile = checkpointFile;
+            this.randomAccessFile = randomAccessFile;
+        }
+
+        public File getJournalFile() {
+            return journalFile;
+        }
+
+        public List<JournalEntry> getEntries() {
+            return entries;
+        }
+
+        public Map<Long, Long> getIdMap() {
+            return idMap;
+        }
+
+        public void checkpoint(long sequence) throws IOException {
+            writeCheckpoint(checkpointFile, sequence, idMap);
+        }
+
+        /**
+         * Releases the journal, deleting it when complete is true.
+         */
+        public void close(boolean complete) throws IOException {
+            randomAccessFile.close();
+            if (complete) {
+                journalFile.delete();
+                checkpointFile.delete();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            close(false);
+        }
+
+    }
+
+}
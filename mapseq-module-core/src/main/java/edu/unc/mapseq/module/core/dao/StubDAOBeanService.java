@@ -0,0 +1,151 @@
+package edu.unc.mapseq.module.core.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.dao.MaPSeqDAOBeanService;
+
+/**
+ * In-memory MaPSeqDAOBeanService for running modules without a MaPSeq server. Every DAO keeps the entities saved
+ * through it in a map: save assigns ids, findById and findAll read the map, delete removes from it. Any other finder
+ * returns an empty list (or null) and every call is logged.
+ *
+ * @author jdr0887
+ */
+public class StubDAOBeanService implements InvocationHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(StubDAOBeanService.class);
+
+    private final AtomicLong sequence = new AtomicLong(0L);
+
+    private final Map<String, Object> daoProxies = new ConcurrentHashMap<String, Object>();
+
+    public StubDAOBeanService() {
+        super();
+    }
+
+    public static MaPSeqDAOBeanService newInstance() {
+        return (MaPSeqDAOBeanService) Proxy.newProxyInstance(MaPSeqDAOBeanService.class.getClassLoader(),
+                new Class<?>[] { MaPSeqDAOBeanService.class }, new StubDAOBeanService());
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(this, args);
+        }
+        if (method.getName().startsWith("get") && (args == null || args.length == 0) && method.getReturnType().isInterface()) {
+            Object daoProxy = daoProxies.get(method.getName());
+            if (daoProxy == null) {
+                synchronized (daoProxies) {
+                    daoProxy = daoProxies.get(method.getName());
+                    if (daoProxy == null) {
+                        daoProxy = Proxy.newProxyInstance(method.getReturnType().getClassLoader(),
+                                new Class<?>[] { method.getReturnType() }, new DAOHandler(method.getName()));
+                        daoProxies.put(method.getName(), daoProxy);
+                    }
+                }
+            }
+            return daoProxy;
+        }
+        return defaultValue(method.getReturnType());
+    }
+
+    class DAOHandler implements InvocationHandler {
+
+        private final String daoName;
+
+        private final Map<Long, Object> store = new ConcurrentSkipListMap<Long, Object>();
+
+        public DAOHandler(String daoName) {
+            super();
+            this.daoName = daoName;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(this, args);
+            }
+            logger.info("{}.{}({})", daoName, method.getName(), args != null ? Arrays.toString(args) : "");
+            String name = method.getName();
+            Object arg = args != null && args.length == 1 ? args[0] : null;
+
+            if (name.startsWith("save") && arg != null) {
+                Long id = getId(arg);
+                if (id == null) {
+                    id = sequence.incrementAndGet();
+                    arg.getClass().getMethod("setId", Long.class).invoke(arg, id);
+                }
+                store.put(id, arg);
+                return method.getReturnType() == void.class ? null : id;
+            }
+            if (name.startsWith("delete") && arg != null) {
+                if (arg instanceof Collection) {
+                    for (Object o : (Collection<?>) arg) {
+                        delete(o);
+                    }
+                } else {
+                    delete(arg);
+                }
+                return defaultValue(method.getReturnType());
+            }
+            if (name.equals("findById") && arg instanceof Long) {
+                return store.get(arg);
+            }
+            if (name.equals("findAll")) {
+                return new ArrayList<Object>(store.values());
+            }
+            return defaultValue(method.getReturnType());
+        }
+
+        private void delete(Object o) {
+            Long id = o instanceof Long ? (Long) o : getId(o);
+            if (id != null) {
+                store.remove(id);
+            }
+        }
+
+    }
+
+    private static Long getId(Object entity) {
+        try {
+            Object id = entity.getClass().getMethod("getId").invoke(entity);
+            return id instanceof Long ? (Long) id : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type.isPrimitive() && type != void.class) {
+            return 0;
+        }
+        if (List.class.isAssignableFrom(type) || type == Collection.class) {
+            return new ArrayList<Object>();
+        }
+        return null;
+    }
+
+}
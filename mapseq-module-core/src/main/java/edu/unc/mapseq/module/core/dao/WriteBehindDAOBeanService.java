@@ -0,0 +1,486 @@
+package edu.unc.mapseq.module.core.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.dao.MaPSeqDAOBeanService;
+
+/**
+ * MaPSeqDAOBeanService that takes writes off the module's critical path. Calls to save*, delete*, add*, update* and
+ * remove* on the DAOs are appended to a local {@link PersistenceJournal} and return immediately; a background thread
+ * applies them to the real service in batches. A save of a new entity returns a provisional (negative) id that is
+ * swapped for the real one once the save has been applied. Every other call (the finders) first waits for the journal
+ * to drain and then goes straight to the real service.
+ *
+ * The real service is obtained from the delegate factory the first time something has to be applied, so a module
+ * that never persists anything never connects. Journals left behind by processes that died are replayed before new
+ * entries.
+ *
+ * @author jdr0887
+ */
+public class WriteBehindDAOBeanService implements InvocationHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindDAOBeanService.class);
+
+    private static final String[] WRITE_PREFIXES = new String[] { "save", "delete", "add", "update", "remove" };
+
+    private final Callable<MaPSeqDAOBeanService> delegateFactory;
+
+    private final PersistenceJournal journal;
+
+    private final Integer batchSize;
+
+    private final Long flushInterval;
+
+    private final Map<Long, Long> idMap = new ConcurrentHashMap<Long, Long>();
+
+    private final AtomicLong provisionalId = new AtomicLong(0L);
+
+    private final List<JournalEntry> queue = new ArrayList<JournalEntry>();
+
+    private final Map<Method, Object> daoProxies = new ConcurrentHashMap<Method, Object>();
+
+    private final Thread flusher;
+
+    private volatile MaPSeqDAOBeanService delegate;
+
+    private volatile boolean running = true;
+
+    private long appliedSequence = 0L;
+
+    // the last entry applied and checkpointed, only touched by the flusher
+    private long checkpointedSequence = 0L;
+
+    public WriteBehindDAOBeanService(Callable<MaPSeqDAOBeanService> delegateFactory, File journalDirectory,
+            Integer batchSize, Long flushInterval) throws IOException {
+        super();
+        this.delegateFactory = delegateFactory;
+        this.journal = new PersistenceJournal(journalDirectory, true);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, WriteBehindDAOBeanService.class.getSimpleName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public static MaPSeqDAOBeanService newInstance(Callable<MaPSeqDAOBeanService> delegateFactory, File journalDirectory,
+            Integer batchSize, Long flushInterval, final Long shutdownTimeout) throws IOException {
+        final WriteBehindDAOBeanService handler = new WriteBehindDAOBeanService(delegateFactory, journalDirectory,
+                batchSize, flushInterval);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                handler.close(shutdownTimeout);
+            }
+        });
+        return (MaPSeqDAOBeanService) Proxy.newProxyInstance(MaPSeqDAOBeanService.class.getClassLoader(),
+                new Class<?>[] { MaPSeqDAOBeanService.class }, handler);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(this, args);
+        }
+        if (method.getName().startsWith("get") && (args == null || args.length == 0) && method.getReturnType().isInterface()) {
+            Object daoProxy = daoProxies.get(method);
+            if (daoProxy == null) {
+                daoProxy = Proxy.newProxyInstance(method.getReturnType().getClassLoader(),
+                        new Class<?>[] { method.getReturnType() }, new DAOHandler(method.getName()));
+                daoProxies.put(method, daoProxy);
+            }
+            return daoProxy;
+        }
+        flush();
+        return invokeDirect(method, getDelegate(), translate(args));
+    }
+
+    class DAOHandler implements InvocationHandler {
+
+        private final String daoName;
+
+        public DAOHandler(String daoName) {
+            super();
+            this.daoName = daoName;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(this, args);
+            }
+            if (isDeferrable(method, args)) {
+                return append(daoName, method, args);
+            }
+            flush();
+            Object dao = MaPSeqDAOBeanService.class.getMethod(daoName).invoke(getDelegate());
+            return invokeDirect(method, dao, translate(args));
+        }
+
+    }
+
+    private boolean isDeferrable(Method method, Object[] args) {
+        boolean write = false;
+        for (String prefix : WRITE_PREFIXES) {
+            if (method.getName().startsWith(prefix)) {
+                write = true;
+                break;
+            }
+        }
+        if (!write) {
+            return false;
+        }
+        Class<?> returnType = method.getReturnType();
+        if (returnType != void.class && returnType != Long.class && returnType != long.class) {
+            return false;
+        }
+        if (returnType != void.class && !method.getName().startsWith("save")) {
+            return false;
+        }
+        if (args != null) {
+            for (Object arg : args) {
+                if (arg != null && !(arg instanceof Serializable)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private Object append(String daoName, Method method, Object[] args) throws IOException {
+        Long entityKey = null;
+        if (method.getName().startsWith("save") && args != null && args.length == 1) {
+            entityKey = getId(args[0]);
+            if (entityKey == null) {
+                entityKey = provisionalId.decrementAndGet();
+            }
+        }
+        String[] parameterTypes = new String[method.getParameterTypes().length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            parameterTypes[i] = method.getParameterTypes()[i].getName();
+        }
+        JournalEntry entry = new JournalEntry(daoName, method.getName(), parameterTypes,
+                PersistenceJournal.serialize(args != null ? args : new Object[0]), entityKey);
+        synchronized (queue) {
+            journal.append(entry);
+            queue.add(entry);
+            if (queue.size() >= batchSize) {
+                queue.notifyAll();
+            }
+        }
+        if (method.getReturnType() == void.class) {
+            return null;
+        }
+        Long ret = entityKey != null && idMap.containsKey(entityKey) ? idMap.get(entityKey) : entityKey;
+        return ret == null && method.getReturnType() == long.class ? 0L : ret;
+    }
+
+    /**
+     * Blocks until everything appended so far has been applied.
+     */
+    public void flush() {
+        long target;
+        synchronized (queue) {
+            target = journal.getSequence();
+            if (appliedSequence >= target) {
+                return;
+            }
+            queue.notifyAll();
+            while (appliedSequence < target) {
+                if (!running && !flusher.isAlive()) {
+                    throw new IllegalStateException("write-behind flusher is not running");
+                }
+                try {
+                    queue.wait(1000L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    private void flushLoop() {
+        for (File orphan : journal.findOthers()) {
+            replay(orphan);
+        }
+        long backoff = 500L;
+        while (true) {
+            List<JournalEntry> batch;
+            synchronized (queue) {
+                if (queue.isEmpty()) {
+                    if (!running) {
+                        return;
+                    }
+                    try {
+                        queue.wait(flushInterval);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (queue.isEmpty()) {
+                        continue;
+                    }
+                }
+                batch = new ArrayList<JournalEntry>(queue);
+            }
+            try {
+                long last = batch.get(batch.size() - 1).getSequence();
+                // a retried batch starts after the entries it already applied; a save that had later saves of the
+                // same entity folded into it is applied again from those, as an update, the ids being in the map
+                List<JournalEntry> pending = new ArrayList<JournalEntry>(batch.size());
+                for (JournalEntry entry : batch) {
+                    if (entry.getSequence() > checkpointedSequence) {
+                        pending.add(entry);
+                    }
+                }
+                for (JournalEntry entry : coalesce(pending)) {
+                    apply(getDelegate(), entry, idMap);
+                    journal.checkpoint(entry.getSequence(), idMap);
+                    checkpointedSequence = entry.getSequence();
+                }
+                journal.checkpoint(last, idMap);
+                checkpointedSequence = last;
+                synchronized (queue) {
+                    queue.subList(0, batch.size()).clear();
+                    appliedSequence = last;
+                    queue.notifyAll();
+                }
+                backoff = 500L;
+            } catch (Exception e) {
+                if (!running) {
+                    logger.warn("giving up on flush during shutdown, {} entries left in {}", batch.size(),
+                            journal.getFile().getAbsolutePath());
+                    return;
+                }
+                logger.warn(String.format("flush failed, retrying in %dms", backoff), e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e1) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, TimeUnit.MINUTES.toMillis(1));
+            }
+        }
+    }
+
+    /**
+     * Keeps one save per entity, at the position of its first save (so anything appended after it can reference it)
+     * but carrying the state of its last save.
+     */
+    private List<JournalEntry> coalesce(List<JournalEntry> batch) {
+        Map<Object, JournalEntry> coalesced = new LinkedHashMap<Object, JournalEntry>();
+        for (JournalEntry entry : batch) {
+            if (entry.getEntityKey() == null) {
+                coalesced.put(entry.getSequence(), entry);
+                continue;
+            }
+            String key = String.format("%s.%s:%d", entry.getDaoName(), entry.getMethodName(), entry.getEntityKey());
+            JournalEntry first = coalesced.get(key);
+            if (first == null) {
+                coalesced.put(key, entry);
+            } else {
+                first.setArguments(entry.getArguments());
+            }
+        }
+        return new ArrayList<JournalEntry>(coalesced.values());
+    }
+
+    private void replay(File orphan) {
+        try (PersistenceJournal.Recovery recovery = PersistenceJournal.recover(orphan)) {
+            if (recovery == null) {
+                return;
+            }
+            logger.info("replaying {} entries from {}", recovery.getEntries().size(), orphan.getAbsolutePath());
+            for (JournalEntry entry : recovery.getEntries()) {
+                apply(getDelegate(), entry, recovery.getIdMap());
+                recovery.checkpoint(entry.getSequence());
+            }
+            recovery.close(true);
+        } catch (Exception e) {
+            logger.error(String.format("failed to replay %s, it will be retried by the next process",
+                    orphan.getAbsolutePath()), e);
+        }
+    }
+
+    private void apply(MaPSeqDAOBeanService service, JournalEntry entry, Map<Long, Long> ids) throws Exception {
+        Method daoGetter = MaPSeqDAOBeanService.class.getMethod(entry.getDaoName());
+        Class<?>[] parameterTypes = new Class<?>[entry.getParameterTypes().length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            parameterTypes[i] = forName(entry.getParameterTypes()[i]);
+        }
+        Method method = daoGetter.getReturnType().getMethod(entry.getMethodName(), parameterTypes);
+        Object[] args = (Object[]) PersistenceJournal.deserialize(entry.getArguments());
+        Long entityKey = entry.getEntityKey();
+        if (entityKey != null && entityKey < 0 && !ids.containsKey(entityKey)) {
+            // first time this entity reaches the service
+            setId(args[0], null);
+        }
+        args = translate(args, ids);
+        Object ret = method.invoke(daoGetter.invoke(service), args);
+        if (entityKey != null && entityKey < 0 && ret instanceof Long) {
+            ids.put(entityKey, (Long) ret);
+        }
+        logger.debug("applied {}", entry);
+    }
+
+    private Object[] translate(Object[] args) {
+        return translate(args, idMap);
+    }
+
+    /**
+     * Replaces provisional ids in the arguments, in Long arguments, in the id of entity arguments and in the ids of
+     * the entities they reference directly.
+     */
+    private static Object[] translate(Object[] args, Map<Long, Long> ids) {
+        if (args == null) {
+            return null;
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof Long) {
+                Long id = (Long) args[i];
+                if (id < 0 && ids.containsKey(id)) {
+                    args[i] = ids.get(id);
+                }
+            } else if (args[i] != null) {
+                translateEntity(args[i], ids, 2);
+            }
+        }
+        return args;
+    }
+
+    private static void translateEntity(Object entity, Map<Long, Long> ids, int depth) {
+        if (depth == 0 || entity == null) {
+            return;
+        }
+        if (entity instanceof Collection) {
+            for (Object o : (Collection<?>) entity) {
+                translateEntity(o, ids, depth);
+            }
+            return;
+        }
+        Long id = getId(entity);
+        if (id != null && id < 0 && ids.containsKey(id)) {
+            setId(entity, ids.get(id));
+        }
+        if (depth == 1 || entity.getClass().getName().startsWith("java.")) {
+            return;
+        }
+        for (Method method : entity.getClass().getMethods()) {
+            if (method.getName().startsWith("get") && method.getParameterTypes().length == 0
+                    && !method.getReturnType().isPrimitive() && !method.getReturnType().getName().startsWith("java.lang")
+                    && method.getDeclaringClass() != Object.class) {
+                try {
+                    translateEntity(method.invoke(entity), ids, depth - 1);
+                } catch (Exception e) {
+                    // not a bean property we can follow
+                }
+            }
+        }
+    }
+
+    private static Long getId(Object entity) {
+        try {
+            Object id = entity.getClass().getMethod("getId").invoke(entity);
+            return id instanceof Long ? (Long) id : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static void setId(Object entity, Long id) {
+        try {
+            entity.getClass().getMethod("setId", Long.class).invoke(entity, id);
+        } catch (Exception e) {
+            logger.debug("could not set id on {}", entity.getClass().getName());
+        }
+    }
+
+    private static Object invokeDirect(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>();
+
+    static {
+        for (Class<?> c : new Class<?>[] { boolean.class, byte.class, char.class, short.class, int.class, long.class,
+                float.class, double.class }) {
+            PRIMITIVES.put(c.getName(), c);
+        }
+    }
+
+    private static Class<?> forName(String name) throws ClassNotFoundException {
+        Class<?> c = PRIMITIVES.get(name);
+        return c != null ? c : Class.forName(name, false, Thread.currentThread().getContextClassLoader());
+    }
+
+    private MaPSeqDAOBeanService getDelegate() throws Exception {
+        if (delegate == null) {
+            synchronized (this) {
+                if (delegate == null) {
+                    logger.info("connecting to the MaPSeq DAO service");
+                    delegate = delegateFactory.call();
+                }
+            }
+        }
+        return delegate;
+    }
+
+    /**
+     * Waits up to timeout milliseconds for the journal to drain. Whatever is left stays in the journal file and is
+     * replayed by the next process that uses the same journal directory.
+     */
+    public void close(Long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (queue) {
+            while (!queue.isEmpty() && flusher.isAlive() && System.currentTimeMillis() < deadline) {
+                queue.notifyAll();
+                try {
+                    queue.wait(Math.max(1L, Math.min(1000L, deadline - System.currentTimeMillis())));
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            running = false;
+            queue.notifyAll();
+        }
+        flusher.interrupt();
+        try {
+            flusher.join(1000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.warn("failed to close journal", e);
+        }
+    }
+
+}
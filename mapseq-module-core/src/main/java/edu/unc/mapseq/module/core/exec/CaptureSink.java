@@ -0,0 +1,55 @@
+package edu.unc.mapseq.module.core.exec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Keeps at most limit bytes of the stream in memory (the beginning) and counts the rest.
+ *
+ * @author jdr0887
+ */
+public class CaptureSink implements StreamSink {
+
+    public static final int DEFAULT_LIMIT = 1024 * 1024;
+
+    private final byte[] captured;
+
+    private int size = 0;
+
+    private long dropped = 0L;
+
+    public CaptureSink() {
+        this(DEFAULT_LIMIT);
+    }
+
+    public CaptureSink(int limit) {
+        super();
+        this.captured = new byte[limit];
+    }
+
+    @Override
+    public synchronized void write(byte[] buffer, int offset, int length) throws IOException {
+        int n = Math.min(length, captured.length - size);
+        System.arraycopy(buffer, offset, captured, size, n);
+        size += n;
+        dropped += length - n;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized StringBuilder getText() {
+        StringBuilder sb = new StringBuilder(new String(captured, 0, size, StandardCharsets.UTF_8));
+        if (dropped > 0) {
+            sb.append(String.format("%n... %d more bytes not captured%n", dropped));
+        }
+        return sb;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // nothing to release
+    }
+
+}
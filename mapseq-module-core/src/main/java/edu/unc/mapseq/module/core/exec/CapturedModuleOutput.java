@@ -0,0 +1,40 @@
+package edu.unc.mapseq.module.core.exec;
+
+import edu.unc.mapseq.module.DefaultModuleOutput;
+
+/**
+ * ModuleOutput of a {@link LogCapturingExecutor} run; output and error hold the head/tail windows and the captures
+ * give access to the counters.
+ *
+ * @author jdr0887
+ */
+public class CapturedModuleOutput extends DefaultModuleOutput {
+
+    private LogCaptureSink stdoutCapture;
+
+    private LogCaptureSink stderrCapture;
+
+    public CapturedModuleOutput() {
+        super();
+    }
+
+    /**
+     * @return null when stdout was redirected to a file
+     */
+    public LogCaptureSink getStdoutCapture() {
+        return stdoutCapture;
+    }
+
+    public void setStdoutCapture(LogCaptureSink stdoutCapture) {
+        this.stdoutCapture = stdoutCapture;
+    }
+
+    public LogCaptureSink getStderrCapture() {
+        return stderrCapture;
+    }
+
+    public void setStderrCapture(LogCaptureSink stderrCapture) {
+        this.stderrCapture = stderrCapture;
+    }
+
+}
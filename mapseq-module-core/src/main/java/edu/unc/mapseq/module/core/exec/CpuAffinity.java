@@ -0,0 +1,53 @@
+package edu.unc.mapseq.module.core.exec;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The cores the current module was placed on by the scheduler (a taskset style list such as "0-3,8"). The executors
+ * in this package start their processes under taskset when it is set. Threads started by the module inherit it.
+ *
+ * @author jdr0887
+ */
+public class CpuAffinity {
+
+    private static final String TASKSET = "/usr/bin/taskset";
+
+    private static final InheritableThreadLocal<String> cpuList = new InheritableThreadLocal<String>();
+
+    private static final boolean tasksetAvailable = new File(TASKSET).canExecute();
+
+    private CpuAffinity() {
+        super();
+    }
+
+    public static String get() {
+        return cpuList.get();
+    }
+
+    public static void set(String cpus) {
+        cpuList.set(cpus);
+    }
+
+    public static void clear() {
+        cpuList.remove();
+    }
+
+    /**
+     * @return the argv prefixed with taskset when an affinity is set, otherwise the argv itself
+     */
+    public static List<String> wrap(List<String> argv) {
+        String cpus = cpuList.get();
+        if (cpus == null || !tasksetAvailable) {
+            return argv;
+        }
+        List<String> ret = new ArrayList<String>(argv.size() + 3);
+        ret.add(TASKSET);
+        ret.add("-c");
+        ret.add(cpus);
+        ret.addAll(argv);
+        return ret;
+    }
+
+}
@@ -0,0 +1,98 @@
+package edu.unc.mapseq.module.core.exec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import edu.unc.mapseq.module.ModuleException;
+
+/**
+ * Expands the $VAR / ${VAR} references (mostly the $&lt;WORKFLOW&gt;_&lt;TOOL&gt;_HOME variables) in executables
+ * without going through bash. Lookups are cached for the life of the JVM, which is fine since the environment of a
+ * running JVM cannot change.
+ *
+ * @author jdr0887
+ */
+public class EnvironmentResolver {
+
+    private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\$\\{?([A-Za-z_][A-Za-z0-9_]*)\\}?");
+
+    private static final EnvironmentResolver instance = new EnvironmentResolver();
+
+    private final Map<String, String> cache = new ConcurrentHashMap<String, String>();
+
+    private final Map<String, List<String>> argvCache = new ConcurrentHashMap<String, List<String>>();
+
+    public static EnvironmentResolver getInstance() {
+        return instance;
+    }
+
+    private EnvironmentResolver() {
+        super();
+    }
+
+    /**
+     * @return the value of the variable, null when it is not set
+     */
+    public String getVariable(String name) {
+        String value = cache.get(name);
+        if (value == null) {
+            value = System.getenv(name);
+            if (value == null) {
+                return null;
+            }
+            cache.put(name, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the value of $&lt;WORKFLOW&gt;_&lt;tool&gt;_HOME
+     */
+    public String getHome(String workflowName, String tool) throws ModuleException {
+        String name = String.format("%s_%s_HOME", workflowName.toUpperCase(), tool);
+        String value = getVariable(name);
+        if (value == null) {
+            throw new ModuleException(String.format("%s is not set", name));
+        }
+        return value;
+    }
+
+    public String resolve(String text) throws ModuleException {
+        Matcher matcher = VARIABLE_PATTERN.matcher(text);
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            String value = getVariable(matcher.group(1));
+            if (value == null) {
+                throw new ModuleException(String.format("%s is not set", matcher.group(1)));
+            }
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(value));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Turns an executable such as "$TEST_BWA_HOME/bin/bwa mem" into an argv list. Only variable expansion and
+     * whitespace splitting are done, so this is for executables without quotes, globs or pipes.
+     *
+     * @return an unmodifiable list, copy it before adding arguments
+     */
+    public List<String> toArgv(String executable) throws ModuleException {
+        List<String> argv = argvCache.get(executable);
+        if (argv == null) {
+            argv = new ArrayList<String>();
+            for (String token : resolve(executable).trim().split("\\s+")) {
+                argv.add(token);
+            }
+            argv = Collections.unmodifiableList(argv);
+            argvCache.put(executable, argv);
+        }
+        return argv;
+    }
+
+}
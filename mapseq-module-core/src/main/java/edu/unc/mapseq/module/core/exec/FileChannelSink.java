@@ -0,0 +1,44 @@
+package edu.unc.mapseq.module.core.exec;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes the stream straight to a file.
+ *
+ * @author jdr0887
+ */
+public class FileChannelSink implements StreamSink {
+
+    private final FileChannel channel;
+
+    public FileChannelSink(File file) throws IOException {
+        this(file, false);
+    }
+
+    @SuppressWarnings("resource")
+    public FileChannelSink(File file, boolean append) throws IOException {
+        super();
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        this.channel = new FileOutputStream(file, append).getChannel();
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, offset, length);
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -0,0 +1,17 @@
+package edu.unc.mapseq.module.core.exec;
+
+import java.io.IOException;
+
+/**
+ * 
+ * @author jdr0887
+ */
+public interface LineHandler {
+
+    /**
+     * @param line
+     *            the line without its terminator
+     */
+    public void handle(String line) throws IOException;
+
+}
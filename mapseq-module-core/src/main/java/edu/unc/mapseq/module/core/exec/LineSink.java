@@ -0,0 +1,81 @@
+package edu.unc.mapseq.module.core.exec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits the stream on '\n' (dropping a trailing '\r') and hands each line to a {@link LineHandler}. Only the current
+ * partial line is buffered.
+ *
+ * @author jdr0887
+ */
+public class LineSink implements StreamSink {
+
+    private final LineHandler lineHandler;
+
+    private final Charset charset;
+
+    private final ByteArrayOutputStream partial = new ByteArrayOutputStream(256);
+
+    private long lineCount = 0L;
+
+    public LineSink(LineHandler lineHandler) {
+        this(lineHandler, StandardCharsets.UTF_8);
+    }
+
+    public LineSink(LineHandler lineHandler, Charset charset) {
+        super();
+        this.lineHandler = lineHandler;
+        this.charset = charset;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        int start = offset;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (buffer[i] == '\n') {
+                if (partial.size() > 0) {
+                    partial.write(buffer, start, i - start);
+                    byte[] bytes = partial.toByteArray();
+                    partial.reset();
+                    emit(bytes, 0, bytes.length);
+                } else {
+                    emit(buffer, start, i - start);
+                }
+                start = i + 1;
+            }
+        }
+        if (start < end) {
+            partial.write(buffer, start, end - start);
+        }
+    }
+
+    private void emit(byte[] bytes, int offset, int length) throws IOException {
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            length--;
+        }
+        lineCount++;
+        lineHandler.handle(new String(bytes, offset, length, charset));
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (partial.size() > 0) {
+            byte[] bytes = partial.toByteArray();
+            partial.reset();
+            emit(bytes, 0, bytes.length);
+        }
+        if (lineHandler instanceof Closeable) {
+            ((Closeable) lineHandler).close();
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package edu.unc.mapseq.module.core.exec;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Log capture for chatty tools. Only the first headSize and the last tailSize bytes are kept in memory (the tail in a
+ * ring buffer). When a spill file is given and the stream outgrows the two windows, the complete stream is gzipped to
+ * that file; shorter streams never touch the disk.
+ *
+ * @author jdr0887
+ */
+public class LogCaptureSink implements StreamSink {
+
+    public static final String HEAD_SIZE_PROPERTY = "mapseq.log.head";
+
+    public static final String TAIL_SIZE_PROPERTY = "mapseq.log.tail";
+
+    private final byte[] head;
+
+    private final byte[] tail;
+
+    private final File spillFile;
+
+    private int headLength = 0;
+
+    // next write position in the ring and how much of it is filled
+    private int tailPosition = 0;
+
+    private int tailLength = 0;
+
+    private long byteCount = 0L;
+
+    private long lineCount = 0L;
+
+    private OutputStream spill;
+
+    public LogCaptureSink(File spillFile) {
+        this(Integer.getInteger(HEAD_SIZE_PROPERTY, 64 * 1024), Integer.getInteger(TAIL_SIZE_PROPERTY, 256 * 1024),
+                spillFile);
+    }
+
+    public LogCaptureSink(int headSize, int tailSize, File spillFile) {
+        super();
+        this.head = new byte[headSize];
+        this.tail = new byte[tailSize];
+        this.spillFile = spillFile;
+    }
+
+    @Override
+    public synchronized void write(byte[] buffer, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            if (buffer[i] == '\n') {
+                lineCount++;
+            }
+        }
+        byteCount += length;
+
+        if (spill != null) {
+            spill.write(buffer, offset, length);
+        } else if (spillFile != null && byteCount > head.length + tail.length) {
+            // the windows are about to lose data, from here on the whole stream goes to disk
+            if (spillFile.getParentFile() != null) {
+                spillFile.getParentFile().mkdirs();
+            }
+            spill = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile), 1 << 16), 1 << 16);
+            spill.write(head, 0, headLength);
+            writeTail(spill);
+            spill.write(buffer, offset, length);
+        }
+
+        int n = Math.min(length, head.length - headLength);
+        System.arraycopy(buffer, offset, head, headLength, n);
+        headLength += n;
+        offset += n;
+        length -= n;
+
+        if (length > 0 && tail.length > 0) {
+            if (length >= tail.length) {
+                System.arraycopy(buffer, offset + length - tail.length, tail, 0, tail.length);
+                tailPosition = 0;
+                tailLength = tail.length;
+            } else {
+                int first = Math.min(length, tail.length - tailPosition);
+                System.arraycopy(buffer, offset, tail, tailPosition, first);
+                System.arraycopy(buffer, offset + first, tail, 0, length - first);
+                tailPosition = (tailPosition + length) % tail.length;
+                tailLength = Math.min(tail.length, tailLength + length);
+            }
+        }
+    }
+
+    private void writeTail(OutputStream os) throws IOException {
+        if (tailLength < tail.length) {
+            os.write(tail, 0, tailLength);
+        } else {
+            os.write(tail, tailPosition, tail.length - tailPosition);
+            os.write(tail, 0, tailPosition);
+        }
+    }
+
+    private byte[] getTailBytes() {
+        byte[] bytes = new byte[tailLength];
+        if (tailLength < tail.length) {
+            System.arraycopy(tail, 0, bytes, 0, tailLength);
+        } else {
+            System.arraycopy(tail, tailPosition, bytes, 0, tail.length - tailPosition);
+            System.arraycopy(tail, 0, bytes, tail.length - tailPosition, tailPosition);
+        }
+        return bytes;
+    }
+
+    public synchronized long getByteCount() {
+        return byteCount;
+    }
+
+    public synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return bytes that are in neither window
+     */
+    public synchronized long getOmittedByteCount() {
+        return byteCount - headLength - tailLength;
+    }
+
+    /**
+     * @return the spill file when the stream was large enough to be spilled, otherwise null
+     */
+    public synchronized File getSpillFile() {
+        return spill != null ? spillFile : null;
+    }
+
+    /**
+     * Searches the head and tail windows, which is where the summary lines of most tools end up.
+     */
+    public synchronized boolean contains(String text) {
+        return getText().indexOf(text) > -1;
+    }
+
+    public synchronized StringBuilder getText() {
+        StringBuilder sb = new StringBuilder(new String(head, 0, headLength, StandardCharsets.UTF_8));
+        long omitted = getOmittedByteCount();
+        if (omitted > 0) {
+            sb.append(String.format("%n... %d bytes omitted%s ...%n", omitted,
+                    spill != null ? String.format(", complete log in %s", spillFile.getAbsolutePath()) : ""));
+        }
+        sb.append(new String(getTailBytes(), StandardCharsets.UTF_8));
+        return sb;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LogCaptureSink [byteCount=%s, lineCount=%s, spillFile=%s]", byteCount, lineCount,
+                getSpillFile());
+    }
+
+}
@@ -0,0 +1,88 @@
+package edu.unc.mapseq.module.core.exec;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.renci.common.exec.CommandInput;
+import org.renci.common.exec.ExecutorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.dao.model.FileData;
+import edu.unc.mapseq.dao.model.MimeType;
+import edu.unc.mapseq.module.Module;
+import edu.unc.mapseq.module.ModuleException;
+
+/**
+ * Drop-in replacement for BashExecutor plus ShellModuleOutput in modules wrapping verbose tools. stdout goes to the
+ * redirect file when there is one, otherwise it is captured like stderr: a head/tail window is kept in memory and the
+ * complete stream is spilled to &lt;logPrefix&gt;.stdout.log.gz / &lt;logPrefix&gt;.stderr.log.gz once it outgrows the
+ * window. Spilled logs are added to the module's FileData.
+ *
+ * @author jdr0887
+ */
+public class LogCapturingExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogCapturingExecutor.class);
+
+    private static final LogCapturingExecutor instance = new LogCapturingExecutor();
+
+    public static LogCapturingExecutor getInstance() {
+        return instance;
+    }
+
+    private LogCapturingExecutor() {
+        super();
+    }
+
+    public CapturedModuleOutput execute(Module module, CommandInput commandInput, File redirect, File logPrefix)
+            throws ModuleException {
+
+        LogCaptureSink stdoutCapture = null;
+        StreamSink stdoutSink;
+        try {
+            if (redirect != null) {
+                stdoutSink = new FileChannelSink(redirect);
+            } else {
+                stdoutCapture = new LogCaptureSink(new File(logPrefix.getAbsolutePath() + ".stdout.log.gz"));
+                stdoutSink = stdoutCapture;
+            }
+        } catch (IOException e) {
+            throw new ModuleException(e);
+        }
+        LogCaptureSink stderrCapture = new LogCaptureSink(new File(logPrefix.getAbsolutePath() + ".stderr.log.gz"));
+
+        StreamingCommandOutput commandOutput;
+        try {
+            commandOutput = StreamingExecutor.getInstance().execute(commandInput, stdoutSink, stderrCapture);
+        } catch (ExecutorException e) {
+            throw new ModuleException(e);
+        }
+        if (commandOutput.getException() != null) {
+            throw new ModuleException(commandOutput.getException());
+        }
+
+        logger.info("stdout: {} bytes, stderr: {} bytes / {} lines", commandOutput.getStdoutBytes(),
+                stderrCapture.getByteCount(), stderrCapture.getLineCount());
+
+        for (LogCaptureSink capture : new LogCaptureSink[] { stdoutCapture, stderrCapture }) {
+            if (capture != null && capture.getSpillFile() != null) {
+                File spillFile = capture.getSpillFile();
+                FileData fileData = new FileData();
+                fileData.setName(spillFile.getName());
+                fileData.setPath(spillFile.getParentFile().getAbsolutePath());
+                fileData.setMimeType(MimeType.TEXT_PLAIN);
+                module.getFileDatas().add(fileData);
+            }
+        }
+
+        CapturedModuleOutput moduleOutput = new CapturedModuleOutput();
+        moduleOutput.setExitCode(commandOutput.getExitCode());
+        moduleOutput.setOutput(stdoutCapture != null ? stdoutCapture.getText() : new StringBuilder());
+        moduleOutput.setError(stderrCapture.getText());
+        moduleOutput.setStdoutCapture(stdoutCapture);
+        moduleOutput.setStderrCapture(stderrCapture);
+        return moduleOutput;
+    }
+
+}
@@ -0,0 +1,331 @@
+package edu.unc.mapseq.module.core.exec;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.renci.common.exec.ExecutorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs one process, or a chain of processes connected stdout to stdin, straight from argv lists with ProcessBuilder,
+ * so there is no bash fork and no shell parsing. Every stream is drained by its own thread through a direct buffer, so
+ * no process can block on a full pipe.
+ *
+ * The first stage reads from the input files (concatenated, like cat) or from nothing; the last stage writes to the
+ * output file, to a {@link StreamSink} or to a bounded capture. Like bash without pipefail, the exit code is the one
+ * of the last stage unless pipefail is set.
+ *
+ * @author jdr0887
+ */
+public class ProcessPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessPipeline.class);
+
+    private final List<List<String>> stages = new ArrayList<List<String>>();
+
+    private List<File> inputs = new ArrayList<File>();
+
+    private File output;
+
+    private StreamSink outputSink;
+
+    private File workDir;
+
+    private boolean pipefail = false;
+
+    public ProcessPipeline() {
+        super();
+    }
+
+    public ProcessPipeline(List<String> argv) {
+        super();
+        addStage(argv);
+    }
+
+    public void addStage(List<String> argv) {
+        stages.add(new ArrayList<String>(argv));
+    }
+
+    public void addStage(String... argv) {
+        addStage(Arrays.asList(argv));
+    }
+
+    public List<List<String>> getStages() {
+        return stages;
+    }
+
+    public List<File> getInputs() {
+        return inputs;
+    }
+
+    public void setInputs(List<File> inputs) {
+        this.inputs = inputs;
+    }
+
+    public File getOutput() {
+        return output;
+    }
+
+    public void setOutput(File output) {
+        this.output = output;
+    }
+
+    public StreamSink getOutputSink() {
+        return outputSink;
+    }
+
+    public void setOutputSink(StreamSink outputSink) {
+        this.outputSink = outputSink;
+    }
+
+    public File getWorkDir() {
+        return workDir;
+    }
+
+    public void setWorkDir(File workDir) {
+        this.workDir = workDir;
+    }
+
+    public boolean isPipefail() {
+        return pipefail;
+    }
+
+    public void setPipefail(boolean pipefail) {
+        this.pipefail = pipefail;
+    }
+
+    /**
+     * stdout is captured (bounded) into {@link StreamingCommandOutput#getStderr()} alongside stderr when neither an
+     * output file nor an output sink was set.
+     */
+    public StreamingCommandOutput execute() throws ExecutorException {
+        if (stages.isEmpty()) {
+            throw new ExecutorException("nothing to run");
+        }
+        logger.debug("pipeline: {}", stages);
+
+        List<Process> processes = new ArrayList<Process>();
+        List<Thread> pumps = new ArrayList<Thread>();
+        List<CaptureSink> stderrCaptures = new ArrayList<CaptureSink>();
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        CaptureSink stdoutCapture = null;
+
+        try {
+            for (int i = 0; i < stages.size(); i++) {
+                ProcessBuilder processBuilder = new ProcessBuilder(CpuAffinity.wrap(stages.get(i)));
+                if (workDir != null) {
+                    processBuilder.directory(workDir);
+                }
+                if (i == 0 && inputs.size() == 1) {
+                    processBuilder.redirectInput(inputs.get(0));
+                }
+                if (i == stages.size() - 1 && output != null) {
+                    processBuilder.redirectOutput(output);
+                }
+                Process process = processBuilder.start();
+                processes.add(process);
+
+                CaptureSink stderrCapture = new CaptureSink(64 * 1024);
+                stderrCaptures.add(stderrCapture);
+                pumps.add(startPump(Channels.newChannel(process.getErrorStream()), stderrCapture, failure));
+
+                if (i == 0) {
+                    if (inputs.size() > 1) {
+                        pumps.add(startFilePump(inputs, process.getOutputStream(), failure));
+                    } else if (inputs.isEmpty()) {
+                        process.getOutputStream().close();
+                    }
+                } else {
+                    // previous stage's stdout feeds this stage's stdin
+                    Process previous = processes.get(i - 1);
+                    pumps.add(startPump(Channels.newChannel(previous.getInputStream()),
+                            new ChannelSink(Channels.newChannel(process.getOutputStream())), failure));
+                }
+
+                if (i == stages.size() - 1 && output == null) {
+                    StreamSink sink = outputSink;
+                    if (sink == null) {
+                        stdoutCapture = new CaptureSink();
+                        sink = stdoutCapture;
+                    }
+                    pumps.add(startPump(Channels.newChannel(process.getInputStream()), sink, failure));
+                }
+            }
+        } catch (IOException e) {
+            for (Process process : processes) {
+                process.destroy();
+            }
+            throw new ExecutorException(e.getMessage());
+        }
+
+        StreamingCommandOutput commandOutput = new StreamingCommandOutput();
+        int[] exitCodes = new int[processes.size()];
+        try {
+            for (int i = 0; i < processes.size(); i++) {
+                exitCodes[i] = processes.get(i).waitFor();
+            }
+            for (Thread pump : pumps) {
+                pump.join();
+            }
+        } catch (InterruptedException e) {
+            for (Process process : processes) {
+                process.destroy();
+            }
+            Thread.currentThread().interrupt();
+            throw new ExecutorException(e.getMessage());
+        }
+
+        int exitCode = exitCodes[exitCodes.length - 1];
+        if (pipefail) {
+            for (int code : exitCodes) {
+                if (code != 0) {
+                    exitCode = code;
+                }
+            }
+        }
+        logger.debug("exit codes: {}", Arrays.toString(exitCodes));
+
+        StringBuilder stderr = new StringBuilder();
+        if (stdoutCapture != null) {
+            stderr.append(stdoutCapture.getText());
+        }
+        for (int i = 0; i < stderrCaptures.size(); i++) {
+            StringBuilder text = stderrCaptures.get(i).getText();
+            if (text.length() > 0) {
+                if (stages.size() > 1) {
+                    stderr.append(String.format("[%s]%n", stages.get(i).get(0)));
+                }
+                stderr.append(text);
+            }
+        }
+        commandOutput.setExitCode(exitCode);
+        commandOutput.setStderr(stderr);
+        commandOutput.setException(failure.get());
+        if (failure.get() != null && exitCode == 0) {
+            commandOutput.setExitCode(-1);
+        }
+        return commandOutput;
+    }
+
+    private static Thread startPump(final ReadableByteChannel in, final StreamSink sink,
+            final AtomicReference<Exception> failure) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(StreamingExecutor.BUFFER_SIZE);
+                byte[] bytes = new byte[StreamingExecutor.BUFFER_SIZE];
+                try (ReadableByteChannel channel = in; StreamSink out = sink) {
+                    while (channel.read(buffer) != -1) {
+                        buffer.flip();
+                        int length = buffer.remaining();
+                        buffer.get(bytes, 0, length);
+                        buffer.clear();
+                        out.write(bytes, 0, length);
+                    }
+                } catch (BrokenPipeException e) {
+                    // downstream exited early (head and friends), upstream sees SIGPIPE just like in bash
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        }, "pipeline-pump");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static Thread startFilePump(final List<File> files, final OutputStream os,
+            final AtomicReference<Exception> failure) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (WritableByteChannel out = Channels.newChannel(os)) {
+                    for (File file : files) {
+                        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+                            long position = 0L;
+                            long size = channel.size();
+                            while (position < size) {
+                                position += channel.transferTo(position, size - position, out);
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    if (!isBrokenPipe(e)) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }
+        }, "pipeline-input");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    static boolean isBrokenPipe(IOException e) {
+        return e.getMessage() != null
+                && (e.getMessage().contains("Broken pipe") || e.getMessage().contains("Stream closed"));
+    }
+
+    /**
+     * Signals that the reading side of a pipe went away.
+     */
+    static class BrokenPipeException extends IOException {
+
+        private static final long serialVersionUID = 8414906604474281806L;
+
+        public BrokenPipeException(IOException cause) {
+            super(cause);
+        }
+
+    }
+
+    static class ChannelSink implements StreamSink {
+
+        private final WritableByteChannel channel;
+
+        public ChannelSink(WritableByteChannel channel) {
+            super();
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, offset, length);
+            try {
+                while (byteBuffer.hasRemaining()) {
+                    channel.write(byteBuffer);
+                }
+            } catch (IOException e) {
+                if (isBrokenPipe(e)) {
+                    throw new BrokenPipeException(e);
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (!isBrokenPipe(e)) {
+                    throw e;
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,69 @@
+package edu.unc.mapseq.module.core.exec;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Distributes records of a fixed number of lines round-robin over a set of files: record 0 goes to file 0, record 1
+ * to file 1 and so on.
+ *
+ * @author jdr0887
+ */
+public class RecordSplitter implements LineHandler, Closeable {
+
+    private final List<BufferedWriter> writers = new ArrayList<BufferedWriter>();
+
+    private final int linesPerRecord;
+
+    private final String lineSeparator = System.getProperty("line.separator");
+
+    private BufferedWriter current;
+
+    private long linesProcessed = 0L;
+
+    public RecordSplitter(List<File> files, int linesPerRecord) throws IOException {
+        super();
+        if (files.isEmpty()) {
+            throw new IOException("Must specify atleast one output file");
+        }
+        this.linesPerRecord = linesPerRecord;
+        for (File file : files) {
+            writers.add(new BufferedWriter(new FileWriter(file), 1 << 16));
+        }
+    }
+
+    @Override
+    public void handle(String line) throws IOException {
+        if (linesProcessed % linesPerRecord == 0) {
+            current = writers.get((int) ((linesProcessed / linesPerRecord) % writers.size()));
+        }
+        current.write(line);
+        current.write(lineSeparator);
+        linesProcessed++;
+    }
+
+    public long getLinesProcessed() {
+        return linesProcessed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (BufferedWriter writer : writers) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+}
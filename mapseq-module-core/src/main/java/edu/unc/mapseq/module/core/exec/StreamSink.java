@@ -0,0 +1,15 @@
+package edu.unc.mapseq.module.core.exec;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives a child process stream chunk by chunk as it is produced. The buffer is reused after write returns.
+ *
+ * @author jdr0887
+ */
+public interface StreamSink extends Closeable {
+
+    public void write(byte[] buffer, int offset, int length) throws IOException;
+
+}
@@ -0,0 +1,75 @@
+package edu.unc.mapseq.module.core.exec;
+
+/**
+ * 
+ * @author jdr0887
+ */
+public class StreamingCommandOutput {
+
+    private Integer exitCode;
+
+    private Long stdoutBytes;
+
+    private Long stderrBytes;
+
+    private StringBuilder stderr;
+
+    private Exception exception;
+
+    public StreamingCommandOutput() {
+        super();
+    }
+
+    public Integer getExitCode() {
+        return exitCode;
+    }
+
+    public void setExitCode(Integer exitCode) {
+        this.exitCode = exitCode;
+    }
+
+    public Long getStdoutBytes() {
+        return stdoutBytes;
+    }
+
+    public void setStdoutBytes(Long stdoutBytes) {
+        this.stdoutBytes = stdoutBytes;
+    }
+
+    public Long getStderrBytes() {
+        return stderrBytes;
+    }
+
+    public void setStderrBytes(Long stderrBytes) {
+        this.stderrBytes = stderrBytes;
+    }
+
+    /**
+     * @return what was captured of stderr when no stderr sink was given
+     */
+    public StringBuilder getStderr() {
+        return stderr;
+    }
+
+    public void setStderr(StringBuilder stderr) {
+        this.stderr = stderr;
+    }
+
+    /**
+     * @return the failure of a sink, null when both streams were consumed completely
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    public void setException(Exception exception) {
+        this.exception = exception;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StreamingCommandOutput [exitCode=%s, stdoutBytes=%s, stderrBytes=%s, exception=%s]", exitCode,
+                stdoutBytes, stderrBytes, exception);
+    }
+
+}
@@ -0,0 +1,149 @@
+package edu.unc.mapseq.module.core.exec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.renci.common.exec.CommandInput;
+import org.renci.common.exec.ExecutorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a command through bash like BashExecutor does, but hands stdout (and optionally stderr) to a {@link StreamSink}
+ * while the process is running instead of collecting it in a StringBuilder. Each stream is read through one fixed
+ * buffer, so memory use does not depend on how much the command prints and the sink works while the command is still
+ * producing.
+ *
+ * @author jdr0887
+ */
+public class StreamingExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingExecutor.class);
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final StreamingExecutor instance = new StreamingExecutor();
+
+    public static StreamingExecutor getInstance() {
+        return instance;
+    }
+
+    private StreamingExecutor() {
+        super();
+    }
+
+    /**
+     * stderr is captured (bounded) into {@link StreamingCommandOutput#getStderr()}.
+     */
+    public StreamingCommandOutput execute(CommandInput commandInput, StreamSink stdoutSink) throws ExecutorException {
+        return execute(commandInput, stdoutSink, null);
+    }
+
+    /**
+     * Both sinks are closed before this returns.
+     */
+    public StreamingCommandOutput execute(CommandInput commandInput, StreamSink stdoutSink, StreamSink stderrSink)
+            throws ExecutorException {
+        logger.debug("command: {}", commandInput.getCommand());
+
+        CaptureSink stderrCapture = null;
+        if (stderrSink == null) {
+            stderrCapture = new CaptureSink();
+            stderrSink = stderrCapture;
+        }
+
+        ProcessBuilder processBuilder = new ProcessBuilder(
+                CpuAffinity.wrap(Arrays.asList("/bin/bash", "-c", commandInput.getCommand())));
+        if (commandInput.getWorkDir() != null) {
+            processBuilder.directory(commandInput.getWorkDir());
+        }
+
+        StreamingCommandOutput output = new StreamingCommandOutput();
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        Process process = null;
+        try {
+            process = processBuilder.start();
+        } catch (IOException e) {
+            throw new ExecutorException(e.getMessage());
+        } finally {
+            if (process == null) {
+                // no pump will close them
+                close(stdoutSink);
+                close(stderrSink);
+            }
+        }
+        try {
+            process.getOutputStream().close();
+        } catch (IOException e) {
+            // the command does not read stdin anyway
+        }
+
+        final AtomicLong stderrBytes = new AtomicLong();
+        final InputStream stderrStream = process.getErrorStream();
+        final StreamSink errSink = stderrSink;
+        Thread stderrPump = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    stderrBytes.set(pump(stderrStream, errSink));
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        }, "stderr-pump");
+        stderrPump.setDaemon(true);
+        stderrPump.start();
+
+        try {
+            output.setStdoutBytes(pump(process.getInputStream(), stdoutSink));
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+            // the sink gave up, don't let the child block on a full pipe
+            process.destroy();
+        }
+
+        try {
+            output.setExitCode(process.waitFor());
+            stderrPump.join();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new ExecutorException(e.getMessage());
+        }
+
+        output.setStderrBytes(stderrBytes.get());
+        if (stderrCapture != null) {
+            output.setStderr(stderrCapture.getText());
+        }
+        output.setException(failure.get());
+        if (failure.get() != null && output.getExitCode() == 0) {
+            output.setExitCode(-1);
+        }
+        return output;
+    }
+
+    private static void close(StreamSink sink) {
+        try {
+            sink.close();
+        } catch (IOException e) {
+            logger.warn("could not close sink", e);
+        }
+    }
+
+    private static long pump(InputStream is, StreamSink sink) throws IOException {
+        long total = 0L;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = is; StreamSink out = sink) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                total += read;
+            }
+        }
+        return total;
+    }
+
+}
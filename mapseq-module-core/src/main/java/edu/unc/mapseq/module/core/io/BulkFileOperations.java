@@ -0,0 +1,404 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
+
+/**
+ * Removes, moves and links many files at once. On NFS or Lustre every unlink, rename or symlink is a round trip to a
+ * server, so the operations are spread over a pool of threads sized for the filesystem (see getDefaultThreads) rather
+ * than done one after the other. Trees are walked with Files.walkFileTree; files go first, then directories, deepest
+ * first.
+ *
+ * Moves are renames where possible and fall back to a parallel copy (FileCopier) and remove across filesystems. Every
+ * operation is counted and timed; a failure does not stop the others, the first one is thrown when all are done.
+ *
+ * @author jdr0887
+ */
+public class BulkFileOperations {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkFileOperations.class);
+
+    public static final String THREADS_PROPERTY = "mapseq.bulk.threads";
+
+    private static final List<String> NETWORK_FILESYSTEMS = Arrays.asList("nfs", "nfs4", "lustre", "gpfs", "cifs",
+            "smb3", "beegfs", "panfs");
+
+    private final int threads;
+
+    private final ConcurrentMap<String, AtomicLong[]> statistics = new ConcurrentHashMap<String, AtomicLong[]>();
+
+    public BulkFileOperations(int threads) {
+        super();
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param path
+     *            a file on the filesystem the operations are mostly on
+     */
+    public BulkFileOperations(File path) {
+        this(getDefaultThreads(path));
+    }
+
+    /**
+     * @return the mapseq.bulk.threads property when set, else 32 for network filesystems (the operations wait on the
+     *         server, not on a core) and twice the cores for local ones
+     */
+    public static int getDefaultThreads(File path) {
+        Integer threads = Integer.getInteger(THREADS_PROPERTY);
+        if (threads != null) {
+            return threads;
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        try {
+            Path existing = path.getAbsoluteFile().toPath();
+            while (existing != null && !Files.exists(existing)) {
+                existing = existing.getParent();
+            }
+            if (existing != null) {
+                FileStore store = Files.getFileStore(existing);
+                if (NETWORK_FILESYSTEMS.contains(store.type()) || store.type().startsWith("fuse")) {
+                    return 32;
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("no filesystem type for {}", path);
+        }
+        return Math.max(4, 2 * cores);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Removes files and directory trees, missing ones are left out.
+     */
+    public void remove(List<File> files) throws IOException {
+        final List<Path> regularFiles = new ArrayList<Path>();
+        final Map<Integer, List<Path>> directories = new TreeMap<Integer, List<Path>>();
+        for (File file : files) {
+            Path path = file.toPath();
+            if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                continue;
+            }
+            if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                regularFiles.add(path);
+                continue;
+            }
+            long start = System.nanoTime();
+            Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    // negative, so the deepest come first
+                    Integer depth = -dir.getNameCount();
+                    List<Path> list = directories.get(depth);
+                    if (list == null) {
+                        list = new ArrayList<Path>();
+                        directories.put(depth, list);
+                    }
+                    list.add(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    regularFiles.add(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+            });
+            record("walk", System.nanoTime() - start);
+        }
+        Operation delete = new Operation() {
+            @Override
+            public void apply(Path path) throws IOException {
+                try {
+                    Files.delete(path);
+                } catch (NoSuchFileException e) {
+                    // gone already
+                }
+            }
+        };
+        forEach("remove", regularFiles, delete);
+        // a directory can only go once everything below it is gone
+        for (List<Path> level : directories.values()) {
+            forEach("rmdir", level, delete);
+        }
+    }
+
+    /**
+     * Moves every source into the destination directory, which is created when missing.
+     */
+    public void moveToDirectory(List<File> sources, final File destination) throws IOException {
+        Files.createDirectories(destination.toPath());
+        List<Path> paths = new ArrayList<Path>(sources.size());
+        for (File source : sources) {
+            paths.add(source.toPath());
+        }
+        final List<Path> copied = new ArrayList<Path>();
+        forEach("rename", paths, new Operation() {
+            @Override
+            public void apply(Path path) throws IOException {
+                Path target = destination.toPath().resolve(path.getFileName());
+                if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+                    throw new FileAlreadyExistsException(target.toString());
+                }
+                if (!rename(path, target)) {
+                    synchronized (copied) {
+                        copied.add(path);
+                    }
+                }
+            }
+        });
+        copyAndRemove(copied, destination.toPath());
+    }
+
+    /**
+     * Moves a file or directory to the destination, which must not exist.
+     */
+    public void move(File source, File destination) throws IOException {
+        if (Files.exists(destination.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(destination.getAbsolutePath());
+        }
+        File parent = destination.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        long start = System.nanoTime();
+        boolean renamed = rename(source.toPath(), destination.toPath());
+        record("rename", System.nanoTime() - start);
+        if (!renamed) {
+            copy(source, destination);
+            remove(Arrays.asList(source));
+        }
+    }
+
+    /**
+     * Creates each link (a pair of link and target) unless it exists already.
+     */
+    public void symlink(List<Path[]> links) throws IOException {
+        List<Path> paths = new ArrayList<Path>(links.size());
+        final Map<Path, Path> targets = new ConcurrentHashMap<Path, Path>();
+        for (Path[] link : links) {
+            paths.add(link[0]);
+            targets.put(link[0], link[1]);
+        }
+        forEach("symlink", paths, new Operation() {
+            @Override
+            public void apply(Path link) throws IOException {
+                Path target = targets.get(link);
+                if (!Files.exists(target)) {
+                    throw new NoSuchFileException(target.toString(), null, "target file does not exist");
+                }
+                if (!Files.exists(link, LinkOption.NOFOLLOW_LINKS)) {
+                    try {
+                        Files.createSymbolicLink(link, target);
+                    } catch (FileAlreadyExistsException e) {
+                        // another run got there first
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return false when source and target are on different filesystems
+     */
+    private static boolean rename(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (AtomicMoveNotSupportedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Copies the sources on the pool, each copy with its share of the threads, and removes them only once every copy
+     * is done.
+     */
+    private void copyAndRemove(List<Path> sources, final Path destination) throws IOException {
+        if (sources.isEmpty()) {
+            return;
+        }
+        final int copyThreads = Math.max(1, threads / Math.min(threads, sources.size()));
+        forEach("move", sources, new Operation() {
+            @Override
+            public void apply(Path source) throws IOException {
+                copy(source.toFile(), destination.resolve(source.getFileName()).toFile(), copyThreads);
+            }
+        });
+        List<File> files = new ArrayList<File>(sources.size());
+        for (Path source : sources) {
+            files.add(source.toFile());
+        }
+        remove(files);
+    }
+
+    private void copy(File source, File destination) throws IOException {
+        copy(source, destination, threads);
+    }
+
+    private void copy(File source, File destination, int copyThreads) throws IOException {
+        long start = System.nanoTime();
+        FileCopier copier = new FileCopier();
+        copier.setThreads(copyThreads);
+        if (source.isDirectory()) {
+            copier.copyDirectory(source, destination);
+        } else {
+            copier.copyFile(source, destination);
+        }
+        record("copy", System.nanoTime() - start, copier.getCopied());
+    }
+
+    private void forEach(final String name, List<Path> paths, final Operation operation) throws IOException {
+        if (paths.isEmpty()) {
+            return;
+        }
+        if (threads == 1 || paths.size() == 1) {
+            for (Path path : paths) {
+                long start = System.nanoTime();
+                operation.apply(path);
+                record(name, System.nanoTime() - start);
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, paths.size()),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(paths.size());
+            for (final Path path : paths) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        long start = System.nanoTime();
+                        operation.apply(path);
+                        record(name, System.nanoTime() - start);
+                        return null;
+                    }
+                }));
+            }
+            IOException failure = null;
+            int failures = 0;
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                } catch (ExecutionException e) {
+                    failures++;
+                    if (failure == null) {
+                        failure = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                                : new IOException(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                logger.error("{} of {} {} operations failed", failures, paths.size(), name);
+                throw failure;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void record(String name, long nanos) {
+        record(name, nanos, 1L);
+    }
+
+    private void record(String name, long nanos, long count) {
+        AtomicLong[] values = statistics.get(name);
+        if (values == null) {
+            statistics.putIfAbsent(name, new AtomicLong[] { new AtomicLong(), new AtomicLong() });
+            values = statistics.get(name);
+        }
+        values[0].addAndGet(count);
+        values[1].addAndGet(nanos);
+    }
+
+    /**
+     * @return how often each operation was done
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> ret = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong[]> entry : statistics.entrySet()) {
+            ret.put(entry.getKey(), entry.getValue()[0].get());
+        }
+        return ret;
+    }
+
+    /**
+     * @return milliseconds spent in each operation, summed over the threads
+     */
+    public Map<String, Long> getTimes() {
+        Map<String, Long> ret = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong[]> entry : statistics.entrySet()) {
+            ret.put(entry.getKey(), entry.getValue()[1].get() / 1000000L);
+        }
+        return ret;
+    }
+
+    /**
+     * Adds the counts (files.<operation>) and times (time.<operation>) to the counters of a module run.
+     */
+    public void addCounters(ModuleMetrics metrics) {
+        for (Map.Entry<String, Long> entry : getCounts().entrySet()) {
+            metrics.counter("files." + entry.getKey()).addAndGet(entry.getValue());
+        }
+        for (Map.Entry<String, Long> entry : getTimes().entrySet()) {
+            metrics.counter("time." + entry.getKey()).addAndGet(entry.getValue());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BulkFileOperations [threads=%s, counts=%s, times=%s]", threads, getCounts(), getTimes());
+    }
+
+    interface Operation {
+
+        void apply(Path path) throws IOException;
+
+    }
+
+}
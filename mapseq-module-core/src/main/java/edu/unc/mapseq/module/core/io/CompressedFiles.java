@@ -0,0 +1,333 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens files the modules read and write whether they are compressed or not. Inputs are told apart by their first
+ * bytes (see GzipFormat): gzip and BGZF ones are inflated by a GzipDecompressor on a thread of their own, BGZF blocks
+ * on a pool, a few megabytes ahead of the reader. Outputs named *.gz or *.bgz are written as BGZF (which every gzip
+ * reader takes) by a ParallelDeflater, the writer only handing over filled buffers.
+ *
+ * @author jdr0887
+ */
+public class CompressedFiles {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompressedFiles.class);
+
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    // blocks waiting between the thread (de)compressing and the module
+    private static final int QUEUE_SIZE = 8;
+
+    public static final int DEFAULT_LEVEL = 6;
+
+    private CompressedFiles() {
+        super();
+    }
+
+    public static boolean isCompressedName(File file) {
+        String name = file.getName();
+        return name.endsWith(".gz") || name.endsWith(".bgz") || name.endsWith(".bgzf");
+    }
+
+    public static InputStream newInputStream(File file) throws IOException {
+        return newInputStream(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads
+     *            inflating BGZF blocks, 1 when many files are open at once
+     */
+    public static InputStream newInputStream(final File file, int threads) throws IOException {
+        GzipFormat format = GzipFormat.of(file);
+        if (format == GzipFormat.PLAIN) {
+            return new FileInputStream(file);
+        }
+        logger.debug("{}: {}, inflating ahead", file.getAbsolutePath(), format);
+        final Pipe pipe = new Pipe();
+        final GzipDecompressor decompressor = new GzipDecompressor();
+        decompressor.setThreads(threads);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // not closed on failure, the reader has to see the error rather than the end of the data
+                OutputStream out = new PipeOutputStream(pipe, null);
+                try {
+                    decompressor.decompress(Collections.singletonList(file), out);
+                    out.close();
+                } catch (Throwable e) {
+                    pipe.fail(e);
+                }
+            }
+        }, String.format("inflate %s", file.getName()));
+        thread.setDaemon(true);
+        thread.start();
+        return new PipeInputStream(pipe, thread);
+    }
+
+    /**
+     * Compressed when the name says so.
+     */
+    public static OutputStream newOutputStream(File file) throws IOException {
+        return newOutputStream(file, DEFAULT_LEVEL, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static OutputStream newOutputStream(File file, int level, int threads) throws IOException {
+        if (!isCompressedName(file)) {
+            return new FileOutputStream(file);
+        }
+        logger.debug("{}: BGZF, level {} on {} threads", file.getAbsolutePath(), level, threads);
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BLOCK_SIZE);
+        final Pipe pipe = new Pipe();
+        final ParallelDeflater deflater = new ParallelDeflater(level, threads);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (InputStream in = new PipeInputStream(pipe, null)) {
+                    deflater.bgzf(in, out);
+                    out.close();
+                } catch (Throwable e) {
+                    pipe.fail(e);
+                    try {
+                        out.close();
+                    } catch (IOException e1) {
+                        // the first failure is the one reported
+                    }
+                }
+            }
+        }, String.format("deflate %s", file.getName()));
+        thread.setDaemon(true);
+        thread.start();
+        return new PipeOutputStream(pipe, thread);
+    }
+
+    /**
+     * A reader in the platform charset, as FileReader.
+     */
+    public static BufferedReader newBufferedReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(newInputStream(file)));
+    }
+
+    /**
+     * A writer in the platform charset, as FileWriter.
+     */
+    public static BufferedWriter newBufferedWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(newOutputStream(file)));
+    }
+
+    /**
+     * Blocks handed from one thread to another; either side failing or going away makes the other one fail rather
+     * than wait forever.
+     */
+    static class Pipe {
+
+        private static final byte[] EOF = new byte[0];
+
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(QUEUE_SIZE);
+
+        private volatile Throwable error;
+
+        private volatile boolean closed = false;
+
+        void put(byte[] block) throws IOException {
+            try {
+                while (!queue.offer(block, 100, TimeUnit.MILLISECONDS)) {
+                    check();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        byte[] take() throws IOException {
+            try {
+                byte[] block;
+                while ((block = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                    check();
+                }
+                return block;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        void fail(Throwable e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+
+        void check() throws IOException {
+            Throwable e = error;
+            if (e instanceof IOException) {
+                throw new IOException(e.getMessage(), e);
+            }
+            if (e != null) {
+                throw new IOException(e);
+            }
+            if (closed) {
+                throw new IOException("the other end of the pipe is closed");
+            }
+        }
+
+    }
+
+    static class PipeInputStream extends InputStream {
+
+        private final Pipe pipe;
+
+        // the producer, stopped when this end is closed early
+        private final Thread thread;
+
+        private byte[] block = new byte[0];
+
+        private int position = 0;
+
+        private boolean eof = false;
+
+        public PipeInputStream(Pipe pipe, Thread thread) {
+            super();
+            this.pipe = pipe;
+            this.thread = thread;
+        }
+
+        private boolean next() throws IOException {
+            while (!eof && position == block.length) {
+                block = pipe.take();
+                position = 0;
+                if (block == Pipe.EOF) {
+                    eof = true;
+                }
+            }
+            return !eof;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return next() ? block[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!next()) {
+                return -1;
+            }
+            int n = Math.min(len, block.length - position);
+            System.arraycopy(block, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return block.length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!eof) {
+                pipe.closed = true;
+                if (thread != null) {
+                    thread.interrupt();
+                }
+            }
+        }
+
+    }
+
+    static class PipeOutputStream extends OutputStream {
+
+        private final Pipe pipe;
+
+        // the consumer, waited for on close
+        private final Thread thread;
+
+        private byte[] block = new byte[BLOCK_SIZE];
+
+        private int length = 0;
+
+        private boolean closed = false;
+
+        public PipeOutputStream(Pipe pipe, Thread thread) {
+            super();
+            this.pipe = pipe;
+            this.thread = thread;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == block.length) {
+                send();
+            }
+            block[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == block.length) {
+                    send();
+                }
+                int n = Math.min(len, block.length - length);
+                System.arraycopy(b, off, block, length, n);
+                length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void send() throws IOException {
+            pipe.check();
+            pipe.put(length == block.length ? block : Arrays.copyOf(block, length));
+            block = new byte[BLOCK_SIZE];
+            length = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (length > 0) {
+                send();
+            }
+            pipe.put(Pipe.EOF);
+            if (thread != null) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                pipe.check();
+            }
+        }
+
+    }
+
+}
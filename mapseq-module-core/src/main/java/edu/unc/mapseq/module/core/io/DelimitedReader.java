@@ -0,0 +1,416 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads delimited text (tsv, bed, pileup, sam) a line at a time out of one reusable byte buffer. The fields of the
+ * current line are slices of that buffer and numbers are parsed straight from the bytes, so a record costs no objects
+ * unless a field is asked for as a String.
+ *
+ * With a delimiter every delimiter starts a new field and empty fields are kept, like String.split without dropping
+ * trailing ones; without one fields are runs of blanks and tabs, like StringTokenizer. A trailing \r is not part of the
+ * line, as with BufferedReader.
+ *
+ * @author jdr0887
+ */
+public class DelimitedReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final InputStream in;
+
+    private final byte delimiter;
+
+    private final boolean whitespace;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+
+    // valid bytes are buffer[position, limit)
+    private int position = 0;
+
+    private int limit = 0;
+
+    private boolean eof = false;
+
+    private int lineStart;
+
+    private int lineEnd;
+
+    private int[] starts = new int[16];
+
+    private int[] ends = new int[16];
+
+    private int fieldCount = 0;
+
+    private long lineNumber = 0L;
+
+    private long bytesRead = 0L;
+
+    public DelimitedReader(InputStream in, char delimiter) {
+        super();
+        this.in = in;
+        this.delimiter = (byte) delimiter;
+        this.whitespace = false;
+    }
+
+    /**
+     * Fields separated by runs of blanks and tabs.
+     */
+    public DelimitedReader(InputStream in) {
+        super();
+        this.in = in;
+        this.delimiter = 0;
+        this.whitespace = true;
+    }
+
+    public DelimitedReader(File file, char delimiter) throws IOException {
+        this(CompressedFiles.newInputStream(file), delimiter);
+    }
+
+    public DelimitedReader(File file) throws IOException {
+        this(CompressedFiles.newInputStream(file));
+    }
+
+    /**
+     * Moves to the next line.
+     *
+     * @return false at the end of the input
+     */
+    public boolean next() throws IOException {
+        int newline = indexOfNewline(position);
+        while (newline == -1) {
+            if (eof) {
+                if (position == limit) {
+                    return false;
+                }
+                // the last line has no \n
+                newline = limit;
+                break;
+            }
+            int searched = limit - position;
+            fill();
+            newline = indexOfNewline(position + searched);
+        }
+        lineStart = position;
+        lineEnd = newline;
+        position = newline < limit ? newline + 1 : limit;
+        if (lineEnd > lineStart && buffer[lineEnd - 1] == '\r') {
+            lineEnd--;
+        }
+        lineNumber++;
+        split();
+        return true;
+    }
+
+    private int indexOfNewline(int from) {
+        for (int i = from; i < limit; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            // a line longer than the buffer
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read == -1) {
+            eof = true;
+        } else {
+            limit += read;
+            bytesRead += read;
+        }
+    }
+
+    private void split() {
+        fieldCount = 0;
+        if (whitespace) {
+            int i = lineStart;
+            while (true) {
+                while (i < lineEnd && isBlank(buffer[i])) {
+                    i++;
+                }
+                if (i == lineEnd) {
+                    break;
+                }
+                int start = i;
+                while (i < lineEnd && !isBlank(buffer[i])) {
+                    i++;
+                }
+                addField(start, i);
+            }
+            return;
+        }
+        int start = lineStart;
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (buffer[i] == delimiter) {
+                addField(start, i);
+                start = i + 1;
+            }
+        }
+        addField(start, lineEnd);
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\f';
+    }
+
+    /**
+     * @return the 1 based number of the current line
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * The buffer the current line and its fields are slices of, only good until the next call to next().
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    public int getLineEnd() {
+        return lineEnd;
+    }
+
+    public int getFieldStart(int field) {
+        check(field);
+        return starts[field];
+    }
+
+    public int getFieldEnd(int field) {
+        check(field);
+        return ends[field];
+    }
+
+    public int getFieldLength(int field) {
+        check(field);
+        return ends[field] - starts[field];
+    }
+
+    private void check(int field) {
+        if (field < 0 || field >= fieldCount) {
+            throw new IndexOutOfBoundsException(
+                    String.format("line %d has %d fields, there is no field %d", lineNumber, fieldCount, field));
+        }
+    }
+
+    public boolean isEmpty() {
+        return lineEnd == lineStart;
+    }
+
+    public boolean startsWith(char c) {
+        return lineEnd > lineStart && buffer[lineStart] == (byte) c;
+    }
+
+    public String getLine() {
+        return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.ISO_8859_1);
+    }
+
+    public String getString(int field) {
+        check(field);
+        return new String(buffer, starts[field], ends[field] - starts[field], StandardCharsets.ISO_8859_1);
+    }
+
+    public int getInt(int field) {
+        check(field);
+        return parseInt(buffer, starts[field], ends[field]);
+    }
+
+    public long getLong(int field) {
+        check(field);
+        return parseLong(buffer, starts[field], ends[field]);
+    }
+
+    public double getDouble(int field) {
+        check(field);
+        return parseDouble(buffer, starts[field], ends[field]);
+    }
+
+    /**
+     * Compares a field with a String of ASCII characters, so a key seen on the line before can be reused without
+     * building a new String.
+     */
+    public boolean fieldEquals(int field, String value) {
+        check(field);
+        int start = starts[field];
+        int length = ends[field] - start;
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[start + i] != (byte) value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean fieldContains(int field, byte[] value) {
+        check(field);
+        int last = ends[field] - value.length;
+        outer: for (int i = starts[field]; i <= last; i++) {
+            for (int j = 0; j < value.length; j++) {
+                if (buffer[i + j] != value[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Integer.parseInt on bytes, leading and trailing blanks allowed.
+     */
+    public static int parseInt(byte[] b, int start, int end) {
+        long value = parseLong(b, start, end, "int");
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw invalid("int", b, start, end);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Long.parseLong on bytes, leading and trailing blanks allowed.
+     */
+    public static long parseLong(byte[] b, int start, int end) {
+        return parseLong(b, start, end, "long");
+    }
+
+    private static long parseLong(byte[] b, int start, int end, String type) {
+        int i = start;
+        int last = end;
+        while (i < last && isBlank(b[i])) {
+            i++;
+        }
+        while (last > i && isBlank(b[last - 1])) {
+            last--;
+        }
+        boolean negative = false;
+        if (i < last && (b[i] == '-' || b[i] == '+')) {
+            negative = b[i] == '-';
+            i++;
+        }
+        if (i == last) {
+            throw invalid(type, b, start, end);
+        }
+        // accumulated negative, Long.MIN_VALUE has no positive counterpart
+        long value = 0L;
+        for (; i < last; i++) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                throw invalid(type, b, start, end);
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                throw invalid(type, b, start, end);
+            }
+            return -value;
+        }
+        return value;
+    }
+
+    /**
+     * Double.parseDouble on bytes, leading and trailing blanks allowed. Plain decimals of up to 15 significant digits
+     * are converted exactly without building a String (both the digits and the power of ten are exact doubles, so the
+     * one division rounds correctly); exponents, longer ones, NaN and Infinity go through Double.parseDouble.
+     */
+    public static double parseDouble(byte[] b, int start, int end) {
+        int i = start;
+        int last = end;
+        while (i < last && isBlank(b[i])) {
+            i++;
+        }
+        while (last > i && isBlank(b[last - 1])) {
+            last--;
+        }
+        int from = i;
+        boolean negative = false;
+        if (i < last && (b[i] == '-' || b[i] == '+')) {
+            negative = b[i] == '-';
+            i++;
+        }
+        long digits = 0L;
+        int significant = 0;
+        int fraction = -1;
+        boolean any = false;
+        for (; i < last; i++) {
+            byte c = b[i];
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (significant > 0 || c != '0') {
+                    significant++;
+                }
+                digits = digits * 10 + (c - '0');
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            } else if (c == '.' && fraction == -1) {
+                fraction = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == last && any && significant <= 15 && fraction <= 22) {
+            double value = fraction > 0 ? digits / POWERS_OF_TEN[fraction] : digits;
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(new String(b, from, last - from, StandardCharsets.ISO_8859_1));
+        } catch (NumberFormatException e) {
+            throw invalid("double", b, start, end);
+        }
+    }
+
+    private static NumberFormatException invalid(String type, byte[] b, int start, int end) {
+        return new NumberFormatException(String.format("not a valid %s: \"%s\"", type,
+                new String(b, start, end - start, StandardCharsets.ISO_8859_1)));
+    }
+
+}
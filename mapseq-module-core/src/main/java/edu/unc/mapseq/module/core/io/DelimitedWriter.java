@@ -0,0 +1,258 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes delimited text through one reusable byte buffer, formatting numbers into it directly instead of going through
+ * String.format and a Writer: writer.append(name).tab().append(start).tab().append(score, 6).newLine().
+ *
+ * Fixed point doubles come out as Formatter's %.nf would write them: the shortest digits that tell the double apart
+ * (those of Double.toString) rounded half up to n decimals.
+ *
+ * @author jdr0887
+ */
+public class DelimitedWriter implements Closeable, Flushable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+
+    private final OutputStream out;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int length = 0;
+
+    // a long's digits, or a double's before rounding
+    private final byte[] digits = new byte[32];
+
+    private long bytesWritten = 0L;
+
+    public DelimitedWriter(OutputStream out) {
+        super();
+        this.out = out;
+    }
+
+    public DelimitedWriter(File file) throws IOException {
+        this(CompressedFiles.newOutputStream(file));
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten + length;
+    }
+
+    private void ensure(int n) throws IOException {
+        if (length + n > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (length > 0) {
+            out.write(buffer, 0, length);
+            bytesWritten += length;
+            length = 0;
+        }
+    }
+
+    public DelimitedWriter append(char c) throws IOException {
+        if (c < 0x80) {
+            ensure(1);
+            buffer[length++] = (byte) c;
+            return this;
+        }
+        return append(String.valueOf(c));
+    }
+
+    public DelimitedWriter tab() throws IOException {
+        return append('\t');
+    }
+
+    public DelimitedWriter newLine() throws IOException {
+        return append('\n');
+    }
+
+    /**
+     * Characters past ASCII are written as UTF-8.
+     */
+    public DelimitedWriter append(CharSequence s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            ensure(4);
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xc0 | c >> 6);
+                buffer[length++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                buffer[length++] = (byte) (0xf0 | codePoint >> 18);
+                buffer[length++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                buffer[length++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                buffer[length++] = (byte) (0x80 | codePoint & 0x3f);
+            } else {
+                buffer[length++] = (byte) (0xe0 | c >> 12);
+                buffer[length++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buffer[length++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        return this;
+    }
+
+    public DelimitedWriter append(byte[] b, int offset, int n) throws IOException {
+        if (n > buffer.length) {
+            flushBuffer();
+            out.write(b, offset, n);
+            bytesWritten += n;
+            return this;
+        }
+        ensure(n);
+        System.arraycopy(b, offset, buffer, length, n);
+        length += n;
+        return this;
+    }
+
+    /**
+     * A field of a DelimitedReader's current line, as is.
+     */
+    public DelimitedWriter append(DelimitedReader reader, int field) throws IOException {
+        return append(reader.getBuffer(), reader.getFieldStart(field), reader.getFieldLength(field));
+    }
+
+    public DelimitedWriter append(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            return append(MIN_LONG, 0, MIN_LONG.length);
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (n > 0) {
+            buffer[length++] = digits[--n];
+        }
+        return this;
+    }
+
+    /**
+     * %.nf
+     */
+    public DelimitedWriter append(double value, int decimals) throws IOException {
+        return append(value, decimals, 0);
+    }
+
+    /**
+     * %width.nf, right aligned with blanks
+     */
+    public DelimitedWriter append(double value, int decimals, int width) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            String s = Double.isNaN(value) ? "NaN" : value > 0 ? "Infinity" : "-Infinity";
+            pad(width - s.length());
+            return append(s);
+        }
+        String s = Double.toString(value);
+        boolean negative = s.charAt(0) == '-';
+        // s is [-]d+.d+ or [-]d.d+E[-]d+, collect its digits without leading zeros and where the point goes
+        int n = 0;
+        int pointAt = 0;
+        boolean point = false;
+        int exponent = 0;
+        for (int i = negative ? 1 : 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '.') {
+                point = true;
+            } else if (c == 'E') {
+                exponent = Integer.parseInt(s.substring(i + 1));
+                break;
+            } else if (n > 0 || c != '0') {
+                digits[n++] = (byte) c;
+                if (!point) {
+                    pointAt++;
+                }
+            } else if (point) {
+                // a zero after the point and before any other digit
+                pointAt--;
+            }
+        }
+        // the value is 0.digits * 10^decimalExponent
+        int decimalExponent = pointAt + exponent;
+        if (n == 0) {
+            decimalExponent = 1;
+        }
+        int keep = decimalExponent + decimals;
+        if (keep < 0) {
+            n = 0;
+        } else if (keep < n) {
+            boolean up = digits[keep] >= '5';
+            n = keep;
+            for (int i = n - 1; up && i >= 0; i--) {
+                if (digits[i] == '9') {
+                    digits[i] = '0';
+                } else {
+                    digits[i]++;
+                    up = false;
+                }
+            }
+            if (up) {
+                // 9.99 to 10.0
+                System.arraycopy(digits, 0, digits, 1, n);
+                digits[0] = '1';
+                n++;
+                decimalExponent++;
+            }
+        }
+        int integerDigits = Math.max(1, decimalExponent);
+        pad(width - ((negative ? 1 : 0) + integerDigits + (decimals > 0 ? 1 + decimals : 0)));
+        ensure(integerDigits + decimals + 2);
+        if (negative) {
+            buffer[length++] = '-';
+        }
+        if (decimalExponent <= 0) {
+            buffer[length++] = '0';
+        } else {
+            for (int i = 0; i < decimalExponent; i++) {
+                buffer[length++] = i < n ? digits[i] : (byte) '0';
+            }
+        }
+        if (decimals > 0) {
+            buffer[length++] = '.';
+            for (int i = 0; i < decimals; i++) {
+                int position = decimalExponent + i;
+                buffer[length++] = position >= 0 && position < n ? digits[position] : (byte) '0';
+            }
+        }
+        return this;
+    }
+
+    private void pad(int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            append(' ');
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,416 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * External merge sort of text lines. The inputs are read into run buffers (one line is a slice of the buffer, nothing
+ * is decoded); full buffers are sorted on a pool of threads while the next one is filled and spilled as gzip (level 1)
+ * run files, which are finally merged with a KWayMerger. When everything fits in one buffer, nothing is spilled.
+ *
+ * The run buffers are allocated once and handed back and forth between the reader and the sorting threads, so memory
+ * stays at (threads + 1) buffers of bufferSize / (threads + 1) bytes, whatever the input size. Runs are sorted stable
+ * and merged in the order they were read, so with a LineComparator the output is that of sort with LC_ALL=C.
+ *
+ * @author jdr0887
+ */
+public class ExternalSorter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExternalSorter.class);
+
+    private static final int MIN_RUN_SIZE = 1 << 20;
+
+    private static final int MAX_RUN_SIZE = Integer.MAX_VALUE - 16;
+
+    private final LineComparator comparator;
+
+    private long bufferSize = 512L * 1024 * 1024;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private File tmpDirectory = new File(System.getProperty("java.io.tmpdir"));
+
+    private boolean compress = true;
+
+    private int fanIn = 128;
+
+    public ExternalSorter(LineComparator comparator) {
+        super();
+        this.comparator = comparator;
+    }
+
+    public long getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @param bufferSize
+     *            bytes for all run buffers together
+     */
+    public void setBufferSize(long bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public File getTmpDirectory() {
+        return tmpDirectory;
+    }
+
+    public void setTmpDirectory(File tmpDirectory) {
+        this.tmpDirectory = tmpDirectory;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public int getFanIn() {
+        return fanIn;
+    }
+
+    /**
+     * @param fanIn
+     *            most runs merged at once, more runs are merged in several passes
+     */
+    public void setFanIn(int fanIn) {
+        this.fanIn = Math.max(2, fanIn);
+    }
+
+    /**
+     * @return the number of lines sorted
+     */
+    public long sort(List<File> inputs, File output) throws IOException {
+        long inputSize = 0L;
+        for (File input : inputs) {
+            inputSize += input.length();
+        }
+        // no point in buffers larger than the input
+        long runSize = Math.min(bufferSize / (threads + 1), inputSize + 1);
+        runSize = Math.max(MIN_RUN_SIZE, Math.min(MAX_RUN_SIZE, runSize));
+        logger.debug("sorting {} bytes in runs of {} bytes on {} threads", inputSize, runSize, threads);
+
+        final AtomicInteger runCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "sort-run-" + runCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        BlockingQueue<Run> free = new ArrayBlockingQueue<Run>(threads + 1);
+        int allocated = 0;
+        List<Future<File>> spills = new ArrayList<Future<File>>();
+        List<File> runFiles = new ArrayList<File>();
+        List<File> mergedFiles = new ArrayList<File>();
+        long lines = 0L;
+        try {
+            Run run = new Run((int) runSize);
+            allocated++;
+            for (File input : inputs) {
+                try (InputStream in = CompressedFiles.newInputStream(input)) {
+                    while (true) {
+                        if (run.limit == run.data.length) {
+                            if (run.count == 0) {
+                                // one line longer than the buffer
+                                run.data = Arrays.copyOf(run.data, (int) Math.min(MAX_RUN_SIZE, 2L * run.data.length));
+                            } else {
+                                Run next;
+                                if (allocated < threads + 1) {
+                                    next = new Run(run.data.length);
+                                    allocated++;
+                                } else {
+                                    next = take(free);
+                                }
+                                // the partial last line moves to the next run, which may be smaller when this
+                                // one grew for a long line
+                                int carry = run.limit - run.lineStart;
+                                if (next.data.length < carry) {
+                                    next.data = new byte[run.data.length];
+                                }
+                                System.arraycopy(run.data, run.lineStart, next.data, 0, carry);
+                                next.limit = carry;
+                                run.limit = run.lineStart;
+                                lines += run.count;
+                                spills.add(executor.submit(new Spill(run, newRunFile(), free)));
+                                run = next;
+                            }
+                        }
+                        int n = in.read(run.data, run.limit, run.data.length - run.limit);
+                        if (n == -1) {
+                            break;
+                        }
+                        run.scan(run.limit, run.limit + n);
+                        run.limit += n;
+                    }
+                }
+                // a last line without a newline is a line too
+                if (run.lineStart < run.limit) {
+                    run.add(run.lineStart, run.limit);
+                    run.lineStart = run.limit;
+                }
+            }
+            lines += run.count;
+
+            if (spills.isEmpty()) {
+                run.sort(comparator);
+                try (OutputStream out = new BufferedOutputStream(CompressedFiles.newOutputStream(output), 1 << 16)) {
+                    run.write(out);
+                }
+                return lines;
+            }
+            spills.add(executor.submit(new Spill(run, newRunFile(), free)));
+            for (Future<File> spill : spills) {
+                runFiles.add(get(spill));
+            }
+            logger.debug("merging {} runs", runFiles.size());
+
+            KWayMerger merger = new KWayMerger(comparator);
+            while (runFiles.size() > fanIn) {
+                List<File> merged = new ArrayList<File>();
+                for (int i = 0; i < runFiles.size(); i += fanIn) {
+                    List<File> group = runFiles.subList(i, Math.min(runFiles.size(), i + fanIn));
+                    File runFile = newRunFile();
+                    merged.add(runFile);
+                    mergedFiles.add(runFile);
+                    try (OutputStream out = openRun(runFile)) {
+                        merger.merge(group, out);
+                    }
+                    for (File f : group) {
+                        f.delete();
+                    }
+                }
+                runFiles = merged;
+            }
+            merger.merge(runFiles, output);
+            return lines;
+        } finally {
+            executor.shutdownNow();
+            for (Future<File> spill : spills) {
+                if (spill.isDone() && !spill.isCancelled()) {
+                    try {
+                        spill.get().delete();
+                    } catch (InterruptedException | ExecutionException e) {
+                        // nothing was written
+                    }
+                }
+            }
+            for (File runFile : runFiles) {
+                runFile.delete();
+            }
+            for (File runFile : mergedFiles) {
+                runFile.delete();
+            }
+        }
+    }
+
+    private File newRunFile() throws IOException {
+        return File.createTempFile("sort.", compress ? ".run.gz" : ".run", tmpDirectory);
+    }
+
+    private OutputStream openRun(File runFile) throws IOException {
+        if (compress) {
+            return new GZIPOutputStream(new FileOutputStream(runFile), 1 << 16) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+        }
+        return new BufferedOutputStream(new FileOutputStream(runFile), 1 << 16);
+    }
+
+    private static Run take(BlockingQueue<Run> free) throws IOException {
+        try {
+            return free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private static File get(Future<File> spill) throws IOException {
+        try {
+            return spill.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    class Spill implements Callable<File> {
+
+        private final Run run;
+
+        private final File runFile;
+
+        private final BlockingQueue<Run> free;
+
+        public Spill(Run run, File runFile, BlockingQueue<Run> free) {
+            super();
+            this.run = run;
+            this.runFile = runFile;
+            this.free = free;
+        }
+
+        @Override
+        public File call() throws Exception {
+            try {
+                run.sort(comparator);
+                try (OutputStream out = openRun(runFile)) {
+                    run.write(out);
+                }
+                logger.debug("{}: {} lines", runFile.getAbsolutePath(), run.count);
+                return runFile;
+            } finally {
+                run.clear();
+                free.offer(run);
+            }
+        }
+
+    }
+
+    /**
+     * A buffer of lines, each one a start and end offset into data.
+     */
+    static class Run {
+
+        private byte[] data;
+
+        private int limit = 0;
+
+        private int lineStart = 0;
+
+        private int[] starts = new int[1024];
+
+        private int[] ends = new int[1024];
+
+        private int[] order;
+
+        private int count = 0;
+
+        public Run(int size) {
+            super();
+            this.data = new byte[size];
+        }
+
+        void scan(int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (data[i] == '\n') {
+                    // a \r before the \n stays, as with sort
+                    add(lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+        }
+
+        void add(int start, int end) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+
+        void sort(LineComparator comparator) {
+            order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            mergeSort(comparator, order, new int[count], 0, count);
+        }
+
+        /**
+         * Stable, so equal lines keep the order they were read in.
+         */
+        private void mergeSort(LineComparator comparator, int[] a, int[] tmp, int from, int to) {
+            if (to - from < 16) {
+                for (int i = from + 1; i < to; i++) {
+                    int x = a[i];
+                    int j = i - 1;
+                    while (j >= from && compare(comparator, a[j], x) > 0) {
+                        a[j + 1] = a[j];
+                        j--;
+                    }
+                    a[j + 1] = x;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            mergeSort(comparator, a, tmp, from, middle);
+            mergeSort(comparator, a, tmp, middle, to);
+            if (compare(comparator, a[middle - 1], a[middle]) <= 0) {
+                return;
+            }
+            System.arraycopy(a, from, tmp, from, to - from);
+            int i = from;
+            int j = middle;
+            for (int k = from; k < to; k++) {
+                if (j >= to || (i < middle && compare(comparator, tmp[i], tmp[j]) <= 0)) {
+                    a[k] = tmp[i++];
+                } else {
+                    a[k] = tmp[j++];
+                }
+            }
+        }
+
+        private int compare(LineComparator comparator, int line1, int line2) {
+            return comparator.compare(data, starts[line1], ends[line1], data, starts[line2], ends[line2]);
+        }
+
+        void write(OutputStream out) throws IOException {
+            for (int i = 0; i < count; i++) {
+                int line = order[i];
+                out.write(data, starts[line], ends[line] - starts[line]);
+                out.write('\n');
+            }
+        }
+
+        void clear() {
+            limit = 0;
+            lineStart = 0;
+            count = 0;
+            order = null;
+        }
+
+    }
+
+}
@@ -0,0 +1,193 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Byte level concatenation with FileChannel.transferTo, which the kernel turns into sendfile/copy_file_range, so no
+ * byte is decoded or copied through the heap. The output is sized up front and, optionally, the start of the next input
+ * is read ahead while the current one is transferred.
+ *
+ * Gzip inputs are concatenated as they are (a gzip file may hold several members). For BGZF inputs the EOF marker
+ * of every input but the last is left out and one is added at the end when the last input has none, so the result is a
+ * valid BGZF file again. Compressed and uncompressed inputs can not be mixed.
+ *
+ * @author jdr0887
+ */
+public class FileConcatenator {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileConcatenator.class);
+
+    private static final long TRANSFER_SIZE = 64L * 1024 * 1024;
+
+    private boolean prefetch = false;
+
+    private long prefetchSize = 256L * 1024 * 1024;
+
+    public FileConcatenator() {
+        super();
+    }
+
+    public boolean isPrefetch() {
+        return prefetch;
+    }
+
+    public void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public long getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    /**
+     * @param prefetchSize
+     *            how much of the next input is read ahead
+     */
+    public void setPrefetchSize(long prefetchSize) {
+        this.prefetchSize = prefetchSize;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public long concatenate(List<File> inputs, File output) throws IOException {
+        GzipFormat format = null;
+        List<Long> lengths = new ArrayList<Long>(inputs.size());
+        long total = 0L;
+        int last = -1;
+        for (int i = 0; i < inputs.size(); i++) {
+            File input = inputs.get(i);
+            GzipFormat inputFormat = input.length() > 0 ? GzipFormat.of(input) : null;
+            if (inputFormat != null) {
+                last = i;
+                if (format == null) {
+                    format = inputFormat;
+                } else if ((format == GzipFormat.PLAIN) != (inputFormat == GzipFormat.PLAIN)) {
+                    throw new IOException(String.format("can not concatenate %s and %s inputs: %s", format,
+                            inputFormat, input.getAbsolutePath()));
+                } else if (format != inputFormat) {
+                    // BGZF next to plain gzip is still gzip
+                    format = GzipFormat.GZIP;
+                }
+            }
+            lengths.add(input.length());
+            total += input.length();
+        }
+
+        ExecutorService prefetcher = null;
+        if (prefetch && inputs.size() > 1) {
+            prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "concatenate-prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        long position = 0L;
+        boolean endsWithEOF = false;
+        try (RandomAccessFile raf = new RandomAccessFile(output, "rw"); FileChannel out = raf.getChannel()) {
+            raf.setLength(total);
+            Future<?> prefetched = null;
+            for (int i = 0; i < inputs.size(); i++) {
+                if (prefetched != null) {
+                    prefetched.cancel(true);
+                }
+                if (prefetcher != null && i + 1 < inputs.size()) {
+                    prefetched = prefetcher.submit(new Prefetch(inputs.get(i + 1), prefetchSize));
+                }
+                File input = inputs.get(i);
+                try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+                    long count = lengths.get(i);
+                    if (format == GzipFormat.BGZF && count > 0) {
+                        endsWithEOF = GzipFormat.hasBGZFEOF(in);
+                        if (endsWithEOF && i < last) {
+                            count -= GzipFormat.BGZF_EOF.length;
+                        }
+                    }
+                    logger.debug("{}: {} bytes at {}", input.getAbsolutePath(), count, position);
+                    position += transfer(in, count, out, position);
+                }
+            }
+            if (format == GzipFormat.BGZF && !endsWithEOF) {
+                ByteBuffer eof = ByteBuffer.wrap(GzipFormat.BGZF_EOF);
+                while (eof.hasRemaining()) {
+                    position += out.write(eof, position);
+                }
+            }
+            // inputs that shrank or dropped EOF markers
+            raf.setLength(position);
+        } finally {
+            if (prefetcher != null) {
+                prefetcher.shutdownNow();
+            }
+        }
+        return position;
+    }
+
+    private static long transfer(FileChannel in, long count, FileChannel out, long outPosition) throws IOException {
+        long transferred = 0L;
+        while (transferred < count) {
+            long n = in.transferTo(transferred, Math.min(TRANSFER_SIZE, count - transferred),
+                    out.position(outPosition + transferred));
+            if (n <= 0) {
+                // the input is shorter than when we looked at it
+                break;
+            }
+            transferred += n;
+        }
+        return transferred;
+    }
+
+    /**
+     * Reads the start of a file into nothing, just so it sits in the page cache when its turn comes.
+     */
+    static class Prefetch implements Runnable {
+
+        private final File file;
+
+        private final long size;
+
+        public Prefetch(File file, long size) {
+            super();
+            this.file = file;
+            this.size = size;
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long read = 0L;
+                while (read < size && !Thread.currentThread().isInterrupted()) {
+                    buffer.clear();
+                    int n = channel.read(buffer);
+                    if (n == -1) {
+                        break;
+                    }
+                    read += n;
+                }
+            } catch (IOException e) {
+                // just a hint
+            }
+        }
+
+    }
+
+}
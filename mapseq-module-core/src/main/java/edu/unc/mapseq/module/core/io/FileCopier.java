@@ -0,0 +1,422 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
+
+/**
+ * Copies files and directory trees on a bounded pool of threads. Incrementally, a destination file with the size and
+ * modification time of its source (and, with checksum, the same digest) is left alone and files in a destination
+ * directory that are not in the source are removed, so the destination ends up just like a fresh copy. Times within
+ * two seconds count as the same. Copies get the source's modification time once they are complete (and verified), so
+ * a copy cut short, or one that failed verification, is copied again next time.
+ *
+ * On the same filesystem files can be hard linked or reflinked instead (see LinkMode); reflinks are made by cp
+ * --reflink=always and fall back to a copy where the filesystem has none. With verify the digest of every copy is
+ * compared to the source's.
+ *
+ * @author jdr0887
+ */
+public class FileCopier {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileCopier.class);
+
+    private static final long TRANSFER_SIZE = 64L * 1024 * 1024;
+
+    // modification times this close are the same, some filesystems (FAT, SMB) only keep every other second
+    private static final long MODIFY_WINDOW = 2000L;
+
+    private int threads = 4;
+
+    private boolean incremental = false;
+
+    private boolean checksum = false;
+
+    private boolean verify = false;
+
+    private LinkMode linkMode = LinkMode.NONE;
+
+    private String digestAlgorithm = "MD5";
+
+    private final AtomicLong copied = new AtomicLong();
+
+    private final AtomicLong linked = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private final AtomicLong deleted = new AtomicLong();
+
+    private final AtomicLong bytesCopied = new AtomicLong();
+
+    public FileCopier() {
+        super();
+    }
+
+    /**
+     * A copier set up from the flags of a copy module, null being off (threads: 4).
+     */
+    public static FileCopier create(Boolean incremental, Boolean checksum, Boolean verify, LinkMode linkMode,
+            Integer threads) {
+        FileCopier copier = new FileCopier();
+        copier.setIncremental(incremental != null && incremental);
+        copier.setChecksum(checksum != null && checksum);
+        copier.setVerify(verify != null && verify);
+        copier.setLinkMode(linkMode);
+        if (threads != null) {
+            copier.setThreads(threads);
+        }
+        return copier;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isChecksum() {
+        return checksum;
+    }
+
+    /**
+     * @param checksum
+     *            compare digests, not just size and modification time, to find unchanged files
+     */
+    public void setChecksum(boolean checksum) {
+        this.checksum = checksum;
+    }
+
+    public boolean isVerify() {
+        return verify;
+    }
+
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    public LinkMode getLinkMode() {
+        return linkMode;
+    }
+
+    public void setLinkMode(LinkMode linkMode) {
+        this.linkMode = linkMode != null ? linkMode : LinkMode.NONE;
+    }
+
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    public void setDigestAlgorithm(String digestAlgorithm) {
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
+    public long getCopied() {
+        return copied.get();
+    }
+
+    public long getLinked() {
+        return linked.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getDeleted() {
+        return deleted.get();
+    }
+
+    public long getBytesCopied() {
+        return bytesCopied.get();
+    }
+
+    /**
+     * Adds what was copied, linked, skipped and deleted to the counters of a module run.
+     */
+    public void addCounters(ModuleMetrics metrics) {
+        metrics.counter("files.copied").addAndGet(copied.get());
+        metrics.counter("files.linked").addAndGet(linked.get());
+        metrics.counter("files.skipped").addAndGet(skipped.get());
+        metrics.counter("files.deleted").addAndGet(deleted.get());
+        metrics.counter(ModuleMetrics.BYTES_WRITTEN).addAndGet(bytesCopied.get());
+    }
+
+    public void copyFile(File source, File destination) throws IOException {
+        if (!incremental && destination.exists()) {
+            FileUtils.forceDelete(destination);
+        }
+        File parent = destination.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        copy(source.toPath(), destination.toPath(), isSameFileStore(source.toPath(), parent.toPath()));
+    }
+
+    public void copyDirectory(File source, File destination) throws IOException {
+        if (!incremental && destination.exists()) {
+            FileUtils.forceDelete(destination);
+        }
+        final Path sourcePath = source.toPath();
+        final Path destinationPath = destination.toPath();
+        Files.createDirectories(destinationPath);
+        final boolean sameFileStore = isSameFileStore(sourcePath, destinationPath);
+        final Set<Path> expected = new HashSet<Path>();
+        final List<Path[]> files = new ArrayList<Path[]>();
+
+        Files.walkFileTree(sourcePath, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                new SimpleFileVisitor<Path>() {
+
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                        Path target = destinationPath.resolve(sourcePath.relativize(dir).toString());
+                        expected.add(target);
+                        if (Files.isRegularFile(target)) {
+                            Files.delete(target);
+                        }
+                        Files.createDirectories(target);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        Path target = destinationPath.resolve(sourcePath.relativize(file).toString());
+                        expected.add(target);
+                        files.add(new Path[] { file, target });
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                });
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "copy");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(files.size());
+            for (final Path[] file : files) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        copy(file[0], file[1], sameFileStore);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (incremental) {
+            removeExtraneous(destinationPath, expected);
+        }
+    }
+
+    private void removeExtraneous(Path destination, final Set<Path> expected) throws IOException {
+        final List<Path> extraneous = new ArrayList<Path>();
+        Files.walkFileTree(destination, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!expected.contains(dir)) {
+                    extraneous.add(dir);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!expected.contains(file)) {
+                    extraneous.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+        });
+        for (Path path : extraneous) {
+            logger.debug("removing {}", path);
+            FileUtils.forceDelete(path.toFile());
+            deleted.incrementAndGet();
+        }
+    }
+
+    private void copy(Path source, Path destination, boolean sameFileStore) throws IOException {
+        if (Files.exists(destination)) {
+            if (incremental && isUpToDate(source, destination)) {
+                skipped.incrementAndGet();
+                return;
+            }
+            Files.delete(destination);
+        }
+
+        if (sameFileStore && linkMode == LinkMode.HARDLINK) {
+            Files.createLink(destination, source);
+            linked.incrementAndGet();
+            return;
+        }
+        if (sameFileStore && linkMode == LinkMode.REFLINK && reflink(source, destination)) {
+            linked.incrementAndGet();
+        } else {
+            transfer(source, destination);
+            bytesCopied.addAndGet(Files.size(destination));
+            copied.incrementAndGet();
+        }
+        if (verify && !Arrays.equals(digest(source), digest(destination))) {
+            // not left behind, an incremental copy would take it for up to date
+            Files.delete(destination);
+            throw new IOException(String.format("%s does not match %s after copying", destination, source));
+        }
+        // only once the copy is known to be good
+        Files.setLastModifiedTime(destination, Files.getLastModifiedTime(source));
+    }
+
+    private boolean isUpToDate(Path source, Path destination) throws IOException {
+        if (Files.isSameFile(source, destination)) {
+            return true;
+        }
+        if (Files.size(source) != Files.size(destination)) {
+            return false;
+        }
+        FileTime sourceTime = Files.getLastModifiedTime(source);
+        boolean sameTime = Math.abs(sourceTime.toMillis()
+                - Files.getLastModifiedTime(destination).toMillis()) <= MODIFY_WINDOW;
+        if (!checksum) {
+            return sameTime;
+        }
+        if (!Arrays.equals(digest(source), digest(destination))) {
+            return false;
+        }
+        if (!sameTime) {
+            // same content, only the time was off
+            Files.setLastModifiedTime(destination, sourceTime);
+        }
+        return true;
+    }
+
+    private static void transfer(Path source, Path destination) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(destination, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0L;
+            while (position < size) {
+                long n = in.transferTo(position, Math.min(TRANSFER_SIZE, size - position), out);
+                if (n <= 0) {
+                    break;
+                }
+                position += n;
+            }
+        }
+    }
+
+    private static boolean reflink(Path source, Path destination) throws IOException {
+        ProcessBuilder processBuilder = new ProcessBuilder("/bin/cp", "--reflink=always",
+                source.toAbsolutePath().toString(), destination.toAbsolutePath().toString());
+        processBuilder.redirectErrorStream(true);
+        processBuilder.redirectOutput(ProcessBuilder.Redirect.to(new File("/dev/null")));
+        try {
+            if (processBuilder.start().waitFor() == 0) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        // no reflinks on this filesystem
+        Files.deleteIfExists(destination);
+        return false;
+    }
+
+    private byte[] digest(Path file) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(digestAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                messageDigest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return messageDigest.digest();
+    }
+
+    private static boolean isSameFileStore(Path source, Path destination) {
+        try {
+            FileStore sourceStore = Files.getFileStore(source);
+            return sourceStore.equals(Files.getFileStore(destination));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "FileCopier [threads=%s, incremental=%s, checksum=%s, verify=%s, linkMode=%s, copied=%s, linked=%s, skipped=%s, deleted=%s, bytesCopied=%s]",
+                threads, incremental, checksum, verify, linkMode, copied, linked, skipped, deleted, bytesCopied);
+    }
+
+}
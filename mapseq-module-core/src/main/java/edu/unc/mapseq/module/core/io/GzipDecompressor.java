@@ -0,0 +1,350 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decompresses gzip files into one output, like zcat. BGZF inputs are cut into their blocks (each one a gzip member
+ * that says how long it is), which are inflated on a pool of threads and written in order. Other gzip inputs can not
+ * be cut up, so one thread inflates while another one writes; so is the rest of a BGZF input from the first member
+ * without a BC field on (plain gzip appended to it, say).
+ *
+ * @author jdr0887
+ */
+public class GzipDecompressor {
+
+    private static final Logger logger = LoggerFactory.getLogger(GzipDecompressor.class);
+
+    // compressed bytes handed to a thread at once
+    private static final int BATCH_SIZE = 1 << 20;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static final byte[] EOF = new byte[0];
+
+    // what readBlock returns for a gzip member that is not a BGZF block
+    static final byte[] GZIP_MEMBER = new byte[0];
+
+    private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private long bytesRead = 0L;
+
+    private long bytesWritten = 0L;
+
+    public GzipDecompressor() {
+        super();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public long decompress(List<File> inputs, File output) throws IOException {
+        try (OutputStream out = new FileOutputStream(output)) {
+            return decompress(inputs, out);
+        }
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public long decompress(List<File> inputs, OutputStream out) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "inflate");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long start = bytesWritten;
+        try {
+            for (File input : inputs) {
+                GzipFormat format = GzipFormat.of(input);
+                logger.debug("{}: {}", input.getAbsolutePath(), format);
+                switch (format) {
+                    case BGZF:
+                        decompressBGZF(input, out, executor);
+                        break;
+                    case GZIP:
+                        try (InputStream in = new FileInputStream(input)) {
+                            decompressGzip(in, out, executor);
+                        }
+                        break;
+                    default:
+                        throw new IOException(String.format("not in gzip format: %s", input.getAbsolutePath()));
+                }
+                bytesRead += input.length();
+            }
+            out.flush();
+        } finally {
+            executor.shutdownNow();
+        }
+        return bytesWritten - start;
+    }
+
+    private void decompressBGZF(File input, OutputStream out, ExecutorService executor) throws IOException {
+        // bounds the batches in flight, the writer takes them in the order they were read
+        BlockingQueue<Future<byte[]>> pending = new ArrayBlockingQueue<Future<byte[]>>(threads * 2);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(input), BUFFER_SIZE))) {
+            List<byte[]> batch = new ArrayList<byte[]>();
+            int batchSize = 0;
+            byte[] block;
+            while ((block = readBlock(in, input)) != null && block != GZIP_MEMBER) {
+                batch.add(block);
+                batchSize += block.length;
+                if (batchSize >= BATCH_SIZE) {
+                    submit(batch, pending, executor, out);
+                    batch = new ArrayList<byte[]>();
+                    batchSize = 0;
+                }
+            }
+            if (!batch.isEmpty()) {
+                submit(batch, pending, executor, out);
+            }
+            while (!pending.isEmpty()) {
+                write(out, get(pending.poll()));
+            }
+            if (block == GZIP_MEMBER) {
+                logger.debug("{}: plain gzip members after the BGZF blocks", input.getAbsolutePath());
+                decompressGzip(in, out, executor);
+            }
+        } finally {
+            for (Future<byte[]> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private void submit(final List<byte[]> batch, BlockingQueue<Future<byte[]>> pending, ExecutorService executor,
+            OutputStream out) throws IOException {
+        if (pending.remainingCapacity() == 0) {
+            write(out, get(pending.poll()));
+        }
+        pending.add(executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return inflate(batch);
+            }
+        }));
+    }
+
+    /**
+     * @return one whole BGZF block, null at the end of the file or GZIP_MEMBER, with the stream left at its start,
+     *         when the next gzip member has no BC field
+     */
+    static byte[] readBlock(DataInputStream in, File input) throws IOException {
+        byte[] header = new byte[12];
+        // the header and extra field, to go back to the start of a plain member
+        in.mark(12 + 0xffff);
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        header[0] = (byte) first;
+        in.readFully(header, 1, 11);
+        if (header[0] != 0x1f || header[1] != (byte) 0x8b) {
+            throw new IOException(String.format("%s: not a gzip member", input.getAbsolutePath()));
+        }
+        if ((header[3] & 0x04) == 0) {
+            in.reset();
+            return GZIP_MEMBER;
+        }
+        int xlen = (header[10] & 0xff) | (header[11] & 0xff) << 8;
+        byte[] extra = new byte[xlen];
+        in.readFully(extra);
+        int blockSize = -1;
+        for (int i = 0; i + 4 <= xlen;) {
+            int slen = (extra[i + 2] & 0xff) | (extra[i + 3] & 0xff) << 8;
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && slen == 2) {
+                blockSize = ((extra[i + 4] & 0xff) | (extra[i + 5] & 0xff) << 8) + 1;
+            }
+            i += 4 + slen;
+        }
+        if (blockSize == -1) {
+            in.reset();
+            return GZIP_MEMBER;
+        }
+        byte[] block = new byte[blockSize];
+        System.arraycopy(header, 0, block, 0, 12);
+        System.arraycopy(extra, 0, block, 12, xlen);
+        try {
+            in.readFully(block, 12 + xlen, blockSize - 12 - xlen);
+        } catch (EOFException e) {
+            throw new IOException(String.format("%s: truncated BGZF block", input.getAbsolutePath()), e);
+        }
+        return block;
+    }
+
+    static byte[] inflate(List<byte[]> blocks) throws IOException {
+        int size = 0;
+        for (byte[] block : blocks) {
+            size += isize(block);
+        }
+        byte[] ret = new byte[size];
+        int position = 0;
+        Inflater inflater = inflaters.get();
+        CRC32 crc = new CRC32();
+        for (byte[] block : blocks) {
+            int xlen = (block[10] & 0xff) | (block[11] & 0xff) << 8;
+            int isize = isize(block);
+            inflater.reset();
+            inflater.setInput(block, 12 + xlen, block.length - 20 - xlen);
+            try {
+                int n = 0;
+                while (n < isize) {
+                    int inflated = inflater.inflate(ret, position + n, isize - n);
+                    if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                        break;
+                    }
+                    n += inflated;
+                }
+                if (n != isize) {
+                    throw new IOException("BGZF block is shorter than its ISIZE");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+            crc.reset();
+            crc.update(ret, position, isize);
+            if ((int) crc.getValue() != readInt(block, block.length - 8)) {
+                throw new IOException("BGZF block CRC mismatch");
+            }
+            position += isize;
+        }
+        return ret;
+    }
+
+    private static int isize(byte[] block) {
+        return readInt(block, block.length - 4);
+    }
+
+    private static int readInt(byte[] b, int offset) {
+        return (b[offset] & 0xff) | (b[offset + 1] & 0xff) << 8 | (b[offset + 2] & 0xff) << 16
+                | (b[offset + 3] & 0xff) << 24;
+    }
+
+    /**
+     * Inflates compressed, gzip members to its end, on a thread of the pool while this one writes.
+     */
+    private void decompressGzip(final InputStream compressed, OutputStream out, ExecutorService executor)
+            throws IOException {
+        final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(4);
+        Future<Void> reader = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try (InputStream in = new GZIPInputStream(compressed, BUFFER_SIZE)) {
+                    while (true) {
+                        byte[] buffer = new byte[BUFFER_SIZE];
+                        int n = 0;
+                        int read;
+                        while (n < buffer.length && (read = in.read(buffer, n, buffer.length - n)) != -1) {
+                            n += read;
+                        }
+                        if (n == 0) {
+                            break;
+                        }
+                        buffers.put(n == buffer.length ? buffer : Arrays.copyOf(buffer, n));
+                        if (n < buffer.length) {
+                            break;
+                        }
+                    }
+                } finally {
+                    buffers.put(EOF);
+                }
+                return null;
+            }
+        });
+        boolean done = false;
+        try {
+            while (true) {
+                byte[] buffer = buffers.take();
+                if (buffer == EOF) {
+                    break;
+                }
+                write(out, buffer);
+            }
+            done = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            if (!done) {
+                // the writer failed, stop inflating
+                reader.cancel(true);
+            }
+        }
+        // rethrows what went wrong inflating
+        get(reader);
+    }
+
+    private void write(OutputStream out, byte[] buffer) throws IOException {
+        out.write(buffer);
+        bytesWritten += buffer.length;
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (CancellationException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Tells plain files, gzip files and BGZF files (the blocked gzip of samtools/tabix: every member carries a BC extra
+ * field with its size and the file ends with an empty member, the EOF marker) apart by their first bytes.
+ *
+ * @author jdr0887
+ */
+public enum GzipFormat {
+
+    PLAIN,
+
+    GZIP,
+
+    BGZF;
+
+    public static final byte[] BGZF_EOF = new byte[] { 0x1f, (byte) 0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00,
+            (byte) 0xff, 0x06, 0x00, 0x42, 0x43, 0x02, 0x00, 0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+            0x00, 0x00 };
+
+    public static GzipFormat of(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(18);
+            while (header.hasRemaining() && channel.read(header) != -1) {
+                // keep reading, the header is tiny
+            }
+            header.flip();
+            return of(header);
+        }
+    }
+
+    public static GzipFormat of(ByteBuffer header) {
+        int start = header.position();
+        if (header.remaining() < 2 || header.get(start) != 0x1f || header.get(start + 1) != (byte) 0x8b) {
+            return PLAIN;
+        }
+        // FEXTRA set, XLEN >= 6, subfield id 'B' 'C' with length 2
+        if (header.remaining() >= 16 && (header.get(start + 3) & 0x04) != 0 && header.get(start + 12) == 'B'
+                && header.get(start + 13) == 'C' && header.get(start + 14) == 2 && header.get(start + 15) == 0) {
+            return BGZF;
+        }
+        return GZIP;
+    }
+
+    /**
+     * @return true when the file ends with the BGZF EOF marker
+     */
+    public static boolean hasBGZFEOF(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < BGZF_EOF.length) {
+            return false;
+        }
+        ByteBuffer tail = ByteBuffer.allocate(BGZF_EOF.length);
+        long position = size - BGZF_EOF.length;
+        while (tail.hasRemaining()) {
+            int read = channel.read(tail, position);
+            if (read == -1) {
+                return false;
+            }
+            position += read;
+        }
+        return Arrays.equals(tail.array(), BGZF_EOF);
+    }
+
+}
@@ -0,0 +1,196 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Merges inputs that are each sorted by the same comparator in one linear pass: the head line of every input sits in
+ * a heap and the smallest one is written and replaced by the next line of its input. Lines that compare equal are
+ * written in input order, so merging the chunks of a stable sort is stable too.
+ *
+ * With a header prefix, the leading lines of every input that start with it (@ for SAM, # for VCF) are a header. The
+ * headers are written once, ahead of the data, as the union of all input headers in the order they were first seen,
+ * except that the last header line of the first input (the #CHROM line of a VCF) stays last.
+ *
+ * Gzip compressed inputs (ie the spilled runs of ExternalSorter) are read as they are: inflated ahead on a thread each
+ * (see CompressedFiles) when there are a few of them, inflated as they are read when there are more, so a wide merge
+ * holds one read buffer per input rather than a thread and several megabytes.
+ *
+ * @author jdr0887
+ */
+public class KWayMerger {
+
+    private static final Logger logger = LoggerFactory.getLogger(KWayMerger.class);
+
+    // inputs a merge inflates ahead, on a thread each
+    private static final int INFLATE_AHEAD_INPUTS = 4;
+
+    private final Comparator<byte[]> comparator;
+
+    private byte[] headerPrefix;
+
+    private int bufferSize = 1 << 16;
+
+    public KWayMerger(Comparator<byte[]> comparator) {
+        super();
+        this.comparator = comparator;
+    }
+
+    public String getHeaderPrefix() {
+        return headerPrefix != null ? new String(headerPrefix, StandardCharsets.UTF_8) : null;
+    }
+
+    public void setHeaderPrefix(String headerPrefix) {
+        this.headerPrefix = headerPrefix != null && headerPrefix.length() > 0
+                ? headerPrefix.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @param bufferSize
+     *            read buffer per input, the whole merge holds (inputs + 1) of them
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @return the number of data lines written
+     */
+    public long merge(List<File> inputs, File output) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(CompressedFiles.newOutputStream(output), bufferSize)) {
+            return merge(inputs, out);
+        }
+    }
+
+    /**
+     * @return the number of data lines written
+     */
+    public long merge(List<File> inputs, OutputStream out) throws IOException {
+        List<Cursor> cursors = new ArrayList<Cursor>(inputs.size());
+        try {
+            Set<ByteBuffer> headers = new LinkedHashSet<ByteBuffer>();
+            ByteBuffer lastHeader = null;
+            for (int i = 0; i < inputs.size(); i++) {
+                Cursor cursor = new Cursor(i, new LineReader(open(inputs.get(i), inputs.size()), bufferSize));
+                cursors.add(cursor);
+                cursor.line = cursor.reader.readLine();
+                while (headerPrefix != null && cursor.line != null && isHeader(cursor.line)) {
+                    ByteBuffer header = ByteBuffer.wrap(cursor.line);
+                    headers.add(header);
+                    if (i == 0) {
+                        lastHeader = header;
+                    }
+                    cursor.line = cursor.reader.readLine();
+                }
+            }
+            if (lastHeader != null) {
+                headers.remove(lastHeader);
+                headers.add(lastHeader);
+            }
+            for (ByteBuffer header : headers) {
+                out.write(header.array());
+                out.write('\n');
+            }
+
+            PriorityQueue<Cursor> heap = new PriorityQueue<Cursor>(Math.max(1, inputs.size()), new Comparator<Cursor>() {
+                @Override
+                public int compare(Cursor c1, Cursor c2) {
+                    int ret = comparator.compare(c1.line, c2.line);
+                    return ret != 0 ? ret : Integer.compare(c1.index, c2.index);
+                }
+            });
+            for (Cursor cursor : cursors) {
+                if (cursor.line != null) {
+                    heap.add(cursor);
+                }
+            }
+            long lines = 0L;
+            while (!heap.isEmpty()) {
+                Cursor cursor = heap.poll();
+                out.write(cursor.line);
+                out.write('\n');
+                lines++;
+                cursor.line = cursor.reader.readLine();
+                if (cursor.line != null) {
+                    heap.add(cursor);
+                }
+            }
+            out.flush();
+            logger.debug("merged {} lines from {} inputs", lines, inputs.size());
+            return lines;
+        } finally {
+            for (Cursor cursor : cursors) {
+                try {
+                    cursor.reader.close();
+                } catch (IOException e) {
+                    logger.warn(e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param inputs
+     *            the number of inputs open at once
+     */
+    protected InputStream open(File input, int inputs) throws IOException {
+        if (inputs <= INFLATE_AHEAD_INPUTS) {
+            // each gets a thread inflating ahead but no pool
+            return CompressedFiles.newInputStream(input, 1);
+        }
+        if (GzipFormat.of(input) == GzipFormat.PLAIN) {
+            return new FileInputStream(input);
+        }
+        // BGZF too, it is a series of gzip members
+        return new GZIPInputStream(new FileInputStream(input), bufferSize);
+    }
+
+    private boolean isHeader(byte[] line) {
+        if (line.length < headerPrefix.length) {
+            return false;
+        }
+        for (int i = 0; i < headerPrefix.length; i++) {
+            if (line[i] != headerPrefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static class Cursor {
+
+        private final int index;
+
+        private final LineReader reader;
+
+        private byte[] line;
+
+        public Cursor(int index, LineReader reader) {
+            super();
+            this.index = index;
+            this.reader = reader;
+        }
+
+    }
+
+}
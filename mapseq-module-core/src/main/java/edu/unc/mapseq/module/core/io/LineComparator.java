@@ -0,0 +1,349 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares lines (bytes, without the line terminator) by sort(1) style keys, ie "1,1 2,2n" or "-k3,3nr -k1,1". A key
+ * is F[.C][flags][,F[.C][flags]] with 1 based fields and characters; the flags are n, which compares the key as a
+ * number, V, which compares runs of digits as numbers and everything else as bytes (chr2 before chr10, chr1:900 before
+ * chr1:1000), r, which reverses it, and b, which skips the blanks the field of the position it follows starts with
+ * (before characters are counted).
+ * Lines that are equal on every key are compared byte by byte (sort's last resort comparison) unless the comparator is
+ * stable. Without keys the whole line is the key.
+ *
+ * Fields are separated by the given separator (\t for a tab) or, when there is none, by the empty string between a
+ * non blank and a blank, so that, as with sort, a field starts with the blanks before it unless the key has b.
+ * Everything is compared as unsigned bytes, which matches sort with LC_ALL=C.
+ *
+ * @author jdr0887
+ */
+public class LineComparator implements Comparator<byte[]> {
+
+    private static final Pattern KEY_PATTERN = Pattern
+            .compile("(?:-k)?(\\d+)(?:\\.(\\d+))?([nrbV]*)(?:,(\\d+)(?:\\.(\\d+))?([nrbV]*))?");
+
+    private final List<Key> keys = new ArrayList<Key>();
+
+    private final byte separator;
+
+    private final boolean hasSeparator;
+
+    private final boolean stable;
+
+    public LineComparator(String keySpec, String separator, boolean stable) {
+        super();
+        if (separator != null && separator.length() > 0) {
+            if ("\\t".equals(separator)) {
+                // the way a tab gets through a shell
+                separator = "\t";
+            }
+            if (separator.length() != 1) {
+                throw new IllegalArgumentException(String.format("separator must be a single character: %s", separator));
+            }
+            this.separator = (byte) separator.charAt(0);
+            this.hasSeparator = true;
+        } else {
+            this.separator = 0;
+            this.hasSeparator = false;
+        }
+        this.stable = stable;
+        if (keySpec != null) {
+            for (String token : keySpec.trim().split("[\\s;]+")) {
+                if (token.isEmpty() || "-k".equals(token)) {
+                    continue;
+                }
+                Matcher matcher = KEY_PATTERN.matcher(token);
+                if (!matcher.matches()) {
+                    throw new IllegalArgumentException(String.format("invalid key: %s", token));
+                }
+                Key key = new Key();
+                String flags = matcher.group(3) + (matcher.group(6) != null ? matcher.group(6) : "");
+                key.startField = Integer.parseInt(matcher.group(1)) - 1;
+                key.startChar = matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) - 1 : 0;
+                key.endField = matcher.group(4) != null ? Integer.parseInt(matcher.group(4)) - 1 : Integer.MAX_VALUE;
+                key.endChar = matcher.group(5) != null ? Integer.parseInt(matcher.group(5)) : -1;
+                key.numeric = flags.indexOf('n') != -1;
+                key.natural = flags.indexOf('V') != -1;
+                key.reverse = flags.indexOf('r') != -1;
+                key.startSkipBlanks = matcher.group(3).indexOf('b') != -1;
+                key.endSkipBlanks = matcher.group(6) != null && matcher.group(6).indexOf('b') != -1;
+                keys.add(key);
+            }
+        }
+    }
+
+    public LineComparator(String keySpec, String separator) {
+        this(keySpec, separator, false);
+    }
+
+    @Override
+    public int compare(byte[] line1, byte[] line2) {
+        return compare(line1, 0, line1.length, line2, 0, line2.length);
+    }
+
+    /**
+     * Compares two lines that are slices of larger buffers, ie the lines of a sort run.
+     */
+    public int compare(byte[] b1, int offset1, int end1, byte[] b2, int offset2, int end2) {
+        for (Key key : keys) {
+            int start1 = keyStart(b1, offset1, end1, key);
+            int stop1 = keyEnd(b1, offset1, end1, key, start1);
+            int start2 = keyStart(b2, offset2, end2, key);
+            int stop2 = keyEnd(b2, offset2, end2, key, start2);
+            int ret;
+            if (key.numeric) {
+                ret = compareNumeric(b1, start1, stop1, b2, start2, stop2);
+            } else if (key.natural) {
+                ret = compareNatural(b1, start1, stop1, b2, start2, stop2);
+            } else {
+                ret = compareBytes(b1, start1, stop1, b2, start2, stop2);
+            }
+            if (ret != 0) {
+                return key.reverse ? -ret : ret;
+            }
+        }
+        if (stable && !keys.isEmpty()) {
+            return 0;
+        }
+        return compareBytes(b1, offset1, end1, b2, offset2, end2);
+    }
+
+    /**
+     * @return the offset the given field (0 based) starts at, after its leading blanks with skipBlanks, end when there
+     *         are fewer fields
+     */
+    private int fieldStart(byte[] line, int offset, int end, int field, boolean skipBlanks) {
+        int i = offset;
+        if (hasSeparator) {
+            for (int f = 0; f < field; f++) {
+                while (i < end && line[i] != separator) {
+                    i++;
+                }
+                if (i == end) {
+                    return i;
+                }
+                i++;
+            }
+        } else {
+            for (int f = 0; f < field; f++) {
+                while (i < end && isBlank(line[i])) {
+                    i++;
+                }
+                while (i < end && !isBlank(line[i])) {
+                    i++;
+                }
+            }
+        }
+        if (skipBlanks) {
+            while (i < end && isBlank(line[i])) {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    private int fieldEnd(byte[] line, int start, int end) {
+        int i = start;
+        if (hasSeparator) {
+            while (i < end && line[i] != separator) {
+                i++;
+            }
+        } else {
+            while (i < end && isBlank(line[i])) {
+                i++;
+            }
+            while (i < end && !isBlank(line[i])) {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * As sort has it, character positions may run past the end of the field, not past the end of the line.
+     */
+    private int keyStart(byte[] line, int offset, int end, Key key) {
+        int start = fieldStart(line, offset, end, key.startField, key.startSkipBlanks);
+        return (int) Math.min(end, (long) start + key.startChar);
+    }
+
+    private int keyEnd(byte[] line, int offset, int end, Key key, int keyStart) {
+        if (key.endField == Integer.MAX_VALUE) {
+            return end;
+        }
+        int start = fieldStart(line, offset, end, key.endField, key.endSkipBlanks);
+        int stop = key.endChar > 0 ? (int) Math.min(end, (long) start + key.endChar) : fieldEnd(line, start, end);
+        return Math.max(keyStart, stop);
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    static int compareBytes(byte[] b1, int start1, int end1, byte[] b2, int start2, int end2) {
+        int length1 = end1 - start1;
+        int length2 = end2 - start2;
+        int n = Math.min(length1, length2);
+        for (int i = 0; i < n; i++) {
+            int c = (b1[start1 + i] & 0xff) - (b2[start2 + i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length1 - length2;
+    }
+
+    /**
+     * sort -n: an optional minus sign, digits and an optional fraction; anything else (including an empty key) is 0.
+     * Numbers of any length are compared digit by digit, nothing is parsed.
+     */
+    static int compareNumeric(byte[] b1, int start1, int end1, byte[] b2, int start2, int end2) {
+        while (start1 < end1 && isBlank(b1[start1])) {
+            start1++;
+        }
+        while (start2 < end2 && isBlank(b2[start2])) {
+            start2++;
+        }
+        boolean negative1 = start1 < end1 && b1[start1] == '-';
+        boolean negative2 = start2 < end2 && b2[start2] == '-';
+        if (negative1) {
+            start1++;
+        }
+        if (negative2) {
+            start2++;
+        }
+        boolean zero1 = isZero(b1, start1, end1);
+        boolean zero2 = isZero(b2, start2, end2);
+        if (zero1 || zero2) {
+            if (zero1 && zero2) {
+                return 0;
+            }
+            return zero1 ? (negative2 ? 1 : -1) : (negative1 ? -1 : 1);
+        }
+        if (negative1 != negative2) {
+            return negative1 ? -1 : 1;
+        }
+        int ret = compareMagnitude(b1, start1, end1, b2, start2, end2);
+        return negative1 ? -ret : ret;
+    }
+
+    /**
+     * Runs of digits compare by value, everything else byte by byte, so chrX sorts after chr22 and chr1:900 before
+     * chr1:1000.
+     */
+    static int compareNatural(byte[] b1, int start1, int end1, byte[] b2, int start2, int end2) {
+        int i1 = start1;
+        int i2 = start2;
+        while (i1 < end1 && i2 < end2) {
+            if (isDigit(b1[i1]) && isDigit(b2[i2])) {
+                int digits1 = countDigits(b1, i1, end1);
+                int digits2 = countDigits(b2, i2, end2);
+                int ret = compareMagnitude(b1, i1, i1 + digits1, b2, i2, i2 + digits2);
+                if (ret != 0) {
+                    return ret;
+                }
+                i1 += digits1;
+                i2 += digits2;
+            } else {
+                int c = (b1[i1] & 0xff) - (b2[i2] & 0xff);
+                if (c != 0) {
+                    return c;
+                }
+                i1++;
+                i2++;
+            }
+        }
+        return (end1 - i1) - (end2 - i2);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isZero(byte[] b, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (b[i] >= '1' && b[i] <= '9') {
+                return false;
+            }
+            if (b[i] != '0' && b[i] != '.') {
+                break;
+            }
+        }
+        return true;
+    }
+
+    private static int compareMagnitude(byte[] b1, int start1, int end1, byte[] b2, int start2, int end2) {
+        while (start1 < end1 && b1[start1] == '0') {
+            start1++;
+        }
+        while (start2 < end2 && b2[start2] == '0') {
+            start2++;
+        }
+        int digits1 = countDigits(b1, start1, end1);
+        int digits2 = countDigits(b2, start2, end2);
+        if (digits1 != digits2) {
+            return digits1 - digits2;
+        }
+        for (int i = 0; i < digits1; i++) {
+            int c = b1[start1 + i] - b2[start2 + i];
+            if (c != 0) {
+                return c;
+            }
+        }
+        // fractions, a missing digit counts as 0
+        int i1 = start1 + digits1;
+        int i2 = start2 + digits2;
+        boolean fraction1 = i1 < end1 && b1[i1] == '.';
+        boolean fraction2 = i2 < end2 && b2[i2] == '.';
+        i1++;
+        i2++;
+        while (true) {
+            int d1 = fraction1 && i1 < end1 && b1[i1] >= '0' && b1[i1] <= '9' ? b1[i1] : -1;
+            int d2 = fraction2 && i2 < end2 && b2[i2] >= '0' && b2[i2] <= '9' ? b2[i2] : -1;
+            if (d1 == -1 && d2 == -1) {
+                return 0;
+            }
+            int c = (d1 == -1 ? '0' : d1) - (d2 == -1 ? '0' : d2);
+            if (c != 0) {
+                return c;
+            }
+            i1++;
+            i2++;
+        }
+    }
+
+    private static int countDigits(byte[] b, int start, int end) {
+        int i = start;
+        while (i < end && b[i] >= '0' && b[i] <= '9') {
+            i++;
+        }
+        return i - start;
+    }
+
+    static class Key {
+
+        int startField;
+
+        int startChar;
+
+        int endField;
+
+        int endChar;
+
+        boolean numeric;
+
+        boolean natural;
+
+        boolean reverse;
+
+        boolean startSkipBlanks;
+
+        boolean endSkipBlanks;
+
+    }
+
+}
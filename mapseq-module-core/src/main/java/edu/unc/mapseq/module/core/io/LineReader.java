@@ -0,0 +1,98 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads lines as bytes, without decoding them and without the \n that ends them. Everything else is kept as it is (a
+ * \r before the \n too, as sort and cat keep it), so the lines can be written back unchanged. A final line without a
+ * \n is returned as well.
+ *
+ * @author jdr0887
+ */
+public class LineReader implements Closeable {
+
+    private final InputStream in;
+
+    private final byte[] buffer;
+
+    private int position = 0;
+
+    private int limit = 0;
+
+    private boolean eof = false;
+
+    public LineReader(InputStream in, int bufferSize) {
+        super();
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    public LineReader(InputStream in) {
+        this(in, 1 << 16);
+    }
+
+    /**
+     * @return the next line, null at the end of the input
+     */
+    public byte[] readLine() throws IOException {
+        byte[] line = null;
+        int lineLength = 0;
+        while (true) {
+            if (position == limit) {
+                if (eof || !fill()) {
+                    if (line == null) {
+                        return null;
+                    }
+                    return trim(line, lineLength);
+                }
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            int n = position - start;
+            if (line == null) {
+                line = Arrays.copyOfRange(buffer, start, start + n);
+                lineLength = n;
+            } else if (n > 0) {
+                if (lineLength + n > line.length) {
+                    line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + n));
+                }
+                System.arraycopy(buffer, start, line, lineLength, n);
+                lineLength += n;
+            }
+            if (position < limit) {
+                // skip the \n
+                position++;
+                return trim(line, lineLength);
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = in.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n == -1) {
+            eof = true;
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    private static byte[] trim(byte[] line, int length) {
+        return length == line.length ? line : Arrays.copyOf(line, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
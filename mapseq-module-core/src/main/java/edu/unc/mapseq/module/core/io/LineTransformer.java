@@ -0,0 +1,496 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams a text file through a list of line operations (substitute, delete, strip trailing delimiters, project
+ * columns), the way sed or cut would. The input is read in blocks that end on a line boundary; the blocks are
+ * transformed on a pool of threads and written in the order they were read. Operations see a line without its \n and
+ * may not depend on other lines, which is what lets blocks be transformed at once.
+ *
+ * Lines are bytes; the regular expression operations see them as ISO-8859-1 text, which maps every byte to one char
+ * and back, so nothing is lost whatever the encoding. Their patterns are always matched with Pattern.UNIX_LINES, so
+ * that, as for sed, only \n ends a line: . matches \r and 0x85 (the second byte of UTF-8 characters like \u00c5) and $
+ * only matches at the end.
+ *
+ * @author jdr0887
+ */
+public class LineTransformer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LineTransformer.class);
+
+    private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+
+    private final List<Operation> operations = new ArrayList<Operation>();
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private boolean terminateLastLine = false;
+
+    private final AtomicLong linesIn = new AtomicLong();
+
+    private final AtomicLong linesOut = new AtomicLong();
+
+    public LineTransformer() {
+        super();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public boolean isTerminateLastLine() {
+        return terminateLastLine;
+    }
+
+    /**
+     * @param terminateLastLine
+     *            end a last line without \n with one, as a readLine/println loop would
+     */
+    public void setTerminateLastLine(boolean terminateLastLine) {
+        this.terminateLastLine = terminateLastLine;
+    }
+
+    public long getLinesIn() {
+        return linesIn.get();
+    }
+
+    public long getLinesOut() {
+        return linesOut.get();
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    public LineTransformer add(Operation operation) {
+        operations.add(operation);
+        return this;
+    }
+
+    /**
+     * s/pattern/replacement/, with global every match is replaced (the g flag)
+     */
+    public LineTransformer substitute(Pattern pattern, String replacement, boolean global) {
+        return add(new Substitute(unixLines(pattern), replacement, global));
+    }
+
+    /**
+     * /pattern/d
+     */
+    public LineTransformer deleteMatching(Pattern pattern) {
+        return add(new DeleteMatching(unixLines(pattern)));
+    }
+
+    private static Pattern unixLines(Pattern pattern) {
+        if ((pattern.flags() & Pattern.UNIX_LINES) != 0) {
+            return pattern;
+        }
+        return Pattern.compile(pattern.pattern(), pattern.flags() | Pattern.UNIX_LINES);
+    }
+
+    /**
+     * /^prefix/d without a regular expression
+     */
+    public LineTransformer deleteStartingWith(String prefix) {
+        return add(new DeleteStartingWith(prefix.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    /**
+     * @param all
+     *            strip every trailing delimiter, not just the last one
+     */
+    public LineTransformer stripTrailing(char delimiter, boolean all) {
+        return add(new StripTrailing((byte) delimiter, all));
+    }
+
+    /**
+     * Keeps the given columns (0 based, in the given order), cut -f style.
+     */
+    public LineTransformer project(char delimiter, int... columns) {
+        return add(new Project((byte) delimiter, columns));
+    }
+
+    /**
+     * @return the number of lines written
+     */
+    public long transform(File input, File output) throws IOException {
+        try (InputStream in = CompressedFiles.newInputStream(input);
+                OutputStream out = CompressedFiles.newOutputStream(output)) {
+            return transform(in, out);
+        }
+    }
+
+    /**
+     * @return the number of lines written
+     */
+    public long transform(InputStream in, OutputStream out) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "transform");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        BlockingQueue<Future<Block>> pending = new ArrayBlockingQueue<Future<Block>>(threads * 2);
+        long start = linesOut.get();
+        try {
+            byte[] carry = new byte[0];
+            while (true) {
+                byte[] block = Arrays.copyOf(carry, Math.max(BLOCK_SIZE, carry.length * 2));
+                int length = carry.length;
+                int read;
+                while (length < block.length && (read = in.read(block, length, block.length - length)) != -1) {
+                    length += read;
+                }
+                boolean eof = length < block.length;
+                int end = length;
+                if (!eof) {
+                    // the partial last line goes with the next block
+                    while (end > 0 && block[end - 1] != '\n') {
+                        end--;
+                    }
+                }
+                carry = Arrays.copyOfRange(block, end, length);
+                if (end > 0) {
+                    if (pending.remainingCapacity() == 0) {
+                        write(out, pending.poll());
+                    }
+                    final byte[] data = block;
+                    final int dataLength = end;
+                    pending.add(executor.submit(new Callable<Block>() {
+                        @Override
+                        public Block call() throws Exception {
+                            return transform(data, dataLength);
+                        }
+                    }));
+                }
+                if (eof) {
+                    break;
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(out, pending.poll());
+            }
+            out.flush();
+        } finally {
+            for (Future<Block> future : pending) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+        long ret = linesOut.get() - start;
+        logger.debug("{} lines out", ret);
+        return ret;
+    }
+
+    Block transform(byte[] data, int length) {
+        Block block = new Block(length + (length >> 4) + 16);
+        Line line = new Line();
+        long in = 0L;
+        long out = 0L;
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            while (end < length && data[end] != '\n') {
+                end++;
+            }
+            boolean newline = end < length;
+            in++;
+            line.reset(data, start, end);
+            boolean keep = true;
+            for (Operation operation : operations) {
+                if (!operation.apply(line)) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                block.append(line.bytes, line.start, line.end - line.start);
+                if (newline || terminateLastLine) {
+                    block.append((byte) '\n');
+                }
+                out++;
+            }
+            start = end + 1;
+        }
+        linesIn.addAndGet(in);
+        linesOut.addAndGet(out);
+        return block;
+    }
+
+    private static void write(OutputStream out, Future<Block> future) throws IOException {
+        try {
+            Block block = future.get();
+            out.write(block.bytes, 0, block.length);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    static class Block {
+
+        private byte[] bytes;
+
+        private int length = 0;
+
+        public Block(int capacity) {
+            super();
+            this.bytes = new byte[capacity];
+        }
+
+        void append(byte b) {
+            ensure(1);
+            bytes[length++] = b;
+        }
+
+        void append(byte[] b, int offset, int n) {
+            ensure(n);
+            System.arraycopy(b, offset, bytes, length, n);
+            length += n;
+        }
+
+        private void ensure(int n) {
+            if (length + n > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + n));
+            }
+        }
+
+    }
+
+    /**
+     * A line (without the \n) as a slice of bytes; operations may point it elsewhere.
+     */
+    public static class Line {
+
+        private byte[] bytes;
+
+        private int start;
+
+        private int end;
+
+        void reset(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public void setEnd(int end) {
+            this.end = end;
+        }
+
+        public String getText() {
+            return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+
+        public void setText(String text) {
+            reset(text.getBytes(StandardCharsets.ISO_8859_1), 0, text.length());
+        }
+
+    }
+
+    /**
+     * One step of a transformation.
+     */
+    public interface Operation {
+
+        /**
+         * @return false to delete the line
+         */
+        boolean apply(Line line);
+
+    }
+
+    static class Substitute implements Operation {
+
+        private final Pattern pattern;
+
+        private final String replacement;
+
+        private final boolean global;
+
+        public Substitute(Pattern pattern, String replacement, boolean global) {
+            super();
+            this.pattern = pattern;
+            this.replacement = replacement;
+            this.global = global;
+        }
+
+        @Override
+        public boolean apply(Line line) {
+            String text = line.getText();
+            Matcher matcher = pattern.matcher(text);
+            if (matcher.find()) {
+                StringBuffer sb = new StringBuffer(text.length() + 16);
+                do {
+                    matcher.appendReplacement(sb, replacement);
+                } while (global && matcher.find());
+                matcher.appendTail(sb);
+                line.setText(sb.toString());
+            }
+            return true;
+        }
+
+    }
+
+    static class DeleteMatching implements Operation {
+
+        private final Pattern pattern;
+
+        public DeleteMatching(Pattern pattern) {
+            super();
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean apply(Line line) {
+            return !pattern.matcher(line.getText()).find();
+        }
+
+    }
+
+    static class DeleteStartingWith implements Operation {
+
+        private final byte[] prefix;
+
+        public DeleteStartingWith(byte[] prefix) {
+            super();
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean apply(Line line) {
+            if (line.end - line.start < prefix.length) {
+                return true;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if (line.bytes[line.start + i] != prefix[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+    static class StripTrailing implements Operation {
+
+        private final byte delimiter;
+
+        private final boolean all;
+
+        public StripTrailing(byte delimiter, boolean all) {
+            super();
+            this.delimiter = delimiter;
+            this.all = all;
+        }
+
+        @Override
+        public boolean apply(Line line) {
+            int end = line.end;
+            while (end > line.start && line.bytes[end - 1] == delimiter) {
+                end--;
+                if (!all) {
+                    break;
+                }
+            }
+            line.setEnd(end);
+            return true;
+        }
+
+    }
+
+    static class Project implements Operation {
+
+        private final byte delimiter;
+
+        private final int[] columns;
+
+        public Project(byte delimiter, int[] columns) {
+            super();
+            this.delimiter = delimiter;
+            this.columns = columns;
+        }
+
+        @Override
+        public boolean apply(Line line) {
+            // field starts and ends, found once
+            int max = 0;
+            for (int column : columns) {
+                max = Math.max(max, column);
+            }
+            int[] starts = new int[max + 1];
+            int[] ends = new int[max + 1];
+            int field = 0;
+            int start = line.start;
+            for (int i = line.start; i <= line.end && field <= max; i++) {
+                if (i == line.end || line.bytes[i] == delimiter) {
+                    starts[field] = start;
+                    ends[field] = i;
+                    field++;
+                    start = i + 1;
+                }
+            }
+            Block block = new Block(line.end - line.start);
+            boolean first = true;
+            for (int column : columns) {
+                if (column >= field) {
+                    continue;
+                }
+                if (!first) {
+                    block.append(delimiter);
+                }
+                block.append(line.bytes, starts[column], ends[column] - starts[column]);
+                first = false;
+            }
+            line.reset(block.bytes, 0, block.length);
+            return true;
+        }
+
+    }
+
+}
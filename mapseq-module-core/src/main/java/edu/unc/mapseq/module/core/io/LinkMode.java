@@ -0,0 +1,18 @@
+package edu.unc.mapseq.module.core.io;
+
+/**
+ * How FileCopier puts a file in place when source and destination are on the same filesystem. A hard link shares the
+ * source's inode (a change to one shows in the other), a reflink shares its blocks until either is written (btrfs,
+ * xfs), everywhere else the file is copied.
+ *
+ * @author jdr0887
+ */
+public enum LinkMode {
+
+    NONE,
+
+    HARDLINK,
+
+    REFLINK;
+
+}
@@ -0,0 +1,314 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compresses on a pool of deflate threads, pigz style: the input is cut into fixed size chunks that are compressed at
+ * once and written in order.
+ *
+ * For BGZF every chunk of 64k (less a little, so a block never exceeds 64k) is a gzip member of its own with its size
+ * in a BC extra field, and the file ends with the BGZF EOF marker; samtools, tabix and GzipDecompressor can read it
+ * block by block again. For gzip (and the entries of ParallelZipWriter) the chunks make up one deflate stream: each
+ * chunk is primed with the last 32k of the one before and ends on a byte boundary (a sync flush), so the output is as
+ * small as a single threaded deflate's.
+ *
+ * @author jdr0887
+ */
+public class ParallelDeflater {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelDeflater.class);
+
+    public static final int BGZF_BLOCK_SIZE = 0xff00;
+
+    private static final int CHUNK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(level, true);
+        }
+    };
+
+    private final int level;
+
+    private final int threads;
+
+    public ParallelDeflater(int level, int threads) {
+        super();
+        this.level = level;
+        this.threads = Math.max(1, threads);
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param format
+     *            GZIP or BGZF
+     * @return the number of bytes written
+     */
+    public long compress(File input, File output, GzipFormat format) throws IOException {
+        try (InputStream in = new FileInputStream(input);
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(output), 1 << 20)) {
+            long ret;
+            if (format == GzipFormat.BGZF) {
+                ret = bgzf(in, out);
+            } else if (format == GzipFormat.GZIP) {
+                ret = gzip(in, out);
+            } else {
+                throw new IllegalArgumentException(String.format("can not compress to %s", format));
+            }
+            logger.debug("{}: {} -> {} bytes", input.getAbsolutePath(), input.length(), ret);
+            return ret;
+        }
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public long bgzf(InputStream in, OutputStream out) throws IOException {
+        Result result = run(in, out, BGZF_BLOCK_SIZE, new ChunkCompressor() {
+            @Override
+            public byte[] compress(byte[] chunk, int length, byte[] dictionary, boolean last) throws IOException {
+                return bgzfBlock(chunk, length);
+            }
+        }, false);
+        out.write(GzipFormat.BGZF_EOF);
+        return result.compressedSize + GzipFormat.BGZF_EOF.length;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public long gzip(InputStream in, OutputStream out) throws IOException {
+        // no mtime, no name, os unknown
+        byte[] header = new byte[] { 0x1f, (byte) 0x8b, 0x08, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff };
+        out.write(header);
+        Result result = deflate(in, out);
+        byte[] trailer = new byte[8];
+        writeInt(trailer, 0, (int) result.crc);
+        writeInt(trailer, 4, (int) result.size);
+        out.write(trailer);
+        return header.length + result.compressedSize + trailer.length;
+    }
+
+    /**
+     * Writes a raw deflate stream.
+     */
+    public Result deflate(InputStream in, OutputStream out) throws IOException {
+        return run(in, out, CHUNK_SIZE, new ChunkCompressor() {
+            @Override
+            public byte[] compress(byte[] chunk, int length, byte[] dictionary, boolean last) throws IOException {
+                return deflateChunk(chunk, length, dictionary, last);
+            }
+        }, true);
+    }
+
+    private Result run(InputStream in, OutputStream out, int chunkSize, final ChunkCompressor compressor,
+            boolean chained) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "deflate");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        BlockingQueue<Future<byte[]>> pending = new ArrayBlockingQueue<Future<byte[]>>(threads * 2);
+        Result result = new Result();
+        CRC32 crc = new CRC32();
+        try {
+            byte[] chunk = new byte[chunkSize];
+            int length = readFully(in, chunk);
+            byte[] dictionary = null;
+            while (true) {
+                // one chunk ahead, to know which one is last
+                byte[] next = null;
+                int nextLength = 0;
+                if (length == chunkSize) {
+                    next = new byte[chunkSize];
+                    nextLength = readFully(in, next);
+                }
+                final boolean last = nextLength == 0;
+                if (length == 0 && !(chained && result.size == 0)) {
+                    // nothing left, but an empty deflate stream still needs its final block
+                    break;
+                }
+                crc.update(chunk, 0, length);
+                result.size += length;
+                if (pending.remainingCapacity() == 0) {
+                    result.compressedSize += write(out, pending.poll());
+                }
+                final byte[] data = chunk;
+                final int dataLength = length;
+                final byte[] dataDictionary = dictionary;
+                pending.add(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        return compressor.compress(data, dataLength, dataDictionary, last);
+                    }
+                }));
+                if (last) {
+                    break;
+                }
+                if (chained) {
+                    dictionary = Arrays.copyOfRange(chunk, Math.max(0, length - DICTIONARY_SIZE), length);
+                }
+                chunk = next;
+                length = nextLength;
+            }
+            while (!pending.isEmpty()) {
+                result.compressedSize += write(out, pending.poll());
+            }
+            result.crc = crc.getValue();
+            return result;
+        } finally {
+            for (Future<byte[]> future : pending) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    private static int write(OutputStream out, Future<byte[]> future) throws IOException {
+        byte[] compressed;
+        try {
+            compressed = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        out.write(compressed);
+        return compressed.length;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int n = 0;
+        int read;
+        while (n < buffer.length && (read = in.read(buffer, n, buffer.length - n)) != -1) {
+            n += read;
+        }
+        return n;
+    }
+
+    private byte[] deflateChunk(byte[] chunk, int length, byte[] dictionary, boolean last) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(chunk, 0, length);
+        if (last) {
+            deflater.finish();
+        }
+        byte[] buffer = new byte[length + (length >> 3) + 64];
+        int n = 0;
+        while (true) {
+            n += deflater.deflate(buffer, n, buffer.length - n, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+            if (last ? deflater.finished() : n < buffer.length) {
+                break;
+            }
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        return Arrays.copyOf(buffer, n);
+    }
+
+    private byte[] bgzfBlock(byte[] chunk, int length) throws IOException {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(chunk, 0, length);
+        deflater.finish();
+        // incompressible data grows a little, a block may not
+        byte[] block = new byte[18 + length + (length >> 3) + 64 + 8];
+        int n = 18;
+        while (!deflater.finished()) {
+            n += deflater.deflate(block, n, block.length - 8 - n);
+            if (n == block.length - 8 && !deflater.finished()) {
+                throw new IOException("BGZF block does not fit");
+            }
+        }
+        int blockSize = n + 8;
+        if (blockSize > 0x10000) {
+            throw new IOException(String.format("BGZF block of %d bytes", blockSize));
+        }
+        byte[] header = new byte[] { 0x1f, (byte) 0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff, 0x06,
+                0x00, 'B', 'C', 0x02, 0x00, (byte) ((blockSize - 1) & 0xff), (byte) ((blockSize - 1) >> 8) };
+        System.arraycopy(header, 0, block, 0, header.length);
+        CRC32 crc = new CRC32();
+        crc.update(chunk, 0, length);
+        writeInt(block, n, (int) crc.getValue());
+        writeInt(block, n + 4, length);
+        return Arrays.copyOf(block, blockSize);
+    }
+
+    static void writeInt(byte[] b, int offset, int value) {
+        b[offset] = (byte) value;
+        b[offset + 1] = (byte) (value >>> 8);
+        b[offset + 2] = (byte) (value >>> 16);
+        b[offset + 3] = (byte) (value >>> 24);
+    }
+
+    interface ChunkCompressor {
+
+        byte[] compress(byte[] chunk, int length, byte[] dictionary, boolean last) throws IOException;
+
+    }
+
+    /**
+     * CRC32 and sizes of what was deflated.
+     */
+    public static class Result {
+
+        private long crc;
+
+        private long size;
+
+        private long compressedSize;
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+    }
+
+}
@@ -0,0 +1,335 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a zip archive whose entries are deflated by a ParallelDeflater. ZipOutputStream only takes uncompressed data,
+ * so the archive structure (local headers with data descriptors, central directory, zip64 records for entries or
+ * archives over 4G) is written here.
+ *
+ * Entries are named after their files, as zip run in their directory names them; a directory is an entry of its own
+ * (name/) and is not recursed into, as with zip without -r. {@link #update(List, File)} adds to an archive the way zip
+ * does: the archive is written anew, entries of the same name are replaced where they were and the others are inflated
+ * from the old archive and deflated again.
+ *
+ * @author jdr0887
+ */
+public class ParallelZipWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelZipWriter.class);
+
+    private static final long ZIP64_LIMIT = 0xffffffffL;
+
+    // uncompressed sizes from here on may end up over 4G deflated, those entries are written as zip64
+    private static final long ZIP64_THRESHOLD = 0xffff0000L;
+
+    private final ParallelDeflater deflater;
+
+    public ParallelZipWriter(ParallelDeflater deflater) {
+        super();
+        this.deflater = deflater;
+    }
+
+    /**
+     * Writes every file as an entry, replacing the output when it exists.
+     *
+     * @return the number of bytes written
+     */
+    public long write(List<File> files, File output) throws IOException {
+        try (OutputStream out = new FileOutputStream(output)) {
+            return write(files, null, out);
+        }
+    }
+
+    /**
+     * Adds every file as an entry to the output, which is created when missing.
+     *
+     * @return the number of bytes written
+     */
+    public long update(List<File> files, File output) throws IOException {
+        if (!output.exists()) {
+            return write(files, output);
+        }
+        File tmp = File.createTempFile(String.format(".%s.", output.getName()), ".tmp", output.getAbsoluteFile()
+                .getParentFile());
+        try {
+            long ret;
+            try (ZipFile existing = new ZipFile(output); OutputStream out = new FileOutputStream(tmp)) {
+                ret = write(files, existing, out);
+            }
+            Files.move(tmp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return ret;
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    private long write(List<File> files, ZipFile existing, OutputStream output) throws IOException {
+        Map<String, File> added = new LinkedHashMap<String, File>();
+        for (File file : files) {
+            added.put(file.isDirectory() ? file.getName() + "/" : file.getName(), file);
+        }
+        List<Entry> entries = new ArrayList<Entry>(files.size());
+        try (CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(output, 1 << 20))) {
+            if (existing != null) {
+                for (ZipEntry zipEntry : Collections.list(existing.entries())) {
+                    File file = added.remove(zipEntry.getName());
+                    if (file != null) {
+                        entries.add(write(out, zipEntry.getName(), file));
+                    } else if (zipEntry.isDirectory()) {
+                        entries.add(writeDirectory(out, zipEntry.getName(), zipEntry.getTime()));
+                    } else {
+                        try (InputStream in = existing.getInputStream(zipEntry)) {
+                            entries.add(write(out, zipEntry.getName(), zipEntry.getTime(), zipEntry.getSize(), in));
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, File> file : added.entrySet()) {
+                entries.add(write(out, file.getKey(), file.getValue()));
+            }
+            long centralDirectoryOffset = out.count;
+            for (Entry entry : entries) {
+                writeCentralDirectoryHeader(out, entry);
+            }
+            writeEnd(out, entries.size(), centralDirectoryOffset, out.count - centralDirectoryOffset);
+            out.flush();
+            return out.count;
+        }
+    }
+
+    private Entry write(CountingOutputStream out, String name, File file) throws IOException {
+        if (file.isDirectory()) {
+            return writeDirectory(out, name, file.lastModified());
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            return write(out, name, file.lastModified(), file.length(), in);
+        }
+    }
+
+    /**
+     * @param length
+     *            the uncompressed length, -1 when not known
+     */
+    private Entry write(CountingOutputStream out, String name, long time, long length, InputStream in)
+            throws IOException {
+        Entry entry = new Entry();
+        entry.name = name.getBytes(StandardCharsets.UTF_8);
+        entry.time = dosTime(time);
+        entry.zip64 = length < 0 || length >= ZIP64_THRESHOLD;
+        entry.offset = out.count;
+        writeLocalHeader(out, entry);
+        ParallelDeflater.Result result = deflater.deflate(in, out);
+        entry.crc = result.getCrc();
+        entry.size = result.getSize();
+        entry.compressedSize = result.getCompressedSize();
+        writeDataDescriptor(out, entry);
+        logger.debug("{}: {} -> {} bytes", name, entry.size, entry.compressedSize);
+        return entry;
+    }
+
+    private static Entry writeDirectory(CountingOutputStream out, String name, long time) throws IOException {
+        Entry entry = new Entry();
+        entry.name = name.getBytes(StandardCharsets.UTF_8);
+        entry.time = dosTime(time);
+        entry.directory = true;
+        entry.offset = out.count;
+        writeLocalHeader(out, entry);
+        return entry;
+    }
+
+    private static void writeLocalHeader(OutputStream out, Entry entry) throws IOException {
+        writeInt(out, 0x04034b50);
+        writeShort(out, entry.zip64 ? 45 : 20);
+        // sizes in a data descriptor (a directory has none, it is stored and empty), utf-8 name
+        writeShort(out, entry.directory ? 0x0800 : 0x0808);
+        writeShort(out, entry.directory ? 0 : 8);
+        writeInt(out, (int) entry.time);
+        writeInt(out, 0);
+        writeInt(out, entry.zip64 ? -1 : 0);
+        writeInt(out, entry.zip64 ? -1 : 0);
+        writeShort(out, entry.name.length);
+        writeShort(out, entry.zip64 ? 20 : 0);
+        out.write(entry.name);
+        if (entry.zip64) {
+            writeShort(out, 0x0001);
+            writeShort(out, 16);
+            writeLong(out, 0L);
+            writeLong(out, 0L);
+        }
+    }
+
+    private static void writeDataDescriptor(OutputStream out, Entry entry) throws IOException {
+        if (!entry.zip64 && (entry.size >= ZIP64_LIMIT || entry.compressedSize >= ZIP64_LIMIT)) {
+            throw new IOException("entry grew over 4G, it would have to be zip64");
+        }
+        writeInt(out, 0x08074b50);
+        writeInt(out, (int) entry.crc);
+        if (entry.zip64) {
+            writeLong(out, entry.compressedSize);
+            writeLong(out, entry.size);
+        } else {
+            writeInt(out, (int) entry.compressedSize);
+            writeInt(out, (int) entry.size);
+        }
+    }
+
+    private static void writeCentralDirectoryHeader(OutputStream out, Entry entry) throws IOException {
+        boolean zip64Size = entry.zip64;
+        boolean zip64Offset = entry.offset >= ZIP64_LIMIT;
+        int extraLength = (zip64Size ? 16 : 0) + (zip64Offset ? 8 : 0);
+        writeInt(out, 0x02014b50);
+        // made by unix, 4.5
+        writeShort(out, 3 << 8 | 45);
+        writeShort(out, zip64Size || zip64Offset ? 45 : 20);
+        writeShort(out, entry.directory ? 0x0800 : 0x0808);
+        writeShort(out, entry.directory ? 0 : 8);
+        writeInt(out, (int) entry.time);
+        writeInt(out, (int) entry.crc);
+        writeInt(out, zip64Size ? -1 : (int) entry.compressedSize);
+        writeInt(out, zip64Size ? -1 : (int) entry.size);
+        writeShort(out, entry.name.length);
+        writeShort(out, extraLength > 0 ? extraLength + 4 : 0);
+        // comment, disk, internal attributes
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        // rw-r--r--, rwxr-xr-x and the MS-DOS directory bit for directories
+        writeInt(out, entry.directory ? 040755 << 16 | 0x10 : 0100644 << 16);
+        writeInt(out, zip64Offset ? -1 : (int) entry.offset);
+        out.write(entry.name);
+        if (extraLength > 0) {
+            writeShort(out, 0x0001);
+            writeShort(out, extraLength);
+            if (zip64Size) {
+                writeLong(out, entry.size);
+                writeLong(out, entry.compressedSize);
+            }
+            if (zip64Offset) {
+                writeLong(out, entry.offset);
+            }
+        }
+    }
+
+    private static void writeEnd(CountingOutputStream out, int entries, long offset, long size) throws IOException {
+        boolean zip64 = entries >= 0xffff || offset >= ZIP64_LIMIT || size >= ZIP64_LIMIT;
+        if (zip64) {
+            long zip64EndOffset = out.count;
+            writeInt(out, 0x06064b50);
+            writeLong(out, 44L);
+            writeShort(out, 3 << 8 | 45);
+            writeShort(out, 45);
+            writeInt(out, 0);
+            writeInt(out, 0);
+            writeLong(out, entries);
+            writeLong(out, entries);
+            writeLong(out, size);
+            writeLong(out, offset);
+            // locator
+            writeInt(out, 0x07064b50);
+            writeInt(out, 0);
+            writeLong(out, zip64EndOffset);
+            writeInt(out, 1);
+        }
+        writeInt(out, 0x06054b50);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, zip64 ? 0xffff : entries);
+        writeShort(out, zip64 ? 0xffff : entries);
+        writeInt(out, zip64 ? -1 : (int) size);
+        writeInt(out, zip64 ? -1 : (int) offset);
+        writeShort(out, 0);
+    }
+
+    private static long dosTime(long millis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        writeShort(out, value & 0xffff);
+        writeShort(out, (value >>> 16) & 0xffff);
+    }
+
+    private static void writeLong(OutputStream out, long value) throws IOException {
+        writeInt(out, (int) value);
+        writeInt(out, (int) (value >>> 32));
+    }
+
+    static class Entry {
+
+        private byte[] name;
+
+        private long time;
+
+        private long offset;
+
+        private boolean zip64;
+
+        private boolean directory;
+
+        private long crc;
+
+        private long size;
+
+        private long compressedSize;
+
+    }
+
+    static class CountingOutputStream extends FilterOutputStream {
+
+        private long count = 0L;
+
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+    }
+
+}
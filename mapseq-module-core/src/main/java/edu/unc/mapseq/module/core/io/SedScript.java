@@ -0,0 +1,277 @@
+package edu.unc.mapseq.module.core.io;
+
+import java.util.regex.Pattern;
+
+/**
+ * Compiles the sed scripts our workflows use into LineTransformer operations: commands separated by ; or newlines,
+ * each one s/regex/replacement/[g][I] or /regex/d (any delimiter after s, \cregexc for addresses). Regular expressions
+ * are POSIX basic ones, as with sed, or extended ones, as with sed -E. Line numbers, ranges and the commands that look
+ * at more than one line can not be run on blocks at once and are rejected.
+ *
+ * @author jdr0887
+ */
+public class SedScript {
+
+    private final String script;
+
+    private final boolean extended;
+
+    private int position = 0;
+
+    public SedScript(String script, boolean extended) {
+        super();
+        this.script = script;
+        this.extended = extended;
+    }
+
+    public static LineTransformer compile(String script, boolean extended) {
+        LineTransformer transformer = new LineTransformer();
+        new SedScript(script, extended).addTo(transformer);
+        return transformer;
+    }
+
+    public void addTo(LineTransformer transformer) {
+        position = 0;
+        while (true) {
+            skipSeparators();
+            if (position >= script.length()) {
+                break;
+            }
+            char c = script.charAt(position);
+            if (c == 's') {
+                position++;
+                char delimiter = next();
+                String regex = readUntil(delimiter);
+                String replacement = readUntil(delimiter);
+                boolean global = false;
+                int flags = Pattern.UNIX_LINES;
+                while (position < script.length() && ";\n} \t".indexOf(script.charAt(position)) == -1) {
+                    char flag = script.charAt(position++);
+                    if (flag == 'g') {
+                        global = true;
+                    } else if (flag == 'I' || flag == 'i') {
+                        flags |= Pattern.CASE_INSENSITIVE;
+                    } else {
+                        throw new IllegalArgumentException(String.format("unsupported s flag %s: %s", flag, script));
+                    }
+                }
+                transformer.substitute(Pattern.compile(toJavaRegex(regex), flags), toJavaReplacement(replacement),
+                        global);
+            } else if (c == '/' || c == '\\') {
+                position++;
+                char delimiter = c == '/' ? '/' : next();
+                String regex = readUntil(delimiter);
+                skipBlanks();
+                if (position >= script.length() || script.charAt(position) != 'd') {
+                    throw new IllegalArgumentException(String.format("only d is supported after an address: %s",
+                            script));
+                }
+                position++;
+                String javaRegex = toJavaRegex(regex);
+                String prefix = getLiteralPrefix(javaRegex);
+                if (prefix != null) {
+                    transformer.deleteStartingWith(prefix);
+                } else {
+                    transformer.deleteMatching(Pattern.compile(javaRegex, Pattern.UNIX_LINES));
+                }
+            } else {
+                throw new IllegalArgumentException(String.format("unsupported sed command at %d: %s", position,
+                        script));
+            }
+        }
+    }
+
+    private char next() {
+        if (position >= script.length()) {
+            throw new IllegalArgumentException(String.format("unterminated command: %s", script));
+        }
+        return script.charAt(position++);
+    }
+
+    private String readUntil(char delimiter) {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            char c = next();
+            if (c == delimiter) {
+                return sb.toString();
+            }
+            if (c == '\\') {
+                char escaped = next();
+                if (escaped == delimiter) {
+                    // \/ is just the delimiter
+                    sb.append(escaped);
+                } else {
+                    sb.append(c).append(escaped);
+                }
+                continue;
+            }
+            sb.append(c);
+        }
+    }
+
+    private void skipSeparators() {
+        while (position < script.length() && ";\n \t".indexOf(script.charAt(position)) != -1) {
+            position++;
+        }
+    }
+
+    private void skipBlanks() {
+        while (position < script.length() && " \t".indexOf(script.charAt(position)) != -1) {
+            position++;
+        }
+    }
+
+    /**
+     * @return the literal after ^ when that is the whole expression, ie ^uc0, else null
+     */
+    static String getLiteralPrefix(String javaRegex) {
+        if (!javaRegex.startsWith("^") || javaRegex.length() == 1) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i < javaRegex.length(); i++) {
+            char c = javaRegex.charAt(i);
+            if (c == '\\' && i + 1 < javaRegex.length() && !Character.isLetterOrDigit(javaRegex.charAt(i + 1))) {
+                sb.append(javaRegex.charAt(++i));
+            } else if ("\\[](){}.*+?^$|".indexOf(c) != -1) {
+                return null;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * POSIX basic (or extended) to java.util.regex: in a basic expression \( \) \{ \} \| \+ \? are the operators and
+     * the bare characters are literals, ^ and $ are anchors only at the start and the end (of the expression, a group or
+     * an alternative, as GNU sed has it); bracket expressions take no escapes and may hold [:class:] names.
+     */
+    String toJavaRegex(String regex) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '[') {
+                i = bracket(regex, i, sb);
+            } else if (c == '\\' && i + 1 < regex.length()) {
+                char escaped = regex.charAt(++i);
+                if (!extended && "(){}|+?".indexOf(escaped) != -1) {
+                    sb.append(escaped);
+                } else if (escaped == 'n') {
+                    sb.append("\\n");
+                } else if (escaped == 't') {
+                    sb.append("\\t");
+                } else if (Character.isDigit(escaped) || "wWsSbB<>".indexOf(escaped) != -1) {
+                    sb.append(escaped == '<' || escaped == '>' ? "\\b" : "\\" + escaped);
+                } else {
+                    sb.append('\\').append(escaped);
+                }
+            } else if (!extended && "(){}|+?".indexOf(c) != -1) {
+                sb.append('\\').append(c);
+            } else if (!extended && c == '*' && (i == 0 || (i == 1 && regex.charAt(0) == '^'))) {
+                // a leading * is a literal
+                sb.append("\\*");
+            } else if (!extended && c == '^' && i > 0 && !regex.startsWith("\\(", i - 2)
+                    && !regex.startsWith("\\|", i - 2)) {
+                sb.append("\\^");
+            } else if (!extended && c == '$' && i < regex.length() - 1 && !regex.startsWith("\\)", i + 1)
+                    && !regex.startsWith("\\|", i + 1)) {
+                sb.append("\\$");
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int bracket(String regex, int start, StringBuilder sb) {
+        int i = start + 1;
+        sb.append('[');
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            sb.append('^');
+            i++;
+        }
+        // a ] right after [ or [^ is a literal
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            sb.append("\\]");
+            i++;
+        }
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == ']') {
+                sb.append(']');
+                return i;
+            }
+            if (c == '[' && i + 1 < regex.length() && regex.charAt(i + 1) == ':') {
+                int end = regex.indexOf(":]", i + 2);
+                if (end != -1) {
+                    sb.append(posixClass(regex.substring(i + 2, end)));
+                    i = end + 1;
+                    continue;
+                }
+            }
+            if ("\\[&~".indexOf(c) != -1) {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        throw new IllegalArgumentException(String.format("unterminated [ in %s", regex));
+    }
+
+    private static String posixClass(String name) {
+        switch (name) {
+            case "alpha":
+                return "\\p{Alpha}";
+            case "digit":
+                return "\\p{Digit}";
+            case "alnum":
+                return "\\p{Alnum}";
+            case "upper":
+                return "\\p{Upper}";
+            case "lower":
+                return "\\p{Lower}";
+            case "space":
+                return "\\s";
+            case "blank":
+                return " \\t";
+            case "punct":
+                return "\\p{Punct}";
+            case "xdigit":
+                return "\\p{XDigit}";
+            default:
+                throw new IllegalArgumentException(String.format("unknown character class [:%s:]", name));
+        }
+    }
+
+    /**
+     * & is the match and \1 to \9 the groups, as for sed; everything else is literal to Matcher.
+     */
+    static String toJavaReplacement(String replacement) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < replacement.length(); i++) {
+            char c = replacement.charAt(i);
+            if (c == '&') {
+                sb.append("$0");
+            } else if (c == '\\' && i + 1 < replacement.length()) {
+                char escaped = replacement.charAt(++i);
+                if (Character.isDigit(escaped)) {
+                    sb.append('$').append(escaped);
+                } else if (escaped == 'n') {
+                    sb.append('\n');
+                } else if (escaped == 't') {
+                    sb.append('\t');
+                } else if (escaped == '$' || escaped == '\\') {
+                    sb.append('\\').append(escaped);
+                } else {
+                    sb.append(escaped);
+                }
+            } else if (c == '$' || c == '\\') {
+                sb.append('\\').append(c);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,415 @@
+package edu.unc.mapseq.module.core.metrics;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.module.Module;
+import edu.unc.mapseq.module.ModuleOutput;
+import edu.unc.mapseq.module.annotations.OutputArgument;
+
+/**
+ * Metrics of one module run. The generated CLI calls {@link #start(Module)} and {@link #finish(ModuleOutput)} around
+ * every run, which records wall, CPU and GC time; Java modules add their own counters and phase timings through
+ * {@link #get(Module)}:
+ *
+ * <pre>
+ * ModuleMetrics metrics = ModuleMetrics.get(this);
+ * try (ModuleMetrics.PhaseTimer timer = metrics.phase(&quot;trim&quot;)) {
+ *     ...
+ *     metrics.counter(ModuleMetrics.RECORDS_IN).incrementAndGet();
+ * }
+ * </pre>
+ *
+ * Only {@link #start(Module)} starts a run; outside of one (a module called directly rather than through its CLI)
+ * {@link #get(Module)} hands out metrics that are recorded nowhere.
+ *
+ * CPU and GC time are only known for the whole JVM, so they are only charged to a run that had the JVM to itself; when
+ * runs overlap (a ModuleServer, modules run side by side) they are unknown (null) and left out of the sidecar.
+ *
+ * While the module runs, a {@link ProcessTreeSampler} watches the processes it starts; its summary (child.* keys)
+ * ends up next to the counters and its time series in a .procstats file when there were any.
+ *
+ * When a run finishes its metrics are added to the per module MXBean (see {@link ModuleMetricsMXBean}) and written as
+ * sorted key=value lines, the first output among them, to &lt;dir&gt;/&lt;module&gt;.&lt;start&gt;.&lt;jvm&gt;.&lt;run&gt;.metrics,
+ * &lt;dir&gt; being -Dmapseq.metrics.dir or ~/.mapseq/metrics. They are kept out of the output directories, where
+ * the modules that pick files by pattern (RegexCat, RegexRemove, ZCat) would find them. -Dmapseq.metrics.sidecar=false
+ * turns the files off.
+ *
+ * @author jdr0887
+ */
+public class ModuleMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModuleMetrics.class);
+
+    public static final String DIRECTORY_PROPERTY = "mapseq.metrics.dir";
+
+    public static final String SIDECAR_PROPERTY = "mapseq.metrics.sidecar";
+
+    public static final String RECORDS_IN = "records.in";
+
+    public static final String RECORDS_OUT = "records.out";
+
+    public static final String BYTES_READ = "bytes.read";
+
+    public static final String BYTES_WRITTEN = "bytes.written";
+
+    private static final String JVM_NAME = ManagementFactory.getRuntimeMXBean().getName();
+
+    private static final AtomicLong runs = new AtomicLong();
+
+    private static final Map<Module, ModuleMetrics> active = Collections
+            .synchronizedMap(new IdentityHashMap<Module, ModuleMetrics>());
+
+    private static final ConcurrentMap<String, ModuleMetricsAggregate> aggregates = new ConcurrentHashMap<String, ModuleMetricsAggregate>();
+
+    private final Module module;
+
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+    private final ConcurrentMap<String, AtomicLong> phaseTimes = new ConcurrentHashMap<String, AtomicLong>();
+
+    private final long startTime;
+
+    private final long startNanos;
+
+    private final long startCpuTime;
+
+    private final long startGcTime;
+
+    private final long run = runs.incrementAndGet();
+
+    // another run was active at some point of this one
+    private volatile boolean shared = false;
+
+    private long wallTime;
+
+    private Long cpuTime;
+
+    private Long gcTime;
+
+    private boolean succeeded;
+
+    private ProcessTreeSampler sampler;
+
+    private File timeSeriesFile;
+
+    private Map<String, Long> childStatistics = new TreeMap<String, Long>();
+
+    private ModuleMetrics(Module module) {
+        super();
+        this.module = module;
+        this.startTime = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.startCpuTime = getProcessCpuTime();
+        this.startGcTime = getTotalGcTime();
+    }
+
+    private void startSampler() {
+        long interval = ProcessTreeSampler.getConfiguredInterval();
+        if (interval <= 0 || !ProcessTreeSampler.isSupported()) {
+            return;
+        }
+        if (Boolean.valueOf(System.getProperty(SIDECAR_PROPERTY, "true"))) {
+            timeSeriesFile = getSidecarFile("procstats");
+        }
+        sampler = new ProcessTreeSampler(interval, timeSeriesFile);
+        sampler.start();
+    }
+
+    public static ModuleMetrics start(Module module) {
+        ModuleMetrics metrics = new ModuleMetrics(module);
+        metrics.startSampler();
+        synchronized (active) {
+            for (ModuleMetrics other : active.values()) {
+                other.shared = true;
+                metrics.shared = true;
+            }
+            active.put(module, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the metrics of the current run of the module or, when the module was not called through its CLI, metrics
+     *         that are neither aggregated nor written
+     */
+    public static ModuleMetrics get(Module module) {
+        ModuleMetrics metrics = active.get(module);
+        if (metrics == null) {
+            logger.debug("{} is not in a run, its metrics are dropped", module.getModuleClass().getSimpleName());
+            metrics = new ModuleMetrics(module);
+        }
+        return metrics;
+    }
+
+    public AtomicLong counter(String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            AtomicLong previous = counters.putIfAbsent(name, counter = new AtomicLong());
+            if (previous != null) {
+                counter = previous;
+            }
+        }
+        return counter;
+    }
+
+    public PhaseTimer phase(String name) {
+        AtomicLong time = phaseTimes.get(name);
+        if (time == null) {
+            AtomicLong previous = phaseTimes.putIfAbsent(name, time = new AtomicLong());
+            if (previous != null) {
+                time = previous;
+            }
+        }
+        return new PhaseTimer(time);
+    }
+
+    /**
+     * @param output
+     *            null when the run threw
+     */
+    public void finish(ModuleOutput output) {
+        active.remove(module);
+        this.wallTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (shared) {
+            logger.debug("{} ran alongside other modules, no CPU and GC time", module.getModuleClass().getSimpleName());
+        }
+        this.cpuTime = startCpuTime < 0 || shared ? null
+                : TimeUnit.NANOSECONDS.toMillis(getProcessCpuTime() - startCpuTime);
+        this.gcTime = shared ? null : getTotalGcTime() - startGcTime;
+        this.succeeded = output != null && output.getExitCode() != null && output.getExitCode() == 0;
+        if (sampler != null) {
+            sampler.close();
+            childStatistics = new TreeMap<String, Long>(sampler.getSummary());
+            logger.info("{} child processes: {}", module.getModuleClass().getSimpleName(), childStatistics);
+            if (sampler.getProcessCount() == 0 && timeSeriesFile != null) {
+                // a pure java module, nothing to look at
+                timeSeriesFile.delete();
+            }
+        }
+
+        getAggregate(module.getModuleClass()).add(this);
+
+        if (!Boolean.valueOf(System.getProperty(SIDECAR_PROPERTY, "true"))) {
+            return;
+        }
+        File sidecar = getSidecarFile("metrics");
+        if (sidecar == null) {
+            return;
+        }
+        try {
+            write(sidecar);
+        } catch (IOException e) {
+            logger.warn(String.format("could not write %s", sidecar.getAbsolutePath()), e);
+        }
+    }
+
+    public Map<String, String> toMap() {
+        Map<String, String> ret = new TreeMap<String, String>();
+        ret.put("module", module.getModuleClass().getName());
+        File output = getFirstOutput();
+        if (output != null) {
+            ret.put("output", output.getAbsolutePath());
+        }
+        ret.put("start", String.valueOf(startTime));
+        ret.put("succeeded", String.valueOf(succeeded));
+        ret.put("time.wall", String.valueOf(wallTime));
+        if (cpuTime != null) {
+            ret.put("time.cpu", String.valueOf(cpuTime));
+        }
+        if (gcTime != null) {
+            ret.put("time.gc", String.valueOf(gcTime));
+        }
+        for (Map.Entry<String, Long> entry : getCounters().entrySet()) {
+            ret.put(String.format("counter.%s", entry.getKey()), String.valueOf(entry.getValue()));
+            if (wallTime > 0) {
+                ret.put(String.format("throughput.%s", entry.getKey()),
+                        String.format("%.1f", entry.getValue() * 1000D / wallTime));
+            }
+        }
+        for (Map.Entry<String, Long> entry : getPhaseTimes().entrySet()) {
+            ret.put(String.format("phase.%s", entry.getKey()), String.valueOf(entry.getValue()));
+        }
+        for (Map.Entry<String, Long> entry : childStatistics.entrySet()) {
+            ret.put(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        return ret;
+    }
+
+    private void write(File sidecar) throws IOException {
+        File tmp = new File(sidecar.getParentFile(), String.format(".%s.tmp", sidecar.getName()));
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(tmp))) {
+            for (Map.Entry<String, String> entry : toMap().entrySet()) {
+                bw.write(String.format("%s=%s%n", entry.getKey(), entry.getValue()));
+            }
+        }
+        Files.move(tmp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private File getSidecarFile(String suffix) {
+        String dir = System.getProperty(DIRECTORY_PROPERTY);
+        File directory = dir != null ? new File(dir)
+                : new File(new File(System.getProperty("user.home"), ".mapseq"), "metrics");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.warn("could not create {}", directory.getAbsolutePath());
+            return null;
+        }
+        return new File(directory, String.format("%s.%d.%s.%d.%s", module.getModuleClass().getSimpleName(),
+                startTime, JVM_NAME, run, suffix));
+    }
+
+    private File getFirstOutput() {
+        for (Class<?> c = module.getClass(); c != null && c != Module.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!field.isAnnotationPresent(OutputArgument.class) || !File.class.equals(field.getType())) {
+                    continue;
+                }
+                try {
+                    field.setAccessible(true);
+                    File output = (File) field.get(module);
+                    if (output != null) {
+                        return output;
+                    }
+                } catch (IllegalAccessException e) {
+                    logger.warn(e.getMessage());
+                }
+            }
+        }
+        return null;
+    }
+
+    public static ModuleMetricsAggregate getAggregate(Class<?> moduleClass) {
+        ModuleMetricsAggregate aggregate = aggregates.get(moduleClass.getName());
+        if (aggregate == null) {
+            ModuleMetricsAggregate previous = aggregates.putIfAbsent(moduleClass.getName(),
+                    aggregate = new ModuleMetricsAggregate());
+            if (previous != null) {
+                return previous;
+            }
+            try {
+                MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+                mbeanServer.registerMBean(aggregate, new ObjectName(String.format(
+                        "edu.unc.mapseq.module:type=ModuleMetrics,name=%s", ObjectName.quote(moduleClass.getName()))));
+            } catch (Exception e) {
+                logger.warn(String.format("could not register metrics MXBean of %s", moduleClass.getName()), e);
+            }
+        }
+        return aggregate;
+    }
+
+    private static long getProcessCpuTime() {
+        OperatingSystemMXBean osMXBean = ManagementFactory.getOperatingSystemMXBean();
+        if (osMXBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) osMXBean).getProcessCpuTime();
+        }
+        return -1L;
+    }
+
+    private static long getTotalGcTime() {
+        long ret = 0L;
+        for (GarbageCollectorMXBean gcMXBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ret += Math.max(0L, gcMXBean.getCollectionTime());
+        }
+        return ret;
+    }
+
+    public Map<String, Long> getCounters() {
+        Map<String, Long> ret = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            ret.put(entry.getKey(), entry.getValue().get());
+        }
+        return ret;
+    }
+
+    /**
+     * @return milliseconds spent in each phase
+     */
+    public Map<String, Long> getPhaseTimes() {
+        Map<String, Long> ret = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : phaseTimes.entrySet()) {
+            ret.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().get()));
+        }
+        return ret;
+    }
+
+    /**
+     * @return the {@link ProcessTreeSampler} summary, empty while running or when sampling is off
+     */
+    public Map<String, Long> getChildStatistics() {
+        return childStatistics;
+    }
+
+    public long getWallTime() {
+        return wallTime;
+    }
+
+    /**
+     * @return milliseconds, null when the run shared the JVM or the JVM does not tell
+     */
+    public Long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * @return milliseconds, null when the run shared the JVM
+     */
+    public Long getGcTime() {
+        return gcTime;
+    }
+
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ModuleMetrics [module=%s, wallTime=%s, cpuTime=%s, gcTime=%s, counters=%s]",
+                module.getModuleClass().getSimpleName(), wallTime, cpuTime, gcTime, getCounters());
+    }
+
+    /**
+     * Adds the time between its creation and close to its phase.
+     */
+    public static class PhaseTimer implements Closeable {
+
+        private final AtomicLong time;
+
+        private final long start = System.nanoTime();
+
+        private PhaseTimer(AtomicLong time) {
+            super();
+            this.time = time;
+        }
+
+        @Override
+        public void close() {
+            time.addAndGet(System.nanoTime() - start);
+        }
+
+    }
+
+}
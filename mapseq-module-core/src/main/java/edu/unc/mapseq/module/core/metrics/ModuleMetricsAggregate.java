@@ -0,0 +1,114 @@
+package edu.unc.mapseq.module.core.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @author jdr0887
+ */
+public class ModuleMetricsAggregate implements ModuleMetricsMXBean {
+
+    private long runs = 0L;
+
+    private long failures = 0L;
+
+    private long totalWallTime = 0L;
+
+    private long totalCpuTime = 0L;
+
+    private long totalGcTime = 0L;
+
+    private long lastWallTime = 0L;
+
+    private final Map<String, Long> counters = new TreeMap<String, Long>();
+
+    private final Map<String, Long> phaseTimes = new TreeMap<String, Long>();
+
+    private Map<String, Long> lastChildStatistics = new TreeMap<String, Long>();
+
+    private long peakChildRss = 0L;
+
+    public ModuleMetricsAggregate() {
+        super();
+    }
+
+    public synchronized void add(ModuleMetrics metrics) {
+        runs++;
+        if (!metrics.isSucceeded()) {
+            failures++;
+        }
+        totalWallTime += metrics.getWallTime();
+        // null when the run shared the JVM with others
+        if (metrics.getCpuTime() != null) {
+            totalCpuTime += metrics.getCpuTime();
+        }
+        if (metrics.getGcTime() != null) {
+            totalGcTime += metrics.getGcTime();
+        }
+        lastWallTime = metrics.getWallTime();
+        lastChildStatistics = new TreeMap<String, Long>(metrics.getChildStatistics());
+        Long childRss = lastChildStatistics.get("child.rss.peak");
+        if (childRss != null) {
+            peakChildRss = Math.max(peakChildRss, childRss);
+        }
+        for (Map.Entry<String, Long> entry : metrics.getCounters().entrySet()) {
+            Long value = counters.get(entry.getKey());
+            counters.put(entry.getKey(), (value != null ? value : 0L) + entry.getValue());
+        }
+        for (Map.Entry<String, Long> entry : metrics.getPhaseTimes().entrySet()) {
+            Long value = phaseTimes.get(entry.getKey());
+            phaseTimes.put(entry.getKey(), (value != null ? value : 0L) + entry.getValue());
+        }
+    }
+
+    @Override
+    public synchronized long getRuns() {
+        return runs;
+    }
+
+    @Override
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    @Override
+    public synchronized long getTotalWallTime() {
+        return totalWallTime;
+    }
+
+    @Override
+    public synchronized long getTotalCpuTime() {
+        return totalCpuTime;
+    }
+
+    @Override
+    public synchronized long getTotalGcTime() {
+        return totalGcTime;
+    }
+
+    @Override
+    public synchronized long getLastWallTime() {
+        return lastWallTime;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getCounters() {
+        return new TreeMap<String, Long>(counters);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getPhaseTimes() {
+        return new TreeMap<String, Long>(phaseTimes);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getLastChildStatistics() {
+        return new TreeMap<String, Long>(lastChildStatistics);
+    }
+
+    @Override
+    public synchronized long getPeakChildRss() {
+        return peakChildRss;
+    }
+
+}
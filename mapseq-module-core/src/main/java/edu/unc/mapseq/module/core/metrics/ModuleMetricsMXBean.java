@@ -0,0 +1,39 @@
+package edu.unc.mapseq.module.core.metrics;
+
+import java.util.Map;
+
+/**
+ * Totals over every run of one module class in this JVM, registered as
+ * edu.unc.mapseq.module:type=ModuleMetrics,name=&lt;module&gt;.
+ *
+ * @author jdr0887
+ */
+public interface ModuleMetricsMXBean {
+
+    public long getRuns();
+
+    public long getFailures();
+
+    public long getTotalWallTime();
+
+    /**
+     * @return CPU time of the runs that had the JVM to themselves
+     */
+    public long getTotalCpuTime();
+
+    /**
+     * @return GC time of the runs that had the JVM to themselves
+     */
+    public long getTotalGcTime();
+
+    public long getLastWallTime();
+
+    public Map<String, Long> getCounters();
+
+    public Map<String, Long> getPhaseTimes();
+
+    public Map<String, Long> getLastChildStatistics();
+
+    public long getPeakChildRss();
+
+}
@@ -0,0 +1,370 @@
+package edu.unc.mapseq.module.core.metrics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Walks the tree of processes below this JVM (bash and whatever tool it started) under /proc at a fixed interval and
+ * keeps CPU time, RSS, thread count and read/write bytes. CPU time and I/O are cumulative per process, so the last
+ * value seen for a process counts even after it exits. Every sample can be written as a line of a tab separated time
+ * series.
+ *
+ * The tree is rooted at the JVM, so when several modules run at once in one JVM (ModuleServer, ModuleScheduler) their
+ * tools are all attributed to each of them.
+ *
+ * @author jdr0887
+ */
+public class ProcessTreeSampler implements Runnable, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessTreeSampler.class);
+
+    public static final String INTERVAL_PROPERTY = "mapseq.sampler.interval";
+
+    // USER_HZ and the page size are 100 and 4k on every linux we run on
+    private static final long CLOCK_TICKS = 100L;
+
+    private static final long PAGE_SIZE = 4096L;
+
+    private static final File PROC = new File("/proc");
+
+    private final String rootPid;
+
+    private final long interval;
+
+    private final File timeSeriesFile;
+
+    private final Map<String, long[]> lastSeen = new HashMap<String, long[]>();
+
+    private final long start = System.currentTimeMillis();
+
+    private volatile boolean running = true;
+
+    private Thread thread;
+
+    private BufferedWriter timeSeries;
+
+    private long samples = 0L;
+
+    private long peakRss = 0L;
+
+    private long rssSum = 0L;
+
+    private long peakThreads = 0L;
+
+    private long peakProcesses = 0L;
+
+    private long end;
+
+    /**
+     * @param timeSeriesFile
+     *            where to write every sample, null for a summary only
+     */
+    public ProcessTreeSampler(long interval, File timeSeriesFile) {
+        super();
+        this.rootPid = getJVMPid();
+        this.interval = interval;
+        this.timeSeriesFile = timeSeriesFile;
+    }
+
+    public static boolean isSupported() {
+        return new File(PROC, "self/stat").canRead();
+    }
+
+    /**
+     * @return the configured interval in milliseconds, 0 when sampling is off
+     */
+    public static long getConfiguredInterval() {
+        return Long.getLong(INTERVAL_PROPERTY, 1000L);
+    }
+
+    public void start() {
+        thread = new Thread(this, "process-tree-sampler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (timeSeriesFile != null) {
+                try {
+                    timeSeries = new BufferedWriter(new FileWriter(timeSeriesFile));
+                    timeSeries.write("elapsed\tprocesses\tcpu\trss\tthreads\tread_bytes\twrite_bytes\n");
+                } catch (IOException e) {
+                    logger.warn(String.format("could not write %s, keeping the summary only", timeSeriesFile), e);
+                    timeSeries = null;
+                }
+            }
+            long previousCpu = 0L;
+            long previousTime = start;
+            while (running) {
+                long now = System.currentTimeMillis();
+                long[] sample = sample();
+                long cpu = getCpuTime();
+                // percent of one core over the interval
+                long cpuPercent = now > previousTime ? (cpu - previousCpu) * 100 / (now - previousTime) : 0L;
+                previousCpu = cpu;
+                previousTime = now;
+                if (timeSeries != null) {
+                    timeSeries.write(String.format("%d\t%d\t%d\t%d\t%d\t%d\t%d%n", now - start, sample[0], cpuPercent,
+                            sample[1], sample[2], getReadBytes(), getWriteBytes()));
+                }
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            // one last look so short lived tools are not missed entirely
+            sample();
+        } catch (IOException e) {
+            logger.warn("sampling stopped", e);
+        } finally {
+            if (timeSeries != null) {
+                try {
+                    timeSeries.close();
+                } catch (IOException e) {
+                    logger.warn(e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return processes, RSS and threads of the tree right now
+     */
+    protected synchronized long[] sample() {
+        Set<String> pids = getDescendants();
+        long rss = 0L;
+        long threads = 0L;
+        for (String pid : pids) {
+            long[] stat = readStat(pid);
+            if (stat == null) {
+                continue;
+            }
+            long[] io = readIO(pid);
+            long[] values = lastSeen.get(pid);
+            if (values == null) {
+                values = new long[3];
+                lastSeen.put(pid, values);
+            }
+            values[0] = stat[0];
+            if (io != null) {
+                values[1] = io[0];
+                values[2] = io[1];
+            }
+            rss += stat[1];
+            threads += stat[2];
+        }
+        samples++;
+        rssSum += rss;
+        peakRss = Math.max(peakRss, rss);
+        peakThreads = Math.max(peakThreads, threads);
+        peakProcesses = Math.max(peakProcesses, pids.size());
+        return new long[] { pids.size(), rss, threads };
+    }
+
+    private Set<String> getDescendants() {
+        Map<String, List<String>> children = new HashMap<String, List<String>>();
+        File[] entries = PROC.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                String pid = entry.getName();
+                if (!Character.isDigit(pid.charAt(0))) {
+                    continue;
+                }
+                String[] fields = readStatFields(pid);
+                if (fields == null) {
+                    continue;
+                }
+                List<String> list = children.get(fields[1]);
+                if (list == null) {
+                    list = new ArrayList<String>();
+                    children.put(fields[1], list);
+                }
+                list.add(pid);
+            }
+        }
+        Set<String> ret = new HashSet<String>();
+        Deque<String> queue = new ArrayDeque<String>();
+        queue.add(rootPid);
+        while (!queue.isEmpty()) {
+            List<String> list = children.get(queue.poll());
+            if (list != null) {
+                for (String child : list) {
+                    if (ret.add(child)) {
+                        queue.add(child);
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the fields after the command name, ie state is [0] and ppid is [1]
+     */
+    private static String[] readStatFields(String pid) {
+        try {
+            String stat = new String(Files.readAllBytes(new File(PROC, pid + "/stat").toPath()),
+                    StandardCharsets.US_ASCII);
+            return stat.substring(stat.lastIndexOf(')') + 2).trim().split(" ");
+        } catch (IOException | RuntimeException e) {
+            // the process exited in the meantime
+            return null;
+        }
+    }
+
+    /**
+     * @return CPU time (ms), RSS (bytes) and threads
+     */
+    private static long[] readStat(String pid) {
+        String[] fields = readStatFields(pid);
+        if (fields == null || fields.length < 22) {
+            return null;
+        }
+        long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+        return new long[] { ticks * 1000 / CLOCK_TICKS, Long.parseLong(fields[21]) * PAGE_SIZE,
+                Long.parseLong(fields[17]) };
+    }
+
+    /**
+     * @return read_bytes and write_bytes, null when /proc/pid/io cannot be read
+     */
+    private static long[] readIO(String pid) {
+        File io = new File(PROC, pid + "/io");
+        long[] ret = new long[2];
+        try (BufferedReader br = new BufferedReader(new FileReader(io))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith("read_bytes:")) {
+                    ret[0] = Long.parseLong(line.substring(11).trim());
+                } else if (line.startsWith("write_bytes:")) {
+                    ret[1] = Long.parseLong(line.substring(12).trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+        return ret;
+    }
+
+    private static String getJVMPid() {
+        try {
+            return new File(PROC, "self").getCanonicalFile().getName();
+        } catch (IOException e) {
+            return "self";
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        end = System.currentTimeMillis();
+    }
+
+    /**
+     * @return CPU time (ms) of every process seen so far
+     */
+    public synchronized long getCpuTime() {
+        long ret = 0L;
+        for (long[] values : lastSeen.values()) {
+            ret += values[0];
+        }
+        return ret;
+    }
+
+    public synchronized long getReadBytes() {
+        long ret = 0L;
+        for (long[] values : lastSeen.values()) {
+            ret += values[1];
+        }
+        return ret;
+    }
+
+    public synchronized long getWriteBytes() {
+        long ret = 0L;
+        for (long[] values : lastSeen.values()) {
+            ret += values[2];
+        }
+        return ret;
+    }
+
+    public synchronized long getPeakRss() {
+        return peakRss;
+    }
+
+    public synchronized long getMeanRss() {
+        return samples > 0 ? rssSum / samples : 0L;
+    }
+
+    public synchronized long getPeakThreads() {
+        return peakThreads;
+    }
+
+    public synchronized long getProcessCount() {
+        return lastSeen.size();
+    }
+
+    public synchronized long getPeakProcesses() {
+        return peakProcesses;
+    }
+
+    /**
+     * @return average utilization in percent of one core
+     */
+    public synchronized long getCpuUtilization() {
+        long wall = (end > 0 ? end : System.currentTimeMillis()) - start;
+        return wall > 0 ? getCpuTime() * 100 / wall : 0L;
+    }
+
+    /**
+     * @return the summary keyed the way ModuleMetrics counters are
+     */
+    public synchronized Map<String, Long> getSummary() {
+        Map<String, Long> ret = new HashMap<String, Long>();
+        ret.put("child.processes", getProcessCount());
+        ret.put("child.processes.peak", peakProcesses);
+        ret.put("child.time.cpu", getCpuTime());
+        ret.put("child.cpu.utilization", getCpuUtilization());
+        ret.put("child.rss.peak", peakRss);
+        ret.put("child.rss.mean", getMeanRss());
+        ret.put("child.threads.peak", peakThreads);
+        ret.put("child.bytes.read", getReadBytes());
+        ret.put("child.bytes.written", getWriteBytes());
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ProcessTreeSampler [rootPid=%s, interval=%s, summary=%s]", rootPid, interval,
+                getSummary());
+    }
+
+}
@@ -0,0 +1,126 @@
+package edu.unc.mapseq.module.core.runner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dependency bookkeeping shared by {@link ModuleBatchRunner} and {@link ModuleScheduler}: which steps wait on which,
+ * which steps become ready once one succeeds and which ones are skipped once one does not. The runners only decide
+ * when and where a ready step is started.
+ *
+ * Not thread safe, it is only used from the thread driving the run.
+ *
+ * @author jdr0887
+ */
+class InvocationGraph {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvocationGraph.class);
+
+    private final List<ModuleInvocation> invocations;
+
+    private final Map<String, ModuleInvocation> invocationMap = new LinkedHashMap<String, ModuleInvocation>();
+
+    private final Map<String, Integer> remainingDependencies = new HashMap<String, Integer>();
+
+    private final Map<String, List<String>> dependents = new HashMap<String, List<String>>();
+
+    public InvocationGraph(List<ModuleInvocation> invocations) {
+        super();
+        this.invocations = invocations;
+        for (ModuleInvocation invocation : invocations) {
+            invocationMap.put(invocation.getId(), invocation);
+            remainingDependencies.put(invocation.getId(), invocation.getDependencies().size());
+            dependents.put(invocation.getId(), new ArrayList<String>());
+        }
+        for (ModuleInvocation invocation : invocations) {
+            for (String dependency : invocation.getDependencies()) {
+                dependents.get(dependency).add(invocation.getId());
+            }
+        }
+    }
+
+    /**
+     * @return the steps without dependencies, in manifest order
+     */
+    public List<ModuleInvocation> getRoots() {
+        List<ModuleInvocation> ret = new ArrayList<ModuleInvocation>();
+        for (ModuleInvocation invocation : invocations) {
+            if (invocation.getDependencies().isEmpty()) {
+                ret.add(invocation);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the ids of the steps directly waiting on the given one
+     */
+    public List<String> getDependents(String id) {
+        return dependents.get(id);
+    }
+
+    /**
+     * Records the outcome of a finished step. When it succeeded, the dependents left with nothing to wait on are
+     * returned; otherwise everything downstream of it that has not started yet is marked as skipped.
+     *
+     * @return the steps that became ready, in manifest order
+     */
+    public List<ModuleInvocation> finished(ModuleInvocation invocation) {
+        List<ModuleInvocation> ret = new ArrayList<ModuleInvocation>();
+        if (invocation.getStatus() != InvocationStatusType.SUCCEEDED) {
+            skip(invocation);
+            return ret;
+        }
+        for (String dependentId : dependents.get(invocation.getId())) {
+            int remaining = remainingDependencies.get(dependentId) - 1;
+            remainingDependencies.put(dependentId, remaining);
+            ModuleInvocation dependent = invocationMap.get(dependentId);
+            if (remaining == 0 && dependent.getStatus() == InvocationStatusType.PENDING) {
+                ret.add(dependent);
+            }
+        }
+        return ret;
+    }
+
+    private void skip(ModuleInvocation failed) {
+        Deque<String> queue = new ArrayDeque<String>(dependents.get(failed.getId()));
+        while (!queue.isEmpty()) {
+            ModuleInvocation dependent = invocationMap.get(queue.poll());
+            if (dependent.getStatus() == InvocationStatusType.PENDING) {
+                logger.warn("skipping {}, upstream step {} did not succeed", dependent.getId(), failed.getId());
+                dependent.setStatus(InvocationStatusType.SKIPPED);
+                queue.addAll(dependents.get(dependent.getId()));
+            }
+        }
+    }
+
+    /**
+     * Skips the steps that never became ready (a dependency cycle) and logs the outcome of every step.
+     *
+     * @return the number of steps that did not succeed
+     */
+    public int report() {
+        int failed = 0;
+        for (ModuleInvocation invocation : invocations) {
+            if (invocation.getStatus() == InvocationStatusType.PENDING) {
+                logger.error("{} never became ready, check the manifest for a dependency cycle", invocation.getId());
+                invocation.setStatus(InvocationStatusType.SKIPPED);
+            }
+            if (invocation.getStatus() != InvocationStatusType.SUCCEEDED) {
+                failed++;
+            }
+            logger.info("{}: {} (exitCode={}, duration={}ms)", invocation.getId(), invocation.getStatus(),
+                    invocation.getExitCode(), invocation.getDuration());
+        }
+        return failed;
+    }
+
+}
@@ -0,0 +1,15 @@
+package edu.unc.mapseq.module.core.runner;
+
+public enum InvocationStatusType {
+
+    PENDING,
+
+    RUNNING,
+
+    SUCCEEDED,
+
+    FAILED,
+
+    SKIPPED;
+
+}
@@ -0,0 +1,151 @@
+package edu.unc.mapseq.module.core.runner;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.module.ModuleOutput;
+
+/**
+ * Executes every step of a manifest (see {@link ModuleManifestParser}) inside one JVM. Steps are started as soon as
+ * all of their dependencies have succeeded and independent steps run concurrently. When a step fails, everything
+ * downstream of it is skipped.
+ *
+ * @author jdr0887
+ */
+public class ModuleBatchRunner implements Callable<Integer> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModuleBatchRunner.class);
+
+    private final List<ModuleInvocation> invocations;
+
+    private final Integer threads;
+
+    public ModuleBatchRunner(List<ModuleInvocation> invocations, Integer threads) {
+        super();
+        this.invocations = invocations;
+        this.threads = threads;
+    }
+
+    /**
+     * @return the number of steps that did not succeed
+     */
+    @Override
+    public Integer call() throws Exception {
+
+        InvocationGraph graph = new InvocationGraph(invocations);
+        Deque<ModuleInvocation> ready = new ArrayDeque<ModuleInvocation>(graph.getRoots());
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        CompletionService<ModuleInvocation> completionService = new ExecutorCompletionService<ModuleInvocation>(
+                executorService);
+        int running = 0;
+        try {
+            while (!ready.isEmpty() || running > 0) {
+
+                while (!ready.isEmpty()) {
+                    ModuleInvocation invocation = ready.poll();
+                    invocation.setStatus(InvocationStatusType.RUNNING);
+                    completionService.submit(new InvocationTask(invocation));
+                    running++;
+                }
+
+                ModuleInvocation finished = completionService.take().get();
+                running--;
+
+                ready.addAll(graph.finished(finished));
+
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        return graph.report();
+    }
+
+    class InvocationTask implements Callable<ModuleInvocation> {
+
+        private final ModuleInvocation invocation;
+
+        public InvocationTask(ModuleInvocation invocation) {
+            super();
+            this.invocation = invocation;
+        }
+
+        @Override
+        public ModuleInvocation call() {
+            long start = System.currentTimeMillis();
+            try {
+                logger.info("starting {}: {}", invocation.getId(), invocation.getModuleClassName());
+                ModuleOutput output = ModuleInvoker.forName(invocation.getModuleClassName())
+                        .invoke(invocation.getArguments());
+                invocation.setExitCode(output != null && output.getExitCode() != null ? output.getExitCode() : -1);
+                if (output != null && output.getError() != null && output.getError().length() > 0) {
+                    logger.warn("{}: {}", invocation.getId(), output.getError().toString());
+                }
+            } catch (Exception e) {
+                logger.error(String.format("%s failed", invocation.getId()), e);
+                invocation.setExitCode(-1);
+            }
+            invocation.setDuration(System.currentTimeMillis() - start);
+            invocation.setStatus(invocation.getExitCode() == 0 ? InvocationStatusType.SUCCEEDED : InvocationStatusType.FAILED);
+            return invocation;
+        }
+
+    }
+
+    @SuppressWarnings("static-access")
+    public static void main(String[] args) {
+        HelpFormatter helpFormatter = new HelpFormatter();
+        Options cliOptions = new Options();
+        cliOptions.addOption(OptionBuilder.withArgName("manifest").hasArg().withDescription("manifest of module invocations")
+                .withLongOpt("manifest").create());
+        cliOptions.addOption(OptionBuilder.withArgName("threads").hasArg()
+                .withDescription("number of steps to run concurrently (default is the number of processors)")
+                .withLongOpt("threads").create());
+        cliOptions.addOption(OptionBuilder.withArgName("help").withDescription("print this help message").withLongOpt("help")
+                .create("?"));
+
+        int failed = 0;
+        try {
+            CommandLineParser commandLineParser = new GnuParser();
+            CommandLine commandLine = commandLineParser.parse(cliOptions, args);
+            if (commandLine.hasOption("?") || !commandLine.hasOption("manifest")) {
+                helpFormatter.printHelp(ModuleBatchRunner.class.getSimpleName(), cliOptions);
+                return;
+            }
+            Integer threads = Runtime.getRuntime().availableProcessors();
+            if (commandLine.hasOption("threads")) {
+                threads = Integer.valueOf(commandLine.getOptionValue("threads"));
+            }
+            List<ModuleInvocation> invocations = new ModuleManifestParser()
+                    .parse(new File(commandLine.getOptionValue("manifest")));
+            failed = new ModuleBatchRunner(invocations, threads).call();
+        } catch (ParseException e) {
+            System.err.println("Parsing Failed: " + e.getMessage());
+            helpFormatter.printHelp(ModuleBatchRunner.class.getSimpleName(), cliOptions);
+            System.exit(-1);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        System.exit(failed > 0 ? -1 : 0);
+    }
+
+}
@@ -0,0 +1,112 @@
+package edu.unc.mapseq.module.core.runner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Drop-in launcher for generated CLI classes: ModuleClient &lt;module or CLI class&gt; [CLI arguments]. When a
+ * {@link ModuleServer} is listening on the configured port, and its token file is readable, the invocation is executed
+ * there, otherwise (or when the server sends it back, see {@link ModuleServer#RUN_LOCALLY}) the CLI main method is run
+ * in this JVM.
+ *
+ * @author jdr0887
+ */
+public class ModuleClient {
+
+    private final Integer port;
+
+    public ModuleClient(Integer port) {
+        super();
+        this.port = port;
+    }
+
+    /**
+     * @return the module exit code, or {@link ModuleServer#RUN_LOCALLY}
+     * @throws ConnectException
+     *             when no server is listening, or its token cannot be read
+     */
+    public Integer invoke(String cliClassName, String[] args) throws IOException {
+        File tokenFile = ModuleServer.getTokenFile(port);
+        if (!tokenFile.canRead()) {
+            throw new ConnectException(String.format("cannot read %s", tokenFile.getAbsolutePath()));
+        }
+        String token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8).trim();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                DataInputStream dis = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            dos.writeUTF(token);
+            dos.writeUTF(System.getProperty("user.dir"));
+            Map<String, String> homes = ModuleServer.getHomes();
+            dos.writeInt(homes.size());
+            for (Map.Entry<String, String> entry : homes.entrySet()) {
+                dos.writeUTF(entry.getKey());
+                dos.writeUTF(entry.getValue());
+            }
+            dos.writeUTF(cliClassName);
+            dos.writeInt(args.length);
+            for (String arg : args) {
+                dos.writeUTF(arg);
+            }
+            dos.flush();
+            int exitCode = dis.readInt();
+            if (exitCode == ModuleServer.RUN_LOCALLY) {
+                ModuleServer.readText(dis);
+                ModuleServer.readText(dis);
+                return exitCode;
+            }
+            System.out.print(ModuleServer.readText(dis));
+            System.err.print(ModuleServer.readText(dis));
+            return exitCode;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("usage: ModuleClient <module class> [arguments]");
+            System.exit(-1);
+        }
+
+        String className = args[0];
+        String[] moduleArgs = Arrays.copyOfRange(args, 1, args.length);
+
+        try {
+            int exitCode = new ModuleClient(ModuleServer.getConfiguredPort()).invoke(className, moduleArgs);
+            if (exitCode != ModuleServer.RUN_LOCALLY) {
+                System.exit(exitCode);
+            }
+            // the server cannot run it as this process would...fall through to in-process execution
+        } catch (ConnectException e) {
+            if (ModuleServer.SHUTDOWN.equals(className)) {
+                System.exit(0);
+            }
+            // no server running...fall through to in-process execution
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+
+        try {
+            ModuleInvoker.forName(className).getCliClass().getMethod("main", String[].class).invoke(null,
+                    (Object) moduleArgs);
+        } catch (InvocationTargetException e) {
+            e.getTargetException().printStackTrace();
+            System.exit(-1);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+}
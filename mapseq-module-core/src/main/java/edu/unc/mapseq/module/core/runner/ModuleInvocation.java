@@ -0,0 +1,117 @@
+package edu.unc.mapseq.module.core.runner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A single step of a batch manifest: the module (or generated CLI) class to run, the same arguments that would be
+ * passed to the generated CLI main method and the ids of the steps that have to succeed first.
+ *
+ * @author jdr0887
+ */
+public class ModuleInvocation {
+
+    private String id;
+
+    private List<String> dependencies = new ArrayList<String>();
+
+    private String moduleClassName;
+
+    private String[] arguments;
+
+    private InvocationStatusType status = InvocationStatusType.PENDING;
+
+    private Integer exitCode;
+
+    private Long duration;
+
+    private ResourceRequirement resourceRequirement = new ResourceRequirement();
+
+    public ModuleInvocation() {
+        super();
+    }
+
+    public ModuleInvocation(String id, String moduleClassName, String[] arguments) {
+        super();
+        this.id = id;
+        this.moduleClassName = moduleClassName;
+        this.arguments = arguments;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public List<String> getDependencies() {
+        return dependencies;
+    }
+
+    public void setDependencies(List<String> dependencies) {
+        this.dependencies = dependencies;
+    }
+
+    public String getModuleClassName() {
+        return moduleClassName;
+    }
+
+    public void setModuleClassName(String moduleClassName) {
+        this.moduleClassName = moduleClassName;
+    }
+
+    public String[] getArguments() {
+        return arguments;
+    }
+
+    public void setArguments(String[] arguments) {
+        this.arguments = arguments;
+    }
+
+    public InvocationStatusType getStatus() {
+        return status;
+    }
+
+    public void setStatus(InvocationStatusType status) {
+        this.status = status;
+    }
+
+    public Integer getExitCode() {
+        return exitCode;
+    }
+
+    public void setExitCode(Integer exitCode) {
+        this.exitCode = exitCode;
+    }
+
+    public Long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(Long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * @return what the manifest asked for, unset values are estimated from the module
+     */
+    public ResourceRequirement getResourceRequirement() {
+        return resourceRequirement;
+    }
+
+    public void setResourceRequirement(ResourceRequirement resourceRequirement) {
+        this.resourceRequirement = resourceRequirement;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "ModuleInvocation [id=%s, dependencies=%s, moduleClassName=%s, arguments=%s, status=%s, exitCode=%s, duration=%s, resourceRequirement=%s]",
+                id, dependencies, moduleClassName, Arrays.toString(arguments), status, exitCode, duration,
+                resourceRequirement);
+    }
+
+}
@@ -0,0 +1,110 @@
+package edu.unc.mapseq.module.core.runner;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import edu.unc.mapseq.module.Module;
+import edu.unc.mapseq.module.ModuleException;
+import edu.unc.mapseq.module.ModuleOutput;
+
+/**
+ * Runs a generated *CLI class in the current JVM. The generated createOptions() and parse(CommandLine) methods are used
+ * so the arguments are exactly the ones accepted by the generated main method, but nothing calls System.exit.
+ *
+ * @author jdr0887
+ */
+public class ModuleInvoker {
+
+    private static final Map<String, ModuleInvoker> invokerCache = new ConcurrentHashMap<String, ModuleInvoker>();
+
+    private final Class<?> cliClass;
+
+    private final Method createOptionsMethod;
+
+    private final Method parseMethod;
+
+    private final Constructor<?> cliConstructor;
+
+    private ModuleInvoker(Class<?> cliClass) throws NoSuchMethodException {
+        super();
+        this.cliClass = cliClass;
+        this.createOptionsMethod = cliClass.getMethod("createOptions");
+        this.parseMethod = cliClass.getMethod("parse", CommandLine.class);
+        this.cliConstructor = cliClass.getConstructor(parseMethod.getReturnType());
+    }
+
+    /**
+     * @param className
+     *            either the module class name or the generated CLI class name
+     */
+    public static ModuleInvoker forName(String className) throws ModuleException {
+        String cliClassName = className.endsWith("CLI") ? className : className + "CLI";
+        ModuleInvoker invoker = invokerCache.get(cliClassName);
+        if (invoker == null) {
+            try {
+                ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+                if (classLoader == null) {
+                    classLoader = ModuleInvoker.class.getClassLoader();
+                }
+                invoker = new ModuleInvoker(Class.forName(cliClassName, true, classLoader));
+            } catch (ClassNotFoundException e) {
+                throw new ModuleException(String.format("CLI class not found: %s", cliClassName));
+            } catch (NoSuchMethodException e) {
+                throw new ModuleException(String.format("%s was not generated with createOptions/parse: %s",
+                        cliClassName, e.getMessage()));
+            }
+            invokerCache.put(cliClassName, invoker);
+        }
+        return invoker;
+    }
+
+    public Class<?> getCliClass() {
+        return cliClass;
+    }
+
+    public Options createOptions() throws ModuleException {
+        try {
+            return (Options) createOptionsMethod.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new ModuleException(e);
+        }
+    }
+
+    public Module parse(String[] args) throws ModuleException {
+        try {
+            CommandLineParser commandLineParser = new GnuParser();
+            CommandLine commandLine = commandLineParser.parse(createOptions(), args);
+            return (Module) parseMethod.invoke(null, commandLine);
+        } catch (ParseException e) {
+            throw new ModuleException(String.format("Parsing Failed: %s", e.getMessage()));
+        } catch (InvocationTargetException e) {
+            throw new ModuleException(String.format("Parsing Failed: %s", e.getTargetException().getMessage()));
+        } catch (IllegalAccessException e) {
+            throw new ModuleException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Callable<ModuleOutput> create(Module module) throws ModuleException {
+        try {
+            return (Callable<ModuleOutput>) cliConstructor.newInstance(module);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new ModuleException(e);
+        }
+    }
+
+    public ModuleOutput invoke(String[] args) throws Exception {
+        return create(parse(args)).call();
+    }
+
+}
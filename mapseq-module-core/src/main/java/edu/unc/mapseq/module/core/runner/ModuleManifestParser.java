@@ -0,0 +1,169 @@
+package edu.unc.mapseq.module.core.runner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+import edu.unc.mapseq.module.ModuleException;
+
+/**
+ * Reads a batch manifest, one module invocation per line:
+ *
+ * <pre>
+ * # id[:dependency,dependency] [cpus=n] [memory=size] module-class --option value ...
+ * link edu.unc.mapseq.module.core.Symlink --link /tmp/sample.fastq --target /data/sample.fastq
+ * stat:link edu.unc.mapseq.module.sequencing.qc.PerBaseStat --input /tmp/sample.fastq \
+ *     --output /tmp/sample.stat
+ * align:link cpus=8 memory=16g edu.unc.mapseq.module.sequencing.bwa.BWAMEM ...
+ * </pre>
+ *
+ * Options are the same as the ones given to the generated CLI (ie, the --field constants). Arguments can be quoted
+ * with single or double quotes and a trailing backslash continues the line. The optional cpus and memory reservations
+ * are only used by {@link ModuleScheduler}, which otherwise estimates them from the module.
+ *
+ * @author jdr0887
+ */
+public class ModuleManifestParser {
+
+    public ModuleManifestParser() {
+        super();
+    }
+
+    public List<ModuleInvocation> parse(File manifest) throws IOException, ModuleException {
+        List<ModuleInvocation> ret = new ArrayList<ModuleInvocation>();
+        Set<String> ids = new HashSet<String>();
+        try (BufferedReader br = new BufferedReader(new FileReader(manifest))) {
+            String line;
+            int lineNumber = 0;
+            StringBuilder sb = new StringBuilder();
+            while ((line = br.readLine()) != null) {
+                lineNumber++;
+                if (line.endsWith("\\")) {
+                    sb.append(line.substring(0, line.length() - 1)).append(" ");
+                    continue;
+                }
+                sb.append(line);
+                String entry = sb.toString().trim();
+                sb.setLength(0);
+                if (StringUtils.isEmpty(entry) || entry.startsWith("#")) {
+                    continue;
+                }
+                ModuleInvocation invocation = parseLine(entry, lineNumber);
+                if (!ids.add(invocation.getId())) {
+                    throw new ModuleException(String.format("duplicate id on line %d: %s", lineNumber, invocation.getId()));
+                }
+                ret.add(invocation);
+            }
+        }
+        for (ModuleInvocation invocation : ret) {
+            for (String dependency : invocation.getDependencies()) {
+                if (!ids.contains(dependency)) {
+                    throw new ModuleException(String.format("%s depends on unknown id: %s", invocation.getId(), dependency));
+                }
+            }
+        }
+        return ret;
+    }
+
+    protected ModuleInvocation parseLine(String line, int lineNumber) throws ModuleException {
+        List<String> tokens = tokenize(line, lineNumber);
+        if (tokens.size() < 2) {
+            throw new ModuleException(String.format("expected an id and a module class on line %d", lineNumber));
+        }
+        String idToken = tokens.get(0);
+        ModuleInvocation invocation = new ModuleInvocation();
+        int idx = idToken.indexOf(':');
+        if (idx != -1) {
+            invocation.setId(idToken.substring(0, idx));
+            for (String dependency : idToken.substring(idx + 1).split(",")) {
+                if (StringUtils.isNotEmpty(dependency)) {
+                    invocation.getDependencies().add(dependency.trim());
+                }
+            }
+        } else {
+            invocation.setId(idToken);
+        }
+        if (StringUtils.isEmpty(invocation.getId())) {
+            throw new ModuleException(String.format("missing id on line %d", lineNumber));
+        }
+        int classIdx = 1;
+        while (classIdx < tokens.size() - 1 && tokens.get(classIdx).indexOf('=') != -1) {
+            String token = tokens.get(classIdx++);
+            String value = token.substring(token.indexOf('=') + 1);
+            try {
+                if (token.startsWith("cpus=")) {
+                    invocation.getResourceRequirement().setCpus(Integer.valueOf(value));
+                } else if (token.startsWith("memory=")) {
+                    invocation.getResourceRequirement().setMemory(ResourceRequirement.toMegabytes(value));
+                } else {
+                    throw new ModuleException(String.format("unknown reservation on line %d: %s", lineNumber, token));
+                }
+            } catch (NumberFormatException e) {
+                throw new ModuleException(String.format("invalid reservation on line %d: %s", lineNumber, token));
+            }
+        }
+        invocation.setModuleClassName(tokens.get(classIdx));
+        List<String> arguments = tokens.subList(classIdx + 1, tokens.size());
+        invocation.setArguments(arguments.toArray(new String[arguments.size()]));
+        return invocation;
+    }
+
+    protected List<String> tokenize(String line, int lineNumber) throws ModuleException {
+        List<String> tokens = new ArrayList<String>();
+        StringBuilder token = new StringBuilder();
+        boolean inToken = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else if (c == '\\' && quote == '"' && i + 1 < line.length()) {
+                    token.append(line.charAt(++i));
+                } else {
+                    token.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                inToken = true;
+            } else if (c == '\\' && i + 1 < line.length()) {
+                token.append(line.charAt(++i));
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                token.append(c);
+                inToken = true;
+            }
+        }
+        if (quote != 0) {
+            throw new ModuleException(String.format("unterminated quote on line %d", lineNumber));
+        }
+        if (inToken) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    public static void main(String[] args) {
+        try {
+            for (ModuleInvocation invocation : new ModuleManifestParser().parse(new File("/tmp", "manifest.txt"))) {
+                System.out.println(invocation.toString());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,484 @@
+package edu.unc.mapseq.module.core.runner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.module.Module;
+import edu.unc.mapseq.module.ModuleOutput;
+import edu.unc.mapseq.module.core.exec.CpuAffinity;
+
+/**
+ * Packs the steps of a manifest (see {@link ModuleManifestParser}) onto one node. Every step reserves cores and memory
+ * (see {@link ResourceRequirement}) and a ready step is only started when its reservation fits in what is left of the
+ * node, so several alignments, per-lane QC and variant calling can overlap without oversubscribing it. Steps run on a
+ * work-stealing pool.
+ *
+ * Ready steps are started in order of their critical path (the longest chain of steps waiting on them), biggest
+ * reservation first. Smaller steps may jump ahead of a step that does not fit yet, but only a limited number of times
+ * so that the big one is not starved. With affinity on, every step gets its own set of cores and the processes it
+ * starts through the core.exec executors are pinned to them with taskset.
+ *
+ * @author jdr0887
+ */
+public class ModuleScheduler implements Callable<Integer> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModuleScheduler.class);
+
+    private final List<ModuleInvocation> invocations;
+
+    private final Integer cpus;
+
+    private final Long memory;
+
+    private final Boolean affinity;
+
+    private Integer maxBypass;
+
+    public ModuleScheduler(List<ModuleInvocation> invocations, Integer cpus, Long memory, Boolean affinity) {
+        super();
+        this.invocations = invocations;
+        this.cpus = cpus;
+        this.memory = memory;
+        this.affinity = affinity;
+        this.maxBypass = cpus;
+    }
+
+    public Integer getMaxBypass() {
+        return maxBypass;
+    }
+
+    /**
+     * @param maxBypass
+     *            how many smaller steps may be started ahead of a step that does not fit yet
+     */
+    public void setMaxBypass(Integer maxBypass) {
+        this.maxBypass = maxBypass;
+    }
+
+    /**
+     * @return the number of steps that did not succeed
+     */
+    @Override
+    public Integer call() throws Exception {
+
+        InvocationGraph graph = new InvocationGraph(invocations);
+
+        final Map<String, Integer> criticalPath = new HashMap<String, Integer>();
+        for (ModuleInvocation invocation : invocations) {
+            computeCriticalPath(invocation.getId(), graph, criticalPath, new HashMap<String, Boolean>());
+        }
+
+        final Map<String, Placement> placements = new HashMap<String, Placement>();
+        PriorityQueue<ModuleInvocation> ready = new PriorityQueue<ModuleInvocation>(16,
+                new Comparator<ModuleInvocation>() {
+                    @Override
+                    public int compare(ModuleInvocation i1, ModuleInvocation i2) {
+                        int ret = Integer.compare(criticalPath.get(i2.getId()), criticalPath.get(i1.getId()));
+                        if (ret == 0) {
+                            ret = Integer.compare(placements.get(i2.getId()).getRequirement().getCpus(),
+                                    placements.get(i1.getId()).getRequirement().getCpus());
+                        }
+                        return ret;
+                    }
+                });
+        for (ModuleInvocation invocation : graph.getRoots()) {
+            ready.add(prepare(invocation, placements));
+        }
+
+        int[] allowedCores = null;
+        if (affinity) {
+            allowedCores = getAllowedCores();
+            if (allowedCores.length < cpus) {
+                logger.warn("only {} cores can be used by this process, not pinning steps", allowedCores.length);
+                allowedCores = null;
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(cpus, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        BlockingQueue<Placement> finished = new LinkedBlockingQueue<Placement>();
+        int freeCpus = cpus;
+        long freeMemory = memory;
+        BitSet freeCores = new BitSet(cpus);
+        freeCores.set(0, cpus);
+        int running = 0;
+        int bypassed = 0;
+
+        try {
+            while (!ready.isEmpty() || running > 0) {
+
+                // steps that could not even be parsed fail right away
+                Iterator<ModuleInvocation> iter = ready.iterator();
+                while (iter.hasNext()) {
+                    ModuleInvocation invocation = iter.next();
+                    Placement placement = placements.get(invocation.getId());
+                    if (placement.getModule() == null) {
+                        iter.remove();
+                        finished.add(placement);
+                        running++;
+                    }
+                }
+
+                List<ModuleInvocation> waiting = new ArrayList<ModuleInvocation>();
+                ModuleInvocation head = ready.peek();
+                boolean headBlocked = false;
+                while (!ready.isEmpty()) {
+                    ModuleInvocation invocation = ready.poll();
+                    Placement placement = placements.get(invocation.getId());
+                    ResourceRequirement requirement = placement.getRequirement();
+                    if (requirement.getCpus() > freeCpus || requirement.getMemory() > freeMemory) {
+                        headBlocked |= invocation == head;
+                        waiting.add(invocation);
+                        continue;
+                    }
+                    if (headBlocked) {
+                        if (bypassed >= maxBypass) {
+                            waiting.add(invocation);
+                            continue;
+                        }
+                        bypassed++;
+                    } else if (invocation == head) {
+                        bypassed = 0;
+                    }
+                    freeCpus -= requirement.getCpus();
+                    freeMemory -= requirement.getMemory();
+                    if (allowedCores != null) {
+                        BitSet cores = new BitSet(cpus);
+                        for (int i = freeCores.nextSetBit(0), n = 0; n < requirement.getCpus(); i = freeCores
+                                .nextSetBit(i + 1), n++) {
+                            cores.set(i);
+                        }
+                        freeCores.andNot(cores);
+                        placement.setCores(cores);
+                        placement.setCpuList(toCpuList(cores, allowedCores));
+                    }
+                    logger.info("starting {}: {} ({}, free cpus={}, free memory={}M)", invocation.getId(),
+                            invocation.getModuleClassName(), requirement, freeCpus, freeMemory);
+                    invocation.setStatus(InvocationStatusType.RUNNING);
+                    pool.execute(new PlacementTask(placement, finished));
+                    running++;
+                }
+                ready.addAll(waiting);
+
+                if (running == 0) {
+                    break;
+                }
+
+                Placement done = finished.take();
+                running--;
+                ModuleInvocation invocation = done.getInvocation();
+                if (done.getModule() != null) {
+                    freeCpus += done.getRequirement().getCpus();
+                    freeMemory += done.getRequirement().getMemory();
+                    if (done.getCores() != null) {
+                        freeCores.or(done.getCores());
+                    }
+                }
+                logger.info("{}: {} after {}ms", invocation.getId(), invocation.getStatus(), invocation.getDuration());
+
+                for (ModuleInvocation dependent : graph.finished(invocation)) {
+                    ready.add(prepare(dependent, placements));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return graph.report();
+    }
+
+    /**
+     * Parses the module (the arguments are needed to estimate the reservation) and clamps the reservation to the
+     * node, so an oversized step still runs, just alone.
+     */
+    private ModuleInvocation prepare(ModuleInvocation invocation, Map<String, Placement> placements) {
+        Placement placement = new Placement(invocation);
+        try {
+            Module module = ModuleInvoker.forName(invocation.getModuleClassName()).parse(invocation.getArguments());
+            ResourceRequirement estimate = ResourceRequirement.estimate(module);
+            ResourceRequirement requested = invocation.getResourceRequirement();
+            int requiredCpus = requested != null && requested.getCpus() != null ? requested.getCpus() : estimate.getCpus();
+            long requiredMemory = requested != null && requested.getMemory() != null ? requested.getMemory()
+                    : estimate.getMemory();
+            placement.setRequirement(new ResourceRequirement(Math.max(1, Math.min(cpus, requiredCpus)),
+                    Math.max(0L, Math.min(memory, requiredMemory))));
+            placement.setModule(module);
+        } catch (Exception e) {
+            logger.error(String.format("%s failed", invocation.getId()), e);
+            invocation.setExitCode(-1);
+            invocation.setDuration(0L);
+            invocation.setStatus(InvocationStatusType.FAILED);
+            placement.setRequirement(new ResourceRequirement(1, 0L));
+        }
+        placements.put(invocation.getId(), placement);
+        return invocation;
+    }
+
+    private int computeCriticalPath(String id, InvocationGraph graph, Map<String, Integer> criticalPath,
+            Map<String, Boolean> visiting) {
+        Integer ret = criticalPath.get(id);
+        if (ret != null) {
+            return ret;
+        }
+        if (visiting.containsKey(id)) {
+            // a cycle, reported once nothing is left to run
+            return 0;
+        }
+        visiting.put(id, Boolean.TRUE);
+        int length = 0;
+        for (String dependent : graph.getDependents(id)) {
+            length = Math.max(length, computeCriticalPath(dependent, graph, criticalPath, visiting));
+        }
+        visiting.remove(id);
+        criticalPath.put(id, length + 1);
+        return length + 1;
+    }
+
+    /**
+     * @return the taskset cpu list (ie 0-3,8) of the given slots, slot i being the i-th core this process may use
+     */
+    static String toCpuList(BitSet slots, int[] allowedCores) {
+        BitSet cores = new BitSet();
+        for (int i = slots.nextSetBit(0); i != -1; i = slots.nextSetBit(i + 1)) {
+            cores.set(allowedCores[i]);
+        }
+        StringBuilder sb = new StringBuilder();
+        int start = cores.nextSetBit(0);
+        while (start != -1) {
+            int end = cores.nextClearBit(start) - 1;
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+            sb.append(start);
+            if (end > start) {
+                sb.append("-").append(end);
+            }
+            start = cores.nextSetBit(end + 1);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the ids of the cores this process may run on (Cpus_allowed_list in /proc/self/status), 0 to
+     *         availableProcessors - 1 when it cannot be read
+     */
+    public static int[] getAllowedCores() {
+        File status = new File("/proc/self/status");
+        if (status.canRead()) {
+            try (BufferedReader br = new BufferedReader(new FileReader(status))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.startsWith("Cpus_allowed_list:")) {
+                        List<Integer> cores = new ArrayList<Integer>();
+                        for (String range : line.substring(line.indexOf(':') + 1).trim().split(",")) {
+                            String[] bounds = range.split("-");
+                            int start = Integer.parseInt(bounds[0]);
+                            int end = bounds.length > 1 ? Integer.parseInt(bounds[1]) : start;
+                            for (int i = start; i <= end; i++) {
+                                cores.add(i);
+                            }
+                        }
+                        int[] ret = new int[cores.size()];
+                        for (int i = 0; i < ret.length; i++) {
+                            ret[i] = cores.get(i);
+                        }
+                        return ret;
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                logger.warn("could not read /proc/self/status", e);
+            }
+        }
+        int[] ret = new int[Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = i;
+        }
+        return ret;
+    }
+
+    /**
+     * @return MemTotal from /proc/meminfo in MB, the JVM max heap when it cannot be read
+     */
+    public static Long getPhysicalMemory() {
+        File meminfo = new File("/proc/meminfo");
+        if (meminfo.canRead()) {
+            try (BufferedReader br = new BufferedReader(new FileReader(meminfo))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.startsWith("MemTotal:")) {
+                        return Long.valueOf(line.replaceAll("[^0-9]", "")) / 1024;
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                logger.warn("could not read /proc/meminfo", e);
+            }
+        }
+        return Runtime.getRuntime().maxMemory() / (1024 * 1024);
+    }
+
+    static class Placement {
+
+        private final ModuleInvocation invocation;
+
+        private Module module;
+
+        private ResourceRequirement requirement;
+
+        private BitSet cores;
+
+        private String cpuList;
+
+        public Placement(ModuleInvocation invocation) {
+            super();
+            this.invocation = invocation;
+        }
+
+        public ModuleInvocation getInvocation() {
+            return invocation;
+        }
+
+        public Module getModule() {
+            return module;
+        }
+
+        public void setModule(Module module) {
+            this.module = module;
+        }
+
+        public ResourceRequirement getRequirement() {
+            return requirement;
+        }
+
+        public void setRequirement(ResourceRequirement requirement) {
+            this.requirement = requirement;
+        }
+
+        public BitSet getCores() {
+            return cores;
+        }
+
+        public void setCores(BitSet cores) {
+            this.cores = cores;
+        }
+
+        public String getCpuList() {
+            return cpuList;
+        }
+
+        public void setCpuList(String cpuList) {
+            this.cpuList = cpuList;
+        }
+
+    }
+
+    class PlacementTask implements Runnable {
+
+        private final Placement placement;
+
+        private final BlockingQueue<Placement> finished;
+
+        public PlacementTask(Placement placement, BlockingQueue<Placement> finished) {
+            super();
+            this.placement = placement;
+            this.finished = finished;
+        }
+
+        @Override
+        public void run() {
+            ModuleInvocation invocation = placement.getInvocation();
+            long start = System.currentTimeMillis();
+            try {
+                if (placement.getCpuList() != null) {
+                    CpuAffinity.set(placement.getCpuList());
+                }
+                ModuleOutput output = ModuleInvoker.forName(invocation.getModuleClassName())
+                        .create(placement.getModule()).call();
+                invocation.setExitCode(output != null && output.getExitCode() != null ? output.getExitCode() : -1);
+                if (output != null && output.getError() != null && output.getError().length() > 0) {
+                    logger.warn("{}: {}", invocation.getId(), output.getError().toString());
+                }
+            } catch (Exception e) {
+                logger.error(String.format("%s failed", invocation.getId()), e);
+                invocation.setExitCode(-1);
+            } finally {
+                CpuAffinity.clear();
+            }
+            invocation.setDuration(System.currentTimeMillis() - start);
+            invocation.setStatus(invocation.getExitCode() == 0 ? InvocationStatusType.SUCCEEDED
+                    : InvocationStatusType.FAILED);
+            finished.add(placement);
+        }
+
+    }
+
+    @SuppressWarnings("static-access")
+    public static void main(String[] args) {
+        HelpFormatter helpFormatter = new HelpFormatter();
+        Options cliOptions = new Options();
+        cliOptions.addOption(OptionBuilder.withArgName("manifest").hasArg().withDescription("manifest of module invocations")
+                .withLongOpt("manifest").create());
+        cliOptions.addOption(OptionBuilder.withArgName("cpus").hasArg()
+                .withDescription("cores to schedule on (default is the number of processors)").withLongOpt("cpus")
+                .create());
+        cliOptions.addOption(OptionBuilder.withArgName("memory").hasArg()
+                .withDescription("memory to schedule on, ie 240g (default is the physical memory)").withLongOpt("memory")
+                .create());
+        cliOptions.addOption(OptionBuilder.withArgName("affinity")
+                .withDescription("pin every step to its own cores with taskset").withLongOpt("affinity").create());
+        cliOptions.addOption(OptionBuilder.withArgName("help").withDescription("print this help message").withLongOpt("help")
+                .create("?"));
+
+        int failed = 0;
+        try {
+            CommandLineParser commandLineParser = new GnuParser();
+            CommandLine commandLine = commandLineParser.parse(cliOptions, args);
+            if (commandLine.hasOption("?") || !commandLine.hasOption("manifest")) {
+                helpFormatter.printHelp(ModuleScheduler.class.getSimpleName(), cliOptions);
+                return;
+            }
+            Integer cpus = Runtime.getRuntime().availableProcessors();
+            if (commandLine.hasOption("cpus")) {
+                cpus = Integer.valueOf(commandLine.getOptionValue("cpus"));
+            }
+            Long memory = getPhysicalMemory();
+            if (commandLine.hasOption("memory")) {
+                memory = ResourceRequirement.toMegabytes(commandLine.getOptionValue("memory"));
+            }
+            List<ModuleInvocation> invocations = new ModuleManifestParser()
+                    .parse(new File(commandLine.getOptionValue("manifest")));
+            failed = new ModuleScheduler(invocations, cpus, memory, commandLine.hasOption("affinity")).call();
+        } catch (ParseException e) {
+            System.err.println("Parsing Failed: " + e.getMessage());
+            helpFormatter.printHelp(ModuleScheduler.class.getSimpleName(), cliOptions);
+            System.exit(-1);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        System.exit(failed > 0 ? -1 : 0);
+    }
+
+}
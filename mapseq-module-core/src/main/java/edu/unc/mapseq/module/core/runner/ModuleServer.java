@@ -0,0 +1,352 @@
+package edu.unc.mapseq.module.core.runner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.unc.mapseq.module.Module;
+import edu.unc.mapseq.module.ModuleOutput;
+import edu.unc.mapseq.module.annotations.InputArgument;
+import edu.unc.mapseq.module.annotations.OutputArgument;
+
+/**
+ * Keeps a warm JVM listening on a loopback port and runs module invocations sent by {@link ModuleClient}. Class
+ * loading, validator bootstrap and the SOAPDAOManager handshake are paid once instead of once per module.
+ *
+ * The port is open to every local user, so a request must carry the token the server writes, readable by its owner
+ * only, to a token file (mapseq.module.server.token, ~/.mapseq/module-server.&lt;port&gt;.token by default).
+ *
+ * A module runs in the server's working directory and environment, not the client's. The client sends both, and the
+ * server answers {@link #RUN_LOCALLY} instead of running the module when a *_HOME variable differs or when the working
+ * directories differ and an argument is a relative path; the client then runs the module itself.
+ *
+ * A request is the token, the client's working directory, the count and the names and values of its *_HOME
+ * variables, the CLI class name, the argument count and the arguments (all written with DataOutputStream.writeUTF).
+ * The response is the exit code followed by the length prefixed UTF-8 bytes of the module output and error.
+ *
+ * @author jdr0887
+ */
+public class ModuleServer implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModuleServer.class);
+
+    public static final String PORT_PROPERTY = "mapseq.module.server.port";
+
+    public static final Integer DEFAULT_PORT = 9179;
+
+    public static final String TOKEN_PROPERTY = "mapseq.module.server.token";
+
+    public static final String SHUTDOWN = "shutdown";
+
+    /**
+     * The exit code telling the client to run the module itself.
+     */
+    public static final int RUN_LOCALLY = Integer.MIN_VALUE;
+
+    private final Integer port;
+
+    private final Integer threads;
+
+    private volatile boolean running = true;
+
+    private ServerSocket serverSocket;
+
+    private String token;
+
+    public ModuleServer(Integer port) {
+        this(port, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ModuleServer(Integer port, Integer threads) {
+        super();
+        this.port = port;
+        this.threads = threads;
+    }
+
+    public static Integer getConfiguredPort() {
+        return Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT);
+    }
+
+    public static File getTokenFile(Integer port) {
+        String path = System.getProperty(TOKEN_PROPERTY);
+        if (path != null) {
+            return new File(path);
+        }
+        return new File(System.getProperty("user.home"), String.format(".mapseq/module-server.%d.token", port));
+    }
+
+    /**
+     * @return the *_HOME variables of this process
+     */
+    static Map<String, String> getHomes() {
+        Map<String, String> ret = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : System.getenv().entrySet()) {
+            if (entry.getKey().endsWith("_HOME")) {
+                ret.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public void run() {
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        File tokenFile = getTokenFile(port);
+        try {
+            token = writeToken(tokenFile);
+            serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+            logger.info("listening on {}", serverSocket.getLocalSocketAddress());
+            while (running) {
+                final Socket socket = serverSocket.accept();
+                executorService.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(socket);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            if (running) {
+                logger.error("server failed", e);
+            }
+        } finally {
+            tokenFile.delete();
+            executorService.shutdown();
+            try {
+                executorService.awaitTermination(5L, TimeUnit.DAYS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        logger.info("stopped");
+    }
+
+    public void shutdown() {
+        running = false;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                logger.warn("failed to close server socket", e);
+            }
+        }
+    }
+
+    /**
+     * Writes a new random token to a file only the owner can read.
+     */
+    private static String writeToken(File tokenFile) throws IOException {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        File directory = tokenFile.getAbsoluteFile().getParentFile();
+        if (!directory.exists()) {
+            directory.mkdirs();
+            Files.setPosixFilePermissions(directory.toPath(), PosixFilePermissions.fromString("rwx------"));
+        }
+        Path path = tokenFile.toPath();
+        Files.deleteIfExists(path);
+        // created with the permissions in place, so the token is never readable by anyone else
+        Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        Files.write(path, sb.toString().getBytes(StandardCharsets.UTF_8));
+        logger.info("token written to {}", tokenFile.getAbsolutePath());
+        return sb.toString();
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+                DataInputStream dis = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+
+            String requestToken = dis.readUTF();
+            String workingDirectory = dis.readUTF();
+            Map<String, String> homes = new HashMap<String, String>();
+            int homeCount = dis.readInt();
+            for (int i = 0; i < homeCount; i++) {
+                homes.put(dis.readUTF(), dis.readUTF());
+            }
+            String cliClassName = dis.readUTF();
+            String[] args = new String[dis.readInt()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = dis.readUTF();
+            }
+
+            if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                    requestToken.getBytes(StandardCharsets.UTF_8))) {
+                logger.warn("rejected a request for {} without the token", cliClassName);
+                writeResponse(dos, -1, "", "not authorized");
+                return;
+            }
+
+            if (SHUTDOWN.equals(cliClassName)) {
+                logger.info("shutdown requested");
+                writeResponse(dos, 0, "", "");
+                shutdown();
+                return;
+            }
+
+            int exitCode = -1;
+            String output = "";
+            String error = "";
+            long start = System.currentTimeMillis();
+            try {
+                ModuleInvoker invoker = ModuleInvoker.forName(cliClassName);
+                Module module = invoker.parse(args);
+                String reason = checkContext(module, args, workingDirectory, homes);
+                if (reason != null) {
+                    logger.info("{} sent back to the client: {}", cliClassName, reason);
+                    writeResponse(dos, RUN_LOCALLY, "", reason);
+                    return;
+                }
+                ModuleOutput moduleOutput = invoker.create(module).call();
+                if (moduleOutput == null) {
+                    error = "moduleOutput is null";
+                } else {
+                    exitCode = moduleOutput.getExitCode() != null ? moduleOutput.getExitCode() : -1;
+                    output = moduleOutput.getOutput() != null ? moduleOutput.getOutput().toString() : "";
+                    error = moduleOutput.getError() != null ? moduleOutput.getError().toString() : "";
+                }
+            } catch (Exception e) {
+                logger.error(String.format("%s failed", cliClassName), e);
+                error = String.valueOf(e.getMessage());
+            }
+            logger.info("{} finished with exitCode {} in {}ms", cliClassName, exitCode, System.currentTimeMillis() - start);
+            writeResponse(dos, exitCode, output, error);
+
+        } catch (IOException e) {
+            logger.warn("failed to handle request", e);
+        }
+    }
+
+    /**
+     * @return why the module would not run here as it would in the client, or null
+     */
+    private static String checkContext(Module module, String[] args, String workingDirectory, Map<String, String> homes)
+            throws IOException, IllegalAccessException {
+        Map<String, String> serverHomes = getHomes();
+        Set<String> names = new HashSet<String>(serverHomes.keySet());
+        names.addAll(homes.keySet());
+        for (String name : names) {
+            String value = homes.get(name);
+            if (value == null ? serverHomes.get(name) != null : !value.equals(serverHomes.get(name))) {
+                return String.format("%s differs from the server's", name);
+            }
+        }
+        File serverDirectory = new File(System.getProperty("user.dir")).getCanonicalFile();
+        if (serverDirectory.equals(new File(workingDirectory).getCanonicalFile())) {
+            return null;
+        }
+        for (String arg : args) {
+            // relative paths in plain string arguments (prefixes and the like)
+            if (!arg.startsWith("-") && arg.contains(File.separator) && !new File(arg).isAbsolute()) {
+                return String.format("%s is relative to another working directory", arg);
+            }
+        }
+        for (Class<?> c = module.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!field.isAnnotationPresent(InputArgument.class) && !field.isAnnotationPresent(OutputArgument.class)) {
+                    continue;
+                }
+                field.setAccessible(true);
+                Object value = field.get(module);
+                Collection<?> values = value instanceof Collection ? (Collection<?>) value : Collections.singleton(value);
+                for (Object o : values) {
+                    if (o instanceof File && !((File) o).isAbsolute()) {
+                        return String.format("%s is relative to another working directory", o);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private void writeResponse(DataOutputStream dos, int exitCode, String output, String error) throws IOException {
+        dos.writeInt(exitCode);
+        writeText(dos, output);
+        writeText(dos, error);
+        dos.flush();
+    }
+
+    static void writeText(DataOutputStream dos, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    static String readText(DataInputStream dis) throws IOException {
+        byte[] bytes = new byte[dis.readInt()];
+        dis.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("static-access")
+    public static void main(String[] args) {
+        HelpFormatter helpFormatter = new HelpFormatter();
+        Options cliOptions = new Options();
+        cliOptions.addOption(OptionBuilder.withArgName("port").hasArg()
+                .withDescription(String.format("loopback port to listen on (default is %s)", getConfiguredPort()))
+                .withLongOpt("port").create());
+        cliOptions.addOption(OptionBuilder.withArgName("threads").hasArg()
+                .withDescription("number of invocations to run concurrently (default is the number of processors)")
+                .withLongOpt("threads").create());
+        cliOptions.addOption(OptionBuilder.withArgName("help").withDescription("print this help message").withLongOpt("help")
+                .create("?"));
+        try {
+            CommandLineParser commandLineParser = new GnuParser();
+            CommandLine commandLine = commandLineParser.parse(cliOptions, args);
+            if (commandLine.hasOption("?")) {
+                helpFormatter.printHelp(ModuleServer.class.getSimpleName(), cliOptions);
+                return;
+            }
+            Integer port = getConfiguredPort();
+            if (commandLine.hasOption("port")) {
+                port = Integer.valueOf(commandLine.getOptionValue("port"));
+            }
+            Integer threads = Runtime.getRuntime().availableProcessors();
+            if (commandLine.hasOption("threads")) {
+                threads = Integer.valueOf(commandLine.getOptionValue("threads"));
+            }
+            new ModuleServer(port, threads).run();
+        } catch (ParseException e) {
+            System.err.println("Parsing Failed: " + e.getMessage());
+            helpFormatter.printHelp(ModuleServer.class.getSimpleName(), cliOptions);
+            System.exit(-1);
+        }
+    }
+
+}
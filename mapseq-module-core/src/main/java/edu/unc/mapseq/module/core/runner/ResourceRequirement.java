@@ -0,0 +1,130 @@
+package edu.unc.mapseq.module.core.runner;
+
+import java.lang.reflect.Field;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import edu.unc.mapseq.module.Module;
+import edu.unc.mapseq.module.annotations.Application;
+
+/**
+ * The cores and memory (MB) a module invocation reserves on the node. Unless the manifest says otherwise, the cores
+ * come from the thread count fields the module already has (threads, numThreads, loadingThreads + processingThreads +
+ * writingThreads, ...) and the memory from the -Xmx in the executable.
+ *
+ * @author jdr0887
+ */
+public class ResourceRequirement {
+
+    public static final String DEFAULT_MEMORY_PROPERTY = "mapseq.scheduler.defaultMemory";
+
+    private static final Pattern XMX_PATTERN = Pattern.compile("-Xmx(\\d+)([kKmMgG]?)");
+
+    private Integer cpus;
+
+    private Long memory;
+
+    public ResourceRequirement() {
+        super();
+    }
+
+    public ResourceRequirement(Integer cpus, Long memory) {
+        super();
+        this.cpus = cpus;
+        this.memory = memory;
+    }
+
+    public static ResourceRequirement estimate(Module module) {
+        return new ResourceRequirement(estimateCpus(module), estimateMemory(module));
+    }
+
+    protected static Integer estimateCpus(Module module) {
+        int threads = 0;
+        int otherThreads = 0;
+        for (Class<?> c = module.getClass(); c != null && c != Module.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Integer.class.equals(field.getType()) && !int.class.equals(field.getType())) {
+                    continue;
+                }
+                String name = field.getName();
+                if (!"threads".equals(name) && !"numThreads".equals(name) && !"numberOfThreads".equals(name)
+                        && !name.endsWith("Threads")) {
+                    continue;
+                }
+                Integer value;
+                try {
+                    field.setAccessible(true);
+                    value = (Integer) field.get(module);
+                } catch (IllegalAccessException e) {
+                    continue;
+                }
+                if (value == null || value < 1) {
+                    continue;
+                }
+                if ("threads".equals(name) || "numThreads".equals(name) || "numberOfThreads".equals(name)) {
+                    threads = Math.max(threads, value);
+                } else {
+                    // bcl2fastq style loading/processing/writing pools all run at the same time
+                    otherThreads += value;
+                }
+            }
+        }
+        return Math.max(1, Math.max(threads, otherThreads));
+    }
+
+    protected static Long estimateMemory(Module module) {
+        Application application = module.getModuleClass().getAnnotation(Application.class);
+        if (application != null) {
+            Matcher matcher = XMX_PATTERN.matcher(application.executable());
+            if (matcher.find()) {
+                return toMegabytes(matcher.group(1) + matcher.group(2));
+            }
+        }
+        return Long.getLong(DEFAULT_MEMORY_PROPERTY, 1024L);
+    }
+
+    /**
+     * @param value
+     *            a size such as 52g, 4096m or 4096 (MB)
+     */
+    public static Long toMegabytes(String value) {
+        String number = value.trim();
+        char unit = Character.toLowerCase(number.charAt(number.length() - 1));
+        if (Character.isDigit(unit)) {
+            return Long.valueOf(number);
+        }
+        long size = Long.parseLong(number.substring(0, number.length() - 1));
+        switch (unit) {
+            case 'k':
+                return Math.max(1L, size / 1024);
+            case 'g':
+                return size * 1024;
+            case 't':
+                return size * 1024 * 1024;
+            default:
+                return size;
+        }
+    }
+
+    public Integer getCpus() {
+        return cpus;
+    }
+
+    public void setCpus(Integer cpus) {
+        this.cpus = cpus;
+    }
+
+    public Long getMemory() {
+        return memory;
+    }
+
+    public void setMemory(Long memory) {
+        this.memory = memory;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ResourceRequirement [cpus=%s, memory=%sM]", cpus, memory);
+    }
+
+}
@@ -2,24 +2,15 @@ package edu.unc.mapseq.module.sequencing;
 
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.validation.constraints.NotNull;
 
-import org.biojava3.sequencing.io.fastq.Fastq;
-import org.biojava3.sequencing.io.fastq.SangerFastqReader;
-import org.biojava3.sequencing.io.fastq.StreamListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.io.Files;
-import com.google.common.io.InputSupplier;
-
 import edu.unc.mapseq.dao.model.FileData;
 import edu.unc.mapseq.dao.model.MimeType;
 import edu.unc.mapseq.module.DefaultModuleOutput;
@@ -31,6 +22,8 @@ import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
 import edu.unc.mapseq.module.constraints.FileListIsReadable;
+import edu.unc.mapseq.module.sequencing.fastq.FastqBatch;
+import edu.unc.mapseq.module.sequencing.fastq.FastqReader;
 
 @Application(name = "DetermineMaxReadLength")
 public class DetermineReadLength extends Module {
@@ -59,29 +52,29 @@ public class DetermineReadLength extends Module {
         moduleOutput.setExitCode(0);
 
         try {
-            SangerFastqReader fastqReader = new SangerFastqReader();
-            final AtomicInteger maxLength = new AtomicInteger(0);
-            final AtomicInteger minLength = new AtomicInteger(0);
+            int maxLength = 0;
+            int minLength = Integer.MAX_VALUE;
 
             for (File f : input) {
-                InputSupplier<InputStreamReader> inputSupplier = Files.newReaderSupplier(f,
-                        Charset.forName("US-ASCII"));
-
-                fastqReader.stream(inputSupplier, new StreamListener() {
-                    @Override
-                    public void fastq(final Fastq fastq) {
-                        if (fastq.getSequence().length() > maxLength.get()) {
-                            maxLength.getAndSet(fastq.getSequence().length());
-                        }
-                        if (fastq.getSequence().length() < minLength.get()) {
-                            minLength.getAndSet(fastq.getSequence().length());
+                try (FastqReader reader = new FastqReader(f)) {
+                    FastqBatch batch;
+                    while ((batch = reader.nextBatch()) != null) {
+                        for (int i = 0; i < batch.size(); i++) {
+                            int length = batch.get(i).getSequenceLength();
+                            maxLength = Math.max(maxLength, length);
+                            minLength = Math.min(minLength, length);
                         }
+                        reader.release(batch);
                     }
-                });
+                }
+            }
+            if (minLength > maxLength) {
+                // no reads
+                minLength = 0;
             }
             Properties props = new Properties();
-            props.setProperty("maxLength", String.format("%d", maxLength.get()));
-            props.setProperty("minLength", String.format("%d", minLength.get()));
+            props.setProperty("maxLength", String.format("%d", maxLength));
+            props.setProperty("minLength", String.format("%d", minLength));
             FileOutputStream fos = new FileOutputStream(output);
             props.storeToXML(fos, "Read Lengths");
             fos.flush();
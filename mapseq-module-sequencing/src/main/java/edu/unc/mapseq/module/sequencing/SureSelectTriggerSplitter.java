@@ -1,14 +1,10 @@
 package edu.unc.mapseq.module.sequencing;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.List;
 
 import javax.validation.constraints.NotNull;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.Range;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +16,8 @@ import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputArgument;
+import edu.unc.mapseq.module.core.io.DelimitedReader;
+import edu.unc.mapseq.module.core.io.DelimitedWriter;
 
 @Application(name = "SureSelectTriggerSplitter")
 public class SureSelectTriggerSplitter extends Module {
@@ -80,15 +78,21 @@ public class SureSelectTriggerSplitter extends Module {
         Range<Integer> p2Range = Range.between(Integer.valueOf(par2CoordinateSplit[0]),
                 Integer.valueOf(par2CoordinateSplit[1]));
 
-        List<String> lines = FileUtils.readLines(bed);
+        // the lines are only counted here and streamed into the subsets below
+        long lineCount = 0;
+        try (DelimitedReader reader = new DelimitedReader(bed, '\t')) {
+            while (reader.next()) {
+                lineCount++;
+            }
+        }
 
-        if (numberOfSubsets >= lines.size()) {
+        if (numberOfSubsets >= lineCount) {
             logger.error("Number of subsets is greater than the number of rows");
             moduleOutput.setExitCode(1);
             return moduleOutput;
         }
 
-        Integer chunks = Math.abs(lines.size() / numberOfSubsets);
+        Integer chunks = (int) Math.abs(lineCount / numberOfSubsets);
         if ((chunks % numberOfSubsets) != 0) {
             chunks++;
         }
@@ -97,49 +101,47 @@ public class SureSelectTriggerSplitter extends Module {
 
         File ploidyBedFile = new File(workDirectory, String.format("%s.ploidy.bed", outputPrefix));
 
-        try (FileWriter ploidyFW = new FileWriter(ploidyBedFile);
-                BufferedWriter ploidyBW = new BufferedWriter(ploidyFW)) {
+        byte[] chrX = "NC_000023".getBytes();
+        byte[] chrY = "NC_000024".getBytes();
+        // an interval is after a PAR when it starts past its end
+        int p1Maximum = p1Range.getMaximum();
+        int p2Maximum = p2Range.getMaximum();
 
-            int previousChunkIndex = 0;
+        try (DelimitedReader reader = new DelimitedReader(bed, '\t');
+                DelimitedWriter ploidyWriter = new DelimitedWriter(ploidyBedFile)) {
+
+            long previousChunkIndex = 0;
             for (int i = 0; i < numberOfSubsets; ++i) {
 
-                int currentChunkIndex = (i + 1) * chunks;
-                if (currentChunkIndex > lines.size()) {
-                    currentChunkIndex = lines.size();
+                long currentChunkIndex = (long) (i + 1) * chunks;
+                if (currentChunkIndex > lineCount) {
+                    currentChunkIndex = lineCount;
                 }
-                List<String> subLines = lines.subList(previousChunkIndex, currentChunkIndex);
 
                 File intervalBedFile = new File(workDirectory,
                         String.format("%s.interval.set%d.bed", outputPrefix, i + 1));
 
-                try (FileWriter intervalFW = new FileWriter(intervalBedFile);
-                        BufferedWriter intervalBW = new BufferedWriter(intervalFW)) {
-
-                    for (String line : subLines) {
+                try (DelimitedWriter intervalWriter = new DelimitedWriter(intervalBedFile)) {
 
-                        String[] lineSplit = line.split("\t");
-                        String chromosome = lineSplit[0];
+                    for (long j = previousChunkIndex; j < currentChunkIndex && reader.next(); ++j) {
 
-                        Range<Integer> r = Range.between(Integer.valueOf(lineSplit[1]), Integer.valueOf(lineSplit[2]));
+                        int start = reader.getInt(1);
+                        int end = reader.getInt(2);
+                        int minimum = Math.min(start, end);
+                        int maximum = Math.max(start, end);
 
-                        intervalBW.write(String.format("%s\t%d\t%d", chromosome, r.getMinimum() - 1, r.getMaximum()));
-                        intervalBW.newLine();
-                        intervalBW.flush();
+                        intervalWriter.append(reader, 0).tab().append(minimum - 1).tab().append(maximum).newLine();
 
-                        if (chromosome.contains("NC_000023")) {
-                            if ("M".equals(gender) && (p1Range.isBeforeRange(r) || p2Range.isBeforeRange(r))) {
-                                ploidyBW.write(String.format("%s\t%d\t%d\t%s\t%d", chromosome, r.getMinimum() - 1,
-                                        r.getMaximum(), subjectName, 1));
-                                ploidyBW.newLine();
-                                ploidyBW.flush();
+                        if (reader.fieldContains(0, chrX)) {
+                            if ("M".equals(gender) && (minimum > p1Maximum || minimum > p2Maximum)) {
+                                ploidyWriter.append(reader, 0).tab().append(minimum - 1).tab().append(maximum).tab()
+                                        .append(subjectName).tab().append(1).newLine();
                             }
                         }
 
-                        if (chromosome.contains("NC_000024")) {
-                            ploidyBW.write(String.format("%s\t%d\t%d\t%s\t%d", chromosome, r.getMinimum() - 1,
-                                    r.getMaximum(), subjectName, "F".equals(gender) ? 0 : 1));
-                            ploidyBW.newLine();
-                            ploidyBW.flush();
+                        if (reader.fieldContains(0, chrY)) {
+                            ploidyWriter.append(reader, 0).tab().append(minimum - 1).tab().append(maximum).tab()
+                                    .append(subjectName).tab().append("F".equals(gender) ? 0 : 1).newLine();
                         }
 
                     }
@@ -1,15 +1,10 @@
 package edu.unc.mapseq.module.sequencing.alignment;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
 
 import javax.validation.constraints.NotNull;
 
-import org.apache.commons.lang.StringUtils;
-
 import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.Module;
 import edu.unc.mapseq.module.ModuleException;
@@ -21,8 +16,20 @@ import edu.unc.mapseq.module.annotations.OutputArgument;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsNotEmpty;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
+import edu.unc.mapseq.module.sequencing.fastq.FastqBatch;
+import edu.unc.mapseq.module.sequencing.fastq.FastqReader;
+import edu.unc.mapseq.module.sequencing.fastq.FastqRecord;
+import edu.unc.mapseq.module.sequencing.fastq.FastqWriter;
+import edu.unc.mapseq.module.sequencing.fastq.MatePairer;
+import edu.unc.mapseq.module.sequencing.fastq.ReadName;
 
 /**
+ * Keeps the reads of two paired end FASTQ files that are in step: a pair whose names (see ReadName) match goes to
+ * r1FastqOutput and r2FastqOutput, one whose names do not goes, R1 then R2, to fastqUnpairedReadsOutput.
+ * 
+ * With repair the files need not be in step: a read waits for its mate however far down the other file it is, and only
+ * reads whose mates never come are unpaired (see MatePairer).
  * 
  * @author jdr0887
  * 
@@ -60,6 +67,15 @@ public class FastqAlignmentPrep extends Module {
     @OutputArgument
     private File fastqUnpairedReadsOutput;
 
+    @InputArgument(description = "pair reads by name even when the files are not in step (MatePairer)")
+    private Boolean repair = Boolean.FALSE;
+
+    @InputArgument(description = "reads waiting for their mates on each side before they are spilled, with repair")
+    private Integer windowSize;
+
+    @InputArgument(description = "where reads are spilled with repair (created if missing), java.io.tmpdir when not set")
+    private File tmpDirectory;
+
     @Override
     public Class<?> getModuleClass() {
         return FastqAlignmentPrep.class;
@@ -73,74 +89,47 @@ public class FastqAlignmentPrep extends Module {
         int exitCode = 0;
         try {
 
-            BufferedWriter r1FastqBW = new BufferedWriter(new FileWriter(r1FastqOutput));
-            BufferedWriter r2FastqBW = new BufferedWriter(new FileWriter(r2FastqOutput));
-            BufferedWriter unpairedReadsFastqBW = new BufferedWriter(new FileWriter(fastqUnpairedReadsOutput));
-
-            BufferedReader r1FastqBR = new BufferedReader(new FileReader(r1Fastq));
-            BufferedReader r2FastqBR = new BufferedReader(new FileReader(r2Fastq));
+            ModuleMetrics metrics = ModuleMetrics.get(this);
 
-            while (true) {
+            long pairs;
+            long recordsIn;
 
-                String r1FastqIdentifier = r1FastqBR.readLine();
-                String actualR1Id = null;
+            // both files are read ahead on threads of their own
+            try (FastqReader r1FastqReader = new FastqReader(r1Fastq);
+                    FastqReader r2FastqReader = new FastqReader(r2Fastq);
+                    FastqWriter r1FastqWriter = new FastqWriter(r1FastqOutput);
+                    FastqWriter r2FastqWriter = new FastqWriter(r2FastqOutput);
+                    FastqWriter unpairedReadsFastqWriter = new FastqWriter(fastqUnpairedReadsOutput)) {
 
-                String[] seqIdSpaceSplit = r1FastqIdentifier.split(" ");
-                if (seqIdSpaceSplit != null && seqIdSpaceSplit.length > 0) {
-                    String[] seqIdPoundSplit = seqIdSpaceSplit[0].split("#");
-                    if (seqIdPoundSplit != null && seqIdPoundSplit.length > 0) {
-                        actualR1Id = seqIdPoundSplit[0].replace("@", "");
+                if (repair != null && repair) {
+                    MatePairer pairer = new MatePairer(r1FastqWriter, r2FastqWriter, unpairedReadsFastqWriter);
+                    if (windowSize != null) {
+                        pairer.setWindowSize(windowSize);
                     }
-                }
-
-                String r2FastqIdentifier = r2FastqBR.readLine();
-                String actualR2Id = null;
-
-                seqIdSpaceSplit = r2FastqIdentifier.split(" ");
-                if (seqIdSpaceSplit != null && seqIdSpaceSplit.length > 0) {
-                    String[] seqIdPoundSplit = seqIdSpaceSplit[0].split("#");
-                    if (seqIdPoundSplit != null && seqIdPoundSplit.length > 0) {
-                        actualR2Id = seqIdPoundSplit[0].replace("@", "");
+                    if (tmpDirectory != null) {
+                        if (!tmpDirectory.isDirectory() && !tmpDirectory.mkdirs()) {
+                            throw new IOException(String.format("could not create tmpDirectory %s",
+                                    tmpDirectory.getAbsolutePath()));
+                        }
+                        pairer.setTmpDirectory(tmpDirectory);
                     }
-                }
-
-                // need to set the break on reading just one line from each file
-                if (StringUtils.isEmpty(actualR1Id) && StringUtils.isEmpty(actualR2Id)) {
-                    break;
-                }
-
-                String r1FastqSequence = r1FastqBR.readLine();
-                String r1FastqDescription = r1FastqBR.readLine();
-                String r1FastqQualityValues = r1FastqBR.readLine();
-
-                String r2FastqSequence = r2FastqBR.readLine();
-                String r2FastqDescription = r2FastqBR.readLine();
-                String r2FastqQualityValues = r2FastqBR.readLine();
-
-                if (StringUtils.isNotEmpty(actualR1Id) && StringUtils.isNotEmpty(actualR2Id)
-                        && actualR1Id.equals(actualR2Id)) {
-                    r1FastqBW.write(String.format("%s\n%s\n%s\n%s\n", r1FastqIdentifier, r1FastqSequence,
-                            r1FastqDescription, r1FastqQualityValues));
-                    r1FastqBW.flush();
-                    r2FastqBW.write(String.format("%s\n%s\n%s\n%s\n", r2FastqIdentifier, r2FastqSequence,
-                            r2FastqDescription, r2FastqQualityValues));
-                    r2FastqBW.flush();
+                    pairer.pair(r1FastqReader, r2FastqReader);
+                    pairs = pairer.getPairs();
+                    metrics.counter("records.spilled").addAndGet(pairer.getSpilled());
                 } else {
-                    unpairedReadsFastqBW.write(String.format("%s\n%s\n%s\n%s\n", r1FastqIdentifier, r1FastqSequence,
-                            r1FastqDescription, r1FastqQualityValues));
-                    unpairedReadsFastqBW.write(String.format("%s\n%s\n%s\n%s\n", r2FastqIdentifier, r2FastqSequence,
-                            r2FastqDescription, r2FastqQualityValues));
-                    unpairedReadsFastqBW.flush();
+                    pairs = pairInStep(r1FastqReader, r2FastqReader, r1FastqWriter, r2FastqWriter,
+                            unpairedReadsFastqWriter);
                 }
+                recordsIn = r1FastqReader.getRecordCount() + r2FastqReader.getRecordCount();
 
             }
 
-            r1FastqBW.close();
-            r2FastqBW.close();
-            unpairedReadsFastqBW.close();
-
-            r1FastqBR.close();
-            r2FastqBR.close();
+            metrics.counter(ModuleMetrics.RECORDS_IN).addAndGet(recordsIn);
+            metrics.counter(ModuleMetrics.RECORDS_OUT).addAndGet(2 * pairs);
+            metrics.counter("records.unpaired").addAndGet(recordsIn - 2 * pairs);
+            metrics.counter(ModuleMetrics.BYTES_READ).addAndGet(r1Fastq.length() + r2Fastq.length());
+            metrics.counter(ModuleMetrics.BYTES_WRITTEN).addAndGet(
+                    r1FastqOutput.length() + r2FastqOutput.length() + fastqUnpairedReadsOutput.length());
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -155,6 +144,65 @@ public class FastqAlignmentPrep extends Module {
 
     }
 
+    /**
+     * Compares the reads of both files in step, a batch of pairs at a time.
+     * 
+     * @return the number of pairs written
+     */
+    private long pairInStep(FastqReader r1Reader, FastqReader r2Reader, FastqWriter r1Writer, FastqWriter r2Writer,
+            FastqWriter unpairedWriter) throws IOException {
+
+        long pairs = 0L;
+
+        FastqBatch r1Batch = null;
+        FastqBatch r2Batch = null;
+        int r1Index = 0;
+        int r2Index = 0;
+
+        while (true) {
+
+            if (r1Batch == null || r1Index == r1Batch.size()) {
+                if (r1Batch != null) {
+                    r1Reader.release(r1Batch);
+                }
+                r1Batch = r1Reader.nextBatch();
+                r1Index = 0;
+            }
+            if (r2Batch == null || r2Index == r2Batch.size()) {
+                if (r2Batch != null) {
+                    r2Reader.release(r2Batch);
+                }
+                r2Batch = r2Reader.nextBatch();
+                r2Index = 0;
+            }
+
+            if (r1Batch == null && r2Batch == null) {
+                break;
+            }
+            if (r1Batch == null || r2Batch == null) {
+                throw new IOException(String.format("%s has fewer reads than %s", r1Batch == null ? r1Fastq
+                        : r2Fastq, r1Batch == null ? r2Fastq : r1Fastq));
+            }
+
+            int count = Math.min(r1Batch.size() - r1Index, r2Batch.size() - r2Index);
+            for (int i = 0; i < count; i++) {
+                FastqRecord r1Record = r1Batch.get(r1Index++);
+                FastqRecord r2Record = r2Batch.get(r2Index++);
+                if (ReadName.sameRead(r1Record, r2Record)) {
+                    r1Writer.write(r1Record);
+                    r2Writer.write(r2Record);
+                    pairs++;
+                } else {
+                    unpairedWriter.write(r1Record);
+                    unpairedWriter.write(r2Record);
+                }
+            }
+
+        }
+
+        return pairs;
+    }
+
     public File getR1Fastq() {
         return r1Fastq;
     }
@@ -195,11 +243,36 @@ public class FastqAlignmentPrep extends Module {
         this.fastqUnpairedReadsOutput = fastqUnpairedReadsOutput;
     }
 
+    public Boolean getRepair() {
+        return repair;
+    }
+
+    public void setRepair(Boolean repair) {
+        this.repair = repair;
+    }
+
+    public Integer getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(Integer windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public File getTmpDirectory() {
+        return tmpDirectory;
+    }
+
+    public void setTmpDirectory(File tmpDirectory) {
+        this.tmpDirectory = tmpDirectory;
+    }
+
     @Override
     public String toString() {
         return String.format(
-                "FastqAlignmentPrep [r1Fastq=%s, r2Fastq=%s, r1FastqOutput=%s, r2FastqOutput=%s, fastqUnpairedReadsOutput=%s, toString()=%s]",
-                r1Fastq, r2Fastq, r1FastqOutput, r2FastqOutput, fastqUnpairedReadsOutput, super.toString());
+                "FastqAlignmentPrep [r1Fastq=%s, r2Fastq=%s, r1FastqOutput=%s, r2FastqOutput=%s, fastqUnpairedReadsOutput=%s, repair=%s, windowSize=%s, tmpDirectory=%s, toString()=%s]",
+                r1Fastq, r2Fastq, r1FastqOutput, r2FastqOutput, fastqUnpairedReadsOutput, repair, windowSize,
+                tmpDirectory, super.toString());
     }
 
 }
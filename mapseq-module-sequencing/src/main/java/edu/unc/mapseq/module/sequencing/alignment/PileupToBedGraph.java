@@ -1,15 +1,15 @@
 package edu.unc.mapseq.module.sequencing.alignment;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 import javax.validation.constraints.NotNull;
 
@@ -23,7 +23,10 @@ import edu.unc.mapseq.module.annotations.OutputArgument;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsNotEmpty;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
-import edu.unc.mapseq.module.sequencing.PileupBean;
+import edu.unc.mapseq.module.core.io.CompressedFiles;
+import edu.unc.mapseq.module.core.io.DelimitedReader;
+import edu.unc.mapseq.module.core.io.DelimitedWriter;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
 
 @Application(name = "PileupToBedGraph")
 public class PileupToBedGraph extends Module {
@@ -59,94 +62,55 @@ public class PileupToBedGraph extends Module {
         int exitCode = 0;
         try {
 
-            List<String> chromosomeList = new ArrayList<String>();
+            ModuleMetrics metrics = ModuleMetrics.get(this);
+
+            Map<String, ChromosomeBedGraph> bedGraphs = new LinkedHashMap<String, ChromosomeBedGraph>();
             for (int i = 1; i < 23; i++) {
-                chromosomeList.add("chr" + i);
-            }
-            chromosomeList.add("chrX");
-            chromosomeList.add("chrY");
-            chromosomeList.add("chrM");
-
-            Map<String, Integer> chromosomeSizesMap = new HashMap<String, Integer>();
-            BufferedReader br = new BufferedReader(new FileReader(chromosomeSizes));
-            String line;
-            while ((line = br.readLine()) != null) {
-                StringTokenizer st = new StringTokenizer(line);
-                chromosomeSizesMap.put(st.nextToken(), Integer.valueOf(st.nextToken()));
+                bedGraphs.put("chr" + i, new ChromosomeBedGraph("chr" + i));
             }
-
-            BufferedWriter bw = new BufferedWriter(new FileWriter(outFile));
-
-            for (String chromosome : chromosomeList) {
-
-                List<PileupBean> pileupList = new ArrayList<PileupBean>();
-
-                br = new BufferedReader(new FileReader(inFile));
-                while ((line = br.readLine()) != null) {
-                    StringTokenizer st = new StringTokenizer(line, "\t");
-                    String chromosomeName = st.nextToken();
-                    String coordinate = st.nextToken();
-                    String referenceBase = st.nextToken();
-                    String consensusBases = st.nextToken();
-                    // to reduce memory consumed, read in only one chromosome at a time
-                    if (chromosome.equals(chromosomeName)) {
-                        pileupList.add(new PileupBean(Integer.valueOf(coordinate), consensusBases, null, null, null,
-                                null, null, null, null));
+            bedGraphs.put("chrX", new ChromosomeBedGraph("chrX"));
+            bedGraphs.put("chrY", new ChromosomeBedGraph("chrY"));
+            bedGraphs.put("chrM", new ChromosomeBedGraph("chrM"));
+
+            try (DelimitedReader reader = new DelimitedReader(chromosomeSizes)) {
+                while (reader.next()) {
+                    ChromosomeBedGraph bedGraph = bedGraphs.get(reader.getString(0));
+                    if (bedGraph != null) {
+                        bedGraph.size = reader.getInt(1);
                     }
                 }
-                br.close();
-
-                String format = "%s\t%d\t%d\t%s\n";
-
-                int x1 = 0;
-                int x2 = 0;
-
-                for (int i = 0; i < pileupList.size(); ++i) {
-                    PileupBean bean = pileupList.get(i);
-
-                    if (i == 0) {
-                        x2 = bean.getCoordinate() - 1;
-                        bw.write(String.format(format, chromosome, x1, x2, 0));
-                        x1 = x2;
-                    } else {
-                        PileupBean previousBean = pileupList.get(i - 1);
-                        if (bean.getCoordinate() == previousBean.getCoordinate() + 1) {
-                            continue;
-                        }
-
-                        x2 = previousBean.getCoordinate();
-                        bw.write(String.format(format, chromosome, x1, x2, previousBean.getConsensusBases()));
-                        x1 = x2;
-
-                        x2 = bean.getCoordinate() - 1;
-                        if (x1 > x2) {
-                            continue;
-                        }
+            }
 
-                        if (x2 > previousBean.getCoordinate()) {
-                            int chromosomeSize = chromosomeSizesMap.get(chromosome);
-                            if (x2 > chromosomeSize) {
-                                x2 = chromosomeSize;
-                            }
-                            bw.write(String.format(format, chromosome, x1, x2, 0));
-                        } else {
-                            bw.write(String.format(format, chromosome, x1, x2, bean.getConsensusBases()));
+            // one pass over the pileup, the chromosomes written in the order above
+            try (DelimitedReader reader = new DelimitedReader(inFile, '\t');
+                    OrderedOutput output = new OrderedOutput(new ArrayList<ChromosomeBedGraph>(bedGraphs.values()),
+                            CompressedFiles.newOutputStream(outFile), outFile.getAbsoluteFile().getParentFile())) {
+                String chromosomeName = null;
+                ChromosomeBedGraph bedGraph = null;
+                while (reader.next()) {
+                    if (chromosomeName == null || !reader.fieldEquals(0, chromosomeName)) {
+                        chromosomeName = reader.getString(0);
+                        bedGraph = bedGraphs.get(chromosomeName);
+                        if (bedGraph != null) {
+                            output.begin(bedGraph);
                         }
-                        x1 = x2;
-
                     }
-
-                    bw.flush();
+                    if (bedGraph != null) {
+                        bedGraph.add(reader);
+                    }
                 }
-
+                output.finish();
+                metrics.counter(ModuleMetrics.BYTES_READ).addAndGet(reader.getBytesRead());
             }
-
-            bw.close();
+            for (ChromosomeBedGraph bedGraph : bedGraphs.values()) {
+                metrics.counter(ModuleMetrics.RECORDS_IN).addAndGet(bedGraph.records);
+            }
+            metrics.counter(ModuleMetrics.BYTES_WRITTEN).addAndGet(outFile.length());
 
         } catch (Exception e) {
             e.printStackTrace();
             moduleOutput.setError(new StringBuilder(e.getMessage()));
-            moduleOutput.setExitCode(exitCode);
+            moduleOutput.setExitCode(-1);
             return moduleOutput;
         }
 
@@ -179,6 +143,190 @@ public class PileupToBedGraph extends Module {
         this.chromosomeSizes = chromosomeSizes;
     }
 
+    /**
+     * The intervals of one chromosome, worked out a pileup record at a time: an interval for every run of consecutive
+     * coordinates with the consensus bases of its last record, and one with 0 for every gap between runs.
+     */
+    static class ChromosomeBedGraph {
+
+        private final String chromosome;
+
+        private Integer size;
+
+        private int index;
+
+        // the output, or the spill file's writer while it is ahead of its turn
+        private DelimitedWriter writer;
+
+        private File spill;
+
+        // left for another chromosome
+        private boolean finished = false;
+
+        private long records = 0L;
+
+        private int x1 = 0;
+
+        private int previousCoordinate;
+
+        private byte[] previousConsensusBases = new byte[16];
+
+        private int previousConsensusBasesLength;
+
+        public ChromosomeBedGraph(String chromosome) {
+            super();
+            this.chromosome = chromosome;
+        }
+
+        void add(DelimitedReader reader) throws IOException {
+            int coordinate = reader.getInt(1);
+            try {
+                if (records == 0) {
+                    int x2 = coordinate - 1;
+                    write(x2).append('0').newLine();
+                    x1 = x2;
+                    return;
+                }
+                if (coordinate == previousCoordinate + 1) {
+                    return;
+                }
+
+                int x2 = previousCoordinate;
+                write(x2).append(previousConsensusBases, 0, previousConsensusBasesLength).newLine();
+                x1 = x2;
+
+                x2 = coordinate - 1;
+                if (x1 > x2) {
+                    return;
+                }
+
+                if (x2 > previousCoordinate) {
+                    if (size == null) {
+                        throw new IOException(String.format("no size for %s", chromosome));
+                    }
+                    if (x2 > size) {
+                        x2 = size;
+                    }
+                    write(x2).append('0').newLine();
+                } else {
+                    write(x2).append(reader, 3).newLine();
+                }
+                x1 = x2;
+            } finally {
+                records++;
+                previousCoordinate = coordinate;
+                int length = reader.getFieldLength(3);
+                if (length > previousConsensusBases.length) {
+                    previousConsensusBases = Arrays.copyOf(previousConsensusBases, length * 2);
+                }
+                System.arraycopy(reader.getBuffer(), reader.getFieldStart(3), previousConsensusBases, 0, length);
+                previousConsensusBasesLength = length;
+            }
+        }
+
+        private DelimitedWriter write(int x2) throws IOException {
+            return writer.append(chromosome).tab().append(x1).tab().append(x2).tab();
+        }
+
+    }
+
+    /**
+     * Writes the chromosomes in list order without holding them: the one whose turn it is goes straight to the output,
+     * one that turns up ahead of its turn is spilled to a temporary file and copied in when its turn comes. The pileup
+     * has to keep a chromosome's records together (samtools does); one that turns up again once it has been written
+     * is an error.
+     */
+    static class OrderedOutput implements Closeable {
+
+        private final List<ChromosomeBedGraph> bedGraphs;
+
+        private final OutputStream stream;
+
+        private final DelimitedWriter out;
+
+        private final File directory;
+
+        private int next = 0;
+
+        private ChromosomeBedGraph current;
+
+        public OrderedOutput(List<ChromosomeBedGraph> bedGraphs, OutputStream stream, File directory) {
+            super();
+            this.bedGraphs = bedGraphs;
+            this.stream = stream;
+            this.out = new DelimitedWriter(stream);
+            this.directory = directory;
+            for (int i = 0; i < bedGraphs.size(); i++) {
+                bedGraphs.get(i).index = i;
+            }
+        }
+
+        void begin(ChromosomeBedGraph bedGraph) throws IOException {
+            if (bedGraph == current) {
+                // back from chromosomes that are not listed
+                return;
+            }
+            if (current != null) {
+                current.finished = true;
+                advance();
+            }
+            if (bedGraph.index < next) {
+                throw new IOException(String.format("%s records are not together in the pileup", bedGraph.chromosome));
+            }
+            bedGraph.finished = false;
+            current = bedGraph;
+            if (bedGraph.writer == null) {
+                if (bedGraph.index == next) {
+                    bedGraph.writer = out;
+                } else {
+                    bedGraph.spill = File.createTempFile(String.format(".%s.", bedGraph.chromosome), ".bedGraph",
+                            directory);
+                    bedGraph.writer = new DelimitedWriter(bedGraph.spill);
+                }
+            }
+        }
+
+        /**
+         * Writes whatever was spilled, every chromosome being done.
+         */
+        void finish() throws IOException {
+            for (ChromosomeBedGraph bedGraph : bedGraphs) {
+                bedGraph.finished = true;
+            }
+            advance();
+            out.flush();
+        }
+
+        // past the chromosomes that are done, copying in the spilled ones
+        private void advance() throws IOException {
+            while (next < bedGraphs.size() && bedGraphs.get(next).finished) {
+                ChromosomeBedGraph bedGraph = bedGraphs.get(next++);
+                if (bedGraph.spill != null) {
+                    bedGraph.writer.close();
+                    out.flush();
+                    Files.copy(bedGraph.spill.toPath(), stream);
+                    bedGraph.spill.delete();
+                    bedGraph.spill = null;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                for (ChromosomeBedGraph bedGraph : bedGraphs) {
+                    if (bedGraph.spill != null) {
+                        bedGraph.writer.close();
+                        bedGraph.spill.delete();
+                    }
+                }
+            }
+        }
+
+    }
+
     @Override
     public String toString() {
         return String.format("PileupToBedGraph [inFile=%s, outFile=%s, chromosomeSizes=%s, toString()=%s]", inFile,
@@ -1,20 +1,24 @@
 package edu.unc.mapseq.module.sequencing.alignment;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.validation.constraints.NotNull;
 
 import org.apache.commons.io.FileUtils;
-import org.biojava3.core.sequence.DNASequence;
 
 import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.Module;
@@ -26,19 +30,30 @@ import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputArgument;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.core.io.CompressedFiles;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
+import edu.unc.mapseq.module.sequencing.fastq.AdapterMatcher;
+import edu.unc.mapseq.module.sequencing.fastq.FastqBatch;
+import edu.unc.mapseq.module.sequencing.fastq.FastqReader;
+import edu.unc.mapseq.module.sequencing.fastq.FastqRecord;
+import edu.unc.mapseq.module.sequencing.fastq.FastqWriter;
 
 /**
  * Trim adapter segment (and any following sequence) from reads, and get count and percent of reads that contain adapter
  * segment.
  * 
  * This module takes a given fastq file and trims all reads to eliminate any adapter contamination. The 'adapter' is the
- * reverse complement of the sequencing primer, which the user must provide. A non-A/C/G/T base in the primer is
- * converted to an N, and all Ns in the adapter are considered matches to any base in the read. (The opposite case is
- * not true -- Ns in read sequences are NOT considered matches to the adapter bases.) Otherwise, no mis-matches are
- * allowed. The minimum length for an adapter/read match is 5 bases. The script checks for internal and terminal adapter
- * segments. The trimmed read (and trimmed base scores) are output in fastq format, unless the effective read length is
- * zero [an adapter dimer]. The module also reports the count and percentage of reads that contain adapter. A collection
- * of basic trimming statistics is an optional output as well.
+ * reverse complement of the sequencing primer, which the user must provide; a primer file may hold several primers,
+ * one per line, all of which are searched for at once (blank lines and lines starting with >, as in a FASTA file of
+ * primers, are skipped). IUPAC codes in the primer are kept, any other non-A/C/G/T base is converted to an N, and all
+ * Ns in the adapter are considered matches to any base in the read. (The opposite case is not true -- Ns in read
+ * sequences are NOT considered matches to the adapter bases.) By default no mis-matches are allowed (see
+ * maxMismatches). The minimum length for an adapter/read match is 5 bases (see minOverlap). The script checks for
+ * internal and terminal adapter segments, see AdapterMatcher. The trimmed read (and trimmed base scores) are output in
+ * fastq format, unless the effective read length is zero [an adapter dimer]. The module also reports the count and
+ * percentage of reads that contain adapter. A collection of basic trimming statistics is an optional output as well.
+ * 
+ * Reads are trimmed a batch at a time on a pool of threads (see threads) and written in the order they were read.
  * 
  * Expected output: outfastq (required), outqc (required), outstats (optional)
  * 
@@ -73,6 +88,15 @@ public class TrimCountAdapter extends Module {
     @OutputArgument
     private File outStats;
 
+    @InputArgument(description = "mismatches allowed in a whole adapter, proportionally fewer in a partial one")
+    private Integer maxMismatches = 0;
+
+    @InputArgument(description = "the minimum length for an adapter/read match")
+    private Integer minOverlap = 5;
+
+    @InputArgument(description = "threads matching adapters, all cores when not set")
+    private Integer threads;
+
     public TrimCountAdapter() {
         super();
     }
@@ -89,74 +113,80 @@ public class TrimCountAdapter extends Module {
         int exitCode = 0;
         try {
 
-            FileUtils.touch(outFastq);
+            ModuleMetrics metrics = ModuleMetrics.get(this);
+            ModuleMetrics.PhaseTimer trimTimer = metrics.phase("trim");
 
-            Map<Integer, Integer> readLengthMap = new HashMap<Integer, Integer>();
-
-            String primer = FileUtils.readFileToString(primerSeq);
-
-            DNASequence rnaSeq = new DNASequence(primer);
-            String reverseComplement = rnaSeq.getReverseComplement().getSequenceAsString();
-            // allow Ns in primer/adapter to be matches to all bases
-            reverseComplement = reverseComplement.replace("N", ".");
-            int reverseComplementLength = reverseComplement.length();
-            String seed = reverseComplement.substring(0, 5);
+            FileUtils.touch(outFastq);
 
-            BufferedReader br = new BufferedReader(new FileReader(inFastq));
-            BufferedWriter bw = new BufferedWriter(new FileWriter(outFastq));
-            int totalReadCount = 0;
-            int adapterReadCount = 0;
-            int sequenceLength = 0;
-            while (true) {
-                String sequenceId = br.readLine();
-                if (sequenceId == null) {
-                    break;
+            List<String> adapters = new ArrayList<String>();
+            for (String primer : FileUtils.readLines(primerSeq)) {
+                if (!primer.trim().isEmpty() && !primer.startsWith(">")) {
+                    adapters.add(AdapterMatcher.reverseComplement(primer));
+                }
+            }
+            AdapterMatcher matcher = new AdapterMatcher(adapters, maxMismatches != null ? maxMismatches : 0,
+                    minOverlap != null ? minOverlap : 5);
+
+            int workers = threads != null ? Math.max(1, threads) : Runtime.getRuntime().availableProcessors();
+            // one histogram per worker thread, merged once they are done
+            final List<Histogram> histograms = Collections.synchronizedList(new ArrayList<Histogram>());
+            final ThreadLocal<Histogram> histogram = new ThreadLocal<Histogram>() {
+                @Override
+                protected Histogram initialValue() {
+                    Histogram ret = new Histogram();
+                    histograms.add(ret);
+                    return ret;
+                }
+            };
+            ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "trim");
+                    thread.setDaemon(true);
+                    return thread;
                 }
-                totalReadCount++;
-                String rawSequence = br.readLine().trim();
-                String optionalSequenceId = br.readLine();
-                String qualityValues = br.readLine();
-
-                sequenceLength = rawSequence.length();
-
-                int tmpSequenceLength = sequenceLength;
-                String readSegment = "";
-                String adapterSegment = "";
-
-                if (rawSequence.contains(seed)) {
-
-                    for (int i = 0; i < sequenceLength - 4; i++) {
-                        int endSize = sequenceLength - i;
-                        if (endSize > reverseComplementLength) {
-                            readSegment = rawSequence.substring(i, i + reverseComplementLength);
-                            adapterSegment = reverseComplement;
-                        } else {
-                            readSegment = rawSequence.substring(i, i + endSize);
-                            adapterSegment = reverseComplement.substring(0, endSize);
-                        }
-                        if (readSegment.contains(adapterSegment)) {
-                            tmpSequenceLength = i;
-                            break;
-                        }
+            });
+            BlockingQueue<Future<Trim>> pending = new ArrayBlockingQueue<Future<Trim>>(workers * 2);
+            // the stats run up to the length of the last read
+            int sequenceLength = 0;
+            try (FastqReader reader = new FastqReader(inFastq); FastqWriter writer = new FastqWriter(outFastq)) {
+                FastqBatch batch;
+                while ((batch = reader.nextBatch()) != null) {
+                    if (pending.remainingCapacity() == 0) {
+                        sequenceLength = write(reader, writer, pending.poll());
                     }
-
+                    pending.add(executor.submit(new Trim(batch, matcher, histogram)));
                 }
-                String usableSequence = rawSequence.substring(0, tmpSequenceLength);
-                if (!usableSequence.equals(rawSequence)) {
-                    adapterReadCount++;
+                while (!pending.isEmpty()) {
+                    sequenceLength = write(reader, writer, pending.poll());
                 }
-                String usableScore = qualityValues.substring(0, tmpSequenceLength);
-                if (tmpSequenceLength > 0) {
-                    bw.write(String.format("%s\n%s\n%s\n%s\n", sequenceId, usableSequence, optionalSequenceId,
-                            usableScore));
-                    bw.flush();
+                metrics.counter(ModuleMetrics.RECORDS_OUT).addAndGet(writer.getRecordCount());
+            } finally {
+                for (Future<Trim> future : pending) {
+                    future.cancel(true);
                 }
+                executor.shutdownNow();
+            }
+            trimTimer.close();
 
-                readLengthMap.put(tmpSequenceLength,
-                        readLengthMap.get(tmpSequenceLength) != null ? readLengthMap.get(tmpSequenceLength) + 1 : 0);
+            int totalReadCount = 0;
+            int adapterReadCount = 0;
+            int[] readLengthCounts = new int[sequenceLength + 1];
+            for (Histogram h : histograms) {
+                totalReadCount += h.reads;
+                adapterReadCount += h.adapterReads;
+                for (int i = 0; i < Math.min(h.counts.length, readLengthCounts.length); i++) {
+                    readLengthCounts[i] += h.counts[i];
+                }
             }
-            bw.close();
-            br.close();
+            // as always, the first read of each effective length is not counted
+            for (int i = 0; i < readLengthCounts.length; i++) {
+                readLengthCounts[i] = Math.max(0, readLengthCounts[i] - 1);
+            }
+
+            metrics.counter(ModuleMetrics.RECORDS_IN).addAndGet(totalReadCount);
+            metrics.counter(ModuleMetrics.BYTES_READ).addAndGet(inFastq.length());
+            metrics.counter(ModuleMetrics.BYTES_WRITTEN).addAndGet(outFastq.length());
 
             double percent = 100 * adapterReadCount / totalReadCount;
 
@@ -176,38 +206,32 @@ public class TrimCountAdapter extends Module {
             int ct2 = 0;
             int ct3 = 0;
             int avgsum = 0;
-            List<Integer> sizes = new ArrayList<Integer>();
+            int sizes = 0;
             for (int i = 0; i < sequenceLength; i++) {
-                if (readLengthMap.get(i) == null) {
-                    readLengthMap.put(i, 0);
-                }
                 if (i == sequenceLength) {
-                    ct3 += readLengthMap.get(i);
+                    ct3 += readLengthCounts[i];
                 } else if (i > 0) {
-                    ct2 += readLengthMap.get(i);
+                    ct2 += readLengthCounts[i];
                 } else {
-                    ct1 += readLengthMap.get(i);
-                }
-                avgsum += readLengthMap.get(i) * i;
-                for (int j = 0; j < readLengthMap.get(i); j++) {
-                    sizes.add(i);
+                    ct1 += readLengthCounts[i];
                 }
+                avgsum += readLengthCounts[i] * i;
+                sizes += readLengthCounts[i];
             }
 
-            Collections.sort(sizes);
-
             int median = 0;
-            if (sizes.size() % 2 == 0) {
-                median = (sizes.get((sizes.size() - 1) / 2) + sizes.get((sizes.size() + 1) / 2)) / 2;
+            if (sizes % 2 == 0) {
+                median = (sizeAt(readLengthCounts, sequenceLength, (sizes - 1) / 2)
+                        + sizeAt(readLengthCounts, sequenceLength, (sizes + 1) / 2)) / 2;
             } else {
-                median = sizes.get(sizes.size() / 2);
+                median = sizeAt(readLengthCounts, sequenceLength, sizes / 2);
             }
-            double avg = avgsum / sizes.size();
+            double avg = avgsum / sizes;
             int keepsum = ct2 + ct3;
             int allsum = ct1 + ct2 + ct3;
-            String pctAD = String.format("%.2f", (double) (100 * readLengthMap.get(sequenceLength) / allsum));
+            String pctAD = String.format("%.2f", (double) (100 * readLengthCounts[sequenceLength] / allsum));
 
-            bw = new BufferedWriter(new FileWriter(outStats));
+            BufferedWriter bw = CompressedFiles.newBufferedWriter(outStats);
             bw.write(String.format("RemovedReadCt\t%s\n", ct1));
             bw.write(String.format("TrimmedReadCt\t%s\n", ct2));
             bw.write(String.format("UntrimmedReadCt\t%s\n", ct3));
@@ -217,7 +241,7 @@ public class TrimCountAdapter extends Module {
             bw.write(String.format("AdapterDimer\t%s\n", pctAD));
 
             for (int i = 0; i < sequenceLength + 1; i++) {
-                bw.write(String.format("EffReadLength=%d\t%s\n", i, readLengthMap.get(i)));
+                bw.write(String.format("EffReadLength=%d\t%s\n", i, readLengthCounts[i]));
             }
 
             bw.flush();
@@ -235,6 +259,107 @@ public class TrimCountAdapter extends Module {
         return moduleOutput;
     }
 
+    /**
+     * Writes a trimmed batch, in the order read, and hands it back to the reader.
+     * 
+     * @return the untrimmed length of the batch's last read
+     */
+    private static int write(FastqReader reader, FastqWriter writer, Future<Trim> future) throws IOException {
+        Trim trim;
+        try {
+            trim = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        FastqBatch batch = trim.batch;
+        for (int i = 0; i < batch.size(); i++) {
+            FastqRecord record = batch.get(i);
+            // an adapter dimer, nothing left to write
+            if (record.getSequenceLength() > 0) {
+                writer.write(record);
+            }
+        }
+        reader.release(batch);
+        return trim.lastLength;
+    }
+
+    /**
+     * @return the index-th of the effective lengths below end, in order, as counted
+     */
+    private static int sizeAt(int[] counts, int end, int index) {
+        int seen = 0;
+        for (int i = 0; i < end; i++) {
+            seen += counts[i];
+            if (index < seen) {
+                return i;
+            }
+        }
+        throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, seen));
+    }
+
+    /**
+     * Trims the reads of a batch in place, counting their effective lengths in the worker's histogram.
+     */
+    private static class Trim implements Callable<Trim> {
+
+        private final FastqBatch batch;
+
+        private final AdapterMatcher matcher;
+
+        private final ThreadLocal<Histogram> histogram;
+
+        private int lastLength;
+
+        public Trim(FastqBatch batch, AdapterMatcher matcher, ThreadLocal<Histogram> histogram) {
+            super();
+            this.batch = batch;
+            this.matcher = matcher;
+            this.histogram = histogram;
+        }
+
+        @Override
+        public Trim call() {
+            Histogram h = histogram.get();
+            for (int i = 0; i < batch.size(); i++) {
+                FastqRecord record = batch.get(i);
+                int length = record.getSequenceLength();
+                int trimmed = matcher.trimmedLength(record);
+                h.add(length, trimmed);
+                record.truncate(trimmed);
+                lastLength = length;
+            }
+            return this;
+        }
+
+    }
+
+    private static class Histogram {
+
+        private int[] counts = new int[256];
+
+        private int reads = 0;
+
+        private int adapterReads = 0;
+
+        void add(int length, int trimmed) {
+            reads++;
+            if (trimmed < length) {
+                adapterReads++;
+            }
+            if (trimmed >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(trimmed + 1, counts.length * 2));
+            }
+            counts[trimmed]++;
+        }
+
+    }
+
     public File getInFastq() {
         return inFastq;
     }
@@ -275,11 +400,36 @@ public class TrimCountAdapter extends Module {
         this.outStats = outStats;
     }
 
+    public Integer getMaxMismatches() {
+        return maxMismatches;
+    }
+
+    public void setMaxMismatches(Integer maxMismatches) {
+        this.maxMismatches = maxMismatches;
+    }
+
+    public Integer getMinOverlap() {
+        return minOverlap;
+    }
+
+    public void setMinOverlap(Integer minOverlap) {
+        this.minOverlap = minOverlap;
+    }
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
     @Override
     public String toString() {
         return String.format(
-                "TrimCountAdapter [inFastq=%s, primerSeq=%s, outFastq=%s, outQC=%s, outStats=%s, toString()=%s]",
-                inFastq, primerSeq, outFastq, outQC, outStats, super.toString());
+                "TrimCountAdapter [inFastq=%s, primerSeq=%s, outFastq=%s, outQC=%s, outStats=%s, maxMismatches=%s, "
+                        + "minOverlap=%s, threads=%s, toString()=%s]",
+                inFastq, primerSeq, outFastq, outQC, outStats, maxMismatches, minOverlap, threads, super.toString());
     }
 
 }
@@ -0,0 +1,300 @@
+package edu.unc.mapseq.module.sequencing.fastq;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds where adapters start in reads, bit-parallel (Shift-And, with Wu-Manber's extra state vectors for mismatches):
+ * each adapter base is a bit of a 64 bit word, so a read base moves every adapter along at once. Several adapters
+ * share a word, side by side, and are all searched in the one pass over the read; longer lists take more words.
+ *
+ * Adapters are IUPAC: N stands for any base (an N in the read too) and R, Y, K, M, S, W, B, D, H and V for their
+ * bases, while an N or any other non A/C/G/T character in the read matches nothing but an adapter N. Read bases are
+ * encoded to 2 bits (plus a code for anything else) through a table, lower case as upper case.
+ *
+ * A read matches where a whole adapter does (an internal adapter, the earliest wins) or, failing that, where a prefix
+ * of an adapter at least minOverlap long runs off the 3' end of the read (the longest wins). Overlapping L of an
+ * adapter's m bases may have maxMismatches * L / m mismatches, so a short overlap has to be near exact. Adapters are
+ * cut to their first 64 bases.
+ *
+ * A matcher holds no state between reads and may be shared by threads.
+ *
+ * @author jdr0887
+ */
+public class AdapterMatcher {
+
+    private static final int WORD_SIZE = 64;
+
+    // read base codes: A, C, G, T and anything else
+    private static final int OTHER = 4;
+
+    private static final byte[] CODES = new byte[256];
+
+    static {
+        for (int i = 0; i < CODES.length; i++) {
+            CODES[i] = OTHER;
+        }
+        CODES['A'] = CODES['a'] = 0;
+        CODES['C'] = CODES['c'] = 1;
+        CODES['G'] = CODES['g'] = 2;
+        CODES['T'] = CODES['t'] = 3;
+    }
+
+    private final String[] adapters;
+
+    private final int maxMismatches;
+
+    private final int minOverlap;
+
+    private final Word[] words;
+
+    public AdapterMatcher(List<String> adapters, int maxMismatches, int minOverlap) {
+        super();
+        if (adapters.isEmpty()) {
+            throw new IllegalArgumentException("no adapters");
+        }
+        this.maxMismatches = Math.max(0, maxMismatches);
+        this.minOverlap = Math.max(1, minOverlap);
+        this.adapters = new String[adapters.size()];
+        List<Word> words = new ArrayList<Word>();
+        Word word = null;
+        for (int i = 0; i < adapters.size(); i++) {
+            String adapter = adapters.get(i).trim().toUpperCase();
+            if (adapter.isEmpty()) {
+                throw new IllegalArgumentException(String.format("adapter %d is empty", i + 1));
+            }
+            if (adapter.length() > WORD_SIZE) {
+                adapter = adapter.substring(0, WORD_SIZE);
+            }
+            this.adapters[i] = adapter;
+            if (word == null || word.used + adapter.length() > WORD_SIZE) {
+                word = new Word();
+                words.add(word);
+            }
+            word.add(i, adapter);
+        }
+        this.words = words.toArray(new Word[words.size()]);
+    }
+
+    /**
+     * The reverse complement of a primer, IUPAC codes included; characters that are not IUPAC become N.
+     */
+    public static String reverseComplement(String primer) {
+        String sequence = primer.trim().toUpperCase();
+        StringBuilder sb = new StringBuilder(sequence.length());
+        for (int i = sequence.length() - 1; i >= 0; i--) {
+            sb.append(complement(sequence.charAt(i)));
+        }
+        return sb.toString();
+    }
+
+    private static char complement(char base) {
+        switch (base) {
+            case 'A':
+                return 'T';
+            case 'C':
+                return 'G';
+            case 'G':
+                return 'C';
+            case 'T':
+            case 'U':
+                return 'A';
+            case 'R':
+                return 'Y';
+            case 'Y':
+                return 'R';
+            case 'K':
+                return 'M';
+            case 'M':
+                return 'K';
+            case 'S':
+                return 'S';
+            case 'W':
+                return 'W';
+            case 'B':
+                return 'V';
+            case 'V':
+                return 'B';
+            case 'D':
+                return 'H';
+            case 'H':
+                return 'D';
+            default:
+                return 'N';
+        }
+    }
+
+    /**
+     * @return the bases (bit 0 A, 1 C, 2 G, 3 T) an IUPAC code stands for, N also matching OTHER
+     */
+    private static int bases(char code) {
+        switch (code) {
+            case 'A':
+                return 0x1;
+            case 'C':
+                return 0x2;
+            case 'G':
+                return 0x4;
+            case 'T':
+            case 'U':
+                return 0x8;
+            case 'R':
+                return 0x1 | 0x4;
+            case 'Y':
+                return 0x2 | 0x8;
+            case 'K':
+                return 0x4 | 0x8;
+            case 'M':
+                return 0x1 | 0x2;
+            case 'S':
+                return 0x2 | 0x4;
+            case 'W':
+                return 0x1 | 0x8;
+            case 'B':
+                return 0x2 | 0x4 | 0x8;
+            case 'D':
+                return 0x1 | 0x4 | 0x8;
+            case 'H':
+                return 0x1 | 0x2 | 0x8;
+            case 'V':
+                return 0x1 | 0x2 | 0x4;
+            case 'N':
+                return 0x1f;
+            default:
+                throw new IllegalArgumentException(String.format("%s is not an IUPAC base", code));
+        }
+    }
+
+    public String[] getAdapters() {
+        return adapters;
+    }
+
+    public int getMaxMismatches() {
+        return maxMismatches;
+    }
+
+    public int getMinOverlap() {
+        return minOverlap;
+    }
+
+    /**
+     * @return mismatches allowed overlapping length bases of an adapter of the given length
+     */
+    int allowed(int length, int adapterLength) {
+        return maxMismatches * length / adapterLength;
+    }
+
+    /**
+     * @return where in the read the first adapter starts, or the read's length when there is none
+     */
+    public int trimmedLength(FastqRecord record) {
+        int start = find(record.getData(), record.getSequenceStart(), record.getSequenceLength());
+        return start == -1 ? record.getSequenceLength() : start;
+    }
+
+    /**
+     * @return where, from offset, the first adapter starts in bases[offset, offset + length), or -1
+     */
+    public int find(byte[] bases, int offset, int length) {
+        int best = -1;
+        for (Word word : words) {
+            int start = word.find(bases, offset, length, best);
+            if (start != -1 && (best == -1 || start < best)) {
+                best = start;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Adapters side by side in the bits of one word, the first base of each the lowest of its bits.
+     */
+    class Word {
+
+        // the adapter positions each read base code matches
+        private final long[] masks = new long[OTHER + 1];
+
+        // the first bit of every adapter
+        private long starts = 0L;
+
+        // the last bit of every adapter, by the mismatches a whole match may have
+        private long[] ends = new long[maxMismatches + 1];
+
+        private int used = 0;
+
+        private final List<int[]> members = new ArrayList<int[]>();
+
+        private int maxLength = 0;
+
+        void add(int index, String adapter) {
+            int offset = used;
+            for (int j = 0; j < adapter.length(); j++) {
+                int bases = bases(adapter.charAt(j));
+                for (int code = 0; code <= OTHER; code++) {
+                    if ((bases & 1 << code) != 0) {
+                        masks[code] |= 1L << (offset + j);
+                    }
+                }
+            }
+            starts |= 1L << offset;
+            ends[allowed(adapter.length(), adapter.length())] |= 1L << (offset + adapter.length() - 1);
+            members.add(new int[] { index, offset, adapter.length() });
+            used += adapter.length();
+            maxLength = Math.max(maxLength, adapter.length());
+        }
+
+        /**
+         * @param best
+         *            a start already found, nothing after it is of interest
+         */
+        int find(byte[] bases, int offset, int length, int best) {
+            // state[d]: bit j set when the adapter prefix ending at bit j ends at the current base with <= d
+            // mismatches
+            long[] state = new long[maxMismatches + 1];
+            for (int t = 0; t < length; t++) {
+                if (best != -1 && t - maxLength + 1 >= best) {
+                    // whatever ends from here on starts after best
+                    return best;
+                }
+                long match = masks[CODES[bases[offset + t] & 0xff]];
+                long previous = 0L;
+                for (int d = 0; d <= maxMismatches; d++) {
+                    long shifted = state[d] << 1 | starts;
+                    state[d] = shifted & match | previous;
+                    previous = shifted;
+                }
+                for (int d = 0; d <= maxMismatches; d++) {
+                    long found = state[d] & ends[d];
+                    if (found != 0L) {
+                        for (int[] member : members) {
+                            if ((found & 1L << (member[1] + member[2] - 1)) != 0L) {
+                                int start = t - member[2] + 1;
+                                if (best == -1 || start < best) {
+                                    best = start;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            // adapter prefixes running off the 3' end, the longest first
+            for (int[] member : members) {
+                int adapterLength = member[2];
+                for (int overlap = Math.min(adapterLength - 1, length); overlap >= minOverlap; overlap--) {
+                    int start = length - overlap;
+                    if (best != -1 && start >= best) {
+                        break;
+                    }
+                    long bit = 1L << (member[1] + overlap - 1);
+                    if ((state[allowed(overlap, adapterLength)] & bit) != 0L) {
+                        best = start;
+                        break;
+                    }
+                }
+            }
+            return best;
+        }
+
+    }
+
+}
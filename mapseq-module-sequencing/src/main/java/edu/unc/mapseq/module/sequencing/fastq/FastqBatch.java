@@ -0,0 +1,57 @@
+package edu.unc.mapseq.module.sequencing.fastq;
+
+/**
+ * Consecutive records of one file, handed from a FastqReader's thread to whoever processes them and back again to be
+ * refilled.
+ *
+ * @author jdr0887
+ */
+public class FastqBatch {
+
+    private final FastqRecord[] records;
+
+    private int size = 0;
+
+    public FastqBatch(int capacity) {
+        super();
+        this.records = new FastqRecord[capacity];
+        for (int i = 0; i < capacity; i++) {
+            records[i] = new FastqRecord();
+        }
+    }
+
+    public int getCapacity() {
+        return records.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == records.length;
+    }
+
+    public FastqRecord get(int i) {
+        if (i >= size) {
+            throw new IndexOutOfBoundsException(String.format("%d of %d records", i, size));
+        }
+        return records[i];
+    }
+
+    /**
+     * The record to fill next, counted by add().
+     */
+    FastqRecord peekFree() {
+        return records[size];
+    }
+
+    void add() {
+        size++;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+}
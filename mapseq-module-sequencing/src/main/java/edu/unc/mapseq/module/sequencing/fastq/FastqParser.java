@@ -0,0 +1,178 @@
+package edu.unc.mapseq.module.sequencing.fastq;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import edu.unc.mapseq.module.core.io.CompressedFiles;
+
+/**
+ * Parses four line FASTQ records out of one reusable byte buffer into FastqRecords, on the calling thread (FastqReader
+ * runs one ahead of its reader). The checks are the cheap ones: a header starting with @, a third line starting with +
+ * and as many qualities as bases. Blank lines between records are skipped and a trailing \r is not part of a line, as
+ * with BufferedReader.
+ *
+ * @author jdr0887
+ */
+public class FastqParser implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final InputStream in;
+
+    // what errors call the input
+    private final String name;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+
+    // the start of the record being parsed, kept in the buffer when it is refilled
+    private int mark = 0;
+
+    private int position = 0;
+
+    private int limit = 0;
+
+    private boolean eof = false;
+
+    private long lineNumber = 0L;
+
+    private long recordCount = 0L;
+
+    private long bytesRead = 0L;
+
+    public FastqParser(InputStream in, String name) {
+        super();
+        this.in = in;
+        this.name = name;
+    }
+
+    public FastqParser(File file) throws IOException {
+        this(CompressedFiles.newInputStream(file), file.getAbsolutePath());
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Fills record with the next one.
+     *
+     * @return false at the end of the input
+     */
+    public boolean next(FastqRecord record) throws IOException {
+        mark = position;
+        // line starts and ends are relative to mark, which fill() moves
+        int headerStart = 0;
+        int headerEnd;
+        while (true) {
+            headerEnd = findLineEnd(headerStart);
+            if (headerEnd == -1) {
+                position = limit;
+                return false;
+            }
+            lineNumber++;
+            if (contentEnd(headerStart, headerEnd) > headerStart) {
+                break;
+            }
+            headerStart = headerEnd + 1;
+        }
+        if (buffer[mark + headerStart] != '@') {
+            throw invalid("a record does not start with @");
+        }
+        int sequenceStart = headerEnd + 1;
+        int sequenceEnd = nextLine(sequenceStart);
+        int plusStart = sequenceEnd + 1;
+        int plusEnd = nextLine(plusStart);
+        if (contentEnd(plusStart, plusEnd) == plusStart || buffer[mark + plusStart] != '+') {
+            throw invalid("the third line of a record does not start with +");
+        }
+        int qualityStart = plusEnd + 1;
+        int qualityEnd = nextLine(qualityStart);
+
+        int sequenceLength = contentEnd(sequenceStart, sequenceEnd) - sequenceStart;
+        int qualityLength = contentEnd(qualityStart, qualityEnd) - qualityStart;
+        if (sequenceLength != qualityLength) {
+            throw invalid(String.format("%d bases and %d qualities", sequenceLength, qualityLength));
+        }
+        int headerLength = contentEnd(headerStart, headerEnd) - headerStart - 1;
+        int plusLength = contentEnd(plusStart, plusEnd) - plusStart - 1;
+        record.set(buffer, mark + headerStart + 1, headerLength, buffer, mark + sequenceStart, sequenceLength, buffer,
+                mark + plusStart + 1, plusLength, buffer, mark + qualityStart, qualityLength);
+        record.setOrdinal(recordCount++);
+        position = Math.min(mark + qualityEnd + 1, limit);
+        return true;
+    }
+
+    private int nextLine(int start) throws IOException {
+        int end = findLineEnd(start);
+        if (end == -1) {
+            throw invalid("the last record is truncated");
+        }
+        lineNumber++;
+        return end;
+    }
+
+    /**
+     * @return where the line starting at start ends (its \n, or the end of the input for a last line without one), -1
+     *         when the input ended before it
+     */
+    private int findLineEnd(int start) throws IOException {
+        int searched = start;
+        while (true) {
+            for (int i = mark + searched; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    return i - mark;
+                }
+            }
+            searched = Math.max(searched, limit - mark);
+            if (eof) {
+                return start < limit - mark ? limit - mark : -1;
+            }
+            fill();
+        }
+    }
+
+    private int contentEnd(int start, int end) {
+        return end > start && buffer[mark + end - 1] == '\r' ? end - 1 : end;
+    }
+
+    private void fill() throws IOException {
+        if (mark > 0) {
+            System.arraycopy(buffer, mark, buffer, 0, limit - mark);
+            limit -= mark;
+            position -= mark;
+            mark = 0;
+        }
+        if (limit == buffer.length) {
+            // a record longer than the buffer
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read == -1) {
+            eof = true;
+        } else {
+            limit += read;
+            bytesRead += read;
+        }
+    }
+
+    private IOException invalid(String message) {
+        return new IOException(String.format("%s line %d: not FASTQ, %s", name, lineNumber, message));
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
@@ -0,0 +1,178 @@
+package edu.unc.mapseq.module.sequencing.fastq;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads FASTQ records ahead on a thread of its own: a FastqParser fills batches of reusable records a few batches
+ * ahead of the reader, who either takes them a record at a time with next() or a batch at a time with nextBatch() and
+ * release(). Gzip and BGZF inputs are inflated on yet another thread (see CompressedFiles).
+ *
+ * @author jdr0887
+ */
+public class FastqReader implements Closeable {
+
+    public static final int BATCH_SIZE = 4096;
+
+    // filled batches waiting for the reader
+    private static final int QUEUE_SIZE = 4;
+
+    private static final FastqBatch END = new FastqBatch(0);
+
+    private final FastqParser parser;
+
+    private final BlockingQueue<FastqBatch> filled = new ArrayBlockingQueue<FastqBatch>(QUEUE_SIZE);
+
+    // released batches, more are made when the reader holds on to them
+    private final Queue<FastqBatch> free = new ConcurrentLinkedQueue<FastqBatch>();
+
+    private final Thread thread;
+
+    private volatile Throwable error;
+
+    private volatile boolean closed = false;
+
+    private boolean eof = false;
+
+    private FastqBatch current;
+
+    private int index = 0;
+
+    public FastqReader(File file) throws IOException {
+        this(new FastqParser(file), BATCH_SIZE);
+    }
+
+    public FastqReader(InputStream in, String name) {
+        this(new FastqParser(in, name), BATCH_SIZE);
+    }
+
+    public FastqReader(final FastqParser parser, final int batchSize) {
+        super();
+        this.parser = parser;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        FastqBatch batch = free.poll();
+                        if (batch == null) {
+                            batch = new FastqBatch(batchSize);
+                        }
+                        batch.clear();
+                        while (!batch.isFull() && parser.next(batch.peekFree())) {
+                            batch.add();
+                        }
+                        if (batch.size() > 0) {
+                            put(batch);
+                        }
+                        if (!batch.isFull()) {
+                            put(END);
+                            return;
+                        }
+                    }
+                } catch (Throwable e) {
+                    error = e;
+                }
+            }
+        }, "fastq reader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the next record, only good until the next call, or null at the end
+     */
+    public FastqRecord next() throws IOException {
+        while (current == null || index == current.size()) {
+            if (current != null) {
+                release(current);
+                current = null;
+            }
+            FastqBatch batch = nextBatch();
+            if (batch == null) {
+                return null;
+            }
+            current = batch;
+            index = 0;
+        }
+        return current.get(index++);
+    }
+
+    /**
+     * @return the next batch, to be handed back with release() when done with, or null at the end
+     */
+    public FastqBatch nextBatch() throws IOException {
+        if (eof) {
+            return null;
+        }
+        FastqBatch batch = take();
+        if (batch == END) {
+            eof = true;
+            return null;
+        }
+        return batch;
+    }
+
+    public void release(FastqBatch batch) {
+        free.offer(batch);
+    }
+
+    /**
+     * Records read so far, all of them once next() or nextBatch() returned null.
+     */
+    public long getRecordCount() {
+        return parser.getRecordCount();
+    }
+
+    public long getBytesRead() {
+        return parser.getBytesRead();
+    }
+
+    private void put(FastqBatch batch) throws IOException {
+        try {
+            while (!filled.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    throw new IOException("the reader is closed");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private FastqBatch take() throws IOException {
+        try {
+            FastqBatch batch;
+            while ((batch = filled.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                Throwable e = error;
+                if (e instanceof IOException) {
+                    throw new IOException(e.getMessage(), e);
+                }
+                if (e != null) {
+                    throw new IOException(e);
+                }
+            }
+            return batch;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        thread.interrupt();
+        parser.close();
+    }
+
+}
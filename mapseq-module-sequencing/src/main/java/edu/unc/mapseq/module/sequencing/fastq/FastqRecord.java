@@ -0,0 +1,179 @@
+package edu.unc.mapseq.module.sequencing.fastq;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One FASTQ record as slices of a byte array the record owns and reuses: the header (after the @), the sequence, the
+ * optional line (after the +) and the qualities, without their newlines. Records are filled in place by a FastqParser,
+ * so reading costs no objects per read unless a slice is asked for as a String.
+ *
+ * @author jdr0887
+ */
+public class FastqRecord {
+
+    private byte[] data;
+
+    private int headerLength;
+
+    private int sequenceStart;
+
+    private int sequenceLength;
+
+    private int plusStart;
+
+    private int plusLength;
+
+    private int qualityStart;
+
+    private int qualityLength;
+
+    // 0 based position in the file it was read from
+    private long ordinal;
+
+    public FastqRecord() {
+        this(512);
+    }
+
+    public FastqRecord(int capacity) {
+        super();
+        this.data = new byte[capacity];
+    }
+
+    /**
+     * Lays out the four lines, taking them from the given arrays.
+     */
+    public void set(byte[] header, int headerOffset, int headerLength, byte[] sequence, int sequenceOffset,
+            int sequenceLength, byte[] plus, int plusOffset, int plusLength, byte[] quality, int qualityOffset,
+            int qualityLength) {
+        int size = headerLength + sequenceLength + plusLength + qualityLength;
+        if (size > data.length) {
+            data = new byte[Math.max(size, data.length * 2)];
+        }
+        this.headerLength = headerLength;
+        System.arraycopy(header, headerOffset, data, 0, headerLength);
+        this.sequenceStart = headerLength;
+        this.sequenceLength = sequenceLength;
+        System.arraycopy(sequence, sequenceOffset, data, sequenceStart, sequenceLength);
+        this.plusStart = sequenceStart + sequenceLength;
+        this.plusLength = plusLength;
+        System.arraycopy(plus, plusOffset, data, plusStart, plusLength);
+        this.qualityStart = plusStart + plusLength;
+        this.qualityLength = qualityLength;
+        System.arraycopy(quality, qualityOffset, data, qualityStart, qualityLength);
+    }
+
+    public void copyFrom(FastqRecord other) {
+        set(other.data, 0, other.headerLength, other.data, other.sequenceStart, other.sequenceLength, other.data,
+                other.plusStart, other.plusLength, other.data, other.qualityStart, other.qualityLength);
+        this.ordinal = other.ordinal;
+    }
+
+    /**
+     * A copy that owns an array of just its size, for records kept around.
+     */
+    public FastqRecord copy() {
+        FastqRecord ret = new FastqRecord(qualityStart + qualityLength);
+        ret.copyFrom(this);
+        return ret;
+    }
+
+    /**
+     * Cuts the read (sequence and qualities) down to its first length bases.
+     */
+    public void truncate(int length) {
+        sequenceLength = Math.min(sequenceLength, Math.max(0, length));
+        qualityLength = Math.min(qualityLength, Math.max(0, length));
+    }
+
+    /**
+     * The array the slices are in, only good until the record is filled again.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    public int getSequenceStart() {
+        return sequenceStart;
+    }
+
+    public int getSequenceLength() {
+        return sequenceLength;
+    }
+
+    public int getPlusStart() {
+        return plusStart;
+    }
+
+    public int getPlusLength() {
+        return plusLength;
+    }
+
+    public int getQualityStart() {
+        return qualityStart;
+    }
+
+    public int getQualityLength() {
+        return qualityLength;
+    }
+
+    public byte getBase(int i) {
+        return data[sequenceStart + i];
+    }
+
+    public byte getQuality(int i) {
+        return data[qualityStart + i];
+    }
+
+    public long getOrdinal() {
+        return ordinal;
+    }
+
+    public void setOrdinal(long ordinal) {
+        this.ordinal = ordinal;
+    }
+
+    /**
+     * The header line without its @
+     */
+    public String getHeader() {
+        return new String(data, 0, headerLength, StandardCharsets.ISO_8859_1);
+    }
+
+    public String getSequence() {
+        return new String(data, sequenceStart, sequenceLength, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * The optional line without its +, usually empty
+     */
+    public String getPlus() {
+        return new String(data, plusStart, plusLength, StandardCharsets.ISO_8859_1);
+    }
+
+    public String getQualities() {
+        return new String(data, qualityStart, qualityLength, StandardCharsets.ISO_8859_1);
+    }
+
+    public boolean sequenceEquals(byte[] sequence) {
+        if (sequence.length != sequenceLength) {
+            return false;
+        }
+        for (int i = 0; i < sequenceLength; i++) {
+            if (data[sequenceStart + i] != sequence[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FastqRecord [header=%s, sequence=%s, plus=%s, qualities=%s, ordinal=%s]", getHeader(),
+                getSequence(), getPlus(), getQualities(), ordinal);
+    }
+
+}
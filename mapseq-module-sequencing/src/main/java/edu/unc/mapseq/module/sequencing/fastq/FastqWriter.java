@@ -0,0 +1,114 @@
+package edu.unc.mapseq.module.sequencing.fastq;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import edu.unc.mapseq.module.core.io.CompressedFiles;
+
+/**
+ * Writes FastqRecords as four lines (@header, sequence, +optional, qualities) through one reusable byte buffer.
+ *
+ * @author jdr0887
+ */
+public class FastqWriter implements Closeable, Flushable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final OutputStream out;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int length = 0;
+
+    private long recordCount = 0L;
+
+    private long bytesWritten = 0L;
+
+    public FastqWriter(OutputStream out) {
+        super();
+        this.out = out;
+    }
+
+    /**
+     * Compressed when the name ends in .gz
+     */
+    public FastqWriter(File file) throws IOException {
+        this(CompressedFiles.newOutputStream(file));
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten + length;
+    }
+
+    public void write(FastqRecord record) throws IOException {
+        byte[] data = record.getData();
+        append((byte) '@');
+        append(data, 0, record.getHeaderLength());
+        append((byte) '\n');
+        append(data, record.getSequenceStart(), record.getSequenceLength());
+        append((byte) '\n');
+        append((byte) '+');
+        append(data, record.getPlusStart(), record.getPlusLength());
+        append((byte) '\n');
+        append(data, record.getQualityStart(), record.getQualityLength());
+        append((byte) '\n');
+        recordCount++;
+    }
+
+    public void write(FastqBatch batch) throws IOException {
+        for (int i = 0; i < batch.size(); i++) {
+            write(batch.get(i));
+        }
+    }
+
+    private void append(byte b) throws IOException {
+        if (length == buffer.length) {
+            flushBuffer();
+        }
+        buffer[length++] = b;
+    }
+
+    private void append(byte[] b, int offset, int n) throws IOException {
+        if (length + n > buffer.length) {
+            flushBuffer();
+            if (n > buffer.length) {
+                out.write(b, offset, n);
+                bytesWritten += n;
+                return;
+            }
+        }
+        System.arraycopy(b, offset, buffer, length, n);
+        length += n;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (length > 0) {
+            out.write(buffer, 0, length);
+            bytesWritten += length;
+            length = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+}
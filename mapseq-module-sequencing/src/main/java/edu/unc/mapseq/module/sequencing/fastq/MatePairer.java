@@ -0,0 +1,422 @@
+package edu.unc.mapseq.module.sequencing.fastq;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pairs the reads of two FASTQ files that are not in step, some reads having been dropped from one file or the files
+ * being in different orders. Reads in step are paired as they come; a read whose mate has not come yet waits in a
+ * window (one for R1 reads, one for R2 reads, keyed by the hash of the read name, see ReadName) until its mate turns
+ * up on the other side. A window holding more than windowSize reads is sorted by name hash and spilled to a run file
+ * in tmpDirectory; at the end the windows are spilled too and the R1 and R2 runs are merged and joined on the read
+ * name, so memory stays bounded however far apart the mates are.
+ *
+ * Pairs go to the R1 and R2 writers in the same order. Reads left without a mate go to the unpaired writer, in file
+ * order when nothing was spilled and in name hash order otherwise.
+ *
+ * @author jdr0887
+ */
+public class MatePairer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatePairer.class);
+
+    private static final Comparator<FastqRecord> FILE_ORDER = new Comparator<FastqRecord>() {
+        @Override
+        public int compare(FastqRecord r1, FastqRecord r2) {
+            return Long.compare(r1.getOrdinal(), r2.getOrdinal());
+        }
+    };
+
+    private final FastqWriter r1Writer;
+
+    private final FastqWriter r2Writer;
+
+    private final FastqWriter unpairedWriter;
+
+    private int windowSize = 250000;
+
+    private File tmpDirectory = new File(System.getProperty("java.io.tmpdir"));
+
+    private long pairs = 0L;
+
+    private long unpaired = 0L;
+
+    private long spilled = 0L;
+
+    public MatePairer(FastqWriter r1Writer, FastqWriter r2Writer, FastqWriter unpairedWriter) {
+        super();
+        this.r1Writer = r1Writer;
+        this.r2Writer = r2Writer;
+        this.unpairedWriter = unpairedWriter;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @param windowSize
+     *            reads waiting for their mates on each side before they are spilled
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = Math.max(1, windowSize);
+    }
+
+    public File getTmpDirectory() {
+        return tmpDirectory;
+    }
+
+    public void setTmpDirectory(File tmpDirectory) {
+        this.tmpDirectory = tmpDirectory;
+    }
+
+    /**
+     * @return pairs written, one read to each of the R1 and R2 writers
+     */
+    public long getPairs() {
+        return pairs;
+    }
+
+    /**
+     * @return reads written to the unpaired writer
+     */
+    public long getUnpaired() {
+        return unpaired;
+    }
+
+    /**
+     * @return reads that went through a run file
+     */
+    public long getSpilled() {
+        return spilled;
+    }
+
+    public void pair(FastqReader r1Reader, FastqReader r2Reader) throws IOException {
+        Window r1Window = new Window();
+        Window r2Window = new Window();
+        List<File> r1Runs = new ArrayList<File>();
+        List<File> r2Runs = new ArrayList<File>();
+        try {
+            FastqRecord r1 = r1Reader.next();
+            FastqRecord r2 = r2Reader.next();
+            while (r1 != null || r2 != null) {
+                if (r1 != null && r2 != null && ReadName.sameRead(r1, r2)) {
+                    writePair(r1, r2);
+                } else {
+                    if (r1 != null) {
+                        FastqRecord mate = match(r1, r2Window, r1Window, r1Runs, "r1");
+                        if (mate != null) {
+                            writePair(r1, mate);
+                        }
+                    }
+                    if (r2 != null) {
+                        FastqRecord mate = match(r2, r1Window, r2Window, r2Runs, "r2");
+                        if (mate != null) {
+                            writePair(mate, r2);
+                        }
+                    }
+                }
+                r1 = r1 != null ? r1Reader.next() : null;
+                r2 = r2 != null ? r2Reader.next() : null;
+            }
+            if (r1Runs.isEmpty() && r2Runs.isEmpty()) {
+                writeUnpaired(r1Window.drain());
+                writeUnpaired(r2Window.drain());
+                return;
+            }
+            if (r1Window.size() > 0) {
+                r1Runs.add(spill(r1Window, "r1"));
+            }
+            if (r2Window.size() > 0) {
+                r2Runs.add(spill(r2Window, "r2"));
+            }
+            logger.debug("joining {} R1 and {} R2 runs", r1Runs.size(), r2Runs.size());
+            join(r1Runs, r2Runs);
+        } finally {
+            for (File run : r1Runs) {
+                run.delete();
+            }
+            for (File run : r2Runs) {
+                run.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the mate of record waiting in the other window, or null after record was set to wait in its own
+     */
+    private FastqRecord match(FastqRecord record, Window other, Window own, List<File> ownRuns, String side)
+            throws IOException {
+        if (ReadName.isEmpty(record)) {
+            // nothing to pair it by
+            unpairedWriter.write(record);
+            unpaired++;
+            return null;
+        }
+        long hash = ReadName.hash(record);
+        FastqRecord mate = other.take(record, hash);
+        if (mate == null) {
+            own.add(record.copy(), hash);
+            if (own.size() > windowSize) {
+                ownRuns.add(spill(own, side));
+            }
+        }
+        return mate;
+    }
+
+    private void writePair(FastqRecord r1, FastqRecord r2) throws IOException {
+        r1Writer.write(r1);
+        r2Writer.write(r2);
+        pairs++;
+    }
+
+    private void writeUnpaired(List<FastqRecord> records) throws IOException {
+        for (FastqRecord record : records) {
+            unpairedWriter.write(record);
+        }
+        unpaired += records.size();
+    }
+
+    private File spill(Window window, String prefix) throws IOException {
+        final List<FastqRecord> records = window.drain();
+        final long[] hashes = new long[records.size()];
+        Integer[] order = new Integer[records.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = ReadName.hash(records.get(i));
+            order[i] = i;
+        }
+        // stable, so reads of the same name stay in file order
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i, Integer j) {
+                return ReadName.compare(records.get(i), hashes[i], records.get(j), hashes[j]);
+            }
+        });
+        File run = File.createTempFile("mates." + prefix + ".", ".fastq", tmpDirectory);
+        try (FastqWriter writer = new FastqWriter(run)) {
+            for (Integer i : order) {
+                writer.write(records.get(i));
+            }
+        }
+        spilled += records.size();
+        logger.debug("spilled {} reads to {}", records.size(), run.getAbsolutePath());
+        return run;
+    }
+
+    /**
+     * Merge join of the R1 and R2 runs, both in name order.
+     */
+    private void join(List<File> r1Files, List<File> r2Files) throws IOException {
+        try (Runs r1Runs = new Runs(r1Files); Runs r2Runs = new Runs(r2Files)) {
+            while (r1Runs.peek() != null || r2Runs.peek() != null) {
+                int c;
+                if (r1Runs.peek() == null) {
+                    c = 1;
+                } else if (r2Runs.peek() == null) {
+                    c = -1;
+                } else {
+                    c = ReadName.compare(r1Runs.peek(), r1Runs.peekHash(), r2Runs.peek(), r2Runs.peekHash());
+                }
+                if (c == 0) {
+                    writePair(r1Runs.peek(), r2Runs.peek());
+                    r1Runs.advance();
+                    r2Runs.advance();
+                } else if (c < 0) {
+                    unpairedWriter.write(r1Runs.peek());
+                    unpaired++;
+                    r1Runs.advance();
+                } else {
+                    unpairedWriter.write(r2Runs.peek());
+                    unpaired++;
+                    r2Runs.advance();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads waiting for their mates. A hash is mapped to its read or, when two reads share it (the same name twice,
+     * or a collision), to a queue of them.
+     */
+    static class Window {
+
+        private final Map<Long, Object> reads = new HashMap<Long, Object>();
+
+        private int size = 0;
+
+        public int size() {
+            return size;
+        }
+
+        public void add(FastqRecord record, long hash) {
+            Long key = hash;
+            Object value = reads.get(key);
+            if (value == null) {
+                reads.put(key, record);
+            } else if (value instanceof FastqRecord) {
+                ArrayDeque<FastqRecord> queue = new ArrayDeque<FastqRecord>();
+                queue.add((FastqRecord) value);
+                queue.add(record);
+                reads.put(key, queue);
+            } else {
+                @SuppressWarnings("unchecked")
+                ArrayDeque<FastqRecord> queue = (ArrayDeque<FastqRecord>) value;
+                queue.add(record);
+            }
+            size++;
+        }
+
+        /**
+         * @return the first read waiting with the same name as mate, removed, or null
+         */
+        public FastqRecord take(FastqRecord mate, long hash) {
+            Long key = hash;
+            Object value = reads.get(key);
+            if (value == null) {
+                return null;
+            }
+            if (value instanceof FastqRecord) {
+                if (!ReadName.sameRead((FastqRecord) value, mate)) {
+                    return null;
+                }
+                reads.remove(key);
+                size--;
+                return (FastqRecord) value;
+            }
+            @SuppressWarnings("unchecked")
+            ArrayDeque<FastqRecord> queue = (ArrayDeque<FastqRecord>) value;
+            Iterator<FastqRecord> iter = queue.iterator();
+            while (iter.hasNext()) {
+                FastqRecord record = iter.next();
+                if (ReadName.sameRead(record, mate)) {
+                    iter.remove();
+                    if (queue.isEmpty()) {
+                        reads.remove(key);
+                    }
+                    size--;
+                    return record;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return every waiting read in file order, the window is left empty
+         */
+        @SuppressWarnings("unchecked")
+        public List<FastqRecord> drain() {
+            List<FastqRecord> ret = new ArrayList<FastqRecord>(size);
+            for (Object value : reads.values()) {
+                if (value instanceof FastqRecord) {
+                    ret.add((FastqRecord) value);
+                } else {
+                    ret.addAll((ArrayDeque<FastqRecord>) value);
+                }
+            }
+            Collections.sort(ret, FILE_ORDER);
+            reads.clear();
+            size = 0;
+            return ret;
+        }
+
+    }
+
+    /**
+     * The k-way merge of sorted run files, read a record at a time on the calling thread.
+     */
+    static class Runs implements Closeable {
+
+        private final PriorityQueue<Run> heads;
+
+        private final List<Run> runs = new ArrayList<Run>();
+
+        public Runs(List<File> files) throws IOException {
+            super();
+            this.heads = new PriorityQueue<Run>(Math.max(1, files.size()), new Comparator<Run>() {
+                @Override
+                public int compare(Run run1, Run run2) {
+                    int c = ReadName.compare(run1.record, run1.hash, run2.record, run2.hash);
+                    // earlier runs first, so reads of the same name keep their order
+                    return c != 0 ? c : Integer.compare(run1.index, run2.index);
+                }
+            });
+            try {
+                for (File file : files) {
+                    Run run = new Run(new FastqParser(file), runs.size());
+                    runs.add(run);
+                    if (run.next()) {
+                        heads.add(run);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        public FastqRecord peek() {
+            Run head = heads.peek();
+            return head != null ? head.record : null;
+        }
+
+        public long peekHash() {
+            return heads.peek().hash;
+        }
+
+        public void advance() throws IOException {
+            Run head = heads.poll();
+            if (head.next()) {
+                heads.add(head);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Run run : runs) {
+                run.parser.close();
+            }
+        }
+
+    }
+
+    static class Run {
+
+        private final FastqParser parser;
+
+        private final int index;
+
+        private final FastqRecord record = new FastqRecord();
+
+        private long hash;
+
+        public Run(FastqParser parser, int index) {
+            super();
+            this.parser = parser;
+            this.index = index;
+        }
+
+        boolean next() throws IOException {
+            if (!parser.next(record)) {
+                return false;
+            }
+            hash = ReadName.hash(record);
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+package edu.unc.mapseq.module.sequencing.fastq;
+
+/**
+ * The part of a read's header its mate's header shares, found in place: everything before the first blank for Casava
+ * 1.8 names (@HWI-ST:8:FC:1:1101:1234:5678 1:N:0:ACGT) or before the # for older ones (@HWI-ST:8:FC:1:1101:1234:5678#0/1).
+ * Older names without a # keep their /1 or /2, so their mates do not match, as has always been the case. An @ inside
+ * the name does not count.
+ *
+ * @author jdr0887
+ */
+public class ReadName {
+
+    private ReadName() {
+        super();
+    }
+
+    /**
+     * @return the length of the name at the start of the record's header
+     */
+    public static int coreLength(FastqRecord record) {
+        byte[] data = record.getData();
+        int length = record.getHeaderLength();
+        for (int i = 0; i < length; i++) {
+            if (data[i] == ' ' || data[i] == '#') {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return true when both records have the same, non empty, name
+     */
+    public static boolean sameRead(FastqRecord r1, FastqRecord r2) {
+        byte[] data1 = r1.getData();
+        byte[] data2 = r2.getData();
+        int end1 = coreLength(r1);
+        int end2 = coreLength(r2);
+        int i = 0;
+        int j = 0;
+        boolean empty = true;
+        while (true) {
+            while (i < end1 && data1[i] == '@') {
+                i++;
+            }
+            while (j < end2 && data2[j] == '@') {
+                j++;
+            }
+            if (i == end1 || j == end2) {
+                return i == end1 && j == end2 && !empty;
+            }
+            if (data1[i++] != data2[j++]) {
+                return false;
+            }
+            empty = false;
+        }
+    }
+
+    /**
+     * @return true when the name is empty, such a read has no mate
+     */
+    public static boolean isEmpty(FastqRecord record) {
+        byte[] data = record.getData();
+        int end = coreLength(record);
+        for (int i = 0; i < end; i++) {
+            if (data[i] != '@') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A 64 bit hash of the name, the same for both mates: FNV-1a over its bytes, mixed as MurmurHash3 finishes.
+     */
+    public static long hash(FastqRecord record) {
+        byte[] data = record.getData();
+        int end = coreLength(record);
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < end; i++) {
+            if (data[i] != '@') {
+                h ^= data[i] & 0xff;
+                h *= 0x100000001b3L;
+            }
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Orders reads by the hash of their names, then by the names themselves, so mates sort to the same place.
+     */
+    public static int compare(FastqRecord r1, long hash1, FastqRecord r2, long hash2) {
+        if (hash1 != hash2) {
+            return Long.compare(hash1, hash2);
+        }
+        byte[] data1 = r1.getData();
+        byte[] data2 = r2.getData();
+        int end1 = coreLength(r1);
+        int end2 = coreLength(r2);
+        int i = 0;
+        int j = 0;
+        while (true) {
+            while (i < end1 && data1[i] == '@') {
+                i++;
+            }
+            while (j < end2 && data2[j] == '@') {
+                j++;
+            }
+            if (i == end1 || j == end2) {
+                return Boolean.compare(i < end1, j < end2);
+            }
+            int c = (data1[i++] & 0xff) - (data2[j++] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+    }
+
+}
@@ -1,24 +1,29 @@
 package edu.unc.mapseq.module.sequencing.filter;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 import javax.validation.constraints.NotNull;
 
-import org.renci.common.exec.BashExecutor;
-import org.renci.common.exec.CommandInput;
-import org.renci.common.exec.CommandOutput;
-import org.renci.common.exec.Executor;
-import org.renci.common.exec.ExecutorException;
-
+import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.Module;
 import edu.unc.mapseq.module.ModuleException;
 import edu.unc.mapseq.module.ModuleOutput;
-import edu.unc.mapseq.module.ShellModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
+import edu.unc.mapseq.module.core.io.LineTransformer;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
 
-@Application(name = "PruneISOFormsFromGeneQuantFile", executable = "/bin/mv %1$s %2$s; sed /^uc0/d %2$s > %1$s")
+/**
+ * Moves geneResults to origGeneResults and writes it back without the uc0 isoform lines (what mv and sed /^uc0/d did),
+ * blocks of lines on all cores.
+ * 
+ * @author jdr0887
+ */
+@Application(name = "PruneISOFormsFromGeneQuantFile")
 public class PruneISOFormsFromGeneQuantFile extends Module {
 
     @NotNull(message = "geneResults is required", groups = InputValidations.class)
@@ -29,19 +34,29 @@ public class PruneISOFormsFromGeneQuantFile extends Module {
     @InputArgument
     private File origGeneResults;
 
+    @InputArgument(description = "threads transforming blocks of lines, all cores when not set")
+    private Integer threads;
+
     @Override
     public ModuleOutput call() throws Exception {
-        CommandInput commandInput = new CommandInput();
-        commandInput.setCommand(String.format(getModuleClass().getAnnotation(Application.class).executable(),
-                geneResults.getAbsolutePath(), origGeneResults.getAbsolutePath()));
-        CommandOutput commandOutput;
+        DefaultModuleOutput moduleOutput = new DefaultModuleOutput();
+        LineTransformer transformer = new LineTransformer().deleteStartingWith("uc0");
+        if (threads != null) {
+            transformer.setThreads(threads);
+        }
         try {
-            Executor executor = BashExecutor.getInstance();
-            commandOutput = executor.execute(commandInput);
-        } catch (ExecutorException e) {
+            Files.move(geneResults.toPath(), origGeneResults.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            transformer.transform(origGeneResults, geneResults);
+        } catch (IOException e) {
             throw new ModuleException(e);
         }
-        return new ShellModuleOutput(commandOutput);
+        ModuleMetrics metrics = ModuleMetrics.get(this);
+        metrics.counter(ModuleMetrics.RECORDS_IN).addAndGet(transformer.getLinesIn());
+        metrics.counter(ModuleMetrics.RECORDS_OUT).addAndGet(transformer.getLinesOut());
+        metrics.counter(ModuleMetrics.BYTES_READ).addAndGet(origGeneResults.length());
+        metrics.counter(ModuleMetrics.BYTES_WRITTEN).addAndGet(geneResults.length());
+        moduleOutput.setExitCode(0);
+        return moduleOutput;
     }
 
     @Override
@@ -65,10 +80,19 @@ public class PruneISOFormsFromGeneQuantFile extends Module {
         this.origGeneResults = origGeneResults;
     }
 
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
     @Override
     public String toString() {
-        return String.format("PruneISOFormsFromGeneQuantFile [geneResults=%s, origGeneResults=%s, toString()=%s]",
-                geneResults, origGeneResults, super.toString());
+        return String.format(
+                "PruneISOFormsFromGeneQuantFile [geneResults=%s, origGeneResults=%s, threads=%s, toString()=%s]",
+                geneResults, origGeneResults, threads, super.toString());
     }
 
 }
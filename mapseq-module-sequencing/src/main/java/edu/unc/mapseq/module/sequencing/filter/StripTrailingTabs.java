@@ -1,15 +1,9 @@
 package edu.unc.mapseq.module.sequencing.filter;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 
 import javax.validation.constraints.NotNull;
 
-import org.apache.commons.lang.StringUtils;
-
 import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.Module;
 import edu.unc.mapseq.module.ModuleOutput;
@@ -19,7 +13,14 @@ import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsNotEmpty;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
-
+import edu.unc.mapseq.module.core.io.LineTransformer;
+import edu.unc.mapseq.module.core.metrics.ModuleMetrics;
+
+/**
+ * Removes the last tab of every line of input, blocks of lines on all cores.
+ * 
+ * @author jdr0887
+ */
 @Application(name = "StripTrailingTabs")
 public class StripTrailingTabs extends Module {
 
@@ -34,6 +35,9 @@ public class StripTrailingTabs extends Module {
     @InputArgument
     private File output;
 
+    @InputArgument(description = "threads transforming blocks of lines, all cores when not set")
+    private Integer threads;
+
     @Override
     public Class<?> getModuleClass() {
         return StripTrailingTabs.class;
@@ -44,16 +48,19 @@ public class StripTrailingTabs extends Module {
         DefaultModuleOutput moduleOutput = new DefaultModuleOutput();
         int exitCode = 0;
         try {
-            BufferedReader br = new BufferedReader(new FileReader(input));
-            BufferedWriter bw = new BufferedWriter(new FileWriter(output));
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = StringUtils.removeEnd(line, "\t");
-                bw.write(String.format("%s%n", line));
-                bw.flush();
+            // as readLine, removeEnd(line, "\t") and %n did: a \r\n ending becomes \n, only the last tab before it
+            // goes and the last line always gets its \n
+            LineTransformer transformer = new LineTransformer().stripTrailing('\r', false).stripTrailing('\t', false);
+            transformer.setTerminateLastLine(true);
+            if (threads != null) {
+                transformer.setThreads(threads);
             }
-            bw.close();
-            br.close();
+            transformer.transform(input, output);
+            ModuleMetrics metrics = ModuleMetrics.get(this);
+            metrics.counter(ModuleMetrics.RECORDS_IN).addAndGet(transformer.getLinesIn());
+            metrics.counter(ModuleMetrics.RECORDS_OUT).addAndGet(transformer.getLinesOut());
+            metrics.counter(ModuleMetrics.BYTES_READ).addAndGet(input.length());
+            metrics.counter(ModuleMetrics.BYTES_WRITTEN).addAndGet(output.length());
         } catch (Exception e) {
             e.printStackTrace();
             moduleOutput.setError(new StringBuilder(e.getMessage()));
@@ -80,9 +87,18 @@ public class StripTrailingTabs extends Module {
         this.output = output;
     }
 
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
     @Override
     public String toString() {
-        return String.format("StripTrailingTabs [input=%s, output=%s, toString()=%s]", input, output, super.toString());
+        return String.format("StripTrailingTabs [input=%s, output=%s, threads=%s, toString()=%s]", input, output,
+                threads, super.toString());
     }
 
     public static void main(String[] args) {
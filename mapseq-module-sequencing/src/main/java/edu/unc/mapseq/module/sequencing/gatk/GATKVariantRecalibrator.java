@@ -7,11 +7,7 @@ import java.util.List;
 import javax.validation.constraints.NotNull;
 
 import org.apache.commons.lang.StringUtils;
-import org.renci.common.exec.BashExecutor;
 import org.renci.common.exec.CommandInput;
-import org.renci.common.exec.CommandOutput;
-import org.renci.common.exec.Executor;
-import org.renci.common.exec.ExecutorException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,13 +16,14 @@ import edu.unc.mapseq.dao.model.MimeType;
 import edu.unc.mapseq.module.Module;
 import edu.unc.mapseq.module.ModuleException;
 import edu.unc.mapseq.module.ModuleOutput;
-import edu.unc.mapseq.module.ShellModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputArgument;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.core.exec.CapturedModuleOutput;
+import edu.unc.mapseq.module.core.exec.LogCapturingExecutor;
 
 @Application(name = "GATKVariantRecalibrator", executable = "$JAVA7_HOME/bin/java -Xmx4g -Djava.io.tmpdir=$MAPSEQ_CLIENT_HOME/tmp -jar $%s_GATK_HOME/GenomeAnalysisTK.jar --analysis_type VariantRecalibrator")
 public class GATKVariantRecalibrator extends Module {
@@ -163,13 +160,8 @@ public class GATKVariantRecalibrator extends Module {
         commandInput.setCommand(command.toString());
         logger.info("command.toString(): {}", command.toString());
         System.out.println(command.toString());
-        CommandOutput commandOutput;
-        try {
-            Executor executor = BashExecutor.getInstance();
-            commandOutput = executor.execute(commandInput);
-        } catch (ExecutorException e) {
-            throw new ModuleException(e);
-        }
+        CapturedModuleOutput moduleOutput = LogCapturingExecutor.getInstance().execute(this, commandInput, null,
+                recalFile);
 
         FileData fileData = new FileData();
         fileData.setName(recalFile.getName());
@@ -190,7 +182,7 @@ public class GATKVariantRecalibrator extends Module {
 
         }
 
-        return new ShellModuleOutput(commandOutput);
+        return moduleOutput;
     }
 
     public String getPhoneHome() {
@@ -6,24 +6,21 @@ import java.util.List;
 import javax.validation.constraints.NotNull;
 
 import org.apache.commons.lang.StringUtils;
-import org.renci.common.exec.BashExecutor;
 import org.renci.common.exec.CommandInput;
-import org.renci.common.exec.CommandOutput;
-import org.renci.common.exec.Executor;
-import org.renci.common.exec.ExecutorException;
 
 import edu.unc.mapseq.dao.model.FileData;
 import edu.unc.mapseq.dao.model.MimeType;
 import edu.unc.mapseq.module.Module;
 import edu.unc.mapseq.module.ModuleException;
 import edu.unc.mapseq.module.ModuleOutput;
-import edu.unc.mapseq.module.ShellModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsNotEmpty;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.core.exec.CapturedModuleOutput;
+import edu.unc.mapseq.module.core.exec.LogCapturingExecutor;
 
 /**
  * 
@@ -112,31 +109,26 @@ public class GATKIndelRealigner extends Module {
         }
 
         commandInput.setCommand(command.toString());
-        CommandOutput commandOutput;
-        try {
-            Executor executor = BashExecutor.getInstance();
-            commandOutput = executor.execute(commandInput);
-            if (!commandOutput.getStdout().toString().contains("Total runtime")) {
-                // commandOutput.setDescription("The stdout file seems not have a line for the \"Total runtime\"");
-                commandOutput.setExitCode(-1);
-            }
-            if (!commandOutput.getStdout().toString().contains("reads were filtered out")) {
-                // commandOutput.setDescription("The stdout file seems not have a line for the number of \"reads were
-                // filtered out\"");
-                commandOutput.setExitCode(-1);
-            }
-        } catch (ExecutorException e) {
-            throw new ModuleException(e);
+        CapturedModuleOutput moduleOutput = LogCapturingExecutor.getInstance().execute(this, commandInput, null, out);
+        // both summary lines are printed at the very end, so they are in the tail window
+        if (!moduleOutput.getStdoutCapture().contains("Total runtime")) {
+            // commandOutput.setDescription("The stdout file seems not have a line for the \"Total runtime\"");
+            moduleOutput.setExitCode(-1);
+        }
+        if (!moduleOutput.getStdoutCapture().contains("reads were filtered out")) {
+            // commandOutput.setDescription("The stdout file seems not have a line for the number of \"reads were
+            // filtered out\"");
+            moduleOutput.setExitCode(-1);
         }
 
-        if (commandOutput != null && commandOutput.getExitCode() == 0) {
+        if (moduleOutput.getExitCode() == 0) {
             FileData fileData = new FileData();
             fileData.setName(out.getName());
             fileData.setMimeType(MimeType.APPLICATION_BAM);
             getFileDatas().add(fileData);
         }
 
-        return new ShellModuleOutput(commandOutput);
+        return moduleOutput;
     }
 
     public String getPhoneHome() {
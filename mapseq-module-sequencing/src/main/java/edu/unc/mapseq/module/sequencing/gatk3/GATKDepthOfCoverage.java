@@ -5,22 +5,19 @@ import java.io.File;
 import javax.validation.constraints.NotNull;
 
 import org.apache.commons.lang.StringUtils;
-import org.renci.common.exec.BashExecutor;
 import org.renci.common.exec.CommandInput;
-import org.renci.common.exec.CommandOutput;
-import org.renci.common.exec.Executor;
-import org.renci.common.exec.ExecutorException;
 
 import edu.unc.mapseq.dao.model.FileData;
 import edu.unc.mapseq.dao.model.MimeType;
 import edu.unc.mapseq.module.Module;
 import edu.unc.mapseq.module.ModuleException;
 import edu.unc.mapseq.module.ModuleOutput;
-import edu.unc.mapseq.module.ShellModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.core.exec.CapturedModuleOutput;
+import edu.unc.mapseq.module.core.exec.LogCapturingExecutor;
 
 @Application(name = "GATKDepthOfCoverage", executable = "$JAVA7_HOME/bin/java -Xmx4g -Djava.io.tmpdir=$MAPSEQ_CLIENT_HOME/tmp -jar $%s_GATK3_HOME/GenomeAnalysisTK.jar --analysis_type DepthOfCoverage")
 public class GATKDepthOfCoverage extends Module {
@@ -102,20 +99,15 @@ public class GATKDepthOfCoverage extends Module {
         }
 
         commandInput.setCommand(command.toString());
-        CommandOutput commandOutput;
-        try {
-            Executor executor = BashExecutor.getInstance();
-            commandOutput = executor.execute(commandInput);
-        } catch (ExecutorException e) {
-            throw new ModuleException(e);
-        }
+        CapturedModuleOutput moduleOutput = LogCapturingExecutor.getInstance().execute(this, commandInput, null,
+                new File(outputPrefix));
 
         FileData fileData = new FileData();
         fileData.setName(String.format("%s.sample_summary", outputPrefix));
         fileData.setMimeType(MimeType.TEXT_DEPTH_OF_COVERAGE_SUMMARY);
         getFileDatas().add(fileData);
 
-        return new ShellModuleOutput(commandOutput);
+        return moduleOutput;
     }
 
     public File getKey() {
@@ -4,11 +4,7 @@ import java.io.File;
 
 import javax.validation.constraints.NotNull;
 
-import org.renci.common.exec.BashExecutor;
 import org.renci.common.exec.CommandInput;
-import org.renci.common.exec.CommandOutput;
-import org.renci.common.exec.Executor;
-import org.renci.common.exec.ExecutorException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,12 +12,13 @@ import edu.unc.mapseq.dao.model.MimeType;
 import edu.unc.mapseq.module.Module;
 import edu.unc.mapseq.module.ModuleException;
 import edu.unc.mapseq.module.ModuleOutput;
-import edu.unc.mapseq.module.ShellModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputArgument;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.core.exec.CapturedModuleOutput;
+import edu.unc.mapseq.module.core.exec.LogCapturingExecutor;
 
 @Application(name = "MapSpliceMultiThread", executable = "$%s_MAPSPLICE_HOME/bin/mapsplice_multi_thread", wallTime = 5L)
 public class MapSpliceMultiThread extends Module {
@@ -256,15 +253,10 @@ public class MapSpliceMultiThread extends Module {
         CommandInput commandInput = new CommandInput();
         logger.info("command.toString(): {}", command.toString());
         commandInput.setCommand(command.toString());
-        CommandOutput commandOutput;
-        try {
-            Executor executor = BashExecutor.getInstance();
-            commandOutput = executor.execute(commandInput);
-        } catch (ExecutorException e) {
-            throw new ModuleException(e);
-        }
+        CapturedModuleOutput moduleOutput = LogCapturingExecutor.getInstance().execute(this, commandInput, null,
+                output);
 
-        return new ShellModuleOutput(commandOutput);
+        return moduleOutput;
     }
 
     public File getJunctionIndex() {
@@ -1,16 +1,8 @@
 package edu.unc.mapseq.module.sequencing.qc;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 import javax.validation.constraints.NotNull;
 
@@ -26,7 +18,8 @@ import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsNotEmpty;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
-import edu.unc.mapseq.module.sequencing.PileupBean;
+import edu.unc.mapseq.module.core.io.DelimitedReader;
+import edu.unc.mapseq.module.core.io.DelimitedWriter;
 
 /**
  * 
@@ -74,93 +67,65 @@ public class CoverageAcrossTranscript extends Module {
         try {
 
             Map<String, Integer> transcriptLengthMap = new HashMap<String, Integer>();
-            String line;
-            BufferedReader br = new BufferedReader(new FileReader(mapFile));
-            while ((line = br.readLine()) != null) {
-                String[] tokens = line.split("\t");
-                String chromosomeName = tokens[0];
-                String coordinate = tokens[2];
-                transcriptLengthMap.put(chromosomeName, Integer.valueOf(coordinate));
+            try (DelimitedReader reader = new DelimitedReader(mapFile, '\t')) {
+                while (reader.next()) {
+                    transcriptLengthMap.put(reader.getString(0), reader.getInt(2));
+                }
             }
-            br.close();
-
-            Map<String, List<PileupBean>> pileupMap = new HashMap<String, List<PileupBean>>();
 
-            br = new BufferedReader(new FileReader(pileupFile));
-            while ((line = br.readLine()) != null) {
-                StringTokenizer tokenizer = new StringTokenizer(line, "\t");
-                String chromosomeName = tokenizer.nextToken();
-                pileupMap.put(chromosomeName, new ArrayList<PileupBean>());
-            }
-            br.close();
-
-            // may need to change this so that we don't keep too much data in memory
-            br = new BufferedReader(new FileReader(pileupFile));
-            while ((line = br.readLine()) != null) {
-                StringTokenizer tokenizer = new StringTokenizer(line, "\t");
-                String chromosomeName = tokenizer.nextToken();
-                String coordinate = tokenizer.nextToken();
-                String referenceBase = tokenizer.nextToken();
-                String readBases = tokenizer.nextToken();
-                pileupMap.get(chromosomeName).add(new PileupBean(Integer.valueOf(coordinate.trim()), null,
-                        Integer.valueOf(readBases.trim()), null, null));
+            // read bases by coordinate along each transcript, in the order the transcripts first show up
+            Map<String, TranscriptCoverage> pileupMap = new HashMap<String, TranscriptCoverage>();
+            try (DelimitedReader reader = new DelimitedReader(pileupFile, '\t')) {
+                String chromosomeName = null;
+                TranscriptCoverage coverage = null;
+                while (reader.next()) {
+                    if (chromosomeName == null || !reader.fieldEquals(0, chromosomeName)) {
+                        chromosomeName = reader.getString(0);
+                        coverage = pileupMap.get(chromosomeName);
+                        if (coverage == null) {
+                            Integer length = transcriptLengthMap.get(chromosomeName);
+                            if (length == null) {
+                                throw new ModuleException(
+                                        String.format("%s is not in %s", chromosomeName, mapFile.getAbsolutePath()));
+                            }
+                            coverage = new TranscriptCoverage(length);
+                            pileupMap.put(chromosomeName, coverage);
+                        }
+                    }
+                    coverage.add(reader.getInt(1), reader.getInt(3));
+                }
             }
-            br.close();
 
-            Map<Long, Double> ctsMap = new HashMap<Long, Double>();
-            Map<Long, List<Double>> normCtsMap = new HashMap<Long, List<Double>>();
+            // sums of the normalized counts for every relative position, in the order the perl version added them
+            double[] normCts = new double[xnorm + 1];
+            boolean[] normCtsSeen = new boolean[xnorm + 1];
             for (String chromosomeName : pileupMap.keySet()) {
 
-                List<PileupBean> beanList = pileupMap.get(chromosomeName);
-                int total = 0;
-                for (PileupBean bean : beanList) {
-                    total += bean.getReadBases();
-                }
-
-                Map<Integer, Integer> asdfMap = new HashMap<Integer, Integer>();
-                for (PileupBean bean : beanList) {
-                    asdfMap.put(bean.getCoordinate(), bean.getReadBases());
-                }
-
-                Integer trMapCoordinate = transcriptLengthMap.get(chromosomeName);
+                TranscriptCoverage coverage = pileupMap.get(chromosomeName);
+                int trMapCoordinate = coverage.length;
                 for (int i = 0; i < trMapCoordinate + 1; i++) {
                     double x = ((double) (i * xnorm)) / trMapCoordinate;
                     long xRounded = Math.round(x);
-                    long xx = ((x - xRounded) >= 0.5) ? xRounded + 1 : xRounded;
-                    Integer c = asdfMap.get(i);
-                    if (c == null) {
-                        c = 0;
-                    }
-                    double yy = ((double) (c * ynorm)) / total;
-                    if (normCtsMap.get(xx) == null) {
-                        normCtsMap.put(xx, new ArrayList<Double>());
-                    }
+                    int xx = (int) (((x - xRounded) >= 0.5) ? xRounded + 1 : xRounded);
+                    int c = coverage.readBases[i];
+                    double yy = ((double) (c * ynorm)) / coverage.total;
+                    normCtsSeen[xx] = true;
                     if (yy > 0) {
-                        normCtsMap.get(xx).add(yy);
-                    }
-                }
-
-                for (Long key : normCtsMap.keySet()) {
-                    double yy = 0.0;
-                    for (Double yValue : normCtsMap.get(key)) {
-                        yy += yValue;
+                        normCts[xx] += yy;
                     }
-                    // FIX ME...perl version seems to start index at 0, in java need to do -1 to match divisor
-                    ctsMap.put(key, (double) (yy / pileupMap.size() - 1));
                 }
 
             }
 
-            BufferedWriter bw = new BufferedWriter(new FileWriter(outFile));
-            List<Long> sortedKeys = new ArrayList<Long>(ctsMap.keySet());
-            Collections.sort(sortedKeys);
-            for (Long key : sortedKeys) {
-                bw.append(String.format("%d\t%f\n", key, ctsMap.get(key)));
+            try (DelimitedWriter writer = new DelimitedWriter(outFile)) {
+                for (int key = 0; key < normCts.length; key++) {
+                    if (normCtsSeen[key]) {
+                        // FIX ME...perl version seems to start index at 0, in java need to do -1 to match divisor
+                        writer.append(key).tab().append(normCts[key] / pileupMap.size() - 1, 6).newLine();
+                    }
+                }
             }
 
-            bw.flush();
-            bw.close();
-
             FileData fm = new FileData();
             fm.setMimeType(MimeType.TEXT_STAT_SUMMARY);
             fm.setName(outFile.getName());
@@ -169,7 +134,7 @@ public class CoverageAcrossTranscript extends Module {
         } catch (Exception e) {
             e.printStackTrace();
             moduleOutput.setError(new StringBuilder(e.getMessage()));
-            moduleOutput.setExitCode(exitCode);
+            moduleOutput.setExitCode(-1);
             return moduleOutput;
         }
 
@@ -202,6 +167,29 @@ public class CoverageAcrossTranscript extends Module {
         this.pileupFile = pileupFile;
     }
 
+    static class TranscriptCoverage {
+
+        private final int length;
+
+        private final int[] readBases;
+
+        private int total = 0;
+
+        public TranscriptCoverage(int length) {
+            super();
+            this.length = length;
+            this.readBases = new int[Math.max(0, length + 1)];
+        }
+
+        void add(int coordinate, int bases) {
+            total += bases;
+            if (coordinate >= 0 && coordinate < readBases.length) {
+                readBases[coordinate] = bases;
+            }
+        }
+
+    }
+
     @Override
     public String toString() {
         return String.format("CoverageAcrossTranscript [pileupFile=%s, outFile=%s, mapFile=%s, toString()=%s]",
@@ -1,15 +1,12 @@
 package edu.unc.mapseq.module.sequencing.qc;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 import javax.validation.constraints.NotNull;
 
@@ -22,6 +19,7 @@ import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.core.io.DelimitedReader;
 
 /**
  * 
@@ -70,26 +68,23 @@ public class GeneCountsRPKM extends Module {
 
         Map<String, Integer> transcriptLengthMap = new HashMap<String, Integer>();
         Map<String, Integer> geneLengthMap = new HashMap<String, Integer>();
-        String line;
-        BufferedReader br = new BufferedReader(new FileReader(transcriptDB));
-        while ((line = br.readLine()) != null) {
-            String[] tokens = line.split("\t");
-            String c1 = tokens[0];
-            String c2 = tokens[1];
-            String c3 = tokens[2];
-            transcriptLengthMap.put(c1, Integer.valueOf(c3));
-            toList.add(c1);
-            if (StringUtils.isEmpty(c2)) {
-                transcript2GeneMap.put(c1, c2);
-                if (gene2LengthMap.containsKey(c2)) {
-                    gene2LengthMap.put(c2, gene2LengthMap.get(c2) + c3 + ",");
-                } else {
-                    gene2LengthMap.put(c2, c3);
+        try (DelimitedReader reader = new DelimitedReader(transcriptDB, '\t')) {
+            while (reader.next()) {
+                String c1 = reader.getString(0);
+                String c2 = reader.getString(1);
+                String c3 = reader.getString(2);
+                transcriptLengthMap.put(c1, reader.getInt(2));
+                toList.add(c1);
+                if (StringUtils.isEmpty(c2)) {
+                    transcript2GeneMap.put(c1, c2);
+                    if (gene2LengthMap.containsKey(c2)) {
+                        gene2LengthMap.put(c2, gene2LengthMap.get(c2) + c3 + ",");
+                    } else {
+                        gene2LengthMap.put(c2, c3);
+                    }
                 }
             }
-
         }
-        br.close();
 
         List<String> goList = new ArrayList<String>();
         for (String key : gene2LengthMap.keySet()) {
@@ -134,68 +129,84 @@ public class GeneCountsRPKM extends Module {
         Collections.sort(goList);
         Collections.sort(toList);
 
-        int totalRead = 0;
-        Map<String, String> tr2BasesMap = new HashMap<String, String>();
-        Map<String, Integer> tr2CountsMap = new HashMap<String, Integer>();
-        Map<String, String> gene2BasesMap = new HashMap<String, String>();
-        Map<String, Integer> gene2CountsMap = new HashMap<String, Integer>();
-        br = new BufferedReader(new FileReader(samFile));
-        while ((line = br.readLine()) != null) {
-            if (line.startsWith("@")) {
-                continue;
-            }
-            StringTokenizer st = new StringTokenizer(line, "\t");
-            String c1 = st.nextToken();
-            String c2 = st.nextToken();
-            String c3 = st.nextToken();
-            String c4 = st.nextToken();
-            String c5 = st.nextToken();
-            String c6 = st.nextToken();
-            ++totalRead;
-            int bitFlag = Integer.valueOf(c2);
-
-            Map<Integer, Integer> fMap = new HashMap<Integer, Integer>();
-            Integer thisN = 1024 * 2;
-            for (int i = 10; i >= 0; i--) {
-                thisN = thisN / 2;
-                if (bitFlag >= thisN) {
-                    fMap.put(i, 1);
-                    bitFlag -= thisN;
-                } else {
-                    fMap.put(i, 0);
+        long totalRead = 0;
+        Map<String, ReadCounts> tr2CountsMap = new HashMap<String, ReadCounts>();
+        Map<String, ReadCounts> gene2CountsMap = new HashMap<String, ReadCounts>();
+        try (DelimitedReader reader = new DelimitedReader(samFile, '\t')) {
+            // a sorted sam has long runs of reads on one transcript, look it up once per run
+            String transcript = null;
+            ReadCounts transcriptCounts = null;
+            ReadCounts geneCounts = null;
+            while (reader.next()) {
+                if (reader.startsWith('@')) {
+                    continue;
                 }
-            }
+                ++totalRead;
+                int bitFlag = reader.getInt(1);
 
-            if (fMap.get(2) == 1) {
-                continue;
-            }
-
-            String[] nonDigitCigarSplit = c6.split("\\D+");
-            String[] digitCigarSplit = c6.split("\\d+");
+                // unmapped
+                if ((bitFlag & 0x4) != 0) {
+                    continue;
+                }
 
-            List<String> list = new ArrayList<String>(Arrays.asList(digitCigarSplit));
-            list.remove(0);
-            list.remove(1);
-            digitCigarSplit = list.toArray(digitCigarSplit);
+                if (transcript == null || !reader.fieldEquals(2, transcript)) {
+                    transcript = reader.getString(2);
+                    transcriptCounts = getReadCounts(tr2CountsMap, transcript);
+                    geneCounts = transcript2GeneMap.containsKey(transcript)
+                            ? getReadCounts(gene2CountsMap, transcript2GeneMap.get(transcript)) : null;
+                }
 
-            String baseCount = "";
-            for (int i = 0; i < nonDigitCigarSplit.length + 1; ++i) {
-                if (digitCigarSplit[i] != null && "M".equals(digitCigarSplit[i]) || "I".equals(digitCigarSplit[i])) {
-                    baseCount += nonDigitCigarSplit[i];
+                int baseCount = getAlignedBases(reader.getBuffer(), reader.getFieldStart(5), reader.getFieldEnd(5));
+                transcriptCounts.add(baseCount);
+                if (geneCounts != null) {
+                    geneCounts.add(baseCount);
                 }
             }
-            tr2BasesMap.put(c3, tr2BasesMap.get(c3) != null ? tr2BasesMap.get(c3) + baseCount : baseCount);
-            tr2CountsMap.put(c3, tr2CountsMap.get(c3) != null ? tr2CountsMap.get(c3) + 1 : 0);
+        }
+
+        return null;
+    }
 
-            if (transcript2GeneMap.containsKey(c3)) {
-                String gene = transcript2GeneMap.get(c3);
-                gene2BasesMap.put(gene, gene2BasesMap.get(c3) != null ? gene2BasesMap.get(c3) + baseCount : baseCount);
-                gene2CountsMap.put(gene, gene2CountsMap.get(c3) != null ? gene2CountsMap.get(c3) + 1 : 0);
+    private static ReadCounts getReadCounts(Map<String, ReadCounts> map, String key) {
+        ReadCounts counts = map.get(key);
+        if (counts == null) {
+            counts = new ReadCounts();
+            map.put(key, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * @return the lengths of the M and I operations of a cigar
+     */
+    static int getAlignedBases(byte[] cigar, int start, int end) {
+        int ret = 0;
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            byte c = cigar[i];
+            if (c >= '0' && c <= '9') {
+                length = length * 10 + (c - '0');
+                continue;
+            }
+            if (c == 'M' || c == 'I') {
+                ret += length;
             }
+            length = 0;
+        }
+        return ret;
+    }
+
+    static class ReadCounts {
 
+        private long bases = 0L;
+
+        private int reads = 0;
+
+        void add(int alignedBases) {
+            bases += alignedBases;
+            reads++;
         }
 
-        return null;
     }
 
     public File getSamFile() {
@@ -1,12 +1,9 @@
 package edu.unc.mapseq.module.sequencing.qc;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -20,6 +17,8 @@ import edu.unc.mapseq.module.ModuleException;
 import edu.unc.mapseq.module.ModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
+import edu.unc.mapseq.module.core.io.DelimitedReader;
+import edu.unc.mapseq.module.core.io.DelimitedWriter;
 
 /**
  * 
@@ -55,54 +54,38 @@ public class NormBedExonQuant extends Module {
         int exitCode = 0;
         try {
 
-            ArrayList<String> outputOrder = new ArrayList<String>();
-
-            String line;
-            int lineCount = 0;
-            BufferedReader br1 = new BufferedReader(new FileReader(compositeBed));
-            while ((line = br1.readLine()) != null) {
-                String id = (line.split("\t"))[4];
-                outputOrder.add(lineCount++, id);
+            List<String> outputOrder = new ArrayList<String>();
+            try (DelimitedReader reader = new DelimitedReader(compositeBed, '\t')) {
+                while (reader.next()) {
+                    outputOrder.add(reader.getString(4));
+                }
             }
-            br1.close();
-
-            Map<String, String> exonData = new HashMap<String, String>();
-
-            int total = 0;
-            BufferedReader br2 = new BufferedReader(new FileReader(inFile));
-            while ((line = br2.readLine()) != null) {
-                logger.info(line);
-                String[] splitArray = line.split("\t");
-                String id = splitArray[4];
-                String sCounts = splitArray[5];
-                String length = splitArray[7];
-                String cov = splitArray[8];
-                Integer counts = Integer.valueOf(sCounts);
-                total += counts;
-
-                exonData.put(id, sCounts + "\t" + length + "\t" + cov);
+
+            Map<String, ExonData> exonData = new HashMap<String, ExonData>();
+
+            long total = 0;
+            try (DelimitedReader reader = new DelimitedReader(inFile, '\t')) {
+                while (reader.next()) {
+                    ExonData data = new ExonData();
+                    data.counts = reader.getInt(5);
+                    data.length = reader.getInt(7);
+                    data.coverage = reader.getString(8);
+                    total += data.counts;
+                    exonData.put(reader.getString(4), data);
+                }
+                logger.debug("{} exons in {}", reader.getLineNumber(), inFile.getAbsolutePath());
             }
-            br2.close();
-
-            BufferedWriter bw = new BufferedWriter(new FileWriter(outFile));
-            int outputLength = outputOrder.size();
-            for (int i = 0; i <= outputLength; i++) {
-                String id = outputOrder.get(i);
-                String exonDataValue = exonData.get(id);
-                if (exonDataValue != null) {
-                    String[] splitArray = exonDataValue.split("\t");
-                    String sCounts = splitArray[0];
-                    String sLength = splitArray[1];
-                    String cov = splitArray[2];
-
-                    Integer counts = Integer.valueOf(sCounts);
-                    Integer length = Integer.valueOf(sLength);
-
-                    Double rpkm = 1.0e9 * counts / ((length + 1.0) * total);
-                    bw.write(String.format("%s\t%s\t%s\t%24.12f\n", id, sCounts, cov, rpkm));
+
+            try (DelimitedWriter writer = new DelimitedWriter(outFile)) {
+                for (String id : outputOrder) {
+                    ExonData data = exonData.get(id);
+                    if (data != null) {
+                        double rpkm = 1.0e9 * data.counts / ((data.length + 1.0) * total);
+                        writer.append(id).tab().append(data.counts).tab().append(data.coverage).tab()
+                                .append(rpkm, 12, 24).newLine();
+                    }
                 }
             }
-            bw.close();
 
             FileData fm = new FileData();
             fm.setMimeType(MimeType.TEXT_STAT_SUMMARY);
@@ -112,7 +95,7 @@ public class NormBedExonQuant extends Module {
         } catch (Exception e) {
             e.printStackTrace();
             moduleOutput.setError(new StringBuilder(e.getMessage()));
-            moduleOutput.setExitCode(exitCode);
+            moduleOutput.setExitCode(-1);
             return moduleOutput;
         }
 
@@ -152,6 +135,16 @@ public class NormBedExonQuant extends Module {
                 logger, compositeBed, inFile, outFile, super.toString());
     }
 
+    static class ExonData {
+
+        private int counts;
+
+        private int length;
+
+        private String coverage;
+
+    }
+
     public static void main(String[] args) {
         NormBedExonQuant module = new NormBedExonQuant();
         module.setWorkflowName("TEST");
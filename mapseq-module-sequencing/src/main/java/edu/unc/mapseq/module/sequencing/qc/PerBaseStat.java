@@ -1,10 +1,6 @@
 package edu.unc.mapseq.module.sequencing.qc;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 
 import edu.unc.mapseq.dao.model.FileData;
 import edu.unc.mapseq.dao.model.MimeType;
@@ -14,6 +10,8 @@ import edu.unc.mapseq.module.ModuleException;
 import edu.unc.mapseq.module.ModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
+import edu.unc.mapseq.module.core.io.DelimitedReader;
+import edu.unc.mapseq.module.core.io.DelimitedWriter;
 
 /**
  * 
@@ -46,33 +44,22 @@ public class PerBaseStat extends Module {
         int cycle3 = 75;
 
         int exitCode = 0;
-        try {
-            int lineCount = 0;
-
-            BufferedWriter bw = new BufferedWriter(new FileWriter(outFile));
-            bw.write(String.format("File name: %s\n", outFile.getAbsolutePath()));
-
-            String line;
-            BufferedReader br = new BufferedReader(new FileReader(inFile));
-            while ((line = br.readLine()) != null) {
-                ++lineCount;
+        try (DelimitedReader reader = new DelimitedReader(inFile, '\t');
+                DelimitedWriter writer = new DelimitedWriter(outFile)) {
+            writer.append("File name: ").append(outFile.getAbsolutePath()).newLine();
+            while (reader.next()) {
+                long lineCount = reader.getLineNumber();
                 if ((lineCount != cycle1) && (lineCount != cycle2) && (lineCount != cycle3)) {
+                    if (lineCount > cycle3) {
+                        break;
+                    }
                     continue;
                 }
-                String[] tokens = line.trim().split("\t");
-
-                int q1 = Integer.valueOf(tokens[6]);
-                bw.write(String.format("Cycle_%d_25_percent\t%d\n", lineCount, q1));
-
-                int median = Integer.valueOf(tokens[7]);
-                bw.write(String.format("Cycle_%d_median\t%d\n", lineCount, median));
-
-                int q3 = Integer.valueOf(tokens[8]);
-                bw.write(String.format("Cycle_%d_75_percent\t%d\n", lineCount, q3));
-                bw.flush();
+                writer.append("Cycle_").append(lineCount).append("_25_percent\t").append(reader.getInt(6)).newLine();
+                writer.append("Cycle_").append(lineCount).append("_median\t").append(reader.getInt(7)).newLine();
+                writer.append("Cycle_").append(lineCount).append("_75_percent\t").append(reader.getInt(8)).newLine();
             }
-            bw.close();
-            br.close();
+            writer.flush();
 
             FileData fm = new FileData();
             fm.setMimeType(MimeType.TEXT_STAT_SUMMARY);
@@ -82,7 +69,7 @@ public class PerBaseStat extends Module {
         } catch (Exception e) {
             e.printStackTrace();
             moduleOutput.setError(new StringBuilder(e.getMessage()));
-            moduleOutput.setExitCode(exitCode);
+            moduleOutput.setExitCode(-1);
             return moduleOutput;
         }
 
@@ -21,6 +21,8 @@ import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.sequencing.fastq.FastqReader;
+import edu.unc.mapseq.module.sequencing.fastq.FastqRecord;
 
 /**
  * 
@@ -99,20 +101,14 @@ public class RNASampleQC extends Module {
             if (microRNASequenceMap.size() == 0) {
                 sb.append(key).append("\tERROR: no_ref_seqs\n");
             } else {
-                br = new BufferedReader(new FileReader(fastq));
-                while ((line = br.readLine()) != null) {
-
-                    for (String microRNA : microRNASequenceMap.keySet()) {
-                        if (line.equals(microRNA)) {
-                            ++count;
-                            break;
-                        }
+                FastqReader reader = new FastqReader(fastq);
+                FastqRecord record;
+                while ((record = reader.next()) != null) {
+                    if (microRNASequenceMap.containsKey(record.getSequence())) {
+                        ++count;
                     }
-                    br.readLine();
-                    br.readLine();
-
                 }
-                br.close();
+                reader.close();
             }
 
             String sampleTotal = props.getProperty("sampleTotal");
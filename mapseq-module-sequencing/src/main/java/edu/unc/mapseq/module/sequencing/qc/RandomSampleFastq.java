@@ -1,12 +1,7 @@
 package edu.unc.mapseq.module.sequencing.qc;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.BitSet;
 import java.util.Random;
 
 import javax.validation.constraints.NotNull;
@@ -22,6 +17,10 @@ import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.sequencing.fastq.FastqBatch;
+import edu.unc.mapseq.module.sequencing.fastq.FastqReader;
+import edu.unc.mapseq.module.sequencing.fastq.FastqRecord;
+import edu.unc.mapseq.module.sequencing.fastq.FastqWriter;
 
 @Application(name = "RandomFastq")
 public class RandomSampleFastq extends Module {
@@ -58,51 +57,37 @@ public class RandomSampleFastq extends Module {
         int exitCode = 0;
         try {
 
-            BufferedReader br = new BufferedReader(new FileReader(fastq));
-            Integer lineCount = 0;
-            String line;
-            while ((line = br.readLine()) != null) {
-                ++lineCount;
+            FastqReader reader = new FastqReader(fastq);
+            FastqBatch batch;
+            while ((batch = reader.nextBatch()) != null) {
+                reader.release(batch);
             }
-            br.close();
+            reader.close();
 
-            Integer totalReads = lineCount / 4;
+            Integer totalReads = (int) reader.getRecordCount();
             Long totalSamples = Math.round(0.01 * totalReads);
 
-            Map<Integer, Boolean> readMap = new HashMap<Integer, Boolean>();
+            BitSet sampled = new BitSet(totalReads);
             Random random = new Random();
             for (int i = 0; i < totalSamples; ++i) {
-                Integer key = random.nextInt(totalReads);
-                if (readMap.containsKey(key)) {
-                    continue;
-                }
-                readMap.put(key, true);
+                sampled.set(random.nextInt(totalReads));
             }
 
-            Integer readCount = -1;
-
             if (outFile.exists()) {
                 outFile.delete();
             }
             FileUtils.touch(outFile);
 
-            BufferedWriter bw = new BufferedWriter(new FileWriter(outFile));
-            br = new BufferedReader(new FileReader(fastq));
-            while ((line = br.readLine()) != null) {
-                if (line.startsWith("@")) {
-                    readCount++;
-                    Boolean canRead = readMap.get(readCount) != null && readMap.get(readCount) ? true : false;
-                    if (canRead) {
-                        bw.write(line);
-                        bw.write(br.readLine());
-                        bw.write(br.readLine());
-                        bw.write(br.readLine());
-                        bw.flush();
-                    }
+            FastqWriter writer = new FastqWriter(outFile);
+            reader = new FastqReader(fastq);
+            FastqRecord record;
+            while ((record = reader.next()) != null) {
+                if (sampled.get((int) record.getOrdinal())) {
+                    writer.write(record);
                 }
             }
-            br.close();
-            bw.close();
+            reader.close();
+            writer.close();
 
             if (propertiesFile.exists()) {
                 propertiesFile.delete();
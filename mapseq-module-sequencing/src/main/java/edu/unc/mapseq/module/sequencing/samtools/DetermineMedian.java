@@ -4,22 +4,21 @@ import java.io.File;
 
 import javax.validation.constraints.NotNull;
 
-import org.renci.common.exec.BashExecutor;
-import org.renci.common.exec.CommandInput;
-import org.renci.common.exec.CommandOutput;
-import org.renci.common.exec.Executor;
 import org.renci.common.exec.ExecutorException;
 
+import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.Module;
 import edu.unc.mapseq.module.ModuleException;
 import edu.unc.mapseq.module.ModuleOutput;
-import edu.unc.mapseq.module.ShellModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputValidations;
 import edu.unc.mapseq.module.constraints.FileIsNotEmpty;
 import edu.unc.mapseq.module.constraints.FileIsReadable;
+import edu.unc.mapseq.module.core.exec.EnvironmentResolver;
+import edu.unc.mapseq.module.core.exec.ProcessPipeline;
+import edu.unc.mapseq.module.core.exec.StreamingCommandOutput;
 
 @Application(name = "DetermineMedian", executable = "$%s_SAMTOOLS_HOME/bin/samtools view %s | /usr/bin/head -1 | /bin/cut -f 10 | awk '{print length($1)}' > %s")
 public class DetermineMedian extends Module {
@@ -47,17 +46,26 @@ public class DetermineMedian extends Module {
 
     @Override
     public ModuleOutput call() throws ModuleException {
-        CommandInput commandInput = new CommandInput();
-        commandInput.setCommand(String.format(getModuleClass().getAnnotation(Application.class).executable(),
-                getWorkflowName().toUpperCase(), input.getAbsolutePath(), output.getAbsolutePath()));
-        CommandOutput commandOutput;
+        // same chain as the executable, each stage exec'ed directly; samtools gets SIGPIPE once head is done
+        ProcessPipeline pipeline = new ProcessPipeline();
+        pipeline.addStage(
+                String.format("%s/bin/samtools", EnvironmentResolver.getInstance().getHome(getWorkflowName(), "SAMTOOLS")),
+                "view", input.getAbsolutePath());
+        pipeline.addStage("/usr/bin/head", "-1");
+        pipeline.addStage("/bin/cut", "-f", "10");
+        pipeline.addStage("awk", "{print length($1)}");
+        pipeline.setOutput(output);
+
+        StreamingCommandOutput commandOutput;
         try {
-            Executor executor = BashExecutor.getInstance();
-            commandOutput = executor.execute(commandInput);
+            commandOutput = pipeline.execute();
         } catch (ExecutorException e) {
             throw new ModuleException(e);
         }
-        return new ShellModuleOutput(commandOutput);
+        DefaultModuleOutput moduleOutput = new DefaultModuleOutput();
+        moduleOutput.setExitCode(commandOutput.getExitCode());
+        moduleOutput.setError(commandOutput.getStderr());
+        return moduleOutput;
     }
 
     public File getInput() {
@@ -1,27 +1,21 @@
 package edu.unc.mapseq.module.sequencing.staden;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
-import org.renci.common.exec.BashExecutor;
 import org.renci.common.exec.CommandInput;
-import org.renci.common.exec.CommandOutput;
-import org.renci.common.exec.Executor;
 import org.renci.common.exec.ExecutorException;
 
+import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.Module;
 import edu.unc.mapseq.module.ModuleException;
 import edu.unc.mapseq.module.ModuleOutput;
-import edu.unc.mapseq.module.ShellModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
@@ -30,6 +24,13 @@ import edu.unc.mapseq.module.constraints.Contains;
 import edu.unc.mapseq.module.constraints.EndsWith;
 import edu.unc.mapseq.module.constraints.Fastq;
 import edu.unc.mapseq.module.constraints.FileListIsReadable;
+import edu.unc.mapseq.module.core.exec.CaptureSink;
+import edu.unc.mapseq.module.core.exec.LineHandler;
+import edu.unc.mapseq.module.core.exec.LineSink;
+import edu.unc.mapseq.module.core.exec.RecordSplitter;
+import edu.unc.mapseq.module.core.exec.StreamSink;
+import edu.unc.mapseq.module.core.exec.StreamingCommandOutput;
+import edu.unc.mapseq.module.core.exec.StreamingExecutor;
 
 /**
  * 
@@ -197,90 +198,84 @@ public class SRF2Fastq extends Module {
         CommandInput commandInput = new CommandInput();
         commandInput.setCommand(command.toString());
 
-        CommandOutput commandOutput;
+        // we're only parsing stdout and managing file creation for BFAST output (all one file)
+        boolean split = "bfast".equals(aligner) || ("bwa".equals(aligner) && ends == 1);
+
+        CaptureSink stdoutCapture = null;
+        StreamSink stdoutSink;
+        if (split) {
+            // Read from stdout and write to output files as srf2fastq produces them. Each output file gets 4 * ends
+            // lines before moving to next entry. This assures all ends for a given read are together
+            try {
+                RecordSplitter recordSplitter = new RecordSplitter(outputFiles, ends * 4);
+                stdoutSink = new LineSink(platform.indexOf("AB SOLiD ") > -1 ? new SOLiDPrimerHandler(recordSplitter)
+                        : recordSplitter);
+            } catch (IOException e) {
+                throw new ModuleException(e.getMessage());
+            }
+        } else {
+            stdoutCapture = new CaptureSink();
+            stdoutSink = stdoutCapture;
+        }
+
+        StreamingCommandOutput commandOutput;
         try {
-            Executor executor = BashExecutor.getInstance();
-            commandOutput = executor.execute(commandInput);
+            commandOutput = StreamingExecutor.getInstance().execute(commandInput, stdoutSink);
         } catch (ExecutorException e1) {
             throw new ModuleException(e1.getMessage());
         }
 
-        // we're only parsing stdout and managing file creation for BFAST output (all one file)
-        if ("bfast".equals(aligner) || ("bwa".equals(aligner) && ends == 1)) {
-            // Read from stdout and write to output files. Each output file gets 4 *
-            // ends before moving to next entry. This assures all ends for a given
-            // read are together
-            try {
-                // FIXME: This first function call is just for now, srf2fastq strips
-                // primer automatically
-
-                long linesProcessed = 0; // Has to be a long, or else it will wrap on large files with more than 2.1
-                // billion
-                // lines
-                int numFiles = outputFiles.size();
-                BufferedWriter currentFile = null;
-                BufferedReader stdout = new BufferedReader(new StringReader(commandOutput.getStdout().toString()));
-                ArrayList<BufferedWriter> fileOutputs = new ArrayList<BufferedWriter>();
-
-                // Open files
-                for (int i = 0; i < numFiles; i++) {
-                    fileOutputs.add(new BufferedWriter(new FileWriter(outputFiles.get(i))));
-                }
-
-                // Start with file zero, or return error if no files available
-                if (numFiles <= 0)
-                    throw new IOException("Must specify atleast one output file");
-
-                // Read lines
-                char primer = '\0';
-                String line = null;
-                while ((line = stdout.readLine()) != null) {
-
-                    if (platform.indexOf("AB SOLiD ") > -1) {
-                        // If this is the first read, let's use this primer forever. FIXME: This is a hack due to
-                        // problems with
-                        // srf2fastq
-                        if (linesProcessed == 1) {
-                            primer = line.charAt(0);
-                        } else if (primer != '\0' && linesProcessed % 4 == 1) {
-                            line = primer + line.substring(1);
-                        }
-
-                        // if we wrote a multiple of linesPerStripe lines, time to move
-                        // onto next file
-                        if (linesProcessed % (ends * 4) == 0) {
-                            currentFile = fileOutputs.get((int) (linesProcessed / (ends * 4)) % numFiles);
-                        }
-
-                        // If it is the 3rd line (quality), strip off the primer
-                        if (linesProcessed % 4 == 3) {
-                            line = line.substring(1);
-                        }
-
-                        // Write to current file
-                        currentFile.write(line + System.getProperty("line.separator"));
-                        linesProcessed++;
-
-                    } else {
-                        // if we wrote a multiple of linesPerStripe lines, time to move
-                        // onto next file
-                        if (linesProcessed % (ends * 4) == 0) {
-                            currentFile = fileOutputs.get((int) (linesProcessed / (ends * 4)) % numFiles);
-                        }
-
-                        // Write to current file
-                        currentFile.write(line + System.getProperty("line.separator"));
-                        linesProcessed++;
-                    }
-
-                }
+        if (commandOutput.getException() != null) {
+            throw new ModuleException(commandOutput.getException().getMessage());
+        }
 
-            } catch (IOException e) {
-                throw new ModuleException(e.getMessage());
+        DefaultModuleOutput moduleOutput = new DefaultModuleOutput();
+        moduleOutput.setExitCode(commandOutput.getExitCode());
+        moduleOutput.setOutput(stdoutCapture != null ? stdoutCapture.getText() : new StringBuilder());
+        moduleOutput.setError(commandOutput.getStderr());
+        return moduleOutput;
+    }
+
+    /**
+     * FIXME: This is just for now, srf2fastq strips primer automatically. The primer of the first read is used for
+     * every read and stripped from the quality lines.
+     */
+    class SOLiDPrimerHandler implements LineHandler, Closeable {
+
+        private final RecordSplitter recordSplitter;
+
+        // Has to be a long, or else it will wrap on large files with more than 2.1 billion lines
+        private long linesProcessed = 0;
+
+        private char primer = '\0';
+
+        public SOLiDPrimerHandler(RecordSplitter recordSplitter) {
+            super();
+            this.recordSplitter = recordSplitter;
+        }
+
+        @Override
+        public void handle(String line) throws IOException {
+            if (linesProcessed == 1) {
+                primer = line.charAt(0);
+            } else if (primer != '\0' && linesProcessed % 4 == 1) {
+                line = primer + line.substring(1);
+            }
+
+            // If it is the 3rd line (quality), strip off the primer
+            if (linesProcessed % 4 == 3) {
+                line = line.substring(1);
             }
+
+            recordSplitter.handle(line);
+            linesProcessed++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            recordSplitter.close();
         }
 
-        return new ShellModuleOutput(commandOutput);
     }
 
     public String getAligner() {
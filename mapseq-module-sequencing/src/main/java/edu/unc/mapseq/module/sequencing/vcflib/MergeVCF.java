@@ -1,13 +1,16 @@
 package edu.unc.mapseq.module.sequencing.vcflib;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import javax.validation.constraints.NotNull;
 
-import org.renci.common.exec.BashExecutor;
-import org.renci.common.exec.CommandInput;
-import org.renci.common.exec.CommandOutput;
-import org.renci.common.exec.Executor;
 import org.renci.common.exec.ExecutorException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,13 +18,16 @@ import org.slf4j.LoggerFactory;
 import edu.unc.mapseq.dao.model.FileData;
 import edu.unc.mapseq.dao.model.MimeType;
 import edu.unc.mapseq.module.Module;
+import edu.unc.mapseq.module.DefaultModuleOutput;
 import edu.unc.mapseq.module.ModuleException;
 import edu.unc.mapseq.module.ModuleOutput;
-import edu.unc.mapseq.module.ShellModuleOutput;
 import edu.unc.mapseq.module.annotations.Application;
 import edu.unc.mapseq.module.annotations.InputArgument;
 import edu.unc.mapseq.module.annotations.InputValidations;
 import edu.unc.mapseq.module.annotations.OutputArgument;
+import edu.unc.mapseq.module.core.exec.EnvironmentResolver;
+import edu.unc.mapseq.module.core.exec.ProcessPipeline;
+import edu.unc.mapseq.module.core.exec.StreamingCommandOutput;
 
 @Application(name = "MergeVCF", executable = "/bin/cat %1$s/%2$s | $%3$s_VCFLIB_HOME/scripts/vcffirstheader | $%3$s_VCFLIB_HOME/bin/vcfstreamsort -w 1000 | $%3$s_VCFLIB_HOME/bin/vcfuniqalleles > %4$s")
 public class MergeVCF extends Module {
@@ -51,23 +57,49 @@ public class MergeVCF extends Module {
 
     @Override
     public ModuleOutput call() throws Exception {
-        CommandInput commandInput = new CommandInput();
-        StringBuilder command = new StringBuilder(String.format(getModuleClass().getAnnotation(Application.class).executable(),
-                workDirectory.getAbsolutePath(), input, getWorkflowName().toUpperCase(), output));
-        commandInput.setCommand(command.toString());
-        logger.info(command.toString());
-        CommandOutput commandOutput;
+        // same chain as the executable, without bash: the glob is expanded and the files are cat'ed by the pipeline
+        String vcflibHome = EnvironmentResolver.getInstance().getHome(getWorkflowName(), "VCFLIB");
+        ProcessPipeline pipeline = new ProcessPipeline();
+        pipeline.setInputs(expandInput());
+        pipeline.addStage(String.format("%s/scripts/vcffirstheader", vcflibHome));
+        pipeline.addStage(String.format("%s/bin/vcfstreamsort", vcflibHome), "-w", "1000");
+        pipeline.addStage(String.format("%s/bin/vcfuniqalleles", vcflibHome));
+        pipeline.setOutput(output);
+        logger.info("{} > {}", pipeline.getStages(), output);
+
+        StreamingCommandOutput commandOutput;
         try {
-            Executor executor = BashExecutor.getInstance();
-            commandOutput = executor.execute(commandInput);
+            commandOutput = pipeline.execute();
         } catch (ExecutorException e) {
             throw new ModuleException(e);
         }
+
+        DefaultModuleOutput moduleOutput = new DefaultModuleOutput();
+        moduleOutput.setExitCode(commandOutput.getExitCode());
+        moduleOutput.setError(commandOutput.getStderr());
+
         FileData fm = new FileData();
         fm.setMimeType(MimeType.TEXT_VCF);
         fm.setName(output.getName());
         getFileDatas().add(fm);
-        return new ShellModuleOutput(commandOutput);
+        return moduleOutput;
+    }
+
+    private List<File> expandInput() throws ModuleException {
+        List<File> files = new ArrayList<File>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(workDirectory.toPath(), input)) {
+            for (Path path : stream) {
+                files.add(path.toFile());
+            }
+        } catch (IOException e) {
+            throw new ModuleException(e);
+        }
+        if (files.isEmpty()) {
+            throw new ModuleException(String.format("no files match %s/%s", workDirectory.getAbsolutePath(), input));
+        }
+        // bash hands glob matches over sorted
+        Collections.sort(files);
+        return files;
     }
 
     public String getInput() {
@@ -0,0 +1,165 @@
+package edu.unc.mapseq.module.sequencing.fastq;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AdapterMatcherTest {
+
+    private static final String ADAPTER = "AGATCGGAAGAGCACACG";
+
+    private static final String OTHER_ADAPTER = "CTGTCTCTTATACACATC";
+
+    @Test
+    public void testInternal() {
+        AdapterMatcher matcher = new AdapterMatcher(Arrays.asList(ADAPTER), 0, 5);
+        assertFind(matcher, "ACGTACGTAC" + ADAPTER + "TTTTT", 10);
+        assertFind(matcher, ADAPTER + "GGGG", 0);
+        // the earliest of two
+        assertFind(matcher, "CC" + ADAPTER + "A" + ADAPTER, 2);
+        assertFind(matcher, "ACGTACGTACGTACGTACGTACGT", -1);
+    }
+
+    @Test
+    public void testOverlap() {
+        AdapterMatcher matcher = new AdapterMatcher(Arrays.asList(ADAPTER), 0, 5);
+        for (int overlap = 5; overlap < ADAPTER.length(); overlap++) {
+            assertFind(matcher, "TTTTTTTTTTTTTTTTTTTT" + ADAPTER.substring(0, overlap), 20);
+        }
+        // shorter than minOverlap
+        assertFind(matcher, "TTTTTTTTTTTTTTTTTTTT" + ADAPTER.substring(0, 4), -1);
+        // a whole adapter before an overlap
+        assertFind(matcher, "TT" + ADAPTER + "TTTTT" + ADAPTER.substring(0, 8), 2);
+    }
+
+    @Test
+    public void testWildcards() {
+        AdapterMatcher matcher = new AdapterMatcher(Arrays.asList("AGATNGGAAGRGCACACG"), 0, 5);
+        assertFind(matcher, "TTTT" + "AGATCGGAAGAGCACACG" + "TT", 4);
+        assertFind(matcher, "TTTT" + "AGATTGGAAGGGCACACG" + "TT", 4);
+        // R is not C
+        assertFind(matcher, "TTTT" + "AGATTGGAAGCGCACACG" + "TT", -1);
+        // an adapter N matches a read N, but a read N matches nothing else
+        assertFind(matcher, "TTTT" + "AGATNGGAAGAGCACACG" + "TT", 4);
+        assertFind(matcher, "TTTT" + "AGATCGGAAGNGCACACG" + "TT", -1);
+        // lower case reads
+        assertFind(matcher, "tttt" + "agatcggaagagcacacg" + "tt", 4);
+    }
+
+    @Test
+    public void testMismatches() {
+        AdapterMatcher matcher = new AdapterMatcher(Arrays.asList(ADAPTER), 2, 5);
+        assertFind(matcher, "TTTT" + "AGTTCGGAAGAGCACTCG" + "TT", 4);
+        assertFind(matcher, "TTTT" + "AGTTCGGATGAGCACTCG" + "TT", -1);
+        // 9 of 18 bases may have 2 * 9 / 18 = 1 mismatch, 8 none
+        assertFind(matcher, "TTTTTTTTTTTTTTTTTTTT" + "AGATCGTAA", 20);
+        assertFind(matcher, "TTTTTTTTTTTTTTTTTTTT" + "AGATCGTA", -1);
+    }
+
+    @Test
+    public void testSharedWord() {
+        AdapterMatcher matcher = new AdapterMatcher(Arrays.asList(ADAPTER, OTHER_ADAPTER), 1, 5);
+        assertFind(matcher, "GGGGGGGG" + OTHER_ADAPTER + "GG", 8);
+        assertFind(matcher, "GGGGGGGG" + OTHER_ADAPTER + ADAPTER, 8);
+        assertFind(matcher, "GGGGGGGG" + ADAPTER + OTHER_ADAPTER, 8);
+        // the end of the first adapter runs into the start of the second one: no match may carry over
+        assertFind(matcher, "GGGGGGGG" + ADAPTER.substring(0, 12) + OTHER_ADAPTER.substring(12) + "GGGGGG", -1);
+        assertFind(matcher, "GGGGGGGG" + ADAPTER.substring(9) + OTHER_ADAPTER.substring(0, 9) + "GGGGGG", -1);
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(42L);
+        String alphabet = "ACGT";
+        String iupac = "ACGTACGTACGTNRY";
+        for (int run = 0; run < 200; run++) {
+            int adapterCount = 1 + random.nextInt(5);
+            String[] adapters = new String[adapterCount];
+            for (int i = 0; i < adapterCount; i++) {
+                adapters[i] = randomSequence(random, iupac, 6 + random.nextInt(30));
+            }
+            int maxMismatches = random.nextInt(3);
+            int minOverlap = 3 + random.nextInt(4);
+            AdapterMatcher matcher = new AdapterMatcher(Arrays.asList(adapters), maxMismatches, minOverlap);
+            for (int r = 0; r < 200; r++) {
+                StringBuilder read = new StringBuilder(randomSequence(random, alphabet + "N", random.nextInt(60)));
+                if (random.nextBoolean()) {
+                    // plant an adapter, maybe cut by the 3' end and with a few changed bases
+                    String adapter = adapters[random.nextInt(adapterCount)].replace('N', 'A').replace('R', 'G')
+                            .replace('Y', 'C');
+                    char[] planted = adapter.substring(0, 1 + random.nextInt(adapter.length())).toCharArray();
+                    for (int i = random.nextInt(3); i > 0; i--) {
+                        planted[random.nextInt(planted.length)] = alphabet.charAt(random.nextInt(4));
+                    }
+                    read.insert(random.nextInt(read.length() + 1), planted);
+                }
+                assertFind(matcher, read.toString(), substringLoop(Arrays.asList(adapters), maxMismatches, minOverlap,
+                        read.toString()));
+            }
+        }
+    }
+
+    private static void assertFind(AdapterMatcher matcher, String read, int expected) {
+        // the read at an offset in a bigger buffer, as in a batch
+        byte[] data = ("@r\n" + read + "\n+\n").getBytes(StandardCharsets.US_ASCII);
+        assertEquals(read, expected, matcher.find(data, 3, read.length()));
+    }
+
+    /**
+     * The loop TrimCountAdapter used to run for each adapter, read windows compared to the adapter (or, at the 3' end,
+     * its prefix), with IUPAC codes and the proportional mismatches added.
+     */
+    private static int substringLoop(List<String> adapters, int maxMismatches, int minOverlap, String read) {
+        int best = -1;
+        for (String adapter : adapters) {
+            int m = adapter.length();
+            for (int i = 0; i <= read.length() - Math.min(m, minOverlap); i++) {
+                int length = Math.min(m, read.length() - i);
+                if (length < m && length < minOverlap) {
+                    break;
+                }
+                int mismatches = 0;
+                for (int j = 0; j < length; j++) {
+                    if (!matches(adapter.charAt(j), read.charAt(i + j))) {
+                        mismatches++;
+                    }
+                }
+                if (mismatches <= maxMismatches * length / m) {
+                    if (best == -1 || i < best) {
+                        best = i;
+                    }
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static boolean matches(char adapter, char read) {
+        read = Character.toUpperCase(read);
+        switch (adapter) {
+            case 'N':
+                return true;
+            case 'R':
+                return read == 'A' || read == 'G';
+            case 'Y':
+                return read == 'C' || read == 'T';
+            default:
+                return read == adapter;
+        }
+    }
+
+    private static String randomSequence(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+}
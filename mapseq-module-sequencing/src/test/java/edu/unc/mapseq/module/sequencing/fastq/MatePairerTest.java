@@ -0,0 +1,167 @@
+package edu.unc.mapseq.module.sequencing.fastq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MatePairerTest {
+
+    @Test
+    public void testWindow() throws IOException {
+        check(100000, false);
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        check(10, true);
+    }
+
+    /**
+     * Pairs two files with reads dropped from either side, R2 shuffled (locally and a few reads far away), names
+     * repeated and a read without a name, then checks every read came out once, pairs by name.
+     */
+    private void check(int windowSize, boolean spills) throws IOException {
+        Random random = new Random(7L);
+        List<String> r1Reads = new ArrayList<String>();
+        List<String> r2Reads = new ArrayList<String>();
+        int serial = 0;
+        for (int i = 0; i < 3000; i++) {
+            // a few names twice, on both sides
+            int copies = i % 250 == 0 ? 2 : 1;
+            for (int copy = 0; copy < copies; copy++) {
+                if (random.nextInt(10) != 0) {
+                    r1Reads.add(read(String.format("HWI-ST:8:FC:1:1101:%d:%d 1:N:0:ACGT", i, i * 7), serial++));
+                }
+                if (random.nextInt(10) != 0) {
+                    r2Reads.add(read(String.format("HWI-ST:8:FC:1:1101:%d:%d 2:N:0:ACGT", i, i * 7), serial++));
+                }
+            }
+        }
+        String nameless = read("", serial++);
+        r1Reads.add(1000, nameless);
+        for (int i = 0; i + 20 <= r2Reads.size(); i += 20) {
+            Collections.shuffle(r2Reads.subList(i, i + 20), random);
+        }
+        for (int i = 0; i < 30; i++) {
+            Collections.swap(r2Reads, random.nextInt(r2Reads.size()), random.nextInt(r2Reads.size()));
+        }
+
+        File tmpDirectory = Files.createTempDirectory("mates").toFile();
+        ByteArrayOutputStream r1Out = new ByteArrayOutputStream();
+        ByteArrayOutputStream r2Out = new ByteArrayOutputStream();
+        ByteArrayOutputStream unpairedOut = new ByteArrayOutputStream();
+        MatePairer pairer;
+        try (FastqReader r1Reader = new FastqReader(toStream(r1Reads), "r1");
+                FastqReader r2Reader = new FastqReader(toStream(r2Reads), "r2");
+                FastqWriter r1Writer = new FastqWriter(r1Out);
+                FastqWriter r2Writer = new FastqWriter(r2Out);
+                FastqWriter unpairedWriter = new FastqWriter(unpairedOut)) {
+            pairer = new MatePairer(r1Writer, r2Writer, unpairedWriter);
+            pairer.setWindowSize(windowSize);
+            pairer.setTmpDirectory(tmpDirectory);
+            pairer.pair(r1Reader, r2Reader);
+        } finally {
+            String[] left = tmpDirectory.list();
+            tmpDirectory.delete();
+            assertEquals("run files left behind", 0, left.length);
+        }
+        assertEquals(spills, pairer.getSpilled() > 0);
+
+        List<String> r1Paired = parse(r1Out);
+        List<String> r2Paired = parse(r2Out);
+        List<String> unpaired = parse(unpairedOut);
+        assertEquals(r1Paired.size(), r2Paired.size());
+        assertEquals(pairer.getPairs(), r1Paired.size());
+        assertEquals(pairer.getUnpaired(), unpaired.size());
+        for (int i = 0; i < r1Paired.size(); i++) {
+            assertEquals(name(r1Paired.get(i)), name(r2Paired.get(i)));
+        }
+
+        // as many pairs as a name has reads on its scarcer side
+        Map<String, int[]> counts = new HashMap<String, int[]>();
+        for (String read : r1Reads) {
+            count(counts, read)[0]++;
+        }
+        for (String read : r2Reads) {
+            count(counts, read)[1]++;
+        }
+        int expectedPairs = 0;
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            if (!entry.getKey().isEmpty()) {
+                expectedPairs += Math.min(entry.getValue()[0], entry.getValue()[1]);
+            }
+        }
+        assertEquals(expectedPairs, r1Paired.size());
+
+        // every read once, none made up
+        List<String> in = new ArrayList<String>(r1Reads);
+        in.addAll(r2Reads);
+        List<String> out = new ArrayList<String>(r1Paired);
+        out.addAll(r2Paired);
+        out.addAll(unpaired);
+        Collections.sort(in);
+        Collections.sort(out);
+        assertEquals(in, out);
+        assertTrue(unpaired.contains(nameless));
+    }
+
+    private static String read(String header, int serial) {
+        // the serial, in bases, makes every read distinct
+        StringBuilder sequence = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            sequence.append("ACGT".charAt(serial >> (2 * i) & 3));
+        }
+        return String.format("@%s\n%s\n+\n%s\n", header, sequence, "IIIIIIII");
+    }
+
+    private static String name(String read) {
+        String header = read.substring(1, read.indexOf('\n'));
+        int blank = header.indexOf(' ');
+        return blank != -1 ? header.substring(0, blank) : header;
+    }
+
+    private static int[] count(Map<String, int[]> counts, String read) {
+        String name = name(read);
+        int[] ret = counts.get(name);
+        if (ret == null) {
+            ret = new int[2];
+            counts.put(name, ret);
+        }
+        return ret;
+    }
+
+    private static ByteArrayInputStream toStream(List<String> reads) {
+        StringBuilder sb = new StringBuilder();
+        for (String read : reads) {
+            sb.append(read);
+        }
+        return new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static List<String> parse(ByteArrayOutputStream out) throws IOException {
+        List<String> ret = new ArrayList<String>();
+        try (FastqReader reader = new FastqReader(new ByteArrayInputStream(out.toByteArray()), "out")) {
+            FastqRecord record;
+            while ((record = reader.next()) != null) {
+                ret.add(String.format("@%s\n%s\n+%s\n%s\n", record.getHeader(), record.getSequence(),
+                        record.getPlus(), record.getQualities()));
+            }
+        }
+        return ret;
+    }
+
+}